@@ -0,0 +1,29 @@
+package com.amazon.jenkins.ec2fleet;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of <code>benchmark</code> Maven profile, runs JMH benchmarks and exports results as JSON,
+ * so they could be compared between builds.
+ * <p>
+ * Arguments: regexp of benchmarks to run and path of JSON result file.
+ */
+public class BenchmarkRunner {
+
+    public static void main(final String[] args) throws RunnerException {
+        final String include = args.length > 0 ? args[0] : "com\\.amazon\\.jenkins\\.ec2fleet\\..*Benchmark.*";
+        final String result = args.length > 1 ? args[1] : "target/jmh-result.json";
+
+        final Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.amazon.jenkins.ec2fleet;
+
+import com.amazon.jenkins.ec2fleet.aws.EC2Api;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.InstanceStateName;
+import hudson.model.Node;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import jenkins.model.Jenkins;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link EC2FleetCloud#provision(Cloud.CloudState, int)} and steady state {@link EC2FleetCloud#update(FleetStateStats)},
+ * when all fleet instances are already indexed Jenkins nodes, against stubbed EC2. Jenkins is mocked same way as in
+ * <code>EC2FleetCloudTest</code>, static mocks are thread local so states are per thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EC2FleetCloudBenchmark {
+
+    private static final String FLEET_ID = "fleetId";
+    private static final String LABEL = "momo";
+
+    static EC2FleetCloud createCloud(final String name, final String label, final int maxSize) {
+        return new EC2FleetCloud(name, "credId", null, "region",
+                "", FLEET_ID, label, null, null, false,
+                false, 0, 0, maxSize, 0, 1, false,
+                false, "-1", false, 0, 0,
+                10, true, false, new EC2FleetCloud.NoScaler());
+    }
+
+    @State(Scope.Thread)
+    public static class ProvisionState {
+
+        @Param({"1", "10", "100"})
+        int excessWorkload;
+
+        MockedStatic<Jenkins> mockedJenkins;
+        EC2FleetCloud cloud;
+
+        @Setup(Level.Trial)
+        public void setupTrial() {
+            final Jenkins jenkins = mock(Jenkins.class);
+            mockedJenkins = Mockito.mockStatic(Jenkins.class);
+            mockedJenkins.when(Jenkins::get).thenReturn(jenkins);
+        }
+
+        // provision accumulates planned nodes, so each invocation starts from empty cloud
+        @Setup(Level.Invocation)
+        public void setupInvocation() {
+            cloud = createCloud("bench", LABEL, 10_000);
+            cloud.setStats(new FleetStateStats(FLEET_ID, 0, FleetStateStats.State.active(),
+                    Collections.<String>emptySet(), Collections.<String, Double>emptyMap()));
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDownInvocation() {
+            cloud.cancelPlannedNodeTimeouts(cloud.getPlannedNodesCache());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownTrial() {
+            mockedJenkins.close();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class UpdateState {
+
+        @Param({"10", "100", "1000"})
+        int instances;
+
+        MockedStatic<Jenkins> mockedJenkins;
+        EC2FleetCloud cloud;
+        FleetStateStats describedState;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            cloud = createCloud("bench", LABEL, instances);
+
+            final Set<String> instanceIds = new HashSet<>();
+            final List<Node> nodes = new ArrayList<>();
+            final Map<String, Node> nodesByName = new HashMap<>();
+            for (int i = 0; i < instances; i++) {
+                final String instanceId = "i-" + i;
+                final EC2FleetNode node = mock(EC2FleetNode.class);
+                when(node.getNodeName()).thenReturn(instanceId);
+                when(node.getCloudName()).thenReturn(cloud.name);
+                when(node.getCloud()).thenReturn(cloud);
+                when(node.getLabelString()).thenReturn(LABEL);
+                instanceIds.add(instanceId);
+                nodes.add(node);
+                nodesByName.put(instanceId, node);
+            }
+            describedState = new FleetStateStats(FLEET_ID, instances, FleetStateStats.State.active(),
+                    instanceIds, Collections.<String, Double>emptyMap());
+
+            final Jenkins jenkins = mock(Jenkins.class);
+            when(jenkins.getNodes()).thenReturn(nodes);
+            when(jenkins.getNode(anyString())).thenAnswer(invocation -> nodesByName.get(invocation.<String>getArgument(0)));
+            when(jenkins.getCloud(cloud.name)).thenReturn(cloud);
+            mockedJenkins = Mockito.mockStatic(Jenkins.class);
+            mockedJenkins.when(Jenkins::get).thenReturn(jenkins);
+            // nodes are already registered, as after startup, otherwise all instances are new each update
+            EC2FleetNodeIndex.rebuild(nodes);
+
+            final AmazonEC2 ec2 = new StubAmazonEC2(InstanceStateName.Running);
+            Registry.setEc2Api(new EC2Api() {
+                @Override
+                public AmazonEC2 connect(final String awsCredentialsId, final String regionName, final String endpoint) {
+                    return ec2;
+                }
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            EC2FleetNodeIndex.rebuild(Collections.<Node>emptyList());
+            Registry.setEc2Api(new EC2Api());
+            mockedJenkins.close();
+        }
+
+    }
+
+    @Benchmark
+    public Collection<NodeProvisioner.PlannedNode> provision(final ProvisionState state) {
+        return state.cloud.provision(new Cloud.CloudState(null, 0), state.excessWorkload);
+    }
+
+    @Benchmark
+    public FleetStateStats update(final UpdateState state) {
+        return state.cloud.update(state.describedState);
+    }
+
+}
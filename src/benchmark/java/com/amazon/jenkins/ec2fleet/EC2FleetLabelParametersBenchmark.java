@@ -0,0 +1,36 @@
+package com.amazon.jenkins.ec2fleet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of label based configuration, done for each label on each {@link EC2FleetLabelCloud} update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EC2FleetLabelParametersBenchmark {
+
+    private final String label = "momo_imageId=ami-0123456789,maxSize=10,minSize=1,minSpareSize=0,spotPrice=0.5,type=t2.micro";
+
+    @Benchmark
+    public int parse() {
+        final EC2FleetLabelParameters parameters = new EC2FleetLabelParameters(label);
+        return parameters.getIntOrDefault("maxSize", 0)
+                + parameters.getIntOrDefault("minSize", 0)
+                + parameters.getOrDefault("type", "").length();
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.amazon.jenkins.ec2fleet;
+
+import hudson.model.LoadStatistics;
+import hudson.model.labels.LabelAtom;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import jenkins.model.Jenkins;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link NoDelayProvisionStrategy#apply(NodeProvisioner.StrategyState)} for label served by the last of
+ * configured clouds, so strategy checks all of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NoDelayProvisionStrategyBenchmark {
+
+    @Param({"1", "10", "50"})
+    private int clouds;
+
+    @Param({"10", "100"})
+    private int queueLength;
+
+    private MockedStatic<Jenkins> mockedJenkins;
+    private NodeProvisioner.StrategyState strategyState;
+    private List<Cloud> cloudList;
+    private NoDelayProvisionStrategy strategy;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        final Jenkins jenkins = mock(Jenkins.class);
+        // for Label.parse in EC2FleetCloud.canProvision
+        when(jenkins.getLabelAtom("momo")).thenReturn(new LabelAtom("momo"));
+        when(jenkins.getLabelAtom("other")).thenReturn(new LabelAtom("other"));
+        mockedJenkins = Mockito.mockStatic(Jenkins.class);
+        mockedJenkins.when(Jenkins::get).thenReturn(jenkins);
+
+        final LoadStatistics.LoadStatisticsSnapshot snapshot = mock(LoadStatistics.LoadStatisticsSnapshot.class);
+        when(snapshot.getQueueLength()).thenReturn(queueLength);
+        strategyState = mock(NodeProvisioner.StrategyState.class);
+        when(strategyState.getSnapshot()).thenReturn(snapshot);
+        when(strategyState.getLabel()).thenReturn(new LabelAtom("momo"));
+
+        cloudList = new ArrayList<>();
+        strategy = new NoDelayProvisionStrategy() {
+            @Override
+            protected List<Cloud> getClouds() {
+                return cloudList;
+            }
+        };
+    }
+
+    // provision accumulates planned nodes, so each invocation starts from empty clouds
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        cloudList.clear();
+        for (int i = 0; i < clouds; i++) {
+            final EC2FleetCloud cloud = EC2FleetCloudBenchmark.createCloud(
+                    "bench-" + i, i == clouds - 1 ? "momo" : "other", 10_000);
+            cloud.setStats(new FleetStateStats("fleetId", 0, FleetStateStats.State.active(),
+                    Collections.<String>emptySet(), Collections.<String, Double>emptyMap()));
+            cloudList.add(cloud);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        for (final Cloud cloud : cloudList) {
+            final EC2FleetCloud fleetCloud = (EC2FleetCloud) cloud;
+            fleetCloud.cancelPlannedNodeTimeouts(fleetCloud.getPlannedNodesCache());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        mockedJenkins.close();
+    }
+
+    @Benchmark
+    public NodeProvisioner.StrategyDecision apply() {
+        return strategy.apply(strategyState);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.amazon.jenkins.ec2fleet;
+
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.InstanceStateName;
+import com.amazonaws.services.ec2.model.Reservation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link EmptyAmazonEC2} which describes any requested instance in configured state without network call.
+ */
+public class StubAmazonEC2 extends EmptyAmazonEC2 {
+
+    private final InstanceStateName stateName;
+
+    public StubAmazonEC2(final InstanceStateName stateName) {
+        this.stateName = stateName;
+    }
+
+    @Override
+    public DescribeInstancesResult describeInstances(final DescribeInstancesRequest describeInstancesRequest) {
+        final List<Instance> instances = new ArrayList<>(describeInstancesRequest.getInstanceIds().size());
+        for (final String instanceId : describeInstancesRequest.getInstanceIds()) {
+            instances.add(new Instance()
+                    .withInstanceId(instanceId)
+                    .withInstanceType("t2.micro")
+                    .withPrivateIpAddress("10.0.0.1")
+                    .withState(new InstanceState().withName(stateName)));
+        }
+        return new DescribeInstancesResult().withReservations(new Reservation().withInstances(instances));
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.amazon.jenkins.ec2fleet.StubAmazonEC2;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceStateName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EC2Api#describeInstances(com.amazonaws.services.ec2.AmazonEC2, Set)} batching against stubbed EC2.
+ * Pending instances are described on each call, running are served from cache after first call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EC2ApiBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    private int instances;
+
+    private EC2Api ec2Api;
+    private StubAmazonEC2 pendingEc2;
+    private StubAmazonEC2 runningEc2;
+    private Set<String> instanceIds;
+
+    @Setup
+    public void setup() {
+        ec2Api = new EC2Api();
+        pendingEc2 = new StubAmazonEC2(InstanceStateName.Pending);
+        runningEc2 = new StubAmazonEC2(InstanceStateName.Running);
+        instanceIds = new HashSet<>();
+        for (int i = 0; i < instances; i++) {
+            instanceIds.add("i-" + i);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Instance> describeInstances() {
+        return ec2Api.describeInstances(pendingEc2, instanceIds);
+    }
+
+    @Benchmark
+    public Map<String, Instance> describeInstancesCached() {
+        return ec2Api.describeInstances(runningEc2, instanceIds);
+    }
+
+}
@@ -1,6 +1,18 @@
 package com.amazon.jenkins.ec2fleet;
 
+import com.amazon.jenkins.ec2fleet.aws.AwsMetrics;
+import hudson.Extension;
+import hudson.model.Action;
 import hudson.slaves.Cloud;
+import hudson.util.HttpResponses;
+import jenkins.model.Jenkins;
+import jenkins.model.TransientActionFactory;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.verb.GET;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 public abstract class AbstractEC2FleetCloud extends Cloud {
 
@@ -17,4 +29,58 @@ public abstract class AbstractEC2FleetCloud extends Cloud {
     public abstract boolean hasExcessCapacity();
 
     public abstract boolean scheduleToTerminate(String instanceId, boolean ignoreMinConstraints, EC2AgentTerminationReason reason);
+
+    /**
+     * Subclasses which record their update cycles override this, default is empty.
+     *
+     * @return traces of last update cycles, newest first, shown at <code>/cloud/&lt;name&gt;/syncTraces</code>
+     */
+    public List<SyncTrace> getSyncTraces() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * AWS call metrics of this cloud as JSON, see {@link AwsMetrics#toJson(String)}.
+     * Available at <code>/cloud/&lt;name&gt;/awsMetrics</code>.
+     */
+    @GET
+    public HttpResponse doAwsMetrics() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return HttpResponses.okJSON(AwsMetrics.toJson(name));
+    }
+
+    /**
+     * Side panel link from cloud page to <code>syncTraces</code> view, shown to administrators only.
+     */
+    public static class SyncTracesAction implements Action {
+
+        @Override
+        public String getIconFileName() {
+            return Jenkins.get().hasPermission(Jenkins.ADMINISTER) ? "symbol-details" : null;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Update cycles";
+        }
+
+        @Override
+        public String getUrlName() {
+            return "syncTraces";
+        }
+    }
+
+    @Extension
+    public static class SyncTracesActionFactory extends TransientActionFactory<AbstractEC2FleetCloud> {
+
+        @Override
+        public Class<AbstractEC2FleetCloud> type() {
+            return AbstractEC2FleetCloud.class;
+        }
+
+        @Override
+        public Collection<? extends Action> createFor(AbstractEC2FleetCloud target) {
+            return Collections.singletonList(new SyncTracesAction());
+        }
+    }
 }
@@ -1,15 +1,26 @@
 package com.amazon.jenkins.ec2fleet;
 
+import com.amazon.jenkins.ec2fleet.aws.AwsMetrics;
+import com.amazon.jenkins.ec2fleet.fleet.EC2Fleets;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
 import com.google.common.annotations.VisibleForTesting;
 import hudson.Extension;
 import hudson.model.PeriodicWork;
 import hudson.slaves.Cloud;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -17,6 +28,18 @@ import java.util.logging.Logger;
 
 /**
  * {@link CloudNanny} is responsible for periodically running update (i.e. sync-state-with-AWS) cycles for {@link EC2FleetCloud}s.
+ * <p>
+ * Updates are not executed inline, they are handed to {@link CloudSyncExecutor} which runs them with bounded
+ * concurrency (see {@link #SYNC_CONCURRENCY_PROPERTY}) and never runs two updates for the same cloud at once.
+ * <p>
+ * Due clouds with EC2 Spot Fleet or EC2 Fleet of the same credentials, region and endpoint are grouped,
+ * their fleets are described with one {@link com.amazon.jenkins.ec2fleet.fleet.EC2Fleet#getStateBatch} call
+ * and each cloud is updated with its described state.
+ * <p>
+ * Cloud is synced each {@link EC2FleetCloud#getCloudStatusIntervalSec()} while it has pending changes, see
+ * {@link EC2FleetCloud#hasPendingChanges()}. When fleet is idle and its state doesn't change between syncs, or
+ * AWS throttles calls, interval doubles up to {@link #MAX_INTERVAL_MULTIPLIER_PROPERTY} times. Backed off cloud
+ * is synced right away as soon as capacity is requested or instance is scheduled to terminate.
  */
 @Extension
 @SuppressWarnings("unused")
@@ -24,9 +47,26 @@ public class CloudNanny extends PeriodicWork {
 
     private static final Logger LOGGER = Logger.getLogger(CloudNanny.class.getName());
 
+    /**
+     * Max number of clouds synced in parallel, default {@link #DEFAULT_SYNC_CONCURRENCY}
+     */
+    public static final String SYNC_CONCURRENCY_PROPERTY = CloudNanny.class.getName() + ".syncConcurrency";
+
+    static final int DEFAULT_SYNC_CONCURRENCY = 4;
+
+    /**
+     * Max multiplier of cloud status interval for idle or throttled clouds, default 6
+     */
+    static final String MAX_INTERVAL_MULTIPLIER_PROPERTY = CloudNanny.class.getName() + ".maxIntervalMultiplier";
+
     // the map should not hold onto fleet instances to allow deletion of fleets.
     private final Map<EC2FleetCloud, AtomicInteger> recurrenceCounters = Collections.synchronizedMap(new WeakHashMap<>());
 
+    private final Map<EC2FleetCloud, SyncBackoff> backoffs = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final CloudSyncExecutor syncExecutor = new CloudSyncExecutor(
+            SystemProperties.getInteger(SYNC_CONCURRENCY_PROPERTY, DEFAULT_SYNC_CONCURRENCY));
+
     @Override
     public long getRecurrencePeriod() {
         return 1000L;
@@ -40,29 +80,122 @@ public class CloudNanny extends PeriodicWork {
      */
     @Override
     protected void doRun() {
+        final Set<String> cloudNames = new HashSet<>();
+        final Map<BatchKey, List<EC2FleetCloud>> batches = new HashMap<>();
         for (final Cloud cloud : getClouds()) {
+            cloudNames.add(String.valueOf(cloud.name));
             if (!(cloud instanceof EC2FleetCloud)) continue;
             final EC2FleetCloud fleetCloud = (EC2FleetCloud) cloud;
 
             final AtomicInteger recurrenceCounter = getRecurrenceCounter(fleetCloud);
+            final SyncBackoff backoff = backoffs.get(fleetCloud);
 
             if (recurrenceCounter.decrementAndGet() > 0) {
-                continue;
+                if (backoff == null || backoff.getMultiplier() == 1 || !fleetCloud.hasPendingChanges()) {
+                    continue;
+                }
+                LOGGER.fine(String.format("Fleet '%s' has pending changes, sync before backed off interval", fleetCloud.name));
             }
 
-            recurrenceCounter.set(fleetCloud.getCloudStatusIntervalSec());
+            recurrenceCounter.set(fleetCloud.getCloudStatusIntervalSec() * (backoff == null ? 1 : backoff.getMultiplier()));
 
             try {
                 updateCloudWithScaler(getClouds(), fleetCloud);
+            } catch (Exception e) {
+                LOGGER.log(Level.INFO, String.format("Error during fleet '%s' scaler update", fleetCloud.name), e);
+            }
+
+            if (isBatchable(fleetCloud)) {
+                batches.computeIfAbsent(new BatchKey(fleetCloud), k -> new ArrayList<>()).add(fleetCloud);
+            } else {
+                submitUpdate(fleetCloud, null);
+            }
+        }
+
+        final Set<String> syncNames = new HashSet<>(cloudNames);
+        for (final Map.Entry<BatchKey, List<EC2FleetCloud>> batch : batches.entrySet()) {
+            if (batch.getValue().size() == 1) {
+                submitUpdate(batch.getValue().get(0), null);
+                continue;
+            }
+            final String batchName = batch.getKey().toString();
+            syncNames.add(batchName);
+            // batch describe is made for all clouds of batch, so it's recorded in AWS metrics of each
+            final List<String> batchCloudNames = new ArrayList<>();
+            for (final EC2FleetCloud fleetCloud : batch.getValue()) batchCloudNames.add(String.valueOf(fleetCloud.name));
+            if (!syncExecutor.submit(batchName, () -> AwsMetrics.callAs(batchCloudNames, () -> {
+                updateBatch(batch.getKey(), batch.getValue());
+                return null;
+            }))) {
+                LOGGER.fine(String.format("%s previous update is still in progress, skip", batchName));
+            }
+        }
+        syncExecutor.retainStats(syncNames);
+        AwsMetrics.retainClouds(cloudNames);
+    }
+
+    /**
+     * Spot and EC2 fleets are described in batch, while ASG and fleets in incremental mode, see
+     * {@link com.amazon.jenkins.ec2fleet.fleet.FleetStateCache}, are described by cloud itself.
+     * Cloud with update in flight is not batched, so its skip is recorded as usual.
+     */
+    private boolean isBatchable(final EC2FleetCloud fleetCloud) {
+        return Registry.getFleetStateCache() == null
+                && (EC2Fleets.isEC2SpotFleet(fleetCloud.getFleet()) || EC2Fleets.isEC2EC2Fleet(fleetCloud.getFleet()))
+                && !syncExecutor.isInFlight(fleetCloud.name);
+    }
+
+    /**
+     * Describe fleets of all clouds in batch with one call and submit update of each cloud with its state.
+     * If batch describe failed or fleet is not in result, cloud describes its fleet on its own.
+     */
+    private void updateBatch(final BatchKey key, final List<EC2FleetCloud> fleetClouds) {
+        final Set<String> fleetIds = new HashSet<>();
+        for (final EC2FleetCloud fleetCloud : fleetClouds) fleetIds.add(fleetCloud.getFleet());
+
+        Map<String, FleetStateStats> states = Collections.emptyMap();
+        try {
+            states = EC2Fleets.get(key.fleetId).getStateBatch(key.awsCredentialsId, key.region, key.endpoint, fleetIds);
+        } catch (Exception e) {
+            LOGGER.log(Level.INFO, String.format("Error during batch describe of %s", key), e);
+            if (isThrottling(e)) {
+                // describing each fleet on its own would only add more throttled calls
+                for (final EC2FleetCloud fleetCloud : fleetClouds) getBackoff(fleetCloud).onThrottled();
+                return;
+            }
+        }
+
+        for (final EC2FleetCloud fleetCloud : fleetClouds) {
+            submitUpdate(fleetCloud, states.get(fleetCloud.getFleet()));
+        }
+    }
+
+    private void submitUpdate(final EC2FleetCloud fleetCloud, final FleetStateStats describedState) {
+        final boolean scheduled = syncExecutor.submit(fleetCloud.name, () -> {
+            final SyncBackoff backoff = getBackoff(fleetCloud);
+            try {
                 // Update the cluster states
-                fleetCloud.update();
+                final FleetStateStats stats = AwsMetrics.callAs(fleetCloud.name,
+                        () -> describedState == null ? fleetCloud.update() : fleetCloud.update(describedState));
+                backoff.onSync(stats, fleetCloud.hasPendingChanges());
             } catch (Exception e) {
                 // could be a bad configuration or a real exception, we can't do too much here
                 LOGGER.log(Level.INFO, String.format("Error during fleet '%s' stats update", fleetCloud.name), e);
+                if (isThrottling(e)) backoff.onThrottled();
             }
+        });
+        if (!scheduled) {
+            LOGGER.fine(String.format("Fleet '%s' previous update is still in progress, skip", fleetCloud.name));
         }
     }
 
+    /**
+     * @return queue wait and run time of update cycles by cloud name
+     */
+    public Map<String, CloudSyncExecutor.Stats> getSyncStats() {
+        return syncExecutor.getStats();
+    }
+
     /**
      * We return {@link List} instead of original {@link jenkins.model.Jenkins.CloudList}
      * to simplify testing as jenkins list requires actual {@link Jenkins} instance.
@@ -98,10 +231,118 @@ public class CloudNanny extends PeriodicWork {
                 oldCloud.isScaleExecutorsByWeight(), scaler);
     }
 
+    private SyncBackoff getBackoff(final EC2FleetCloud fleetCloud) {
+        synchronized (backoffs) {
+            return backoffs.computeIfAbsent(fleetCloud, k -> new SyncBackoff(
+                    SystemProperties.getInteger(MAX_INTERVAL_MULTIPLIER_PROPERTY, 6)));
+        }
+    }
+
+    // Visible for testing
+    int getIntervalMultiplier(final EC2FleetCloud fleetCloud) {
+        final SyncBackoff backoff = backoffs.get(fleetCloud);
+        return backoff == null ? 1 : backoff.getMultiplier();
+    }
+
+    private static boolean isThrottling(final Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof AmazonServiceException && RetryUtils.isThrottlingException((AmazonServiceException) t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private AtomicInteger getRecurrenceCounter(EC2FleetCloud fleetCloud) {
         AtomicInteger counter = new AtomicInteger(fleetCloud.getCloudStatusIntervalSec());
         // If a counter already exists, return the value, otherwise set the new counter value and return it.
         AtomicInteger existing = recurrenceCounters.putIfAbsent(fleetCloud, counter);
         return existing != null ? existing : counter;
     }
+
+    /**
+     * Interval multiplier of one cloud, doubles on each sync which found idle fleet in the same state
+     * as previous one or was throttled, reset to one when fleet changes or cloud has pending changes.
+     */
+    private static final class SyncBackoff {
+
+        private final int maxMultiplier;
+        private int multiplier = 1;
+        @Nullable
+        private FleetStateStats lastStats;
+
+        private SyncBackoff(final int maxMultiplier) {
+            this.maxMultiplier = Math.max(1, maxMultiplier);
+        }
+
+        private synchronized int getMultiplier() {
+            return multiplier;
+        }
+
+        private synchronized void onSync(@Nullable final FleetStateStats stats, final boolean pendingChanges) {
+            if (pendingChanges || stats == null || lastStats == null || !sameState(stats, lastStats)) {
+                multiplier = 1;
+            } else {
+                multiplier = Math.min(multiplier * 2, maxMultiplier);
+            }
+            lastStats = stats;
+        }
+
+        private synchronized void onThrottled() {
+            multiplier = Math.min(multiplier * 2, maxMultiplier);
+        }
+
+        private static boolean sameState(final FleetStateStats stats, final FleetStateStats other) {
+            return stats.getNumDesired() == other.getNumDesired()
+                    && stats.getNumActive() == other.getNumActive()
+                    && stats.getState().equals(other.getState())
+                    && stats.getInstances().equals(other.getInstances());
+        }
+
+    }
+
+    /**
+     * Clouds which fleets could be described by one call: same account, region, endpoint and fleet type.
+     */
+    private static final class BatchKey {
+
+        private final String awsCredentialsId;
+        private final String region;
+        private final String endpoint;
+        private final boolean spotFleet;
+        // any fleet of batch, used to pick fleet implementation
+        private final String fleetId;
+
+        private BatchKey(final EC2FleetCloud fleetCloud) {
+            this.awsCredentialsId = fleetCloud.getAwsCredentialsId();
+            this.region = fleetCloud.getRegion();
+            this.endpoint = fleetCloud.getEndpoint();
+            this.spotFleet = EC2Fleets.isEC2SpotFleet(fleetCloud.getFleet());
+            this.fleetId = fleetCloud.getFleet();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BatchKey batchKey = (BatchKey) o;
+            return spotFleet == batchKey.spotFleet &&
+                    Objects.equals(awsCredentialsId, batchKey.awsCredentialsId) &&
+                    Objects.equals(region, batchKey.region) &&
+                    Objects.equals(endpoint, batchKey.endpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(awsCredentialsId, region, endpoint, spotFleet);
+        }
+
+        @Override
+        public String toString() {
+            return (spotFleet ? "EC2 Spot Fleet" : "EC2 Fleet") + " batch {credentials: " + awsCredentialsId
+                    + ", region: " + region + ", endpoint: " + endpoint + "}";
+        }
+
+    }
+
 }
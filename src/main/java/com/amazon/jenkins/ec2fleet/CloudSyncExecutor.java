@@ -0,0 +1,189 @@
+package com.amazon.jenkins.ec2fleet;
+
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs sync cycles submitted by {@link CloudNanny} on a dedicated bounded pool, so one slow region or fleet
+ * doesn't stall the sync of every other {@link EC2FleetCloud} on the controller.
+ * <p>
+ * At most one sync per cloud is in flight at any time, if a cloud is still syncing when it becomes due
+ * again the new request is skipped. Queue wait and run time are tracked per cloud, see {@link Stats}.
+ * <p>
+ * Sync tasks run as {@link ACL#SYSTEM2}, same as they did before on {@link hudson.model.PeriodicWork} thread.
+ *
+ * @see CloudNanny
+ */
+@ThreadSafe
+public final class CloudSyncExecutor {
+
+    private final ExecutorService executor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    CloudSyncExecutor(final int concurrency) {
+        this(createPool(concurrency));
+    }
+
+    CloudSyncExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    private static ExecutorService createPool(final int concurrency) {
+        final int size = Math.max(1, concurrency);
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                // use daemon thread, so no problem when stop jenkins
+                new NamingThreadFactory(new DaemonThreadFactory(), CloudSyncExecutor.class.getSimpleName()));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Schedule sync for cloud unless previous one for the same cloud is still queued or running.
+     *
+     * @param cloudName unique cloud name, used for de-duplication and stats
+     * @param sync      sync task
+     * @return <code>true</code> if task was scheduled, <code>false</code> if skipped as in flight
+     */
+    boolean submit(final String cloudName, final Runnable sync) {
+        final String key = String.valueOf(cloudName);
+        final Stats cloudStats = getOrCreateStats(key);
+        if (!inFlight.add(key)) {
+            cloudStats.recordSkipped();
+            return false;
+        }
+
+        final long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                final long startedAt = System.nanoTime();
+                try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+                    sync.run();
+                } finally {
+                    cloudStats.record(startedAt - queuedAt, System.nanoTime() - startedAt);
+                    inFlight.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            throw e;
+        }
+        return true;
+    }
+
+    boolean isInFlight(final String cloudName) {
+        return inFlight.contains(String.valueOf(cloudName));
+    }
+
+    /**
+     * @return snapshot of sync stats by cloud name
+     */
+    @Nonnull
+    public Map<String, Stats> getStats() {
+        return Collections.unmodifiableMap(new HashMap<>(stats));
+    }
+
+    private Stats getOrCreateStats(final String key) {
+        return stats.computeIfAbsent(key, k -> new Stats());
+    }
+
+    /**
+     * Drop stats of clouds which are not configured anymore.
+     *
+     * @param cloudNames names of existing clouds
+     */
+    void retainStats(final Set<String> cloudNames) {
+        stats.keySet().retainAll(cloudNames);
+    }
+
+    /**
+     * Queue wait and run time of sync cycles for single cloud, all values in milliseconds.
+     */
+    @ThreadSafe
+    public static final class Stats {
+
+        private long count;
+        private long skipped;
+        private long lastQueueWaitNanos;
+        private long totalQueueWaitNanos;
+        private long maxQueueWaitNanos;
+        private long lastRunNanos;
+        private long totalRunNanos;
+        private long maxRunNanos;
+
+        synchronized void record(final long queueWaitNanos, final long runNanos) {
+            count++;
+            lastQueueWaitNanos = queueWaitNanos;
+            totalQueueWaitNanos += queueWaitNanos;
+            maxQueueWaitNanos = Math.max(maxQueueWaitNanos, queueWaitNanos);
+            lastRunNanos = runNanos;
+            totalRunNanos += runNanos;
+            maxRunNanos = Math.max(maxRunNanos, runNanos);
+        }
+
+        synchronized void recordSkipped() {
+            skipped++;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * @return number of times sync was due but skipped as previous one was still in flight
+         */
+        public synchronized long getSkipped() {
+            return skipped;
+        }
+
+        public synchronized long getLastQueueWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(lastQueueWaitNanos);
+        }
+
+        public synchronized long getAverageQueueWaitMillis() {
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalQueueWaitNanos / count);
+        }
+
+        public synchronized long getMaxQueueWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos);
+        }
+
+        public synchronized long getLastRunMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(lastRunNanos);
+        }
+
+        public synchronized long getAverageRunMillis() {
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalRunNanos / count);
+        }
+
+        public synchronized long getMaxRunMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxRunNanos);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "count: " + count + ", skipped: " + skipped
+                    + ", queue wait ms (last/avg/max): " + getLastQueueWaitMillis() + "/" + getAverageQueueWaitMillis() + "/" + getMaxQueueWaitMillis()
+                    + ", run ms (last/avg/max): " + getLastRunMillis() + "/" + getAverageRunMillis() + "/" + getMaxRunMillis();
+        }
+
+    }
+
+}
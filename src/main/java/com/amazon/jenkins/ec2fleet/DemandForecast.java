@@ -0,0 +1,105 @@
+package com.amazon.jenkins.ec2fleet;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Demand history of one label in ring buffer of fixed size and forecast of demand by Holt linear
+ * (double exponential) smoothing, which follows level and trend of time series, so it reacts to ramp
+ * like morning CI traffic growth earlier than plain moving average.
+ * <p>
+ * Samples could come with irregular interval, trend is kept per second.
+ *
+ * @see PredictiveProvisionStrategy
+ */
+@ThreadSafe
+public class DemandForecast {
+
+    /**
+     * Level smoothing factor
+     */
+    private static final double ALPHA = 0.5;
+    /**
+     * Trend smoothing factor
+     */
+    private static final double BETA = 0.3;
+    /**
+     * Samples closer than this are merged, to not get infinite trend
+     */
+    private static final long MIN_SAMPLE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final int MIN_SAMPLES = 3;
+
+    private final long[] times;
+    private final double[] demands;
+    private int start;
+    private int size;
+    private long lastDemandMillis = -1;
+
+    public DemandForecast(final int historySize) {
+        if (historySize < MIN_SAMPLES) throw new IllegalArgumentException("historySize should be at least " + MIN_SAMPLES);
+        this.times = new long[historySize];
+        this.demands = new double[historySize];
+    }
+
+    /**
+     * @param timeMillis sample time, should not decrease
+     * @param demand     demand, like busy executors plus queue length
+     */
+    public synchronized void record(final long timeMillis, final double demand) {
+        if (demand > 0 || lastDemandMillis < 0) lastDemandMillis = Math.max(lastDemandMillis, timeMillis);
+        if (size > 0) {
+            final int last = index(size - 1);
+            if (timeMillis < times[last]) return;
+            if (timeMillis - times[last] < MIN_SAMPLE_INTERVAL_MILLIS) {
+                demands[last] = demand;
+                return;
+            }
+        }
+
+        if (size == times.length) {
+            // overwrite oldest
+            start = (start + 1) % times.length;
+            size--;
+        }
+        final int i = index(size);
+        times[i] = timeMillis;
+        demands[i] = demand;
+        size++;
+    }
+
+    /**
+     * @param horizonMillis how far from last sample to forecast
+     * @return forecasted demand, never negative, or <code>-1</code> if not enough history
+     */
+    public synchronized double forecast(final long horizonMillis) {
+        if (size < MIN_SAMPLES) return -1;
+
+        double level = demands[index(0)];
+        double trend = 0;
+        for (int j = 1; j < size; j++) {
+            final double dt = (times[index(j)] - times[index(j - 1)]) / 1000.0;
+            final double predicted = level + trend * dt;
+            final double newLevel = ALPHA * demands[index(j)] + (1 - ALPHA) * predicted;
+            trend = BETA * (newLevel - level) / dt + (1 - BETA) * trend;
+            level = newLevel;
+        }
+        return Math.max(0, level + trend * horizonMillis / 1000.0);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return time of last sample with positive demand, or of first sample if there was no demand,
+     * <code>-1</code> if no samples
+     */
+    public synchronized long getLastDemandMillis() {
+        return lastDemandMillis;
+    }
+
+    private int index(final int i) {
+        return (start + i) % times.length;
+    }
+
+}
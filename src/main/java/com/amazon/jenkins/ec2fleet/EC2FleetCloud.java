@@ -2,9 +2,11 @@ package com.amazon.jenkins.ec2fleet;
 
 import com.amazon.jenkins.ec2fleet.aws.AwsPermissionChecker;
 import com.amazon.jenkins.ec2fleet.aws.RegionHelper;
+import com.amazon.jenkins.ec2fleet.aws.InstanceTypeCatalog;
 import com.amazon.jenkins.ec2fleet.fleet.AutoScalingGroupFleet;
 import com.amazon.jenkins.ec2fleet.fleet.EC2Fleet;
 import com.amazon.jenkins.ec2fleet.fleet.EC2Fleets;
+import com.amazon.jenkins.ec2fleet.fleet.FleetStateCache;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.*;
 import com.cloudbees.jenkins.plugins.awscredentials.AWSCredentialsHelper;
@@ -12,6 +14,7 @@ import com.google.common.collect.Sets;
 import hudson.Extension;
 import hudson.ExtensionPoint;
 import hudson.model.*;
+import hudson.model.labels.LabelAtom;
 import hudson.slaves.Cloud;
 import hudson.slaves.ComputerConnector;
 import hudson.slaves.NodeProperty;
@@ -29,6 +32,7 @@ import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
@@ -37,17 +41,18 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
@@ -82,7 +87,12 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
 
     private static final SimpleFormatter sf = new SimpleFormatter();
     private static final Logger LOGGER = Logger.getLogger(EC2FleetCloud.class.getName());
-    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Shared by all clouds, planned node timeouts are mostly cancelled by next update long before deadline
+     */
+    private static final HashedWheelTimer PLANNED_NODE_TIMER = new HashedWheelTimer(
+            EC2FleetCloud.class.getSimpleName() + ".plannedNodeTimeouts", 100, TimeUnit.MILLISECONDS, 512);
 
     /**
      * Replaced with {@link EC2FleetCloud#awsCredentialsId}
@@ -142,21 +152,49 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
      * {@link EC2FleetCloud#update()} updating this field, this is one thread
      * related to {@link CloudNanny}. At the same time {@link EC2RetentionStrategy}
      * call {@link EC2FleetCloud#scheduleToTerminate(String, boolean, EC2AgentTerminationReason)} to terminate instance when it is free
-     * and uses this field to know the current capacity.
+     * and {@link NodeProvisioner} calls {@link #provision(Cloud.CloudState, int)}, both use this field to know the current capacity.
+     * <p>
+     * State is immutable and replaced with compare-and-set, so readers never wait for update which could be
+     * in the middle of slow AWS call, and writers retry on conflict instead of holding lock.
      * <p>
      * It could be situation that <code>stats</code> is outdated and plugin will make wrong decision,
      * however refresh time is low and probability of this event is low. We preferred to reduce amount of calls
      * to API EC2 and increase plugin performance versus be precise. Any way outdated will be fixed after next update.
      */
-    private transient FleetStateStats stats;
+    private transient AtomicReference<ProvisioningState> state;
 
-    private transient int toAdd;
+    private transient ConcurrentMap<String, EC2AgentTerminationReason> instanceIdsToTerminate;
+
+    /**
+     * Instances submitted to {@link TerminationPipeline} which are not terminated yet, they are
+     * not counted as active and don't get nodes even if they are still described as running
+     */
+    private transient Set<String> instanceIdsTerminating;
+
+    /**
+     * Scaling timeout of each planned node, see {@link #scheduleScalingTimeout(NodeProvisioner.PlannedNode, CompletableFuture)}
+     */
+    private transient ConcurrentMap<NodeProvisioner.PlannedNode, HashedWheelTimer.Timeout> plannedNodeTimeouts;
+
+    /**
+     * Time when each planned node was requested, to measure fulfillment latency
+     */
+    private transient ConcurrentMap<NodeProvisioner.PlannedNode, Long> plannedNodeRequestTimes;
 
-    private transient Map<String, EC2AgentTerminationReason> instanceIdsToTerminate;
+    /**
+     * Traces of last update cycles, see {@link SyncTrace}
+     */
+    private transient SyncTrace.Buffer syncTraces;
 
-    private transient Set<NodeProvisioner.PlannedNode> plannedNodesCache;
+    /**
+     * Parsed {@link #labelString}, see {@link #getLabelAtoms()}
+     */
+    private transient volatile Set<LabelAtom> labelAtoms;
 
-    private transient ArrayList<ScheduledFuture<?>> plannedNodeScheduledFutures;
+    /**
+     * Moving average of time from planned node request to instance added to Jenkins, <code>-1</code> if unknown
+     */
+    private transient AtomicLong fulfillmentLatencyMillis;
 
     // Counter to keep track of planned nodes per EC2FleetCloud, used in node's display name
     private transient AtomicInteger plannedNodeCounter = new AtomicInteger(1);
@@ -220,8 +258,8 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
         this.executorScaler = executorScaler == null ? new NoScaler().withNumExecutors(this.numExecutors) :
                                                        executorScaler.withNumExecutors(this.numExecutors);
         if (fleet != null) {
-            this.stats = EC2Fleets.get(fleet).getState(
-                    getAwsCredentialsId(), region, endpoint, getFleet());
+            setStats(EC2Fleets.get(fleet).getState(
+                    getAwsCredentialsId(), region, endpoint, getFleet()));
         }
     }
 
@@ -339,36 +377,84 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
     }
 
     // Visible for testing
-    synchronized Set<NodeProvisioner.PlannedNode> getPlannedNodesCache() {
-        return plannedNodesCache;
+    Set<NodeProvisioner.PlannedNode> getPlannedNodesCache() {
+        return state.get().plannedNodes;
     }
 
     // Visible for testing
-    synchronized ArrayList<ScheduledFuture<?>> getPlannedNodeScheduledFutures() { return plannedNodeScheduledFutures; }
+    Map<NodeProvisioner.PlannedNode, HashedWheelTimer.Timeout> getPlannedNodeTimeouts() {
+        return plannedNodeTimeouts;
+    }
 
     // Visible for testing
-    synchronized void setPlannedNodeScheduledFutures(final ArrayList<ScheduledFuture<?>> futures) {
-        this.plannedNodeScheduledFutures = futures;
+    Set<String> getInstanceIdsTerminating() {
+        return instanceIdsTerminating;
+    }
+
+    /**
+     * @return <code>true</code> if capacity was requested or instances were scheduled to terminate since last
+     * update, or planned nodes are still waiting for instances, or instances are still terminating
+     */
+    boolean hasPendingChanges() {
+        final ProvisioningState current = state.get();
+        return current.toAdd > 0 || !current.plannedNodes.isEmpty() || !instanceIdsToTerminate.isEmpty()
+                || !instanceIdsTerminating.isEmpty();
+    }
+
+    /**
+     * Number of executors which cloud could still provision before reaching max size, counting capacity
+     * already requested since last update. Max size and desired capacity are in fleet capacity units,
+     * which are instance type weights for weighted fleets, so they are converted to executors the same
+     * way as {@link #provision(Cloud.CloudState, int)} does.
+     *
+     * @return executors, <code>0</code> if fleet state is not known yet or fleet is not active
+     */
+    public int getHeadroom() {
+        final ProvisioningState current = state.get();
+        if (current.stats == null || !current.stats.getState().isActive()) return 0;
+        return Math.max(0, getMaxSize() - current.stats.getNumDesired() - current.toAdd) * Math.max(numExecutors, 1);
+    }
+
+    /**
+     * @return moving average of time from capacity request to instance added to Jenkins in millis,
+     * planned node which reached scaling timeout counts as fulfilled at timeout, <code>-1</code> if unknown
+     */
+    public long getFulfillmentLatencyMillis() {
+        return fulfillmentLatencyMillis.get();
+    }
+
+    private void recordFulfillment(final NodeProvisioner.PlannedNode plannedNode) {
+        final Long requestTime = plannedNodeRequestTimes.remove(plannedNode);
+        if (requestTime == null) return;
+        final long latency = Math.max(0, System.currentTimeMillis() - requestTime);
+        fulfillmentLatencyMillis.updateAndGet(previous -> previous < 0 ? latency : Math.round(0.3 * latency + 0.7 * previous));
+    }
+
+    /**
+     * @return number of planned node scaling timeouts waiting for expiration, for all clouds
+     */
+    public static long getPendingPlannedNodeTimeouts() {
+        return PLANNED_NODE_TIMER.pendingTimeouts();
     }
 
     // Visible for testing
-    synchronized Map<String, EC2AgentTerminationReason> getInstanceIdsToTerminate() {
+    Map<String, EC2AgentTerminationReason> getInstanceIdsToTerminate() {
         return instanceIdsToTerminate;
     }
 
     // Visible for testing
-    synchronized int getToAdd() {
-        return toAdd;
+    int getToAdd() {
+        return state.get().toAdd;
     }
 
     // Visible for testing
-    synchronized FleetStateStats getStats() {
-        return stats;
+    FleetStateStats getStats() {
+        return state.get().stats;
     }
 
     // Visible for testing
-    synchronized void setStats(final FleetStateStats stats) {
-        this.stats = stats;
+    void setStats(final FleetStateStats stats) {
+        state.updateAndGet(current -> current.withStats(stats));
     }
 
     // make maxTotalUses inaccessible from cloud for safety. Use {@link FleetNode#maxTotalUses} and {@link FleetNode#usesRemaining} instead.
@@ -377,7 +463,8 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
     }
 
     @Override
-    public synchronized boolean hasExcessCapacity() {
+    public boolean hasExcessCapacity() {
+        final FleetStateStats stats = getStats();
         if(stats == null) {
             // Let plugin sync up with current state of fleet
             return false;
@@ -389,15 +476,12 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
         return false;
     }
 
-    private synchronized int getNextPlannedNodeCounter() {
-        if (plannedNodeCounter == null) {
-            plannedNodeCounter = new AtomicInteger(1);
-        }
+    private int getNextPlannedNodeCounter() {
         return plannedNodeCounter.getAndIncrement();
     }
 
     @Override
-    public synchronized Collection<NodeProvisioner.PlannedNode> provision(@Nonnull final Cloud.CloudState cloudState, final int excessWorkload) {
+    public Collection<NodeProvisioner.PlannedNode> provision(@Nonnull final Cloud.CloudState cloudState, final int excessWorkload) {
         Jenkins jenkinsInstance = Jenkins.get();
         if (jenkinsInstance.isQuietingDown()) {
             LOGGER.log(Level.FINE, "Not provisioning nodes, Jenkins instance is quieting down");
@@ -409,68 +493,103 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
 
         fine("excessWorkload %s", excessWorkload);
 
-        if (stats == null) {
-            info("First update not completed, still setting configuring cloud state. Skipping provision");
-            return Collections.emptyList();
-        }
+        // planned nodes created on first attempt are reused if state changed concurrently and we retry
+        final List<NodeProvisioner.PlannedNode> created = new ArrayList<>();
+        final Map<NodeProvisioner.PlannedNode, CompletableFuture<Node>> futures = new HashMap<>();
+        while (true) {
+            final ProvisioningState current = state.get();
+            final FleetStateStats stats = current.stats;
+            if (stats == null) {
+                info("First update not completed, still setting configuring cloud state. Skipping provision");
+                return Collections.emptyList();
+            }
 
-        final int cap = stats.getNumDesired() + toAdd;
+            final int cap = stats.getNumDesired() + current.toAdd;
 
-        if (cap >= getMaxSize()) {
-            info("Max instance size '%s' reached. Skipping provision", getMaxSize());
-            return Collections.emptyList();
-        }
+            if (cap >= getMaxSize()) {
+                info("Max instance size '%s' reached. Skipping provision", getMaxSize());
+                return Collections.emptyList();
+            }
 
-        if (!stats.getState().isActive()) {
-            info("Fleet is in a non-active state '%s'. Skipping provision", stats.getState().getDetailed());
-            return Collections.emptyList();
-        }
+            if (!stats.getState().isActive()) {
+                info("Fleet is in a non-active state '%s'. Skipping provision", stats.getState().getDetailed());
+                return Collections.emptyList();
+            }
 
-        // if the planned node has 0 executors configured force it to 1 so we end up doing an unweighted check
-        final int numExecutors1 = this.numExecutors == 0 ? 1 : this.numExecutors;
+            // if the planned node has 0 executors configured force it to 1 so we end up doing an unweighted check
+            final int numExecutors1 = this.numExecutors == 0 ? 1 : this.numExecutors;
 
-        // Calculate the ceiling, without having to work with doubles from Math.ceil
-        // https://stackoverflow.com/a/21830188/877024
-        final int weightedExcessWorkload = (excessWorkload + numExecutors1 - 1) / numExecutors1;
-        int targetCapacity = Math.min(cap + weightedExcessWorkload, getMaxSize());
+            // Calculate the ceiling, without having to work with doubles from Math.ceil
+            // https://stackoverflow.com/a/21830188/877024
+            final int weightedExcessWorkload = (excessWorkload + numExecutors1 - 1) / numExecutors1;
+            int targetCapacity = Math.min(cap + weightedExcessWorkload, getMaxSize());
 
-        int toProvision = targetCapacity - cap;
-        fine("to provision = %s", toProvision);
+            int toProvision = targetCapacity - cap;
+            fine("to provision = %s", toProvision);
 
-        if (toProvision < 1) {
-            info("toProvision is less than 1. Skipping provision");
-            return Collections.emptyList();
-        }
+            if (toProvision < 1) {
+                info("toProvision is less than 1. Skipping provision");
+                return Collections.emptyList();
+            }
 
-        toAdd += toProvision;
+            while (created.size() < toProvision) {
+                final CompletableFuture<Node> completableFuture = new CompletableFuture<>();
+                final NodeProvisioner.PlannedNode plannedNode = new NodeProvisioner.PlannedNode(
+                        String.format("FleetNode-%s-%d", getDisplayName(), getNextPlannedNodeCounter()), completableFuture, this.numExecutors);
+                created.add(plannedNode);
+                futures.put(plannedNode, completableFuture);
+            }
+            final List<NodeProvisioner.PlannedNode> resultList = new ArrayList<>(created.subList(0, toProvision));
 
-        final List<NodeProvisioner.PlannedNode> resultList = new ArrayList<>();
-        for (int f = 0; f < toProvision; ++f) {
-            final CompletableFuture<Node> completableFuture = new CompletableFuture<>();
-            final NodeProvisioner.PlannedNode plannedNode = new NodeProvisioner.PlannedNode(
-                    String.format("FleetNode-%s-%d", getDisplayName(), getNextPlannedNodeCounter()), completableFuture, this.numExecutors);
+            if (!state.compareAndSet(current, current.withProvisioned(resultList))) {
+                continue;
+            }
 
-            resultList.add(plannedNode);
-            plannedNodesCache.add(plannedNode);
+            final long requestTime = System.currentTimeMillis();
+            for (final NodeProvisioner.PlannedNode plannedNode : resultList) {
+                plannedNodeRequestTimes.put(plannedNode, requestTime);
+                scheduleScalingTimeout(plannedNode, futures.get(plannedNode));
+            }
+            return resultList;
+        }
+    }
 
-            // create a ScheduledFuture that will cancel the planned node future after a timeout.
-            // This protects us from leaving planned nodes stranded within Jenkins NodeProvisioner when the Fleet
-            // is updated or removed before it can scale. After scaling, EC2FleetOnlineChecker will cancel the future
-            // if something happens to the Fleet.
-            // TODO: refactor to consolidate logic with EC2FleetOnlineChecker
-            final ScheduledFuture<?> scheduledFuture = EXECUTOR.schedule(() -> {
-                if (completableFuture.isDone()) {
-                    return;
-                }
-                info("Scaling timeout reached, removing node from Jenkins's plannedCapacitySnapshot");
-                // with complete(null) Jenkins will remove future from plannedCapacity without making a fuss
-                completableFuture.complete(null);
+    private void scheduleScalingTimeout(final NodeProvisioner.PlannedNode plannedNode, final CompletableFuture<Node> completableFuture) {
+        // create a timeout that will cancel the planned node future after a timeout.
+        // This protects us from leaving planned nodes stranded within Jenkins NodeProvisioner when the Fleet
+        // is updated or removed before it can scale. After scaling, EC2FleetOnlineChecker will cancel the future
+        // if something happens to the Fleet.
+        // TODO: refactor to consolidate logic with EC2FleetOnlineChecker
+        final HashedWheelTimer.Timeout timeout = PLANNED_NODE_TIMER.newTimeout(() -> {
+            plannedNodeTimeouts.remove(plannedNode);
+            if (completableFuture.isDone()) {
+                plannedNodeRequestTimes.remove(plannedNode);
                 return;
-                },
-                getScheduledFutureTimeoutSec(), TimeUnit.SECONDS);
-            plannedNodeScheduledFutures.add(scheduledFuture);
+            }
+            recordFulfillment(plannedNode);
+            info("Scaling timeout reached, removing node from Jenkins's plannedCapacitySnapshot");
+            // with complete(null) Jenkins will remove future from plannedCapacity without making a fuss
+            completableFuture.complete(null);
+            },
+            getScheduledFutureTimeoutSec(), TimeUnit.SECONDS);
+        plannedNodeTimeouts.put(plannedNode, timeout);
+    }
+
+    /**
+     * Cancel scaling timeouts of planned nodes, when capacity for them was requested from fleet
+     * or they are not planned anymore.
+     *
+     * @param plannedNodes planned nodes
+     * @return number of cancelled timeouts
+     */
+    int cancelPlannedNodeTimeouts(final Collection<NodeProvisioner.PlannedNode> plannedNodes) {
+        int cancelled = 0;
+        for (final NodeProvisioner.PlannedNode plannedNode : plannedNodes) {
+            plannedNodeRequestTimes.remove(plannedNode);
+            final HashedWheelTimer.Timeout timeout = plannedNodeTimeouts.remove(plannedNode);
+            if (timeout != null && timeout.cancel()) cancelled++;
         }
-        return resultList;
+        return cancelled;
     }
 
     /**
@@ -479,64 +598,131 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
      * @return current state
      */
     public FleetStateStats update() {
+        return update(null);
+    }
+
+    /**
+     * Perform sync of plugin data with fleet state already described by caller, for example by
+     * {@link CloudNanny} which describes fleets of the same account and region in one batch.
+     *
+     * @param describedState fleet state, if <code>null</code> state is described by this method
+     * @return current state
+     */
+    public FleetStateStats update(@Nullable final FleetStateStats describedState) {
+        final SyncTrace trace = new SyncTrace();
+        try {
+            final FleetStateStats stats = update(describedState, trace);
+            trace.finish(null);
+            return stats;
+        } catch (RuntimeException | Error e) {
+            trace.finish(e);
+            throw e;
+        } finally {
+            syncTraces.add(trace);
+            fine("finish cloud update %s", trace);
+        }
+    }
+
+    @Override
+    public List<SyncTrace> getSyncTraces() {
+        return syncTraces.getTraces();
+    }
+
+    private FleetStateStats update(@Nullable final FleetStateStats describedState, final SyncTrace trace) {
         fine("start cloud %s", this);
 
         // Make a snapshot of current cloud state to work with.
         // We should always work with the snapshot since data could be modified in another thread
-        FleetStateStats currentState = EC2Fleets.get(fleet).getState(
-                getAwsCredentialsId(), region, endpoint, getFleet());
+        trace.phase("fetchState");
+        FleetStateStats currentState = describedState != null ? describedState : getFleetState();
 
         // Some Fleet implementations (e.g. EC2SpotFleet) reflect their state only at the end of modification
         if (currentState.getState().isModifying()) {
             info("Fleet '%s' is currently under modification. Skipping update", currentState.getFleetId());
-            synchronized (this) {
-                return stats;
-            }
+            trace.count("skippedModifying", 1);
+            return getStats();
         }
-        final int currentToAdd;
-        final Map<String, EC2AgentTerminationReason> currentInstanceIdsToTerminate;
-        synchronized (this) {
-            if(minSpareSize > 0) {
-                // Check spare instances by considering FleetStateStats#getNumDesired so we account for newer instances which are in progress
-                final int currentSpareInstanceCount = getCurrentSpareInstanceCount(currentState, currentState.getNumDesired());
-                final int additionalSpareInstancesRequired = minSpareSize - currentSpareInstanceCount;
-                fine("currentSpareInstanceCount: %s additionalSpareInstancesRequired: %s", currentSpareInstanceCount, additionalSpareInstancesRequired);
-                if (additionalSpareInstancesRequired > 0) {
-                    toAdd = toAdd + additionalSpareInstancesRequired;
-                }
-            }
-            currentToAdd = toAdd;
 
-            // for computers currently busy doing work, wait until next update cycle to terminate corresponding instances (issue#363).
-            currentInstanceIdsToTerminate = filterOutBusyNodes();
+        trace.phase("computeSpare");
+
+        int additionalSpareInstancesRequired = 0;
+        if(minSpareSize > 0) {
+            // Check spare instances by considering FleetStateStats#getNumDesired so we account for newer instances which are in progress
+            final int currentSpareInstanceCount = getCurrentSpareInstanceCount(currentState, currentState.getNumDesired());
+            additionalSpareInstancesRequired = minSpareSize - currentSpareInstanceCount;
+            fine("currentSpareInstanceCount: %s additionalSpareInstancesRequired: %s", currentSpareInstanceCount, additionalSpareInstancesRequired);
         }
+        final int spareToAdd = Math.max(0, additionalSpareInstancesRequired);
+        final ProvisioningState snapshot = state.updateAndGet(current -> current.withToAdd(current.toAdd + spareToAdd));
+        final int currentToAdd = snapshot.toAdd;
 
-        currentState = updateByState(currentToAdd, currentInstanceIdsToTerminate, currentState);
+        // for computers currently busy doing work, wait until next update cycle to terminate corresponding instances (issue#363).
+        trace.phase("filterOutBusyNodes");
+        final Map<String, EC2AgentTerminationReason> currentInstanceIdsToTerminate = filterOutBusyNodes();
 
-        // lock and update state of plugin, so terminate or provision could work with new state of world
-        synchronized (this) {
-            instanceIdsToTerminate.keySet().removeAll(currentInstanceIdsToTerminate.keySet());
-            // toAdd only grows outside of this method, so we can subtract
-            toAdd = toAdd - currentToAdd;
-            fine("setting stats");
-            stats = currentState;
+        final int polledNumDesired = currentState.getNumDesired();
+        currentState = updateByState(currentToAdd, currentInstanceIdsToTerminate, currentState, trace);
 
-            removePlannedNodeScheduledFutures(currentToAdd);
+        trace.phase("publishState");
 
-            // since data could be changed between two sync blocks we need to recalculate target capacity
+        final FleetStateCache fleetStateCache = Registry.getFleetStateCache();
+        if (fleetStateCache != null && (currentToAdd > 0 || !currentInstanceIdsToTerminate.isEmpty()
+                || currentState.getNumDesired() != polledNumDesired)) {
+            // fleet was modified, observe real state on next cycle
+            fleetStateCache.invalidate(getFleetStateKey());
+        }
+
+        // publish new state of world, so terminate or provision could work with it
+        instanceIdsToTerminate.keySet().removeAll(currentInstanceIdsToTerminate.keySet());
+        final FleetStateStats updatedStats = currentState;
+        final List<NodeProvisioner.PlannedNode> plannedNodesToCancel = new ArrayList<>();
+        state.updateAndGet(current -> {
+            plannedNodesToCancel.clear();
+            // toAdd only grows outside of this method, so we can subtract
+            final int updatedToAdd = current.toAdd - currentToAdd;
+            // since data could be changed after snapshot we need to recalculate target capacity
             final int updatedTargetCapacity = Math.max(0,
-                    stats.getNumDesired() - instanceIdsToTerminate.size() + toAdd);
+                    updatedStats.getNumDesired() - instanceIdsToTerminate.size() + updatedToAdd);
             // limit planned pool according to real target capacity
-            while (plannedNodesCache.size() > updatedTargetCapacity) {
-                info("Planned number of nodes '%s' is greater than the targetCapacity '%s'. Canceling a node", plannedNodesCache.size(), updatedTargetCapacity);
-                final Iterator<NodeProvisioner.PlannedNode> iterator = plannedNodesCache.iterator();
-                final NodeProvisioner.PlannedNode plannedNodeToCancel = iterator.next();
-                iterator.remove();
-                // cancel to let jenkins know that the node is not valid anymore
-                plannedNodeToCancel.future.cancel(true);
+            final Iterator<NodeProvisioner.PlannedNode> iterator = current.plannedNodes.iterator();
+            for (int i = current.plannedNodes.size(); i > updatedTargetCapacity; i--) {
+                plannedNodesToCancel.add(iterator.next());
             }
-            return stats;
+            return current.withUpdate(updatedStats, updatedToAdd, plannedNodesToCancel);
+        });
+        fine("setting stats");
+
+        // capacity for planned nodes of snapshot is requested from fleet, they don't need timeout anymore
+        cancelPlannedNodeTimeouts(snapshot.plannedNodes);
+        cancelPlannedNodeTimeouts(plannedNodesToCancel);
+
+        if (!plannedNodesToCancel.isEmpty()) {
+            info("Planned number of nodes is greater than the targetCapacity. Canceling '%s' node(s)", plannedNodesToCancel.size());
+        }
+        for (final NodeProvisioner.PlannedNode plannedNodeToCancel : plannedNodesToCancel) {
+            // cancel to let jenkins know that the node is not valid anymore
+            plannedNodeToCancel.future.cancel(true);
+        }
+        return updatedStats;
+    }
+
+    /**
+     * Get current fleet state, from {@link FleetStateCache} if incremental mode enabled,
+     * otherwise by full poll.
+     *
+     * @return fleet state
+     */
+    private FleetStateStats getFleetState() {
+        final FleetStateCache fleetStateCache = Registry.getFleetStateCache();
+        if (fleetStateCache == null) {
+            return EC2Fleets.get(fleet).getState(getAwsCredentialsId(), region, endpoint, getFleet());
         }
+        return fleetStateCache.getState(getFleetStateKey(),
+                () -> EC2Fleets.get(fleet).getState(getAwsCredentialsId(), region, endpoint, getFleet()));
+    }
+
+    private FleetStateCache.Key getFleetStateKey() {
+        return new FleetStateCache.Key(getAwsCredentialsId(), region, endpoint, fleet);
     }
 
     private Map<String, EC2AgentTerminationReason> filterOutBusyNodes() {
@@ -557,25 +743,9 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
         return filteredInstanceIdsToTerminate;
     }
 
-    public boolean removePlannedNodeScheduledFutures(final int numToRemove) {
-        if (numToRemove < 1) {
-            return false;
-        }
-        Iterator<ScheduledFuture<?>> iterator = plannedNodeScheduledFutures.iterator();
-        for (int i = 0; i < numToRemove; i++) {
-            if(!iterator.hasNext()){
-                fine("Expected a scheduled future to exist but no more are present");
-                return false;
-            }
-            ScheduledFuture<?> nextFuture = iterator.next();
-            nextFuture.cancel(true);
-            iterator.remove();
-        }
-        return true;
-    }
-
     private FleetStateStats updateByState(
-            final int currentToAdd, final Map<String, EC2AgentTerminationReason> currentInstanceIdsToTerminate, final FleetStateStats currentState) {
+            final int currentToAdd, final Map<String, EC2AgentTerminationReason> currentInstanceIdsToTerminate,
+            final FleetStateStats currentState, final SyncTrace trace) {
         final Jenkins jenkins = Jenkins.get();
         final AmazonEC2 ec2 = Registry.getEc2Api().connect(getAwsCredentialsId(), region, endpoint);
 
@@ -587,6 +757,7 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
         // For example, if we remove an instance and add an instance the net change is 0, but we still make the API call.
         // This lets us update the fleet settings with NoTermination policy, which lets us terminate instances on our own
         if (currentToAdd > 0 || currentInstanceIdsToTerminate.size() > 0 || targetCapacity != currentState.getNumDesired()) {
+            trace.phase("modify");
             EC2Fleets.get(fleet).modify(
                     getAwsCredentialsId(), region, endpoint, fleet, targetCapacity, minSize, maxSize);
             info("Set target capacity to '%s'", targetCapacity);
@@ -595,54 +766,67 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
         final FleetStateStats updatedState = new FleetStateStats(currentState, targetCapacity);
 
         if (currentInstanceIdsToTerminate.size() > 0) {
-            // internally removeNode lock on queue to correctly update node list
-            // we do big block for all removal to avoid delay on lock waiting
-            // for each node
-            Queue.withLock(new Runnable() {
-                @Override
-                public void run() {
-                    info("Removing Jenkins nodes before terminating corresponding EC2 instances");
-                    for (final String instanceId : currentInstanceIdsToTerminate.keySet()) {
-                        final Node node = jenkins.getNode(instanceId);
-                        if (node != null) {
-                            try {
-                                jenkins.removeNode(node);
-                            } catch (IOException e) {
-                                warning("Failed to remove node '%s' from Jenkins before termination.", instanceId);
-                            }
-                        }
-                    }
-                }
-            });
+            // remove all nodes under one queue lock, see JenkinsUtils#updateNodes
+            info("Removing Jenkins nodes before terminating corresponding EC2 instances");
+            trace.phase("removeNodes");
+            try {
+                trace.queueLock(JenkinsUtils.updateNodes(Collections.<Node>emptyList(), currentInstanceIdsToTerminate.keySet()));
+            } catch (IOException e) {
+                warning("Failed to remove nodes '%s' from Jenkins before termination.", currentInstanceIdsToTerminate.keySet());
+            }
+            trace.phase("terminate");
+            trace.count("terminated", currentInstanceIdsToTerminate.size());
+            // termination is done in background, instances are excluded from fleet view till it's completed
+            final Set<String> terminating = new HashSet<>(currentInstanceIdsToTerminate.keySet());
+            instanceIdsTerminating.addAll(terminating);
+            final CompletableFuture<Void> termination;
             if(EC2Fleets.get(fleet).isAutoScalingGroup()){
-                fine("Terminating instances in AutoScalingGroup: %s", currentInstanceIdsToTerminate.keySet());
-                ((AutoScalingGroupFleet) EC2Fleets.get(fleet)).terminateInstances(awsCredentialsId, region, endpoint, currentInstanceIdsToTerminate.keySet());
+                fine("Terminating instances in AutoScalingGroup: %s", terminating);
+                termination = TerminationPipeline.get().terminateInAutoScalingGroup(
+                        (AutoScalingGroupFleet) EC2Fleets.get(fleet), awsCredentialsId, region, endpoint, terminating);
             }
             else {
-                fine("Terminating instances: %s", currentInstanceIdsToTerminate.keySet());
-                Registry.getEc2Api().terminateInstances(ec2, currentInstanceIdsToTerminate.keySet());
+                fine("Terminating instances: %s", terminating);
+                termination = TerminationPipeline.get().terminate(ec2, terminating);
             }
-            info("Terminated instances: %s", currentInstanceIdsToTerminate);
+            termination.whenComplete((ignored, error) -> {
+                if (error == null) {
+                    info("Terminated instances: %s", terminating);
+                } else {
+                    // instances are still running but have no nodes anymore, queue them again before they
+                    // leave terminating set, otherwise next update registers them as new nodes
+                    final Set<String> failed = error instanceof TerminationPipeline.TerminationFailedException
+                            ? ((TerminationPipeline.TerminationFailedException) error).getInstanceIds() : terminating;
+                    for (final String instanceId : failed) {
+                        final EC2AgentTerminationReason reason = currentInstanceIdsToTerminate.get(instanceId);
+                        if (reason != null) instanceIdsToTerminate.putIfAbsent(instanceId, reason);
+                    }
+                    warning(error, "Failed to terminate instances: %s, retry on next update", failed);
+                }
+                instanceIdsTerminating.removeAll(terminating);
+            });
+            info("Scheduled termination of instances: %s", currentInstanceIdsToTerminate);
         }
 
         fine("Fleet instances: %s", updatedState.getInstances());
 
         // Set up the lists of Jenkins nodes and fleet instances
+        trace.phase("describe");
         final Set<String> fleetInstances = new HashSet<>(updatedState.getInstances());
         final Map<String, Instance> described = Registry.getEc2Api().describeInstances(ec2, fleetInstances);
+        trace.count("described", described.size());
 
-        // Sometimes described includes just deleted instances
+        // Sometimes described includes just deleted or still terminating instances
         described.keySet().removeAll(currentInstanceIdsToTerminate.keySet());
+        described.keySet().removeAll(instanceIdsTerminating);
         fine("Described instances: %s", described.keySet());
 
         // Fleet takes a while to display terminated instances. Update stats with current view of active instance count
         updatedState.setNumActive(described.size());
 
         final Set<String> jenkinsInstances = new HashSet<>();
-        for (final Node node : jenkins.getNodes()) {
-            if (node instanceof EC2FleetNode && ((EC2FleetCloud)((EC2FleetNode) node).getCloud()).getFleet().equals(fleet)) {
-                jenkinsInstances.add(node.getNodeName());
-            }
+        for (final EC2FleetNode node : EC2FleetNodeIndex.getFleetNodes(fleet)) {
+            jenkinsInstances.add(node.getNodeName());
         }
         fine("Jenkins nodes: %s", jenkinsInstances);
 
@@ -667,16 +851,17 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
             fine("New instance(s) not yet registered as nodes in Jenkins: %s ", newFleetInstances.keySet());
         }
         // update caches
-        final List<String> jenkinsNodesToRemove = new ArrayList<>();
+        final Set<String> jenkinsNodesToRemove = new LinkedHashSet<>();
         jenkinsNodesToRemove.addAll(terminatedFleetInstances);
         jenkinsNodesToRemove.addAll(jenkinsNodesWithoutInstance);
-        // Remove dying fleet instances from Jenkins
-        for (final String instance : jenkinsNodesToRemove) {
-            removeNode(instance);
-        }
+        // only instances which have node
+        jenkinsNodesToRemove.retainAll(jenkinsInstances);
 
         // Update the label for all Jenkins nodes in the fleet instance cache
+        trace.phase("updateLabels");
         for (final String instanceId : jenkinsInstances) {
+            if (jenkinsNodesToRemove.contains(instanceId)) continue;
+
             final Node node = jenkins.getNode(instanceId);
             if (node == null) {
                 info("Skipping label update, the Jenkins node for instance '%s' was null", instanceId);
@@ -694,30 +879,62 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
         }
 
         // If we have new instances - create nodes for them!
+        final List<EC2FleetNode> newNodes = new ArrayList<>();
         if (newFleetInstances.size() > 0) {
             // We tag new instances to help users to identify instances launched from plugin managed fleets.
-            // If it fails we are fine to skip this call
+            // Tagging is queued and done in background, if it fails we are fine to skip it
+            trace.phase("tag");
             try {
-                Registry.getEc2Api().tagInstances(ec2, newFleetInstances.keySet(),
-                        EC2_INSTANCE_CLOUD_NAME_TAG, name);
+                InstanceTagger.get().tag(ec2, newFleetInstances.keySet(), EC2_INSTANCE_CLOUD_NAME_TAG, name);
             } catch (final Exception e) {
                 warning(e, "Failed to tag new instances: %s", newFleetInstances.keySet());
             }
 
-            // addNewAgent will call addNode which calls queue lock.
-            // We speed this up by getting one lock for all nodes to add
-            Queue.withLock(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        for (final Instance instance : newFleetInstances.values()) {
-                            addNewAgent(ec2, instance, updatedState);
-                        }
-                    } catch (final Exception ex) {
-                        warning(ex, "Unable to set label on node");
+            trace.phase("createNodes");
+            final Set<String> newInstanceTypes = new HashSet<>();
+            for (final Instance instance : newFleetInstances.values()) newInstanceTypes.add(instance.getInstanceType());
+            try {
+                executorScaler.prefetch(newInstanceTypes, updatedState, ec2);
+            } catch (final Exception e) {
+                // not critical, scaler describes what it needs for each node
+                warning(e, "Failed to prefetch instance types %s", newInstanceTypes);
+            }
+            final List<String> notRegistered = new ArrayList<>();
+            for (final Instance instance : newFleetInstances.values()) {
+                try {
+                    final EC2FleetNode node = createAgent(ec2, instance, updatedState);
+                    if (node != null) {
+                        newNodes.add(node);
+                    } else {
+                        notRegistered.add(instance.getInstanceId());
                     }
+                } catch (final Exception ex) {
+                    warning(ex, "Unable to create node for instance '%s'", instance.getInstanceId());
                 }
-            });
+            }
+            // instance could be not running or without address yet, describe it again next cycle
+            if (!notRegistered.isEmpty()) Registry.getEc2Api().invalidateInstances(notRegistered);
+        }
+
+        // Remove dying fleet instances from Jenkins and add new ones under one queue lock,
+        // so queue lock is taken once per cycle instead of once per node
+        if (!jenkinsNodesToRemove.isEmpty() || !newNodes.isEmpty()) {
+            for (final String instanceId : jenkinsNodesToRemove) {
+                info("Fleet '%s' no longer has the instance '%s'. Removing instance from Jenkins", getLabelString(), instanceId);
+            }
+            trace.phase("addAndRemoveNodes");
+            trace.count("added", newNodes.size());
+            trace.count("removed", jenkinsNodesToRemove.size());
+            try {
+                trace.queueLock(JenkinsUtils.updateNodes(newNodes, jenkinsNodesToRemove));
+            } catch (final Exception ex) {
+                throw new IllegalStateException(String.format("Error updating Jenkins nodes, removing instances '%s' and adding %s",
+                        jenkinsNodesToRemove, newNodes.size()), ex);
+            }
+        }
+        if (!newNodes.isEmpty()) trace.phase("startOnlineChecks");
+        for (final EC2FleetNode node : newNodes) {
+            onAgentAdded(node);
         }
 
         return updatedState;
@@ -741,34 +958,47 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
      * @param reason reason for termination
      * @return <code>true</code> if node scheduled for termination, otherwise <code>false</code>
      */
-    public synchronized boolean scheduleToTerminate(final String instanceId, final boolean ignoreMinConstraints,
-                                                    final EC2AgentTerminationReason reason) {
+    public boolean scheduleToTerminate(final String instanceId, final boolean ignoreMinConstraints,
+                                       final EC2AgentTerminationReason reason) {
+        final FleetStateStats stats = getStats();
         if (stats == null) {
             info("First update not done, skipping termination scheduling for '%s'", instanceId);
             return false;
         }
         // We can't remove instances beyond minSize or minSpareSize unless ignoreMinConstraints true
-        if(!ignoreMinConstraints) {
-            if (minSize > 0 && stats.getNumActive() - instanceIdsToTerminate.size() <= minSize) {
-                info("Not scheduling instance '%s' for termination because we need a minimum of %s instance(s) running", instanceId, minSize);
-                fine("cloud: %s, instanceIdsToTerminate: %s", this, instanceIdsToTerminate);
-                return false;
-            }
-            if (minSpareSize > 0) {
-                // Check spare instances by considering FleetStateStats#getNumActive as we want to consider only running instances
-                final int currentSpareInstanceCount = getCurrentSpareInstanceCount(stats, stats.getNumActive());
-                if (currentSpareInstanceCount - instanceIdsToTerminate.size() <= minSpareSize) {
-                    info("Not scheduling instance '%s' for termination because we need a minimum of %s spare instance(s) running", instanceId, minSpareSize);
-                    return false;
-                }
-            }
+        // Check spare instances by considering FleetStateStats#getNumActive as we want to consider only running instances
+        final int currentSpareInstanceCount = !ignoreMinConstraints && minSpareSize > 0
+                ? getCurrentSpareInstanceCount(stats, stats.getNumActive()) : 0;
+        if (!ignoreMinConstraints && breachesMinConstraints(instanceId, stats, currentSpareInstanceCount, instanceIdsToTerminate.size())) {
+            return false;
         }
         info("Scheduling instance '%s' for termination on cloud %s because of reason: %s", instanceId, this, reason);
-        instanceIdsToTerminate.put(instanceId, reason);
+        final EC2AgentTerminationReason previous = instanceIdsToTerminate.put(instanceId, reason);
+        // Optimistic scheduling, concurrent calls could pass check above together, so validate again
+        // with own instance counted and step back if constraints breached. Retention check will retry later.
+        if (!ignoreMinConstraints && previous == null
+                && breachesMinConstraints(instanceId, stats, currentSpareInstanceCount, instanceIdsToTerminate.size() - 1)) {
+            instanceIdsToTerminate.remove(instanceId, reason);
+            return false;
+        }
         fine("InstanceIdsToTerminate: %s", instanceIdsToTerminate);
         return true;
     }
 
+    private boolean breachesMinConstraints(final String instanceId, final FleetStateStats stats,
+                                           final int currentSpareInstanceCount, final int scheduledToTerminate) {
+        if (minSize > 0 && stats.getNumActive() - scheduledToTerminate <= minSize) {
+            info("Not scheduling instance '%s' for termination because we need a minimum of %s instance(s) running", instanceId, minSize);
+            fine("cloud: %s, instanceIdsToTerminate: %s", this, instanceIdsToTerminate);
+            return true;
+        }
+        if (minSpareSize > 0 && currentSpareInstanceCount - scheduledToTerminate <= minSpareSize) {
+            info("Not scheduling instance '%s' for termination because we need a minimum of %s spare instance(s) running", instanceId, minSpareSize);
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public boolean canProvision(final Cloud.CloudState cloudState) {
         final Label label = cloudState.getLabel();
@@ -780,35 +1010,41 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
             fine("RestrictUsage is enabled while label is null, returning false");
             return false;
         }
-        if (label != null && !Label.parse(this.labelString).containsAll(label.listAtoms())) {
+        if (label != null && !getLabelAtoms().containsAll(label.listAtoms())) {
             finer("Label '%s' not found within Fleet's labels '%s', returning false", label, this.labelString);
             return false;
         }
         return true;
     }
 
+    /**
+     * @return atoms of {@link #labelString}, parsed once as label string is never changed for cloud object
+     */
+    private Set<LabelAtom> getLabelAtoms() {
+        Set<LabelAtom> atoms = labelAtoms;
+        if (atoms == null) {
+            // parse is cheap to repeat in rare race, so no lock
+            atoms = Collections.unmodifiableSet(Label.parse(labelString));
+            labelAtoms = atoms;
+        }
+        return atoms;
+    }
+
     private Object readResolve() {
         init();
         return this;
     }
 
     private void init() {
-        plannedNodesCache = new HashSet<>();
-        instanceIdsToTerminate = new HashMap<>();
-        plannedNodeScheduledFutures = new ArrayList<>();
-    }
-
-    private void removeNode(final String instanceId) {
-        final Jenkins jenkins = Jenkins.get();
-        // If this node is dying, remove it from Jenkins
-        final Node n = jenkins.getNode(instanceId);
-        if (n != null) {
-            try {
-                info("Fleet '%s' no longer has the instance '%s'. Removing instance from Jenkins", getLabelString(), instanceId);
-                jenkins.removeNode(n);
-            } catch (final Exception ex) {
-                throw new IllegalStateException(String.format("Error removing instance '%s' from Jenkins", instanceId), ex);
-            }
+        state = new AtomicReference<>(ProvisioningState.EMPTY);
+        instanceIdsToTerminate = new ConcurrentHashMap<>();
+        instanceIdsTerminating = ConcurrentHashMap.newKeySet();
+        plannedNodeTimeouts = new ConcurrentHashMap<>();
+        plannedNodeRequestTimes = new ConcurrentHashMap<>();
+        syncTraces = new SyncTrace.Buffer(name);
+        fulfillmentLatencyMillis = new AtomicLong(-1);
+        if (plannedNodeCounter == null) {
+            plannedNodeCounter = new AtomicInteger(1);
         }
     }
 
@@ -818,12 +1054,13 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
      * @param ec2      ec2 client
      * @param instance instance
      */
-    private void addNewAgent(final AmazonEC2 ec2, final Instance instance, FleetStateStats stats) throws Exception {
+    @Nullable
+    private EC2FleetNode createAgent(final AmazonEC2 ec2, final Instance instance, FleetStateStats stats) throws Exception {
         final String instanceId = instance.getInstanceId();
 
         // instance state check enabled and not running, skip adding
         if (addNodeOnlyIfRunning && InstanceStateName.Running != InstanceStateName.fromValue(instance.getState().getName())) {
-            return;
+            return null;
         }
 
         final String address = privateIpUsed ? instance.getPrivateIpAddress() : instance.getPublicIpAddress();
@@ -833,7 +1070,7 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
                 info("Instance '%s' public IP address not assigned. Either it could take some time or" +
                         " the Spot Request is not configured to assign public IPs", instance.getInstanceId());
             }
-            return; // wait more time, probably IP address not yet assigned
+            return null; // wait more time, probably IP address not yet assigned
         }
 
         // Generate a random FS root if one isn't specified
@@ -855,20 +1092,24 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
 
         // Initialize our retention strategy
         node.setRetentionStrategy(new EC2RetentionStrategy());
+        return node;
+    }
 
-        final Jenkins jenkins = Jenkins.get();
-        // jenkins automatically remove old node with same name if any
-        jenkins.addNode(node);
-
-        // todo use plannedNodesCache in thread-safe way
+    /**
+     * Resolve planned node by node added to Jenkins and wait for node to be online.
+     *
+     * @param node node added to Jenkins
+     */
+    private void onAgentAdded(final EC2FleetNode node) {
         final CompletableFuture<Node> future;
-        if (plannedNodesCache.isEmpty()) {
+        final NodeProvisioner.PlannedNode plannedNode = pollPlannedNode();
+        if (plannedNode == null) {
             // handle the case where we have new nodes the plugin didn't request
             future = new CompletableFuture<>();
         } else {
             // handle the standard case where this node came from one of our scale up events
-            final NodeProvisioner.PlannedNode plannedNode = plannedNodesCache.iterator().next();
-            plannedNodesCache.remove(plannedNode);
+            recordFulfillment(plannedNode);
+            cancelPlannedNodeTimeouts(Collections.singleton(plannedNode));
             future = ((CompletableFuture<Node>) plannedNode.future);
         }
 
@@ -879,22 +1120,30 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
                 TimeUnit.SECONDS.toMillis(getInitOnlineCheckIntervalSec()));
     }
 
+    /**
+     * @return oldest planned node removed from state, or <code>null</code> if no planned nodes
+     */
+    @Nullable
+    private NodeProvisioner.PlannedNode pollPlannedNode() {
+        while (true) {
+            final ProvisioningState current = state.get();
+            if (current.plannedNodes.isEmpty()) return null;
+
+            final NodeProvisioner.PlannedNode plannedNode = current.plannedNodes.iterator().next();
+            if (state.compareAndSet(current, current.withoutPlannedNodes(Collections.singleton(plannedNode)))) {
+                return plannedNode;
+            }
+        }
+    }
+
     private int getCurrentSpareInstanceCount(final FleetStateStats currentState, final int countOfInstances) {
         final int currentSpareInstanceCount = 0;
         if(minSpareSize > 0) {
-            final Jenkins jenkins = Jenkins.get();
             int currentBusyInstances = 0;
-            for (final Computer computer : jenkins.getComputers()) {
+            // only nodes of the given fleet
+            for (final EC2FleetNode node : EC2FleetNodeIndex.getFleetNodes(currentState.getFleetId())) {
+                final Computer computer = node.toComputer();
                 if (computer instanceof EC2FleetNodeComputer && !computer.isIdle()) {
-                    final Node compNode = computer.getNode();
-                    if (compNode == null) {
-                        continue;
-                    }
-
-                    // Do not count computer if it is not a part of the given fleet
-                    if (!Objects.equals(((EC2FleetCloud)((EC2FleetNodeComputer) computer).getCloud()).getFleet(), currentState.getFleetId())) {
-                        continue;
-                    }
                     currentBusyInstances++;
                 }
             }
@@ -932,6 +1181,56 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
         return (DescriptorImpl) super.getDescriptor();
     }
 
+    /**
+     * Immutable snapshot of provisioning state: last known fleet state, capacity requested since last
+     * update and planned nodes waiting for instances. Each change creates new snapshot.
+     */
+    private static final class ProvisioningState {
+
+        private static final ProvisioningState EMPTY = new ProvisioningState(
+                null, 0, Collections.<NodeProvisioner.PlannedNode>emptySet());
+
+        @Nullable
+        private final FleetStateStats stats;
+        private final int toAdd;
+        // insertion ordered, oldest planned node is used first
+        private final Set<NodeProvisioner.PlannedNode> plannedNodes;
+
+        private ProvisioningState(final FleetStateStats stats, final int toAdd,
+                                  final Set<NodeProvisioner.PlannedNode> plannedNodes) {
+            this.stats = stats;
+            this.toAdd = toAdd;
+            this.plannedNodes = plannedNodes;
+        }
+
+        private ProvisioningState withStats(final FleetStateStats stats) {
+            return new ProvisioningState(stats, toAdd, plannedNodes);
+        }
+
+        private ProvisioningState withToAdd(final int toAdd) {
+            return new ProvisioningState(stats, toAdd, plannedNodes);
+        }
+
+        private ProvisioningState withProvisioned(final Collection<NodeProvisioner.PlannedNode> provisioned) {
+            final Set<NodeProvisioner.PlannedNode> updated = new LinkedHashSet<>(plannedNodes);
+            updated.addAll(provisioned);
+            return new ProvisioningState(stats, toAdd + provisioned.size(), Collections.unmodifiableSet(updated));
+        }
+
+        private ProvisioningState withoutPlannedNodes(final Collection<NodeProvisioner.PlannedNode> removed) {
+            final Set<NodeProvisioner.PlannedNode> updated = new LinkedHashSet<>(plannedNodes);
+            updated.removeAll(removed);
+            return new ProvisioningState(stats, toAdd, Collections.unmodifiableSet(updated));
+        }
+
+        private ProvisioningState withUpdate(final FleetStateStats stats, final int toAdd,
+                                             final Collection<NodeProvisioner.PlannedNode> cancelled) {
+            return new ProvisioningState(stats, toAdd, cancelled.isEmpty()
+                    ? plannedNodes : withoutPlannedNodes(cancelled).plannedNodes);
+        }
+
+    }
+
     @Extension
     @SuppressWarnings("unused") @Symbol("eC2Fleet")
     public static class DescriptorImpl extends Descriptor<Cloud> {
@@ -1062,6 +1361,16 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
 
         public abstract int scale(String instanceType, FleetStateStats stats, AmazonEC2 ec2);
 
+        /**
+         * Called once per update cycle before {@link #scale(String, FleetStateStats, AmazonEC2)} for each
+         * new node, so scaler could load everything it needs with one call instead of call per node.
+         *
+         * @param instanceTypes instance types of new nodes
+         * @param stats         fleet state
+         * @param ec2           client
+         */
+        public void prefetch(Collection<String> instanceTypes, FleetStateStats stats, AmazonEC2 ec2) {}
+
         public ExecutorScaler withNumExecutors(int numExecutors) {
             setNumExecutors(numExecutors);
             return this;
@@ -1147,7 +1456,7 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
 
             int vCPUNumExecutors = Integer.MAX_VALUE;
             int memoryNumExecutors = Integer.MAX_VALUE;
-            InstanceTypeInfo instanceTypeInfo = getInstanceTypeInfo(ec2, instanceType);
+            InstanceTypeInfo instanceTypeInfo = InstanceTypeCatalog.get(ec2, instanceType);
             if(this.vCpuPerExecutor != 0) {
                 int instanceVCPUs = instanceTypeInfo.getVCpuInfo().getDefaultVCpus();
                 vCPUNumExecutors = Math.max(instanceVCPUs/this.vCpuPerExecutor, 1);
@@ -1160,16 +1469,22 @@ public class EC2FleetCloud extends AbstractEC2FleetCloud {
             return Math.min(vCPUNumExecutors, memoryNumExecutors);
         }
 
+        @Override
+        public void prefetch(final Collection<String> instanceTypes, final FleetStateStats stats, final AmazonEC2 ec2) {
+            if(this.vCpuPerExecutor == 0 && this.memoryGiBPerExecutor == 0) {
+                return;
+            }
+
+            // describe weighted types of fleet too, so they are ready for next scale up
+            final Set<String> types = new HashSet<>(instanceTypes);
+            types.addAll(stats.getInstanceTypeWeights().keySet());
+            InstanceTypeCatalog.prefetch(ec2, types);
+        }
+
         @Extension
         public static class DescriptorImpl extends ExecutorScaleDescriptor {
             @Override
             public String getDisplayName() { return "Scale by node hardware";}
         }
-
-        private InstanceTypeInfo getInstanceTypeInfo(final AmazonEC2 ec2, final String instanceType) {
-            DescribeInstanceTypesRequest request = new DescribeInstanceTypesRequest().withInstanceTypes(instanceType);
-            DescribeInstanceTypesResult result = ec2.describeInstanceTypes(request);
-            return result.getInstanceTypes().get(0);
-        }
     }
 }
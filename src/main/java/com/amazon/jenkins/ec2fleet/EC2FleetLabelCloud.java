@@ -20,8 +20,8 @@ import hudson.model.Failure;
 import hudson.model.Item;
 import hudson.model.Label;
 import hudson.model.Node;
-import hudson.model.Queue;
 import hudson.model.TaskListener;
+import hudson.model.labels.LabelAtom;
 import hudson.slaves.Cloud;
 import hudson.slaves.ComputerConnector;
 import hudson.slaves.NodeProperty;
@@ -37,6 +37,7 @@ import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -44,6 +45,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -106,6 +108,16 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
 
     private transient Map<String, State> states;
 
+    /**
+     * Parsed label of each state, see {@link #getLabelAtoms(String)}
+     */
+    private transient Map<String, Set<LabelAtom>> labelAtoms;
+
+    /**
+     * Traces of last update cycles, see {@link SyncTrace}
+     */
+    private transient SyncTrace.Buffer syncTraces;
+
     @DataBoundConstructor
     public EC2FleetLabelCloud(final String name,
                               final String awsCredentialsId,
@@ -272,10 +284,11 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
         info("excessWorkload %s", excessWorkload);
 
         final Label label = cloudState.getLabel();
+        final Set<LabelAtom> atoms = label.listAtoms();
         List<NodeProvisioner.PlannedNode> r = new ArrayList<>();
 
         for (Map.Entry<String, State> state : states.entrySet()) {
-            if (Label.parse(state.getKey()).containsAll(label.listAtoms())) {
+            if (getLabelAtoms(state.getKey()).containsAll(atoms)) {
                 LOGGER.info("provision " + label + " excessWorkload " + excessWorkload);
 
                 final FleetStateStats stats = state.getValue().stats;
@@ -286,16 +299,16 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
                     continue;
                 }
 
-                final EC2FleetLabelParameters parameters = new EC2FleetLabelParameters(state.getKey());
+                final EC2FleetLabelParameters parameters = EC2FleetLabelParameters.parse(state.getKey());
 
-                final int maxSize = parameters.getIntOrDefault("maxSize", this.maxSize);
+                final int maxSize = parameters.getMaxSizeOrDefault(this.maxSize);
                 if (cap >= maxSize) {
                     info("max %s reached, no more provision", maxSize);
                     continue;
                 }
 
                 // if the planned node has 0 executors configured force it to 1 so we end up doing an unweighted check
-                final int numExecutors1 = Math.max(parameters.getIntOrDefault("numExecutors", numExecutors), 1);
+                final int numExecutors1 = Math.max(parameters.getNumExecutorsOrDefault(numExecutors), 1);
 
                 // Calculate the ceiling, without having to work with doubles from Math.ceil
                 // https://stackoverflow.com/a/21830188/877024
@@ -350,6 +363,25 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
     }
 
     public void update() {
+        final SyncTrace trace = new SyncTrace();
+        try {
+            update(trace);
+            trace.finish(null);
+        } catch (RuntimeException | Error e) {
+            trace.finish(e);
+            throw e;
+        } finally {
+            syncTraces.add(trace);
+            fine("finish cloud update %s", trace);
+        }
+    }
+
+    @Override
+    public List<SyncTrace> getSyncTraces() {
+        return syncTraces.getTraces();
+    }
+
+    private void update(final SyncTrace trace) {
         info("start");
 
         final Map<String, State> currentStates;
@@ -360,20 +392,27 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
             }
         }
 
+        trace.phase("describeFleets");
         final Set<String> fleetIds = new HashSet<>();
         for (State state : states.values()) fleetIds.add(state.fleetId);
         final Map<String, FleetStateStats> currentStats = new EC2SpotFleet().getStateBatch(
                 getAwsCredentialsId(), region, endpoint, fleetIds);
-        for (State state : currentStates.values()) {
-            // todo what if we don't find this fleet in map
+        for (final Iterator<State> iterator = currentStates.values().iterator(); iterator.hasNext(); ) {
+            final State state = iterator.next();
             state.stats = currentStats.get(state.fleetId);
+            if (state.stats == null) {
+                // fleet was deleted or not created yet, keep last known state until it's described again
+                warning("Fleet %s can't be described, skip", state.fleetId);
+                iterator.remove();
+                continue;
+            }
 
             state.targetCapacity = Math.max(0,
                     state.stats.getNumDesired() - state.instanceIdsToTerminate.size() + state.toAdd);
             state.stats = new FleetStateStats(state.stats, state.targetCapacity);
         }
 
-        updateByState(currentStates);
+        updateByState(currentStates, trace);
 
         synchronized (this) {
             for (Map.Entry<String, State> entry : currentStates.entrySet()) {
@@ -397,11 +436,10 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
         }
     }
 
-    private void updateByState(final Map<String, State> states) {
-        final Jenkins jenkins = Jenkins.get();
-
+    private void updateByState(final Map<String, State> states, final SyncTrace trace) {
         final AmazonEC2 ec2 = Registry.getEc2Api().connect(getAwsCredentialsId(), region, endpoint);
 
+        trace.phase("modifyFleets");
         for (State state : states.values()) {
             if (state.toAdd > 0 || state.instanceIdsToTerminate.size() > 0) {
                 // todo fix negative value
@@ -419,33 +457,29 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
         }
 
         if (instanceIdsToRemove.size() > 0) {
-            // internally removeNode lock on queue to correctly update node list
-            // we do big block for all removal to avoid delay on lock waiting
-            // for each node
-            Queue.withLock(new Runnable() {
-                @Override
-                public void run() {
-                    info("Removing Jenkins nodes before terminating corresponding EC2 instances");
-                    for (final String instanceId : instanceIdsToRemove.keySet()) {
-                        final Node node = jenkins.getNode(instanceId);
-                        if (node != null) {
-                            try {
-                                jenkins.removeNode(node);
-                            } catch (IOException e) {
-                                warning("unable to remove node %s from Jenkins, skip, just terminate EC2 instance", instanceId);
-                            }
-                        }
-                    }
-                }
-            });
+            // remove all nodes under one queue lock to avoid delay on queue lock waiting for each node
+            trace.phase("terminate");
+            info("Removing Jenkins nodes before terminating corresponding EC2 instances");
+            try {
+                trace.queueLock(JenkinsUtils.updateNodes(Collections.<Node>emptyList(), instanceIdsToRemove.keySet()));
+            } catch (IOException e) {
+                warning(e, "unable to remove nodes %s from Jenkins, skip, just terminate EC2 instances", instanceIdsToRemove.keySet());
+            }
             info("Delete terminating nodes from Jenkins %s", instanceIdsToRemove);
 
             Registry.getEc2Api().terminateInstances(ec2, instanceIdsToRemove.keySet());
+            trace.count("terminated", instanceIdsToRemove.size());
             info("Instances %s were terminated with result", instanceIdsToRemove);
         }
 
+        // nodes of all labels are prepared out of queue lock, then added and removed
+        // under one queue lock, so queue lock is held only to change node list
+        final Set<String> jenkinsNodesToRemove = new HashSet<>();
+        final Map<EC2FleetNode, State> newNodes = new LinkedHashMap<>();
+        final List<EC2FleetNode> cloudNodes = EC2FleetNodeIndex.getNodes(name);
         for (final Map.Entry<String, State> entry : states.entrySet()) {
             final State state = entry.getValue();
+            trace.phase("describeInstances");
             info("fleet instances %s", state.stats.getInstances());
 
             // Set up the lists of Jenkins nodes and fleet instances
@@ -457,13 +491,10 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
 
             // currentJenkinsNodes contains all registered Jenkins nodes related to this cloud
             final Set<String> jenkinsInstances = new HashSet<>();
-            for (final Node node : jenkins.getNodes()) {
-                if (node instanceof EC2FleetNode) {
-                    final EC2FleetNode node1 = (EC2FleetNode) node;
-                    // cloud and label are same
-                    if (node1.getCloud() == this && node1.getLabelString().equals(entry.getKey())) {
-                        jenkinsInstances.add(node.getNodeName());
-                    }
+            for (final EC2FleetNode node : cloudNodes) {
+                // label is same
+                if (node.getLabelString().equals(entry.getKey())) {
+                    jenkinsInstances.add(node.getNodeName());
                 }
             }
             info("jenkins nodes %s", jenkinsInstances);
@@ -484,15 +515,9 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
             for (final String instanceId : jenkinsInstances) newFleetInstances.remove(instanceId);
             info("new instances " + newFleetInstances.keySet());
 
-            // update caches
-            final List<String> jenkinsNodesToRemove = new ArrayList<>();
+            // Remove dying fleet instances from Jenkins
             jenkinsNodesToRemove.addAll(terminatedFleetInstances);
             jenkinsNodesToRemove.addAll(jenkinsNodesWithInstance);
-            // Remove dying fleet instances from Jenkins
-            for (final String instance : jenkinsNodesToRemove) {
-//                info("Fleet (" + getLabelString() + ") no longer has the instance " + instance + ", removing from Jenkins.");
-                JenkinsUtils.removeNode(instance);
-            }
 
             // Update the label for all Jenkins nodes in the fleet instance cache
 //            for (final String instanceId : jenkinsInstances) {
@@ -512,28 +537,40 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
             // If we have new instances - create nodes for them!
             if (newFleetInstances.size() > 0) {
                 // we tag new instances to help users to identify instances launched from plugin managed fleets
-                // if failed we are fine to skip this call
+                // tagging is queued and done in background, if failed we are fine to skip it
+                trace.phase("tag");
                 try {
-                    Registry.getEc2Api().tagInstances(ec2, newFleetInstances.keySet(),
-                            EC2_INSTANCE_CLOUD_NAME_TAG, name);
+                    InstanceTagger.get().tag(ec2, newFleetInstances.keySet(), EC2_INSTANCE_CLOUD_NAME_TAG, name);
                 } catch (final Exception e) {
                     warning(e, "failed to tag new instances %s, skip", newFleetInstances.keySet());
                 }
 
-                // addNewAgent will call addNode which call queue lock
-                // we speed up this by getting one lock for all nodes to all
-                Queue.withLock(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            for (final Instance instance : newFleetInstances.values()) {
-                                addNewAgent(ec2, instance, entry.getKey(), state);
-                            }
-                        } catch (final Exception ex) {
-                            warning(ex, "Unable to set label on node");
-                        }
+                trace.phase("createNodes");
+                for (final Instance instance : newFleetInstances.values()) {
+                    try {
+                        final EC2FleetNode node = createAgent(instance, entry.getKey(), state);
+                        if (node != null) newNodes.put(node, state);
+                    } catch (final Exception ex) {
+                        warning(ex, "Unable to create node for instance %s", instance.getInstanceId());
                     }
-                });
+                }
+            }
+        }
+
+        if (!jenkinsNodesToRemove.isEmpty() || !newNodes.isEmpty()) {
+            trace.phase("addAndRemoveNodes");
+            trace.count("added", newNodes.size());
+            trace.count("removed", jenkinsNodesToRemove.size());
+            try {
+                trace.queueLock(JenkinsUtils.updateNodes(newNodes.keySet(), jenkinsNodesToRemove));
+            } catch (final Exception ex) {
+                throw new IllegalStateException(String.format("Error updating Jenkins nodes, removing %s and adding %s",
+                        jenkinsNodesToRemove, newNodes.size()), ex);
+            }
+
+            trace.phase("onNodesAdded");
+            for (final Map.Entry<EC2FleetNode, State> entry : newNodes.entrySet()) {
+                onAgentAdded(entry.getKey(), entry.getValue());
             }
         }
     }
@@ -553,8 +590,8 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
         }
 
         // We can't remove instances beyond minSize unless ignoreMinConstraints is true
-        final EC2FleetLabelParameters parameters = new EC2FleetLabelParameters(node.getLabelString());
-        final int minSize = parameters.getIntOrDefault("minSize", this.minSize);
+        final EC2FleetLabelParameters parameters = EC2FleetLabelParameters.parse(node.getLabelString());
+        final int minSize = parameters.getMinSizeOrDefault(this.minSize);
         if (!ignoreMinConstraints && (minSize > 0 && state.stats.getNumDesired() - state.instanceIdsToTerminate.size() <= minSize)) {
             info("Not terminating %s because we need a minimum of %s instances running.", instanceId, minSize);
             return false;
@@ -568,14 +605,27 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
     @Override
     public synchronized boolean canProvision(final Cloud.CloudState cloudState) {
         final Label label = cloudState.getLabel();
+        final Set<LabelAtom> atoms = label == null ? null : label.listAtoms();
         for (String labelString : states.keySet()) {
-            final boolean r = label == null || Label.parse(labelString).containsAll(label.listAtoms());
+            final boolean r = atoms == null || getLabelAtoms(labelString).containsAll(atoms);
             fine("CanProvision called on fleet: \"" + labelString + "\" wanting: \"" + (label == null ? "(unspecified)" : label.getName()) + "\". Returning " + r + ".");
             if (r) return true;
         }
         return false;
     }
 
+    /**
+     * @return atoms of label state, parsed once per label, should be called under cloud lock
+     */
+    private Set<LabelAtom> getLabelAtoms(final String labelString) {
+        Set<LabelAtom> atoms = labelAtoms.get(labelString);
+        if (atoms == null) {
+            atoms = Collections.unmodifiableSet(Label.parse(labelString));
+            labelAtoms.put(labelString, atoms);
+        }
+        return atoms;
+    }
+
     private Object readResolve() {
         init();
         return this;
@@ -583,15 +633,23 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
 
     private void init() {
         states = new HashMap<>();
+        labelAtoms = new HashMap<>();
+        syncTraces = new SyncTrace.Buffer(name);
     }
 
-    private void addNewAgent(
-            final AmazonEC2 ec2, final Instance instance, final String labelString, final State state) throws Exception {
+    /**
+     * Create node for instance, doesn't touch Jenkins node list, so could be called out of queue lock.
+     *
+     * @return node or <code>null</code> if instance is not ready yet
+     */
+    @Nullable
+    private EC2FleetNode createAgent(
+            final Instance instance, final String labelString, final State state) throws Exception {
         final String instanceId = instance.getInstanceId();
 
         // instance state check enabled and not running, skip adding
         if (InstanceStateName.Running != InstanceStateName.fromValue(instance.getState().getName()))
-            return;
+            return null;
 
         final String address = privateIpUsed ? instance.getPrivateIpAddress() : instance.getPublicIpAddress();
         // Check if we have the address to use. Nodes don't get it immediately.
@@ -600,7 +658,7 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
                 info("%s instance public IP address not assigned, it could take some time or" +
                         " Spot Request is not configured to assign public IPs", instance.getInstanceId());
             }
-            return; // wait more time, probably IP address not yet assigned
+            return null; // wait more time, probably IP address not yet assigned
         }
 
         // Generate a random FS root if one isn't specified
@@ -630,11 +688,16 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
 
         // Initialize our retention strategy
         node.setRetentionStrategy(new EC2RetentionStrategy());
+        return node;
+    }
 
-        final Jenkins jenkins = Jenkins.get();
-        // jenkins automatically remove old node with same name if any
-        jenkins.addNode(node);
-
+    /**
+     * Resolve planned node of label by node added to Jenkins and wait for node to be online.
+     *
+     * @param node  node added to Jenkins
+     * @param state state of node label
+     */
+    private void onAgentAdded(final EC2FleetNode node, final State state) {
         final CompletableFuture<Node> future;
         if (state.plannedNodes.isEmpty()) {
             future = new CompletableFuture<>();
@@ -737,25 +800,17 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
                 LOGGER.info("deleting unused stack " + stack.stackId + " for label " + label);
                 cloudFormationApi.delete(client, stack.stackId);
 
-                // delete all nodes which belongs to this stack
+                // delete all nodes which belongs to this stack under one queue lock
                 final List<String> instanceIdsToRemove = new ArrayList<>();
-                Queue.withLock(new Runnable() {
-                    @Override
-                    public void run() {
-                        for (final Node node : jenkins.getNodes()) {
-                            if (label.equals(node.getLabelString())) {
-                                final String instanceId = node.getNodeName();
-                                instanceIdsToRemove.add(instanceId);
-                                try {
-                                    jenkins.removeNode(node);
-                                } catch (IOException e) {
-                                    warning("unable delete node %s from Jenkins, skip, " +
-                                            "actual instance will be terminated by stack", instanceId);
-                                }
-                            }
-                        }
-                    }
-                });
+                for (final Node node : jenkins.getNodes()) {
+                    if (label.equals(node.getLabelString())) instanceIdsToRemove.add(node.getNodeName());
+                }
+                try {
+                    JenkinsUtils.updateNodes(Collections.<Node>emptyList(), instanceIdsToRemove);
+                } catch (IOException e) {
+                    warning("unable delete nodes %s from Jenkins, skip, " +
+                            "actual instances will be terminated by stack", instanceIdsToRemove);
+                }
                 info("Delete nodes from deleted stack from Jenkins %s", instanceIdsToRemove);
             } else {
                 LOGGER.info("unused stack " + stack.stackId + " for label " + label
@@ -782,6 +837,7 @@ public class EC2FleetLabelCloud extends AbstractEC2FleetCloud {
                     iterator.remove();
                 }
             }
+            labelAtoms.keySet().retainAll(states.keySet());
         }
     }
 
@@ -1,16 +1,72 @@
 package com.amazon.jenkins.ec2fleet;
 
-import javax.annotation.concurrent.ThreadSafe;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-@ThreadSafe
+/**
+ * Parameters of {@link EC2FleetLabelCloud} label like <code>name_minSize=1,maxSize=5,instanceType=m5.large</code>.
+ * Parameter names are case insensitive, parameters without value are skipped.
+ * <p>
+ * Known parameters are validated and converted once when label is parsed by {@link #parse(String)}, which returns
+ * cached instance as labels are parsed for each provision and termination. Invalid value is cached too and fails
+ * with {@link IllegalArgumentException} only when that parameter is read, so other parameters of the label,
+ * like <code>minSize</code> for termination, still work. Public constructor doesn't validate, as before.
+ */
+@Immutable
 public class EC2FleetLabelParameters {
 
+    /**
+     * Max number of cached labels, label cloud usually has few labels
+     */
+    private static final int MAX_CACHED_LABELS = 1000;
+
+    private static final EC2FleetLabelParameters EMPTY = new EC2FleetLabelParameters(null, true);
+
+    private static final LoadingCache<String, EC2FleetLabelParameters> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_LABELS)
+            .build(CacheLoader.from(label -> new EC2FleetLabelParameters(label, true)));
+
     private final Map<String, String> parameters;
+    @Nullable
+    private final ValidatedInt minSize;
+    @Nullable
+    private final ValidatedInt maxSize;
+    @Nullable
+    private final ValidatedInt numExecutors;
+    private final boolean validated;
 
+    /**
+     * Parameters are not validated, invalid number fails with {@link NumberFormatException} when read.
+     *
+     * @param label label, could be <code>null</code>
+     * @see #parse(String)
+     */
     public EC2FleetLabelParameters(final String label) {
-        parameters = parse(label);
+        this(label, false);
+    }
+
+    private EC2FleetLabelParameters(final String label, final boolean validated) {
+        parameters = Collections.unmodifiableMap(parseParameters(label));
+        this.validated = validated;
+        minSize = validated ? parseNonNegativeInt("minSize") : null;
+        maxSize = validated ? parseNonNegativeInt("maxSize") : null;
+        numExecutors = validated ? parseNonNegativeInt("numExecutors") : null;
+    }
+
+    /**
+     * @param label label, could be <code>null</code>
+     * @return cached parameters of label, invalid known parameter fails when read
+     */
+    public static EC2FleetLabelParameters parse(@Nullable final String label) {
+        if (label == null) return EMPTY;
+        return CACHE.getUnchecked(label);
     }
 
     public String get(final String name) {
@@ -28,7 +84,71 @@ public class EC2FleetLabelParameters {
         return value == null ? defaultValue : Integer.parseInt(value);
     }
 
-    private static Map<String, String> parse(final String label) {
+    /**
+     * @throws IllegalArgumentException if parsed label has invalid <code>minSize</code>
+     */
+    public int getMinSizeOrDefault(final int defaultValue) {
+        return getValidatedIntOrDefault(minSize, "minSize", defaultValue);
+    }
+
+    /**
+     * @throws IllegalArgumentException if parsed label has invalid <code>maxSize</code>
+     */
+    public int getMaxSizeOrDefault(final int defaultValue) {
+        return getValidatedIntOrDefault(maxSize, "maxSize", defaultValue);
+    }
+
+    /**
+     * @throws IllegalArgumentException if parsed label has invalid <code>numExecutors</code>
+     */
+    public int getNumExecutorsOrDefault(final int defaultValue) {
+        return getValidatedIntOrDefault(numExecutors, "numExecutors", defaultValue);
+    }
+
+    private int getValidatedIntOrDefault(@Nullable final ValidatedInt value, final String name, final int defaultValue) {
+        if (!validated) return getIntOrDefault(name, defaultValue);
+        return value == null ? defaultValue : value.get();
+    }
+
+    /**
+     * @param defaultValue default fleet type
+     * @return fleet type, like <code>ec2-spot-fleet</code>
+     */
+    public String getTypeOrDefault(final String defaultValue) {
+        return getOrDefault("type", defaultValue);
+    }
+
+    public String getInstanceTypeOrDefault(final String defaultValue) {
+        return getOrDefault("instanceType", defaultValue);
+    }
+
+    public String getSpotPriceOrDefault(final String defaultValue) {
+        return getOrDefault("spotPrice", defaultValue);
+    }
+
+    @Nullable
+    public String getImageId() {
+        return get("imageId");
+    }
+
+    @Nullable
+    private ValidatedInt parseNonNegativeInt(final String name) {
+        final String value = get(name);
+        if (value == null) return null;
+
+        final int r;
+        try {
+            r = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return new ValidatedInt(0, String.format("Label parameter %s should be number, but %s", name, value));
+        }
+        if (r < 0) {
+            return new ValidatedInt(0, String.format("Label parameter %s should not be negative, but %s", name, value));
+        }
+        return new ValidatedInt(r, null);
+    }
+
+    private static Map<String, String> parseParameters(final String label) {
         final Map<String, String> p = new HashMap<>();
         if (label == null) return p;
 
@@ -41,4 +161,25 @@ public class EC2FleetLabelParameters {
         }
         return p;
     }
+
+    /**
+     * Converted value of known parameter or reason why it's invalid, kept so invalid label isn't parsed again
+     */
+    @Immutable
+    private static final class ValidatedInt {
+
+        private final int value;
+        @Nullable
+        private final String error;
+
+        private ValidatedInt(final int value, @Nullable final String error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        private int get() {
+            if (error != null) throw new IllegalArgumentException(error);
+            return value;
+        }
+    }
 }
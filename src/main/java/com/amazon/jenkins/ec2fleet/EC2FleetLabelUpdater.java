@@ -1,5 +1,6 @@
 package com.amazon.jenkins.ec2fleet;
 
+import com.amazon.jenkins.ec2fleet.aws.AwsMetrics;
 import hudson.Extension;
 import hudson.model.PeriodicWork;
 import hudson.slaves.Cloud;
@@ -26,17 +27,20 @@ public class EC2FleetLabelUpdater extends PeriodicWork {
         for (Cloud cloud : Jenkins.get().clouds) {
             if (!(cloud instanceof EC2FleetLabelCloud)) continue;
             final EC2FleetLabelCloud ec2FleetLabelCloud = (EC2FleetLabelCloud) cloud;
-            try {
-                ec2FleetLabelCloud.updateStacks();
-            } catch (Throwable t) {
-                LOGGER.log(Level.SEVERE, "Cloud stacks update error", t);
-            }
-
-            try {
-                ec2FleetLabelCloud.update();
-            } catch (Throwable t) {
-                LOGGER.log(Level.SEVERE, "Cloud update error", t);
-            }
+            AwsMetrics.callAs(ec2FleetLabelCloud.name, () -> {
+                try {
+                    ec2FleetLabelCloud.updateStacks();
+                } catch (Throwable t) {
+                    LOGGER.log(Level.SEVERE, "Cloud stacks update error", t);
+                }
+
+                try {
+                    ec2FleetLabelCloud.update();
+                } catch (Throwable t) {
+                    LOGGER.log(Level.SEVERE, "Cloud update error", t);
+                }
+                return null;
+            });
         }
     }
 
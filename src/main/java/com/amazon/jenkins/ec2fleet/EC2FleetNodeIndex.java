@@ -0,0 +1,177 @@
+package com.amazon.jenkins.ec2fleet;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Node;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+import jenkins.model.NodeListener;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of {@link EC2FleetNode}s by {@link EC2FleetNode#getCloudName()}, kept up to date by {@link NodeListenerImpl}
+ * and rebuilt from {@link Jenkins#getNodes()} on startup.
+ * <p>
+ * Clouds need to find own nodes on each update, scan of {@link Jenkins#getNodes()} with cloud lookup for each node
+ * costs <code>O(nodes)</code> per cloud, so <code>O(clouds * nodes)</code> per update cycle when Jenkins has
+ * thousands of static and cloud agents. With index lookup is <code>O(fleet size)</code>.
+ * <p>
+ * Nodes could be changed without listener notification, like by {@link Jenkins#setNodes(List)}, so each returned
+ * node is checked against {@link Jenkins#getNode(String)}, removed or replaced node is fixed in index.
+ *
+ * @see EC2FleetCloud
+ * @see EC2FleetLabelCloud
+ */
+@ThreadSafe
+public final class EC2FleetNodeIndex {
+
+    // cloud name -> node name -> node
+    private static final ConcurrentMap<String, ConcurrentMap<String, EC2FleetNode>> NODES = new ConcurrentHashMap<>();
+
+    /**
+     * @param cloudName cloud name
+     * @return snapshot of nodes of cloud, empty if none
+     */
+    @Nonnull
+    public static List<EC2FleetNode> getNodes(@Nullable final String cloudName) {
+        if (cloudName == null) return Collections.emptyList();
+        final Map<String, EC2FleetNode> nodes = NODES.get(cloudName);
+        if (nodes == null) return Collections.emptyList();
+
+        final List<EC2FleetNode> result = new ArrayList<>();
+        addLiveNodes(Jenkins.get(), cloudName, nodes, result);
+        return result;
+    }
+
+    /**
+     * Nodes of all {@link EC2FleetCloud}s configured with <code>fleet</code>, usually one cloud.
+     * Cost is number of indexed clouds plus number of returned nodes.
+     *
+     * @param fleet fleet id
+     * @return snapshot of nodes, empty if none
+     */
+    @Nonnull
+    public static List<EC2FleetNode> getFleetNodes(@Nullable final String fleet) {
+        if (fleet == null) return Collections.emptyList();
+
+        final Jenkins jenkins = Jenkins.get();
+        final List<EC2FleetNode> result = new ArrayList<>();
+        for (final Map.Entry<String, ConcurrentMap<String, EC2FleetNode>> entry : NODES.entrySet()) {
+            final Cloud cloud = jenkins.getCloud(entry.getKey());
+            if (cloud instanceof EC2FleetCloud && fleet.equals(((EC2FleetCloud) cloud).getFleet())) {
+                addLiveNodes(jenkins, entry.getKey(), entry.getValue(), result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add indexed nodes which are still Jenkins nodes to result, fix index for nodes removed or replaced
+     * without {@link NodeListener} notification.
+     */
+    private static void addLiveNodes(final Jenkins jenkins, final String cloudName,
+                                     final Map<String, EC2FleetNode> nodes, final List<EC2FleetNode> result) {
+        for (final EC2FleetNode node : nodes.values()) {
+            final Node current = jenkins.getNode(node.getNodeName());
+            if (current == node) {
+                result.add(node);
+                continue;
+            }
+
+            remove(node);
+            if (current == null) continue;
+            add(current);
+            if (current instanceof EC2FleetNode && cloudName.equals(((EC2FleetNode) current).getCloudName())) {
+                result.add((EC2FleetNode) current);
+            }
+        }
+    }
+
+    static void add(final Node node) {
+        if (!(node instanceof EC2FleetNode)) return;
+        final EC2FleetNode fleetNode = (EC2FleetNode) node;
+        if (fleetNode.getCloudName() == null || fleetNode.getNodeName() == null) return;
+
+        NODES.computeIfAbsent(fleetNode.getCloudName(), k -> new ConcurrentHashMap<>())
+                .put(fleetNode.getNodeName(), fleetNode);
+    }
+
+    static void remove(final Node node) {
+        if (!(node instanceof EC2FleetNode)) return;
+        final EC2FleetNode fleetNode = (EC2FleetNode) node;
+        if (fleetNode.getCloudName() == null || fleetNode.getNodeName() == null) return;
+
+        // node could be already replaced by node with the same name, keep new one
+        NODES.computeIfPresent(fleetNode.getCloudName(), (cloudName, nodes) -> {
+            nodes.remove(fleetNode.getNodeName(), fleetNode);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    /**
+     * Nodes are loaded on startup without {@link NodeListener} notification, so index is built from them
+     * once jobs are loaded, before clouds are synced.
+     */
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void rebuildOnStartup() {
+        rebuild(Jenkins.get().getNodes());
+    }
+
+    /**
+     * Replace index content by nodes, for case when nodes were changed without {@link NodeListener}
+     * notification, like {@link Jenkins#setNodes(List)}.
+     *
+     * @param nodes all Jenkins nodes
+     */
+    static void rebuild(final Collection<? extends Node> nodes) {
+        final Map<String, ConcurrentMap<String, EC2FleetNode>> rebuilt = new HashMap<>();
+        for (final Node node : nodes) {
+            if (!(node instanceof EC2FleetNode)) continue;
+            final EC2FleetNode fleetNode = (EC2FleetNode) node;
+            if (fleetNode.getCloudName() == null || fleetNode.getNodeName() == null) continue;
+            rebuilt.computeIfAbsent(fleetNode.getCloudName(), k -> new ConcurrentHashMap<>())
+                    .put(fleetNode.getNodeName(), fleetNode);
+        }
+        // replace per cloud, so readers never see index empty
+        NODES.keySet().retainAll(rebuilt.keySet());
+        NODES.putAll(rebuilt);
+    }
+
+    @Extension
+    public static class NodeListenerImpl extends NodeListener {
+
+        @Override
+        protected void onCreated(@Nonnull final Node node) {
+            add(node);
+        }
+
+        @Override
+        protected void onUpdated(@Nonnull final Node oldOne, @Nonnull final Node newOne) {
+            remove(oldOne);
+            add(newOne);
+        }
+
+        @Override
+        protected void onDeleted(@Nonnull final Node node) {
+            remove(node);
+        }
+
+    }
+
+    private EC2FleetNodeIndex() {
+        throw new UnsupportedOperationException("util class");
+    }
+
+}
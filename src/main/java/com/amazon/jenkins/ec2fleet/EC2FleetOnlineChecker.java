@@ -1,14 +1,25 @@
 package com.amazon.jenkins.ec2fleet;
 
+import hudson.Extension;
 import hudson.model.Computer;
 import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
 import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
 
+import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +41,12 @@ import java.util.logging.Logger;
  * make a few short interval reconnection initially (when EC2 instance still is not ready) after that
  * with big interval, experiment shows a few minutes and more.
  * <p>
+ * All pending nodes are kept in one queue ordered by next check time and checked in batches by single thread.
+ * Interval between checks of the same node doubles after each check up to
+ * {@link #MAX_INTERVAL_MULTIPLIER_PROPERTY} times of initial interval, so hundreds of booting nodes
+ * don't make hundreds of connect attempts on each interval. Node which comes online is resolved
+ * immediately by {@link ComputerListenerImpl} without waiting for next check.
+ * <p>
  * Based on https://github.com/jenkinsci/ec2-plugin/blob/master/src/main/java/hudson/plugins/ec2/EC2Cloud.java#L640
  *
  * @see EC2FleetCloud
@@ -37,33 +54,26 @@ import java.util.logging.Logger;
  */
 @SuppressWarnings("WeakerAccess")
 @ThreadSafe
-class EC2FleetOnlineChecker implements Runnable {
+public final class EC2FleetOnlineChecker {
 
     private static final Logger LOGGER = Logger.getLogger(EC2FleetOnlineChecker.class.getName());
-    // use daemon thread, so no problem when stop jenkins
-    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
 
-    public static void start(final Node node, final CompletableFuture<Node> future, final long timeout, final long interval) {
-        EXECUTOR.execute(new EC2FleetOnlineChecker(node, future, timeout, interval));
-    }
+    /**
+     * Max interval between checks of the same node as multiplier of configured check interval, default 8
+     */
+    static final String MAX_INTERVAL_MULTIPLIER_PROPERTY = EC2FleetOnlineChecker.class.getName() + ".maxIntervalMultiplier";
 
-    private final long start;
-    private final Node node;
-    private final CompletableFuture<Node> future;
-    private final long timeout;
-    private final long interval;
-
-    private EC2FleetOnlineChecker(
-            final Node node, final CompletableFuture<Node> future, final long timeout, final long interval) {
-        this.start = System.currentTimeMillis();
-        this.node = node;
-        this.future = future;
-        this.timeout = timeout;
-        this.interval = interval;
-    }
+    private static final int MAX_INTERVAL_MULTIPLIER = Math.max(1,
+            SystemProperties.getInteger(MAX_INTERVAL_MULTIPLIER_PROPERTY, 8));
+
+    private static final DelayQueue<Check> QUEUE = new DelayQueue<>();
+    /**
+     * Pending checks by node name, to resolve them from {@link ComputerListenerImpl}
+     */
+    private static final ConcurrentMap<String, Check> PENDING = new ConcurrentHashMap<>();
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
 
-    @Override
-    public void run() {
+    public static void start(final Node node, final CompletableFuture<Node> future, final long timeout, final long interval) {
         if (future.isCancelled()) {
             return;
         }
@@ -74,28 +84,180 @@ class EC2FleetOnlineChecker implements Runnable {
             return;
         }
 
-        final Computer computer = node.toComputer();
-        if (computer != null) {
-            if (computer.isOnline()) {
-                future.complete(node);
-                LOGGER.log(Level.INFO, String.format("Node '%s' connected. Resolving planned node", node.getDisplayName()));
+        final Check check = new Check(node, future, timeout, interval);
+        final String nodeName = node.getNodeName();
+        // node names are instance ids, so unique, latest check wins if node was re-added
+        if (nodeName != null) PENDING.put(nodeName, check);
+        QUEUE.add(check);
+        startWorker();
+    }
+
+    /**
+     * @return number of nodes waiting to come online
+     */
+    public static int getPendingChecks() {
+        return QUEUE.size();
+    }
+
+    /**
+     * Resolve pending check of node immediately if its computer is online.
+     *
+     * @param computer computer
+     * @return <code>true</code> if planned node resolved
+     */
+    static boolean online(final Computer computer) {
+        final String nodeName = computer.getName();
+        if (nodeName == null) return false;
+
+        final Check check = PENDING.remove(nodeName);
+        if (check == null) return false;
+
+        QUEUE.remove(check);
+        if (check.future.complete(check.node)) {
+            LOGGER.log(Level.INFO, String.format("Node '%s' connected. Resolving planned node", check.node.getDisplayName()));
+        }
+        return true;
+    }
+
+    private static void startWorker() {
+        if (STARTED.get() || !STARTED.compareAndSet(false, true)) return;
+
+        // use daemon thread, so no problem when stop jenkins
+        final Thread worker = new NamingThreadFactory(new DaemonThreadFactory(),
+                EC2FleetOnlineChecker.class.getSimpleName()).newThread(EC2FleetOnlineChecker::run);
+        worker.start();
+    }
+
+    private static void run() {
+        final List<Check> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(QUEUE.take());
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.WARNING, "Online checker interrupted, {0} nodes will not be checked", QUEUE.size());
+                Thread.currentThread().interrupt();
                 return;
             }
+            // take all other checks which are due, doesn't wait
+            QUEUE.drainTo(batch);
+
+            int waiting = 0;
+            for (final Check check : batch) {
+                try {
+                    if (check.run()) {
+                        QUEUE.add(check);
+                        waiting++;
+                    } else {
+                        final String nodeName = check.node.getNodeName();
+                        if (nodeName != null) PENDING.remove(nodeName, check);
+                    }
+                } catch (Throwable t) {
+                    LOGGER.log(Level.WARNING, "Failed to check connection to node '" + check.node.getDisplayName() + "'", t);
+                    check.schedule();
+                    QUEUE.add(check);
+                    waiting++;
+                }
+            }
+            LOGGER.log(Level.FINE, "Checked connection to {0} nodes, {1} still waiting", new Object[]{batch.size(), waiting});
+            batch.clear();
         }
+    }
 
-        if (System.currentTimeMillis() - start > timeout) {
-            future.completeExceptionally(new IllegalStateException(
-                    "Failed to provision node. Could not connect to node '" + node.getDisplayName() + "' before timeout (" + timeout + "ms)"));
-            return;
+    /**
+     * Connection check of one node. Accessed by worker thread only, except of immutable fields.
+     */
+    private static final class Check implements Delayed {
+
+        private final long start;
+        private final Node node;
+        private final CompletableFuture<Node> future;
+        private final long timeout;
+        private final long interval;
+
+        private volatile long nextCheckNanos;
+        private int attempts;
+
+        private Check(final Node node, final CompletableFuture<Node> future, final long timeout, final long interval) {
+            this.start = System.currentTimeMillis();
+            this.node = node;
+            this.future = future;
+            this.timeout = timeout;
+            this.interval = interval;
+            this.nextCheckNanos = System.nanoTime();
+        }
+
+        /**
+         * @return <code>true</code> if node is still not online and should be checked again
+         */
+        private boolean run() {
+            if (future.isDone()) {
+                return false;
+            }
+
+            final Computer computer = node.toComputer();
+            if (computer != null) {
+                if (computer.isOnline()) {
+                    future.complete(node);
+                    LOGGER.log(Level.INFO, String.format("Node '%s' connected. Resolving planned node", node.getDisplayName()));
+                    return false;
+                }
+            }
+
+            if (System.currentTimeMillis() - start > timeout) {
+                future.completeExceptionally(new IllegalStateException(
+                        "Failed to provision node. Could not connect to node '" + node.getDisplayName() + "' before timeout (" + timeout + "ms)"));
+                return false;
+            }
+
+            // first attempt is logged as info, next are repeated every interval and only needed for debug
+            final Level level = attempts == 0 ? Level.INFO : Level.FINE;
+            if (computer == null) {
+                LOGGER.log(level, String.format("No connection to node '%s'. Waiting before retry", node.getDisplayName()));
+            } else {
+                computer.connect(false);
+                LOGGER.log(level, String.format("No connection to node '%s'. Attempting to connect and waiting before retry", node.getDisplayName()));
+            }
+            schedule();
+            return true;
         }
 
-        if (computer == null) {
-            LOGGER.log(Level.INFO, String.format("No connection to node '%s'. Waiting before retry", node.getDisplayName()));
-        } else {
-            computer.connect(false);
-            LOGGER.log(Level.INFO, String.format("No connection to node '%s'. Attempting to connect and waiting before retry", node.getDisplayName()));
+        /**
+         * Schedule next check with exponential backoff, but not after timeout, so failure is not delayed.
+         */
+        private void schedule() {
+            final long multiplier = Math.min(1L << Math.min(attempts, 30), MAX_INTERVAL_MULTIPLIER);
+            attempts++;
+            final long delay = Math.min(interval * multiplier, timeout + 1 - (System.currentTimeMillis() - start));
+            nextCheckNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
         }
-        EXECUTOR.schedule(this, interval, TimeUnit.MILLISECONDS);
+
+        @Override
+        public long getDelay(@Nonnull final TimeUnit unit) {
+            return unit.convert(nextCheckNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(@Nonnull final Delayed o) {
+            return Long.compare(nextCheckNanos, ((Check) o).nextCheckNanos);
+        }
+
+    }
+
+    /**
+     * Resolve planned node as soon as Jenkins reports its computer online.
+     */
+    @Extension
+    public static class ComputerListenerImpl extends ComputerListener {
+
+        @Override
+        public void onOnline(final Computer c, final TaskListener listener) {
+            online(c);
+        }
+
+    }
+
+    private EC2FleetOnlineChecker() {
+        throw new UnsupportedOperationException("util class");
     }
 
 }
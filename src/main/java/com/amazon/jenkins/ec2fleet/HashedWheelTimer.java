@@ -0,0 +1,255 @@
+package com.amazon.jenkins.ec2fleet;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Timer for big number of short tasks which are mostly cancelled before expiration, like planned node timeouts.
+ * <p>
+ * Timeouts are kept in a wheel of buckets, each bucket holds timeouts which expire on the same tick
+ * (or multiple wheel rounds later). Insert and cancel are <code>O(1)</code> and don't take locks,
+ * cancelled timeout is unlinked from its bucket on next tick, so it doesn't stay in memory till deadline
+ * as it does in {@link java.util.concurrent.ScheduledThreadPoolExecutor} queue.
+ * <p>
+ * Precision is one tick, timeout could expire up to one tick later than requested. Tasks are executed by
+ * single timer thread, so they should be short and never block.
+ */
+@ThreadSafe
+public final class HashedWheelTimer {
+
+    private static final Logger LOGGER = Logger.getLogger(HashedWheelTimer.class.getName());
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final long startTime = System.nanoTime();
+
+    /**
+     * @param name          timer thread name
+     * @param tickDuration  duration of one tick, timer precision
+     * @param unit          unit of <code>tickDuration</code>
+     * @param ticksPerWheel number of buckets, rounded up to power of two
+     */
+    public HashedWheelTimer(final String name, final long tickDuration, final TimeUnit unit, final int ticksPerWheel) {
+        if (tickDuration <= 0) throw new IllegalArgumentException("tickDuration should be positive");
+        if (ticksPerWheel <= 0) throw new IllegalArgumentException("ticksPerWheel should be positive");
+
+        this.name = name;
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = 1;
+        while (size < ticksPerWheel) size <<= 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) wheel[i] = new Bucket();
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedule one time execution of <code>task</code> after <code>delay</code>. Timer thread is started on first call.
+     *
+     * @param task  task, executed on timer thread
+     * @param delay delay
+     * @param unit  unit of <code>delay</code>
+     * @return handle to cancel timeout
+     */
+    @Nonnull
+    public Timeout newTimeout(@Nonnull final Runnable task, final long delay, @Nonnull final TimeUnit unit) {
+        start();
+        final Timeout timeout = new Timeout(this, task, System.nanoTime() + unit.toNanos(Math.max(0, delay)) - startTime);
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return number of scheduled timeouts which are not expired or cancelled yet
+     */
+    public long pendingTimeouts() {
+        return pending.get();
+    }
+
+    private void start() {
+        if (started.get() || !started.compareAndSet(false, true)) return;
+
+        // use daemon thread, so no problem when stop jenkins
+        final Thread worker = new NamingThreadFactory(new DaemonThreadFactory(), name).newThread(this::run);
+        worker.start();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (true) {
+            if (!waitForNextTick(tick)) return;
+
+            removeCancelled();
+            transferAdded(tick);
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    /**
+     * @return <code>false</code> if interrupted
+     */
+    private boolean waitForNextTick(final long tick) {
+        final long deadline = tickNanos * (tick + 1);
+        while (true) {
+            final long currentTime = System.nanoTime() - startTime;
+            final long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - currentTime + 999_999);
+            if (sleepMillis <= 0) return true;
+
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.WARNING, "Timer {0} interrupted, pending timeouts {1} will not expire",
+                        new Object[]{name, pending.get()});
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private void transferAdded(final long tick) {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != Timeout.ST_INIT) continue;
+
+            final long expireTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (expireTick - tick) / wheel.length;
+            // deadline in the past, expire on current tick
+            wheel[(int) (Math.max(expireTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    /**
+     * Handle of scheduled task.
+     */
+    @ThreadSafe
+    public static final class Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        // accessed only by timer thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(final HashedWheelTimer timer, final Runnable task, final long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel timeout, task will not be executed.
+         *
+         * @return <code>false</code> if timeout already expired or cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) return false;
+            timer.pending.decrementAndGet();
+            timer.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) return;
+            timer.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING, "Timer " + timer.name + " task failed", t);
+            }
+        }
+
+    }
+
+    /**
+     * Doubly linked list of timeouts, accessed only by timer thread.
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(final Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    // placed to bucket of its tick, so deadline is reached
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(final Timeout timeout) {
+            if (timeout.bucket != this) return;
+
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            if (timeout == head) head = timeout.next;
+            if (timeout == tail) tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+    }
+
+}
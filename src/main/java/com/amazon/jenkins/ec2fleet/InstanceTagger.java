@@ -0,0 +1,231 @@
+package com.amazon.jenkins.ec2fleet;
+
+import com.amazon.jenkins.ec2fleet.aws.EC2Api;
+import com.amazonaws.services.ec2.AmazonEC2;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tag instances in background, so slow or throttled <code>CreateTags</code> doesn't delay adding new nodes
+ * by {@link EC2FleetCloud#update()}. Tagging is best effort, it only helps users to identify instances
+ * launched from plugin managed fleets.
+ * <p>
+ * Instance ids with the same client and tag are coalesced across update cycles and clouds into one
+ * <code>CreateTags</code> request of up to {@link #BATCH_SIZE_PROPERTY} instances. Failed batch is retried
+ * with exponential backoff up to {@link #MAX_ATTEMPTS_PROPERTY} times, after that it's dropped. Instance not found
+ * by EC2 doesn't fail batch, see {@link EC2Api#tagInstances(AmazonEC2, Set, String, String)}.
+ */
+@ThreadSafe
+public final class InstanceTagger {
+
+    /**
+     * Max number of instances tagged by one <code>CreateTags</code> request, default 1000 API limit
+     */
+    static final String BATCH_SIZE_PROPERTY = InstanceTagger.class.getName() + ".batchSize";
+    /**
+     * Max number of attempts to tag instance before it's dropped, default 5
+     */
+    static final String MAX_ATTEMPTS_PROPERTY = InstanceTagger.class.getName() + ".maxAttempts";
+
+    private static final Logger LOGGER = Logger.getLogger(InstanceTagger.class.getName());
+
+    /**
+     * Delay before flush to collect instances from other clouds synced at the same time
+     */
+    private static final long FLUSH_DELAY_MILLIS = 500;
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final InstanceTagger INSTANCE = new InstanceTagger(createExecutor());
+
+    private final ScheduledExecutorService executor;
+    private final Map<Target, Pending> pending = new HashMap<>();
+    // time of scheduled flush, 0 if not scheduled
+    private long flushAt;
+
+    public static InstanceTagger get() {
+        return INSTANCE;
+    }
+
+    private static ScheduledExecutorService createExecutor() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                // use daemon thread, so no problem when stop jenkins
+                new NamingThreadFactory(new DaemonThreadFactory(), InstanceTagger.class.getSimpleName()));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    InstanceTagger(final ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queue instances to tag, never blocks on AWS call.
+     *
+     * @param ec2         client to tag with
+     * @param instanceIds instance ids
+     * @param key         tag key
+     * @param value       tag value
+     */
+    public void tag(final AmazonEC2 ec2, final Set<String> instanceIds, final String key, @Nullable final String value) {
+        if (instanceIds.isEmpty()) return;
+
+        synchronized (this) {
+            final Target target = new Target(Registry.getEc2Api(), ec2, key, value);
+            pending.computeIfAbsent(target, k -> new Pending()).instanceIds.addAll(instanceIds);
+            schedule(currentTimeMillis() + FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Send queued instances which are not backed off. Only one flush is running at a time as it's executed
+     * by single thread.
+     */
+    // Visible for testing
+    void flush() {
+        final int batchSize = Math.max(1, SystemProperties.getInteger(BATCH_SIZE_PROPERTY, 1000));
+        final Map<Target, List<String>> toTag = new HashMap<>();
+        synchronized (this) {
+            flushAt = 0;
+            final long now = currentTimeMillis();
+            for (final Map.Entry<Target, Pending> entry : pending.entrySet()) {
+                final Pending targetPending = entry.getValue();
+                if (targetPending.notBefore > now) continue;
+                final List<String> instanceIds = new ArrayList<>();
+                for (final Iterator<String> iterator = targetPending.instanceIds.iterator();
+                     iterator.hasNext() && instanceIds.size() < batchSize; ) {
+                    instanceIds.add(iterator.next());
+                    iterator.remove();
+                }
+                toTag.put(entry.getKey(), instanceIds);
+            }
+        }
+
+        for (final Map.Entry<Target, List<String>> entry : toTag.entrySet()) {
+            final Target target = entry.getKey();
+            final List<String> instanceIds = entry.getValue();
+            try {
+                target.ec2Api.tagInstances(target.ec2, new LinkedHashSet<>(instanceIds), target.key, target.value);
+                onResult(target, instanceIds, null);
+            } catch (final Exception e) {
+                onResult(target, instanceIds, e);
+            }
+        }
+
+        synchronized (this) {
+            pending.values().removeIf(targetPending -> targetPending.instanceIds.isEmpty());
+            for (final Pending targetPending : pending.values()) {
+                schedule(Math.max(targetPending.notBefore, currentTimeMillis()));
+            }
+        }
+    }
+
+    private synchronized void onResult(final Target target, final List<String> instanceIds, @Nullable final Exception error) {
+        final Pending targetPending = pending.get(target);
+        if (error == null) {
+            targetPending.failures = 0;
+            targetPending.notBefore = 0;
+            return;
+        }
+
+        targetPending.failures++;
+        if (targetPending.failures >= SystemProperties.getInteger(MAX_ATTEMPTS_PROPERTY, 5)) {
+            LOGGER.log(Level.WARNING, String.format("Failed to tag instances %s with %s, skip", instanceIds, target.key), error);
+            targetPending.failures = 0;
+            targetPending.notBefore = 0;
+            return;
+        }
+
+        final long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << (targetPending.failures - 1));
+        LOGGER.fine(String.format("Failed to tag instances %s with %s, retry in %s ms: %s",
+                instanceIds, target.key, backoff, error));
+        targetPending.instanceIds.addAll(instanceIds);
+        targetPending.notBefore = currentTimeMillis() + backoff;
+    }
+
+    private void schedule(final long at) {
+        if (flushAt != 0 && flushAt <= at) return;
+        flushAt = at;
+        executor.schedule(this::flushSafely, Math.max(0, at - currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (final Throwable t) {
+            LOGGER.log(Level.WARNING, "Failed to tag instances", t);
+        }
+    }
+
+    /**
+     * @return number of instances waiting to be tagged
+     */
+    public synchronized int getPendingCount() {
+        int count = 0;
+        for (final Pending targetPending : pending.values()) count += targetPending.instanceIds.size();
+        return count;
+    }
+
+    // Visible for testing
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static final class Pending {
+
+        private final Set<String> instanceIds = new LinkedHashSet<>();
+        private int failures;
+        private long notBefore;
+
+    }
+
+    /**
+     * Instances of one <code>CreateTags</code> request should have the same client and tag.
+     */
+    private static final class Target {
+
+        private final EC2Api ec2Api;
+        private final AmazonEC2 ec2;
+        private final String key;
+        private final String value;
+
+        private Target(final EC2Api ec2Api, final AmazonEC2 ec2, final String key, final String value) {
+            this.ec2Api = ec2Api;
+            this.ec2 = ec2;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Target target = (Target) o;
+            return ec2Api == target.ec2Api && ec2 == target.ec2 && Objects.equals(key, target.key) && Objects.equals(value, target.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(ec2Api), System.identityHashCode(ec2), key, value);
+        }
+
+    }
+
+}
@@ -1,7 +1,13 @@
 package com.amazon.jenkins.ec2fleet;
 
 import hudson.model.Node;
+import hudson.model.Queue;
 import jenkins.model.Jenkins;
+import jenkins.model.NodeListener;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 
 public class JenkinsUtils {
 
@@ -18,4 +24,47 @@ public class JenkinsUtils {
         }
     }
 
+    /**
+     * Add and remove nodes under one Queue lock, so queue maintenance doesn't run and see node list
+     * half updated between changes, and lock is taken once per cycle instead of once per node.
+     * <p>
+     * It's not a bulk update: each node is changed by {@link Jenkins#addNode(Node)} or
+     * {@link Jenkins#removeNode(Node)}, which take the same reentrant lock, so computer list is refreshed
+     * and {@link NodeListener}s are notified for each node. Jenkins has no API to change many nodes at once
+     * except {@link Jenkins#setNodes(List)}, which saves every persistent node, so would rewrite config of
+     * each static agent on each update.
+     * Node with the same name as added one is replaced.
+     *
+     * @param nodesToAdd        nodes to add
+     * @param nodeNamesToRemove names of nodes to remove, not existent are ignored
+     * @return time in nanos spent updating nodes under Queue lock
+     * @throws IOException if Jenkins failed to add or remove node, following changes are not applied
+     */
+    public static long updateNodes(final Collection<? extends Node> nodesToAdd, final Collection<String> nodeNamesToRemove)
+            throws IOException {
+        if (nodesToAdd.isEmpty() && nodeNamesToRemove.isEmpty()) return 0;
+
+        final Jenkins jenkins = Jenkins.get();
+        final IOException[] failure = new IOException[1];
+        final long[] lockNanos = new long[1];
+        Queue.withLock(new Runnable() {
+            @Override
+            public void run() {
+                final long start = System.nanoTime();
+                try {
+                    for (final String nodeName : nodeNamesToRemove) {
+                        final Node node = jenkins.getNode(nodeName);
+                        if (node != null) jenkins.removeNode(node);
+                    }
+                    for (final Node node : nodesToAdd) jenkins.addNode(node);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+                lockNanos[0] = System.nanoTime() - start;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        return lockNanos[0];
+    }
+
 }
@@ -6,9 +6,14 @@ import hudson.model.LoadStatistics;
 import hudson.slaves.Cloud;
 import hudson.slaves.NodeProvisioner;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,12 +24,35 @@ import java.util.logging.Logger;
  * <p>
  * As based we are used
  * <a href="https://github.com/jenkinsci/ec2-plugin/blob/master/src/main/java/hudson/plugins/ec2/NoDelayProvisionerStrategy.java">EC2 Jenkins Plugin</a>
+ * <p>
+ * By default excess workload is given to clouds in declaration order, so next cloud gets only what previous
+ * could not provision. With {@link #PLACEMENT_PROPERTY} set to <code>balanced</code> excess workload is split
+ * across all clouds which can provision for the label, see {@link #split(int, int[], double[])}.
  */
 @Extension(ordinal = 100)
 public class NoDelayProvisionStrategy extends NodeProvisioner.Strategy {
 
     private static final Logger LOGGER = Logger.getLogger(NoDelayProvisionStrategy.class.getName());
 
+    /**
+     * How excess workload is placed across clouds, <code>ordered</code> or <code>balanced</code>, default ordered
+     */
+    static final String PLACEMENT_PROPERTY = NoDelayProvisionStrategy.class.getName() + ".placement";
+
+    /**
+     * Fulfillment latency below this is not distinguished, so few seconds of difference don't skew placement
+     */
+    private static final long MIN_LATENCY_MILLIS = 30_000;
+
+    /**
+     * Max number of labels with remembered eligible clouds, more distinct labels reset memo
+     */
+    private static final int MAX_MEMO_LABELS = 1000;
+
+    // label name -> eligible clouds, valid for memoClouds only
+    private final Map<String, List<EC2FleetCloud>> eligibleByLabel = new HashMap<>();
+    private List<Cloud> memoClouds;
+
     @Override
     public NodeProvisioner.StrategyDecision apply(final NodeProvisioner.StrategyState strategyState) {
         final Label label = strategyState.getLabel();
@@ -45,25 +73,182 @@ public class NoDelayProvisionStrategy extends NodeProvisioner.Strategy {
             return NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED;
         }
 
-        for (final Cloud c : getClouds()) {
+        if (isBalancedPlacement()) {
+            excessWorkload = applyBalanced(strategyState, excessWorkload);
+        } else {
+            excessWorkload = applyOrdered(strategyState, excessWorkload);
+        }
+
+        if (excessWorkload > 0) {
+            LOGGER.log(Level.FINE, "Provisioning not complete, consulting remaining strategies");
+            return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+        }
+
+        LOGGER.log(Level.FINE, "Provisioning completed");
+        return NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED;
+    }
+
+    private int applyOrdered(final NodeProvisioner.StrategyState strategyState, int excessWorkload) {
+        final Label label = strategyState.getLabel();
+        for (final EC2FleetCloud c : getEligibleClouds(label)) {
             if (excessWorkload < 1) {
                 break;
             }
 
+            Cloud.CloudState cloudState = new Cloud.CloudState(label, strategyState.getAdditionalPlannedCapacity());
+            excessWorkload = provision(strategyState, c, cloudState, excessWorkload, excessWorkload);
+        }
+        return excessWorkload;
+    }
+
+    /**
+     * Split excess workload across all eligible clouds at once, proportionally to headroom of each cloud
+     * and inversely to its recent fulfillment latency, so surge spreads across pools instead of saturating
+     * first one and waiting on its capacity errors.
+     */
+    private int applyBalanced(final NodeProvisioner.StrategyState strategyState, int excessWorkload) {
+        final Label label = strategyState.getLabel();
+        final Cloud.CloudState cloudState = new Cloud.CloudState(label, strategyState.getAdditionalPlannedCapacity());
+
+        final List<EC2FleetCloud> eligible = getEligibleClouds(label);
+        if (eligible.isEmpty()) return excessWorkload;
+
+        // unknown latency is taken as average of known, so new cloud is neither preferred nor avoided
+        long knownLatencySum = 0;
+        int knownLatencyCount = 0;
+        for (final EC2FleetCloud cloud : eligible) {
+            final long latency = cloud.getFulfillmentLatencyMillis();
+            if (latency >= 0) {
+                knownLatencySum += latency;
+                knownLatencyCount++;
+            }
+        }
+        final long defaultLatency = knownLatencyCount == 0 ? MIN_LATENCY_MILLIS : knownLatencySum / knownLatencyCount;
+
+        final int[] headroom = new int[eligible.size()];
+        final double[] scores = new double[eligible.size()];
+        for (int i = 0; i < eligible.size(); i++) {
+            final EC2FleetCloud cloud = eligible.get(i);
+            final long latency = cloud.getFulfillmentLatencyMillis() < 0 ? defaultLatency : cloud.getFulfillmentLatencyMillis();
+            headroom[i] = cloud.getHeadroom();
+            scores[i] = headroom[i] * (double) MIN_LATENCY_MILLIS / Math.max(MIN_LATENCY_MILLIS, latency);
+        }
+
+        final int workload = excessWorkload;
+        final int[] shares = split(workload, headroom, scores);
+        // cloud rounds its share up to whole instances, so executors planned above shares of previous clouds
+        // are taken from share of next one, otherwise each cloud with numExecutors > 1 over-provisions
+        int assigned = 0;
+        for (int i = 0; i < eligible.size(); i++) {
+            final EC2FleetCloud cloud = eligible.get(i);
+            final int surplus = Math.max(0, workload - excessWorkload - assigned);
+            assigned += shares[i];
+            final int share = shares[i] - surplus;
+            LOGGER.log(Level.FINE, "label [{0}]: cloud {1} headroom {2} fulfillment latency {3} ms share {4}",
+                    new Object[]{label, cloud.getDisplayName(), headroom[i], cloud.getFulfillmentLatencyMillis(), share});
+            if (share < 1) continue;
+            excessWorkload = provision(strategyState, cloud, cloudState, share, excessWorkload);
+        }
+        return excessWorkload;
+    }
+
+    private static int provision(final NodeProvisioner.StrategyState strategyState, final Cloud c,
+                                 final Cloud.CloudState cloudState, final int workload, int excessWorkload) {
+        final Collection<NodeProvisioner.PlannedNode> plannedNodes = c.provision(cloudState, workload);
+        for (NodeProvisioner.PlannedNode pn : plannedNodes) {
+            excessWorkload -= pn.numExecutors;
+            LOGGER.log(Level.INFO, "Started provisioning {0} from {1} with {2,number,integer} "
+                            + "executors. Remaining excess workload: {3,number,#.###}",
+                    new Object[]{pn.displayName, c.name, pn.numExecutors, excessWorkload});
+        }
+        strategyState.recordPendingLaunches(plannedNodes);
+        return excessWorkload;
+    }
+
+    /**
+     * Split workload proportionally to scores without giving any cloud more than its headroom, what
+     * capped cloud can't take is split again across others. Workload above total headroom is not placed.
+     *
+     * @param workload workload to split
+     * @param headroom headroom of each cloud
+     * @param scores   positive score of each cloud with headroom
+     * @return share of each cloud
+     */
+    static int[] split(final int workload, final int[] headroom, final double[] scores) {
+        final int[] shares = new int[headroom.length];
+        int remaining = workload;
+        while (remaining > 0) {
+            double totalScore = 0;
+            int best = -1;
+            for (int i = 0; i < shares.length; i++) {
+                if (shares[i] >= headroom[i] || scores[i] <= 0) continue;
+                totalScore += scores[i];
+                if (best < 0 || scores[i] > scores[best]) best = i;
+            }
+            if (best < 0) break;
+
+            int given = 0;
+            for (int i = 0; i < shares.length; i++) {
+                if (shares[i] >= headroom[i] || scores[i] <= 0) continue;
+                final int share = Math.min(headroom[i] - shares[i], (int) (remaining * scores[i] / totalScore));
+                shares[i] += share;
+                given += share;
+            }
+            if (given == 0) {
+                // remaining is less than one per cloud, give it to best scored cloud first
+                shares[best]++;
+                given = 1;
+            }
+            remaining -= given;
+        }
+        return shares;
+    }
+
+    /**
+     * Get clouds which can provision label and use No Delay Provision Strategy, in declaration order.
+     * <p>
+     * It's checked for each label on each provisioning tick, while it depends only on cloud configuration
+     * and Jenkins replaces cloud objects when configuration is changed. So result is kept per label until
+     * Jenkins cloud list is changed, or more than {@link #MAX_MEMO_LABELS} labels are kept.
+     *
+     * @param label label, could be <code>null</code> for unlabeled provisioning
+     * @return eligible clouds
+     */
+    // Visible for testing
+    synchronized List<EC2FleetCloud> getEligibleClouds(final Label label) {
+        final List<Cloud> clouds = getClouds();
+        if (!isSameClouds(memoClouds, clouds) || eligibleByLabel.size() >= MAX_MEMO_LABELS) {
+            eligibleByLabel.clear();
+            memoClouds = new ArrayList<>(clouds);
+        }
+        // null name for unlabeled provisioning
+        final String labelName = label == null ? null : label.getName();
+        List<EC2FleetCloud> eligible = eligibleByLabel.get(labelName);
+        if (eligible == null) {
+            eligible = Collections.unmodifiableList(findEligibleClouds(label, clouds));
+            eligibleByLabel.put(labelName, eligible);
+        }
+        return eligible;
+    }
+
+    private static List<EC2FleetCloud> findEligibleClouds(final Label label, final List<Cloud> clouds) {
+        final Cloud.CloudState cloudState = new Cloud.CloudState(label, 0);
+        final List<EC2FleetCloud> eligible = new ArrayList<>();
+        for (final Cloud c : clouds) {
             if (!(c instanceof EC2FleetCloud)) {
                 LOGGER.log(Level.FINE, "label [{0}]: cloud {1} is not an EC2FleetCloud, continuing...",
                         new Object[]{label, c.getDisplayName()});
                 continue;
             }
 
-            Cloud.CloudState cloudState = new Cloud.CloudState(label, strategyState.getAdditionalPlannedCapacity());
-            if (!c.canProvision(cloudState)) {
+            final EC2FleetCloud cloud = (EC2FleetCloud) c;
+            if (!cloud.canProvision(cloudState)) {
                 LOGGER.log(Level.FINE, "label [{0}]: cloud {1} can not provision for this label, continuing...",
                         new Object[]{label, c.getDisplayName()});
                 continue;
             }
 
-            if (!((EC2FleetCloud) c).isNoDelayProvision()) {
+            if (!cloud.isNoDelayProvision()) {
                 LOGGER.log(Level.FINE, "label [{0}]: cloud {1} does not use No Delay Provision Strategy, continuing...",
                         new Object[]{label, c.getDisplayName()});
                 continue;
@@ -71,23 +256,22 @@ public class NoDelayProvisionStrategy extends NodeProvisioner.Strategy {
 
             LOGGER.log(Level.FINE, "label [{0}]: cloud {1} can provision for this label",
                     new Object[]{label, c.getDisplayName()});
-            final Collection<NodeProvisioner.PlannedNode> plannedNodes = c.provision(cloudState, excessWorkload);
-            for (NodeProvisioner.PlannedNode pn : plannedNodes) {
-                excessWorkload -= pn.numExecutors;
-                LOGGER.log(Level.INFO, "Started provisioning {0} from {1} with {2,number,integer} "
-                                + "executors. Remaining excess workload: {3,number,#.###}",
-                        new Object[]{pn.displayName, c.name, pn.numExecutors, excessWorkload});
-            }
-            strategyState.recordPendingLaunches(plannedNodes);
+            eligible.add(cloud);
         }
+        return eligible;
+    }
 
-        if (excessWorkload > 0) {
-            LOGGER.log(Level.FINE, "Provisioning not complete, consulting remaining strategies");
-            return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+    private static boolean isSameClouds(final List<Cloud> memoClouds, final List<Cloud> clouds) {
+        if (memoClouds == null || memoClouds.size() != clouds.size()) return false;
+        for (int i = 0; i < clouds.size(); i++) {
+            if (memoClouds.get(i) != clouds.get(i)) return false;
         }
+        return true;
+    }
 
-        LOGGER.log(Level.FINE, "Provisioning completed");
-        return NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED;
+    // Visible for testing
+    protected boolean isBalancedPlacement() {
+        return "balanced".equalsIgnoreCase(SystemProperties.getString(PLACEMENT_PROPERTY, "ordered"));
     }
 
     // Visible for testing
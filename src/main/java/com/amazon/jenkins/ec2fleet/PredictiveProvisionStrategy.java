@@ -0,0 +1,147 @@
+package com.amazon.jenkins.ec2fleet;
+
+import hudson.Extension;
+import hudson.model.Label;
+import hudson.model.LoadStatistics;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of {@link NodeProvisioner.Strategy} which provisions capacity ahead of demand.
+ * <p>
+ * {@link NoDelayProvisionStrategy} provisions only current excess workload, so when traffic ramps up each new
+ * build waits full EC2 instance boot time. This strategy records demand (busy executors plus queue length) of
+ * each label on each call, forecasts demand for the next boot window with {@link DemandForecast} and provisions
+ * forecasted demand above current capacity as pre-warm capacity from {@link EC2FleetCloud}s which can serve
+ * the label. Pre-warm is bounded by cloud max size as any other provision.
+ * <p>
+ * Runs before other strategies and always consults remaining strategies, pre-warm capacity is recorded as
+ * pending launches, so next strategies count it as available. Disabled by default, see {@link #ENABLED_PROPERTY}.
+ * <p>
+ * Forecast is kept per label expression, labels are created for any expression of job, so forecast of label
+ * without demand for {@link #IDLE_EVICTION_SEC_PROPERTY} is dropped.
+ */
+@Extension(ordinal = 200)
+public class PredictiveProvisionStrategy extends NodeProvisioner.Strategy {
+
+    private static final Logger LOGGER = Logger.getLogger(PredictiveProvisionStrategy.class.getName());
+
+    /**
+     * Enable pre-warm provisioning, default false
+     */
+    static final String ENABLED_PROPERTY = PredictiveProvisionStrategy.class.getName() + ".enabled";
+    /**
+     * How far ahead demand is forecasted, should be close to time new instance needs to be online, default 300
+     */
+    static final String BOOT_WINDOW_SEC_PROPERTY = PredictiveProvisionStrategy.class.getName() + ".bootWindowSec";
+    /**
+     * Number of demand samples kept per label, default 90 (15 minutes with default provisioner interval)
+     */
+    static final String HISTORY_SIZE_PROPERTY = PredictiveProvisionStrategy.class.getName() + ".historySize";
+    /**
+     * Forecast of label without demand for this time is dropped, default 900 (same as default history)
+     */
+    static final String IDLE_EVICTION_SEC_PROPERTY = PredictiveProvisionStrategy.class.getName() + ".idleEvictionSec";
+
+    /**
+     * Strategy is applied for each label on each provisioner tick, idle forecasts are looked for not so often
+     */
+    private static final long EVICTION_CHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ConcurrentMap<String, DemandForecast> forecasts = new ConcurrentHashMap<>();
+    private volatile long lastEvictionCheckMillis;
+
+    @Override
+    public NodeProvisioner.StrategyDecision apply(final NodeProvisioner.StrategyState strategyState) {
+        if (!isEnabled()) return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+
+        final Label label = strategyState.getLabel();
+        final LoadStatistics.LoadStatisticsSnapshot snapshot = strategyState.getSnapshot();
+
+        final int demand = snapshot.getBusyExecutors() + snapshot.getQueueLength();
+        final DemandForecast forecast = forecasts.computeIfAbsent(label == null ? "" : label.getExpression(),
+                k -> new DemandForecast(Math.max(3, SystemProperties.getInteger(HISTORY_SIZE_PROPERTY, 90))));
+        final long now = currentTimeMillis();
+        forecast.record(now, demand);
+        evictIdle(now);
+
+        final double forecastedDemand = forecast.forecast(
+                TimeUnit.SECONDS.toMillis(SystemProperties.getInteger(BOOT_WINDOW_SEC_PROPERTY, 300)));
+        if (forecastedDemand < 0) {
+            LOGGER.log(Level.FINE, "label [{0}]: not enough demand history to forecast", label);
+            return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+        }
+
+        final int capacity = snapshot.getOnlineExecutors() + snapshot.getConnectingExecutors()
+                + strategyState.getPlannedCapacitySnapshot() + strategyState.getAdditionalPlannedCapacity();
+        int preWarm = (int) Math.ceil(forecastedDemand) - capacity;
+        LOGGER.log(Level.FINE, "label [{0}]: demand {1} forecasted demand {2} capacity {3}",
+                new Object[]{label, demand, forecastedDemand, capacity});
+
+        if (preWarm <= 0) {
+            return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+        }
+
+        for (final Cloud c : getClouds()) {
+            if (preWarm < 1) break;
+            if (!(c instanceof EC2FleetCloud)) continue;
+
+            final Cloud.CloudState cloudState = new Cloud.CloudState(label, strategyState.getAdditionalPlannedCapacity());
+            if (!c.canProvision(cloudState)) continue;
+
+            final Collection<NodeProvisioner.PlannedNode> plannedNodes = c.provision(cloudState, preWarm);
+            for (final NodeProvisioner.PlannedNode pn : plannedNodes) {
+                preWarm -= pn.numExecutors;
+                LOGGER.log(Level.INFO, "label [{0}]: started pre-warm provisioning {1} from {2} with {3,number,integer} "
+                                + "executors for forecasted demand {4,number,#.###}",
+                        new Object[]{label, pn.displayName, c.name, pn.numExecutors, forecastedDemand});
+            }
+            strategyState.recordPendingLaunches(plannedNodes);
+        }
+        return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+    }
+
+    private void evictIdle(final long now) {
+        if (now - lastEvictionCheckMillis < EVICTION_CHECK_INTERVAL_MILLIS) return;
+        lastEvictionCheckMillis = now;
+
+        final long idleMillis = TimeUnit.SECONDS.toMillis(SystemProperties.getInteger(IDLE_EVICTION_SEC_PROPERTY, 900));
+        forecasts.entrySet().removeIf(entry -> {
+            final boolean idle = now - entry.getValue().getLastDemandMillis() > idleMillis;
+            if (idle) LOGGER.log(Level.FINE, "label [{0}]: no demand, drop forecast", entry.getKey());
+            return idle;
+        });
+    }
+
+    // Visible for testing
+    Set<String> getForecastLabels() {
+        return forecasts.keySet();
+    }
+
+    // Visible for testing
+    protected boolean isEnabled() {
+        return SystemProperties.getBoolean(ENABLED_PROPERTY, false);
+    }
+
+    // Visible for testing
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    // Visible for testing
+    protected List<Cloud> getClouds() {
+        return Jenkins.get().clouds;
+    }
+
+}
@@ -2,6 +2,8 @@ package com.amazon.jenkins.ec2fleet;
 
 import com.amazon.jenkins.ec2fleet.aws.CloudFormationApi;
 import com.amazon.jenkins.ec2fleet.aws.EC2Api;
+import com.amazon.jenkins.ec2fleet.fleet.FleetStateCache;
+import jenkins.util.SystemProperties;
 
 /**
  * Decouple plugin code from dependencies for easy testing. We cannot just make transient fields
@@ -13,6 +15,8 @@ public class Registry {
 
     private static EC2Api ec2Api = new EC2Api();
     private static CloudFormationApi cloudFormationApi = new CloudFormationApi();
+    // incremental fleet state is optional, full poll on each update when not set
+    private static volatile FleetStateCache fleetStateCache;
 
     public static void setEc2Api(EC2Api ec2Api) {
         Registry.ec2Api = ec2Api;
@@ -30,4 +34,26 @@ public class Registry {
         Registry.cloudFormationApi = cloudFormationApi;
     }
 
+    /**
+     * @return cache created on first call when {@link FleetStateCache#ENABLED_PROPERTY} is set, <code>null</code>
+     * when incremental fleet state is disabled
+     */
+    public static FleetStateCache getFleetStateCache() {
+        FleetStateCache result = fleetStateCache;
+        if (result == null && SystemProperties.getBoolean(FleetStateCache.ENABLED_PROPERTY)) {
+            synchronized (Registry.class) {
+                result = fleetStateCache;
+                if (result == null) {
+                    result = FleetStateCache.create();
+                    fleetStateCache = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static void setFleetStateCache(FleetStateCache fleetStateCache) {
+        Registry.fleetStateCache = fleetStateCache;
+    }
+
 }
@@ -0,0 +1,206 @@
+package com.amazon.jenkins.ec2fleet;
+
+import com.amazon.jenkins.ec2fleet.aws.MetricsPluginBridge;
+import jenkins.util.SystemProperties;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Record of one {@link EC2FleetCloud#update()} cycle: duration of each phase in order of execution,
+ * time spent in Jenkins node list update under Queue lock and counts like added or terminated instances.
+ * <p>
+ * Trace is filled by thread which runs update and published to {@link Buffer} of cloud when cycle is
+ * finished, after that it's only read.
+ */
+@NotThreadSafe
+public final class SyncTrace {
+
+    /**
+     * Number of update cycle traces kept per cloud, default 50
+     */
+    static final String HISTORY_SIZE_PROPERTY = SyncTrace.class.getName() + ".historySize";
+
+    private final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final Map<String, Integer> counts = new LinkedHashMap<>();
+    @Nullable
+    private String currentPhase;
+    private long currentPhaseStartNanos;
+    private long queueLockNanos;
+    private long totalNanos = -1;
+    @Nullable
+    private String error;
+
+    /**
+     * Finish current phase if any and start new one. Phase started twice accumulates its duration.
+     *
+     * @param name phase name
+     */
+    void phase(final String name) {
+        final long now = System.nanoTime();
+        endPhase(now);
+        currentPhase = name;
+        currentPhaseStartNanos = now;
+    }
+
+    void count(final String name, final int value) {
+        counts.merge(name, value, Integer::sum);
+    }
+
+    void queueLock(final long nanos) {
+        queueLockNanos += nanos;
+    }
+
+    void finish(@Nullable final Throwable error) {
+        final long now = System.nanoTime();
+        endPhase(now);
+        currentPhase = null;
+        totalNanos = now - startNanos;
+        if (error != null) this.error = error.toString();
+    }
+
+    private void endPhase(final long now) {
+        if (currentPhase != null) phaseNanos.merge(currentPhase, now - currentPhaseStartNanos, Long::sum);
+    }
+
+    public Date getStartedAt() {
+        return new Date(startedAt);
+    }
+
+    /**
+     * @return total duration in millis, <code>-1</code> if cycle is not finished
+     */
+    public long getTotalMillis() {
+        return totalNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(totalNanos);
+    }
+
+    /**
+     * @return duration of each phase in millis in order of execution
+     */
+    public Map<String, Long> getPhaseMillis() {
+        final Map<String, Long> r = new LinkedHashMap<>();
+        for (final Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+            r.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+        }
+        return r;
+    }
+
+    public long getQueueLockMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(queueLockNanos);
+    }
+
+    public Map<String, Integer> getCounts() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @return error which failed cycle, <code>null</code> if cycle completed
+     */
+    @Nullable
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncTrace{startedAt=" + getStartedAt() + ", totalMillis=" + getTotalMillis()
+                + ", phaseMillis=" + getPhaseMillis() + ", queueLockMillis=" + getQueueLockMillis()
+                + ", counts=" + counts + (error == null ? "" : ", error=" + error) + '}';
+    }
+
+    /**
+     * Bounded in-memory history of traces, oldest trace is dropped when full.
+     * <p>
+     * When first trace is added, queue lock time and duration of last cycle are published as gauges
+     * <code>ec2-fleet.sync.&lt;cloud&gt;.*</code> of Metrics plugin if it's installed.
+     */
+    @ThreadSafe
+    public static final class Buffer {
+
+        @Nullable
+        private final String cloudName;
+        private final int capacity;
+        private final ArrayDeque<SyncTrace> traces;
+        private final AtomicBoolean metricsRegistered = new AtomicBoolean();
+
+        Buffer(final String cloudName) {
+            this(cloudName, SystemProperties.getInteger(HISTORY_SIZE_PROPERTY, 50));
+        }
+
+        /**
+         * @param cloudName cloud name for metrics, <code>null</code> to not publish metrics
+         * @param capacity  max number of traces
+         */
+        Buffer(@Nullable final String cloudName, final int capacity) {
+            this.cloudName = cloudName;
+            this.capacity = Math.max(1, capacity);
+            this.traces = new ArrayDeque<>(this.capacity);
+        }
+
+        void add(final SyncTrace trace) {
+            synchronized (this) {
+                if (traces.size() == capacity) traces.removeFirst();
+                traces.addLast(trace);
+            }
+
+            // only cloud which is updated publishes metrics, not copies created by configuration form
+            if (cloudName != null && metricsRegistered.compareAndSet(false, true)) {
+                final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+                gauges.put("queueLock.last", this::getLastQueueLockMillis);
+                gauges.put("queueLock.max", this::getMaxQueueLockMillis);
+                gauges.put("total.last", this::getLastTotalMillis);
+                MetricsPluginBridge.register("sync." + cloudName, gauges);
+            }
+        }
+
+        /**
+         * @return time under queue lock of last cycle in millis, <code>0</code> if no cycles
+         */
+        public synchronized long getLastQueueLockMillis() {
+            return traces.isEmpty() ? 0 : traces.getLast().getQueueLockMillis();
+        }
+
+        /**
+         * @return max time under queue lock of kept cycles in millis, <code>0</code> if no cycles
+         */
+        public synchronized long getMaxQueueLockMillis() {
+            long max = 0;
+            for (final SyncTrace trace : traces) max = Math.max(max, trace.getQueueLockMillis());
+            return max;
+        }
+
+        /**
+         * @return duration of last cycle in millis, <code>0</code> if no cycles
+         */
+        public synchronized long getLastTotalMillis() {
+            return traces.isEmpty() ? 0 : Math.max(0, traces.getLast().getTotalMillis());
+        }
+
+        /**
+         * @return traces, newest first
+         */
+        public synchronized List<SyncTrace> getTraces() {
+            final List<SyncTrace> r = new ArrayList<>(traces.size());
+            for (final Iterator<SyncTrace> iterator = traces.descendingIterator(); iterator.hasNext(); ) {
+                r.add(iterator.next());
+            }
+            return r;
+        }
+
+    }
+
+}
@@ -0,0 +1,358 @@
+package com.amazon.jenkins.ec2fleet;
+
+import com.amazon.jenkins.ec2fleet.aws.EC2Api;
+import com.amazon.jenkins.ec2fleet.fleet.AutoScalingGroupFleet;
+import com.amazonaws.services.ec2.AmazonEC2;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Terminate instances in background, so scale down of hundreds of idle nodes doesn't block
+ * {@link EC2FleetCloud#update()} and delay next provisioning.
+ * <p>
+ * Instances submitted by clouds with the same client, so the same credentials, region and endpoint, are
+ * coalesced into one termination request of up to {@link #BATCH_SIZE_PROPERTY} instances. Not found instances
+ * are pruned from request by {@link EC2Api#terminateInstances(AmazonEC2, Collection)}. Failed batch is retried
+ * with exponential backoff up to {@link #MAX_ATTEMPTS_PROPERTY} times, if only some instances of batch failed,
+ * like it happens for Auto Scaling Group where each instance is terminated by own call, only they are retried.
+ * <p>
+ * Each submit returns future which completes when all its instances are terminated, or exceptionally
+ * with {@link TerminationFailedException} listing instances which could not be terminated, once all its
+ * instances are done, so cloud knows which instances are still terminating and which should be retried.
+ */
+@ThreadSafe
+public final class TerminationPipeline {
+
+    /**
+     * Max number of instances terminated by one request, default 1000
+     */
+    static final String BATCH_SIZE_PROPERTY = TerminationPipeline.class.getName() + ".batchSize";
+    /**
+     * Max number of attempts to terminate batch before it's reported as failed, default 5
+     */
+    static final String MAX_ATTEMPTS_PROPERTY = TerminationPipeline.class.getName() + ".maxAttempts";
+    /**
+     * Max number of termination requests in parallel for different accounts or regions, default 2
+     */
+    static final String CONCURRENCY_PROPERTY = TerminationPipeline.class.getName() + ".concurrency";
+
+    private static final Logger LOGGER = Logger.getLogger(TerminationPipeline.class.getName());
+
+    /**
+     * Delay before flush to collect instances from other clouds synced at the same time
+     */
+    private static final long FLUSH_DELAY_MILLIS = 500;
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final TerminationPipeline INSTANCE = new TerminationPipeline(
+            createExecutor(SystemProperties.getInteger(CONCURRENCY_PROPERTY, 2)));
+
+    private final ScheduledExecutorService executor;
+    private final Map<Target, Pending> pending = new HashMap<>();
+    // time of scheduled flush, 0 if not scheduled
+    private long flushAt;
+
+    public static TerminationPipeline get() {
+        return INSTANCE;
+    }
+
+    private static ScheduledExecutorService createExecutor(final int concurrency) {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(1, concurrency),
+                // use daemon thread, so no problem when stop jenkins
+                new NamingThreadFactory(new DaemonThreadFactory(), TerminationPipeline.class.getSimpleName()));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    TerminationPipeline(final ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queue EC2 instances to terminate, never blocks on AWS call.
+     *
+     * @param ec2         client
+     * @param instanceIds instance ids
+     * @return future completed when all instances are terminated
+     */
+    public CompletableFuture<Void> terminate(final AmazonEC2 ec2, final Set<String> instanceIds) {
+        final EC2Api ec2Api = Registry.getEc2Api();
+        return submit(new Target(ids -> {
+            ec2Api.terminateInstances(ec2, ids);
+            return Collections.emptyMap();
+        }, ec2Api, ec2), instanceIds);
+    }
+
+    /**
+     * Queue Auto Scaling Group instances to terminate, never blocks on AWS call.
+     *
+     * @param fleet            fleet
+     * @param awsCredentialsId credentials
+     * @param regionName       region
+     * @param endpoint         endpoint
+     * @param instanceIds      instance ids
+     * @return future completed when all instances are terminated
+     */
+    public CompletableFuture<Void> terminateInAutoScalingGroup(
+            final AutoScalingGroupFleet fleet, final String awsCredentialsId, final String regionName,
+            @Nullable final String endpoint, final Set<String> instanceIds) {
+        return submit(new Target(ids -> fleet.terminateInstances(awsCredentialsId, regionName, endpoint, ids).getFailed(),
+                fleet, awsCredentialsId, regionName, endpoint), instanceIds);
+    }
+
+    private CompletableFuture<Void> submit(final Target target, final Set<String> instanceIds) {
+        final Submission submission = new Submission(instanceIds);
+        if (instanceIds.isEmpty()) {
+            submission.future.complete(null);
+            return submission.future;
+        }
+
+        synchronized (this) {
+            final Pending targetPending = pending.computeIfAbsent(target, k -> new Pending());
+            for (final String instanceId : instanceIds) {
+                targetPending.instanceIds.computeIfAbsent(instanceId, k -> new ArrayList<>()).add(submission);
+            }
+            schedule(currentTimeMillis() + FLUSH_DELAY_MILLIS);
+        }
+        return submission.future;
+    }
+
+    /**
+     * Start batch for each target which is not running or backed off.
+     */
+    // Visible for testing
+    void flush() {
+        final int batchSize = Math.max(1, SystemProperties.getInteger(BATCH_SIZE_PROPERTY, 1000));
+        final List<Runnable> batches = new ArrayList<>();
+        synchronized (this) {
+            flushAt = 0;
+            final long now = currentTimeMillis();
+            for (final Map.Entry<Target, Pending> entry : pending.entrySet()) {
+                final Pending targetPending = entry.getValue();
+                if (targetPending.running || targetPending.notBefore > now || targetPending.instanceIds.isEmpty()) {
+                    continue;
+                }
+
+                final Map<String, List<Submission>> batch = new LinkedHashMap<>();
+                for (final Iterator<Map.Entry<String, List<Submission>>> iterator = targetPending.instanceIds.entrySet().iterator();
+                     iterator.hasNext() && batch.size() < batchSize; ) {
+                    final Map.Entry<String, List<Submission>> instance = iterator.next();
+                    batch.put(instance.getKey(), instance.getValue());
+                    iterator.remove();
+                }
+                targetPending.running = true;
+                final Target target = entry.getKey();
+                batches.add(() -> run(target, batch));
+            }
+        }
+        for (final Runnable batch : batches) executor.execute(batch);
+    }
+
+    private void run(final Target target, final Map<String, List<Submission>> batch) {
+        Map<String, String> errors;
+        Exception error = null;
+        try {
+            errors = target.terminator.apply(new LinkedHashSet<>(batch.keySet()));
+        } catch (final Exception e) {
+            error = e;
+            errors = new HashMap<>();
+            for (final String instanceId : batch.keySet()) errors.put(instanceId, String.valueOf(e.getMessage()));
+        }
+
+        final Map<String, List<Submission>> succeeded = new LinkedHashMap<>(batch);
+        final Map<String, List<Submission>> failed = new LinkedHashMap<>();
+        for (final String instanceId : errors.keySet()) {
+            final List<Submission> submissions = succeeded.remove(instanceId);
+            if (submissions != null) failed.put(instanceId, submissions);
+        }
+
+        boolean gaveUp = false;
+        synchronized (this) {
+            final Pending targetPending = pending.get(target);
+            targetPending.running = false;
+            if (failed.isEmpty()) {
+                targetPending.failures = 0;
+                targetPending.notBefore = 0;
+            } else if (++targetPending.failures >= SystemProperties.getInteger(MAX_ATTEMPTS_PROPERTY, 5)) {
+                LOGGER.log(Level.WARNING, String.format("Failed to terminate instances %s", errors), error);
+                targetPending.failures = 0;
+                targetPending.notBefore = 0;
+                gaveUp = true;
+            } else {
+                final long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << (targetPending.failures - 1));
+                LOGGER.info(String.format("Failed to terminate instances %s, retry in %s ms", errors, backoff));
+                for (final Map.Entry<String, List<Submission>> instance : failed.entrySet()) {
+                    targetPending.instanceIds.computeIfAbsent(instance.getKey(), k -> new ArrayList<>()).addAll(instance.getValue());
+                }
+                targetPending.notBefore = currentTimeMillis() + backoff;
+            }
+
+            if (targetPending.instanceIds.isEmpty()) {
+                pending.remove(target);
+            } else {
+                schedule(Math.max(targetPending.notBefore, currentTimeMillis()));
+            }
+        }
+
+        // complete out of lock, as callbacks are executed by completing thread
+        complete(succeeded, null);
+        if (gaveUp) {
+            complete(failed, error != null ? error : new IllegalStateException("Failed to terminate instances " + errors));
+        }
+    }
+
+    private static void complete(final Map<String, List<Submission>> batch, @Nullable final Exception error) {
+        for (final Map.Entry<String, List<Submission>> instance : batch.entrySet()) {
+            for (final Submission submission : instance.getValue()) {
+                submission.done(instance.getKey(), error);
+            }
+        }
+    }
+
+    private void schedule(final long at) {
+        if (flushAt != 0 && flushAt <= at) return;
+        flushAt = at;
+        executor.schedule(this::flushSafely, Math.max(0, at - currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (final Throwable t) {
+            LOGGER.log(Level.WARNING, "Failed to start termination", t);
+        }
+    }
+
+    /**
+     * @return number of instances waiting for termination, not including running batches
+     */
+    public synchronized int getPendingCount() {
+        int count = 0;
+        for (final Pending targetPending : pending.values()) count += targetPending.instanceIds.size();
+        return count;
+    }
+
+    // Visible for testing
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Instances of submission which could not be terminated after {@link #MAX_ATTEMPTS_PROPERTY} attempts,
+     * other instances of submission are terminated.
+     */
+    public static final class TerminationFailedException extends RuntimeException {
+
+        private final Set<String> instanceIds;
+
+        private TerminationFailedException(final Set<String> instanceIds, final Throwable cause) {
+            super("Failed to terminate instances " + instanceIds, cause);
+            this.instanceIds = Collections.unmodifiableSet(instanceIds);
+        }
+
+        public Set<String> getInstanceIds() {
+            return instanceIds;
+        }
+
+    }
+
+    private static final class Submission {
+
+        private final Set<String> remaining;
+        private final Set<String> failed = new LinkedHashSet<>();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private Exception lastError;
+
+        private Submission(final Set<String> instanceIds) {
+            this.remaining = new LinkedHashSet<>(instanceIds);
+        }
+
+        /**
+         * Complete future when it was last instance of submission, exceptionally if any instance failed.
+         *
+         * @param error error if instance failed, <code>null</code> if terminated
+         */
+        private void done(final String instanceId, @Nullable final Exception error) {
+            final TerminationFailedException failure;
+            synchronized (this) {
+                if (!remaining.remove(instanceId)) return;
+                if (error != null) {
+                    failed.add(instanceId);
+                    lastError = error;
+                }
+                if (!remaining.isEmpty()) return;
+                failure = failed.isEmpty() ? null : new TerminationFailedException(new LinkedHashSet<>(failed), lastError);
+            }
+
+            // complete out of lock, as callbacks are executed by completing thread
+            if (failure == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+
+    }
+
+    private static final class Pending {
+
+        private final Map<String, List<Submission>> instanceIds = new LinkedHashMap<>();
+        private boolean running;
+        private int failures;
+        private long notBefore;
+
+    }
+
+    /**
+     * Instances of one batch should be terminated with the same client, identified by <code>key</code>.
+     */
+    private static final class Target {
+
+        // returns error by instance id which failed to terminate
+        private final Function<Collection<String>, Map<String, String>> terminator;
+        private final List<Object> key;
+
+        private Target(final Function<Collection<String>, Map<String, String>> terminator, final Object... key) {
+            this.terminator = terminator;
+            this.key = Arrays.asList(key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Target target = (Target) o;
+            return key.equals(target.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+    }
+
+}
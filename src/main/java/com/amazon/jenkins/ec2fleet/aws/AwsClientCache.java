@@ -0,0 +1,166 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.amazonaws.AmazonWebServiceClient;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import hudson.Extension;
+import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of AWS SDK clients shared by all clouds and update cycles. Creating client means new connection pool,
+ * credentials lookup and proxy resolution, so instead of doing it for each call we keep client per
+ * client type, credentials, region and endpoint.
+ * <p>
+ * Client is evicted when not used for {@link #EXPIRE_MINUTES_PROPERTY} minutes, and whole cache is invalidated
+ * when Jenkins proxy configuration or system credentials are saved, so next call picks up new settings.
+ * Evicted client is shut down with delay to let in-flight calls complete.
+ * <p>
+ * Clients are created with provided factory, so {@link EC2Api#connect(String, String, String)} and similar
+ * methods stay the only place which knows how to build them.
+ */
+@ThreadSafe
+public final class AwsClientCache {
+
+    private static final Logger LOGGER = Logger.getLogger(AwsClientCache.class.getName());
+
+    /**
+     * Minutes after last access when client is evicted, default 30
+     */
+    public static final String EXPIRE_MINUTES_PROPERTY = AwsClientCache.class.getName() + ".expireMinutes";
+
+    /**
+     * Max number of cached clients, default 200
+     */
+    public static final String MAX_SIZE_PROPERTY = AwsClientCache.class.getName() + ".maxSize";
+
+    private static final long SHUTDOWN_DELAY_SEC = 60;
+
+    private static final Cache<Key, Object> CLIENTS = CacheBuilder.newBuilder()
+            .expireAfterAccess(SystemProperties.getLong(EXPIRE_MINUTES_PROPERTY, 30L), TimeUnit.MINUTES)
+            .maximumSize(SystemProperties.getInteger(MAX_SIZE_PROPERTY, 200))
+            .removalListener(AwsClientCache::onRemoval)
+            .build();
+
+    /**
+     * Get cached client or create new one with <code>factory</code>.
+     *
+     * @param type             client type, part of cache key
+     * @param awsCredentialsId credentials id, could be <code>null</code>
+     * @param regionName       region, could be <code>null</code>
+     * @param endpoint         custom endpoint, could be <code>null</code>
+     * @param factory          creates new client when no cached one
+     * @param <T>              client type
+     * @return client
+     */
+    @Nonnull
+    public static <T> T get(
+            final Class<T> type, @Nullable final String awsCredentialsId, @Nullable final String regionName,
+            @Nullable final String endpoint, final Supplier<? extends T> factory) {
+        final Key key = new Key(type, awsCredentialsId, regionName, endpoint);
+        try {
+            return type.cast(CLIENTS.get(key, factory::get));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Drop all cached clients, next call will create new.
+     */
+    public static void invalidateAll() {
+        CLIENTS.invalidateAll();
+    }
+
+    @VisibleForTesting
+    static long size() {
+        CLIENTS.cleanUp();
+        return CLIENTS.size();
+    }
+
+    private static void onRemoval(final RemovalNotification<Key, Object> notification) {
+        final Object client = notification.getValue();
+        if (!(client instanceof AmazonWebServiceClient)) return;
+
+        LOGGER.log(Level.FINE, "Evict AWS client {0}, cause {1}", new Object[]{notification.getKey(), notification.getCause()});
+        // client could be in use by sync which got it just before eviction
+        Timer.get().schedule(((AmazonWebServiceClient) client)::shutdown, SHUTDOWN_DELAY_SEC, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Invalidate cache when proxy or credentials are changed.
+     */
+    @Extension
+    public static class ConfigurationChangeListener extends SaveableListener {
+
+        @Override
+        public void onChange(final Saveable o, final XmlFile file) {
+            if (o instanceof ProxyConfiguration || o instanceof SystemCredentialsProvider) {
+                LOGGER.fine("Proxy or credentials configuration changed, invalidate AWS clients");
+                invalidateAll();
+            }
+        }
+
+    }
+
+    private static final class Key {
+
+        private final Class<?> type;
+        private final String awsCredentialsId;
+        private final String regionName;
+        private final String endpoint;
+
+        private Key(final Class<?> type, final String awsCredentialsId, final String regionName, final String endpoint) {
+            this.type = type;
+            this.awsCredentialsId = awsCredentialsId;
+            this.regionName = regionName;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return type.equals(key.type) &&
+                    Objects.equals(awsCredentialsId, key.awsCredentialsId) &&
+                    Objects.equals(regionName, key.regionName) &&
+                    Objects.equals(endpoint, key.endpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, awsCredentialsId, regionName, endpoint);
+        }
+
+        @Override
+        public String toString() {
+            return type.getSimpleName() + "{credentials: " + awsCredentialsId + ", region: " + regionName + ", endpoint: " + endpoint + "}";
+        }
+
+    }
+
+    private AwsClientCache() {
+        throw new UnsupportedOperationException("util class");
+    }
+
+}
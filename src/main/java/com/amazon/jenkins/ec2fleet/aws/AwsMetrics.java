@@ -0,0 +1,406 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryUtils;
+import net.sf.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Per cloud and per operation metrics of AWS calls: call count, latency histogram, retries, throttled attempts
+ * and error codes. Recorded by {@link #REQUEST_HANDLER} which is added to each AWS client created by plugin.
+ * <p>
+ * Clients are shared by clouds with the same credentials, region and endpoint, see {@link AwsClientCache}, so
+ * call is attributed to cloud which runs it in current thread, see {@link #callAs(String, Supplier)}.
+ * Call made for batch of clouds, like describe of fleets of several clouds, is recorded in stats of each
+ * cloud of batch, see {@link #callAs(Collection, Supplier)}.
+ * Calls made outside of cloud context are recorded under empty cloud name.
+ * <p>
+ * Metrics are available as JSON on cloud page and as gauges of Jenkins Metrics plugin if it's installed.
+ */
+@ThreadSafe
+public final class AwsMetrics {
+
+    /**
+     * Upper bounds of latency histogram buckets in millis, last bucket is unbounded
+     */
+    static final long[] LATENCY_BUCKETS_MILLIS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private static final HandlerContextKey<Long> START_NANOS = new HandlerContextKey<>("ec2-fleet.startNanos");
+    private static final HandlerContextKey<List<String>> CLOUD_NAMES = new HandlerContextKey<>("ec2-fleet.cloudNames");
+    private static final HandlerContextKey<AtomicInteger> ATTEMPTS = new HandlerContextKey<>("ec2-fleet.attempts");
+
+    private static final ThreadLocal<List<String>> CURRENT_CLOUDS = new ThreadLocal<>();
+
+    // cloud name -> operation -> stats
+    private static final ConcurrentMap<String, ConcurrentMap<String, OperationStats>> STATS = new ConcurrentHashMap<>();
+
+    /**
+     * Add to AWS client with {@link com.amazonaws.AmazonWebServiceClient#addRequestHandler(RequestHandler2)}
+     */
+    public static final RequestHandler2 REQUEST_HANDLER = new RequestHandler2() {
+
+        @Override
+        public void beforeRequest(final Request<?> request) {
+            request.addHandlerContext(START_NANOS, System.nanoTime());
+            request.addHandlerContext(CLOUD_NAMES, getCurrentClouds());
+            request.addHandlerContext(ATTEMPTS, new AtomicInteger());
+        }
+
+        @Override
+        public void beforeAttempt(final HandlerBeforeAttemptContext context) {
+            final AtomicInteger attempts = context.getRequest().getHandlerContext(ATTEMPTS);
+            if (attempts != null) attempts.incrementAndGet();
+        }
+
+        @Override
+        public void afterAttempt(final HandlerAfterAttemptContext context) {
+            final Exception exception = context.getException();
+            if (exception instanceof AmazonServiceException
+                    && RetryUtils.isThrottlingException((AmazonServiceException) exception)) {
+                for (final OperationStats stats : statsOf(context.getRequest())) stats.recordThrottled();
+            }
+        }
+
+        @Override
+        public void afterResponse(final Request<?> request, final Response<?> response) {
+            for (final OperationStats stats : statsOf(request)) stats.record(elapsedMillis(request), retries(request), null);
+        }
+
+        @Override
+        public void afterError(final Request<?> request, final Response<?> response, final Exception e) {
+            final String errorCode = e instanceof AmazonServiceException
+                    ? ((AmazonServiceException) e).getErrorCode() : e.getClass().getSimpleName();
+            for (final OperationStats stats : statsOf(request)) {
+                stats.record(elapsedMillis(request), retries(request), String.valueOf(errorCode));
+            }
+        }
+
+    };
+
+    private AwsMetrics() {
+        throw new UnsupportedOperationException("util class");
+    }
+
+    /**
+     * Run <code>call</code> attributing AWS calls made by it in current thread to cloud.
+     *
+     * @param cloudName cloud name
+     * @param call      call
+     * @param <T>       result type
+     * @return result of call
+     */
+    public static <T> T callAs(@Nullable final String cloudName, final Supplier<T> call) {
+        return callAs(cloudName == null ? null : Collections.singletonList(cloudName), call);
+    }
+
+    /**
+     * Run <code>call</code> attributing AWS calls made by it in current thread to each of clouds.
+     *
+     * @param cloudNames cloud names
+     * @param call       call
+     * @param <T>        result type
+     * @return result of call
+     */
+    public static <T> T callAs(@Nullable final Collection<String> cloudNames, final Supplier<T> call) {
+        final List<String> previous = CURRENT_CLOUDS.get();
+        if (cloudNames == null || cloudNames.isEmpty()) {
+            CURRENT_CLOUDS.remove();
+        } else {
+            CURRENT_CLOUDS.set(Collections.unmodifiableList(new ArrayList<>(cloudNames)));
+        }
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT_CLOUDS.remove();
+            } else {
+                CURRENT_CLOUDS.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Wrap task which is executed in other thread, so its AWS calls are attributed to cloud of current thread.
+     *
+     * @param task task
+     * @param <T>  result type
+     * @return wrapped task
+     */
+    public static <T> Supplier<T> propagate(final Supplier<T> task) {
+        final List<String> cloudNames = CURRENT_CLOUDS.get();
+        if (cloudNames == null) return task;
+        return () -> callAs(cloudNames, task);
+    }
+
+    /**
+     * Same as {@link #propagate(Supplier)} for task without result.
+     *
+     * @param task task
+     * @return wrapped task
+     */
+    public static Runnable propagate(final Runnable task) {
+        final List<String> cloudNames = CURRENT_CLOUDS.get();
+        if (cloudNames == null) return task;
+        return () -> callAs(cloudNames, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return cloud names of current thread, one empty name if not set
+     */
+    @Nonnull
+    static List<String> getCurrentClouds() {
+        final List<String> cloudNames = CURRENT_CLOUDS.get();
+        return cloudNames == null ? Collections.singletonList("") : cloudNames;
+    }
+
+    /**
+     * @param cloudName cloud name
+     * @return stats by operation name, like <code>DescribeInstances</code>
+     */
+    public static Map<String, OperationStats> getStats(final String cloudName) {
+        final Map<String, OperationStats> stats = STATS.get(cloudName);
+        return stats == null ? Collections.<String, OperationStats>emptyMap() : Collections.unmodifiableMap(new TreeMap<>(stats));
+    }
+
+    /**
+     * @param cloudName cloud name
+     * @return stats of cloud as JSON object by operation name
+     */
+    public static JSONObject toJson(final String cloudName) {
+        final JSONObject operations = new JSONObject();
+        for (final Map.Entry<String, OperationStats> entry : getStats(cloudName).entrySet()) {
+            operations.put(entry.getKey(), entry.getValue().toJson());
+        }
+        final JSONObject json = new JSONObject();
+        json.put("cloud", cloudName);
+        json.put("operations", operations);
+        return json;
+    }
+
+    /**
+     * Drop stats of clouds which are not configured anymore, with their Metrics plugin gauges.
+     *
+     * @param cloudNames names of existent clouds
+     */
+    public static void retainClouds(final Set<String> cloudNames) {
+        final Iterator<Map.Entry<String, ConcurrentMap<String, OperationStats>>> iterator = STATS.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, ConcurrentMap<String, OperationStats>> entry = iterator.next();
+            if (entry.getKey().isEmpty() || cloudNames.contains(entry.getKey())) continue;
+            iterator.remove();
+            for (final String operation : entry.getValue().keySet()) {
+                MetricsPluginBridge.unregister(entry.getKey(), operation);
+            }
+        }
+    }
+
+    // Visible for testing
+    static void reset() {
+        STATS.clear();
+    }
+
+    // Visible for testing
+    static OperationStats getOrCreateStats(final String cloudName, final String operation) {
+        return STATS.computeIfAbsent(cloudName, k -> new ConcurrentHashMap<>()).computeIfAbsent(operation, k -> {
+            final OperationStats stats = new OperationStats();
+            MetricsPluginBridge.register(cloudName, operation, stats);
+            return stats;
+        });
+    }
+
+    /**
+     * Record time spent waiting for {@link AwsRateLimiter} permit before attempt.
+     *
+     * @param request request
+     * @param nanos   wait time
+     */
+    static void recordPermitWait(final Request<?> request, final long nanos) {
+        for (final OperationStats stats : statsOf(request)) stats.recordPermitWait(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    private static List<OperationStats> statsOf(final Request<?> request) {
+        List<String> cloudNames = request.getHandlerContext(CLOUD_NAMES);
+        if (cloudNames == null) cloudNames = Collections.singletonList("");
+        final String operation = getOperation(request.getOriginalRequest());
+        final List<OperationStats> result = new ArrayList<>(cloudNames.size());
+        for (final String cloudName : cloudNames) result.add(getOrCreateStats(cloudName, operation));
+        return result;
+    }
+
+    // Visible for testing
+    static String getOperation(@Nullable final AmazonWebServiceRequest request) {
+        if (request == null) return "Unknown";
+        final String name = request.getClass().getSimpleName();
+        return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+    }
+
+    private static long elapsedMillis(final Request<?> request) {
+        final Long startNanos = request.getHandlerContext(START_NANOS);
+        return startNanos == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static int retries(final Request<?> request) {
+        final AtomicInteger attempts = request.getHandlerContext(ATTEMPTS);
+        return attempts == null ? 0 : Math.max(0, attempts.get() - 1);
+    }
+
+    /**
+     * Stats of one operation of one cloud.
+     */
+    public static final class OperationStats {
+
+        private long count;
+        private long errors;
+        private long retries;
+        private long throttled;
+        private long maxLatencyMillis;
+        private long totalLatencyMillis;
+        private long permitWaits;
+        private long totalPermitWaitMillis;
+        private long maxPermitWaitMillis;
+        private final long[] latencyBuckets = new long[LATENCY_BUCKETS_MILLIS.length + 1];
+        private final Map<String, Long> errorCodes = new TreeMap<>();
+
+        synchronized void record(final long latencyMillis, final int retries, @Nullable final String errorCode) {
+            count++;
+            this.retries += retries;
+            totalLatencyMillis += latencyMillis;
+            maxLatencyMillis = Math.max(maxLatencyMillis, latencyMillis);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS_MILLIS.length && latencyMillis > LATENCY_BUCKETS_MILLIS[bucket]) bucket++;
+            latencyBuckets[bucket]++;
+            if (errorCode != null) {
+                errors++;
+                errorCodes.merge(errorCode, 1L, Long::sum);
+            }
+        }
+
+        synchronized void recordThrottled() {
+            throttled++;
+        }
+
+        synchronized void recordPermitWait(final long millis) {
+            permitWaits++;
+            totalPermitWaitMillis += millis;
+            maxPermitWaitMillis = Math.max(maxPermitWaitMillis, millis);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getErrors() {
+            return errors;
+        }
+
+        public synchronized long getRetries() {
+            return retries;
+        }
+
+        /**
+         * @return number of attempts rejected by AWS throttling, each retry counts
+         */
+        public synchronized long getThrottled() {
+            return throttled;
+        }
+
+        /**
+         * @return number of attempts which waited for {@link AwsRateLimiter} permit
+         */
+        public synchronized long getPermitWaits() {
+            return permitWaits;
+        }
+
+        public synchronized long getTotalPermitWaitMillis() {
+            return totalPermitWaitMillis;
+        }
+
+        public synchronized long getMaxPermitWaitMillis() {
+            return maxPermitWaitMillis;
+        }
+
+        public synchronized long getAverageLatencyMillis() {
+            return count == 0 ? 0 : totalLatencyMillis / count;
+        }
+
+        public synchronized long getMaxLatencyMillis() {
+            return maxLatencyMillis;
+        }
+
+        /**
+         * @param percentile from 0 to 1
+         * @return upper bound of histogram bucket where percentile falls, max latency for last bucket
+         */
+        public synchronized long getLatencyPercentileMillis(final double percentile) {
+            if (count == 0) return 0;
+            final long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+                seen += latencyBuckets[i];
+                if (seen >= rank) return Math.min(LATENCY_BUCKETS_MILLIS[i], maxLatencyMillis);
+            }
+            return maxLatencyMillis;
+        }
+
+        public synchronized Map<String, Long> getErrorCodes() {
+            return Collections.unmodifiableMap(new TreeMap<>(errorCodes));
+        }
+
+        synchronized JSONObject toJson() {
+            final JSONObject histogram = new JSONObject();
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                histogram.put(i < LATENCY_BUCKETS_MILLIS.length ? "le" + LATENCY_BUCKETS_MILLIS[i] : "inf", latencyBuckets[i]);
+            }
+            final JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("errors", errors);
+            json.put("retries", retries);
+            json.put("throttled", throttled);
+            json.put("permitWaits", permitWaits);
+            json.put("totalPermitWaitMillis", totalPermitWaitMillis);
+            json.put("maxPermitWaitMillis", maxPermitWaitMillis);
+            json.put("averageLatencyMillis", getAverageLatencyMillis());
+            json.put("p50LatencyMillis", getLatencyPercentileMillis(0.5));
+            json.put("p99LatencyMillis", getLatencyPercentileMillis(0.99));
+            json.put("maxLatencyMillis", maxLatencyMillis);
+            json.put("latencyHistogramMillis", histogram);
+            json.put("errorCodes", errorCodes);
+            return json;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "OperationStats{count=" + count + ", errors=" + errors + ", retries=" + retries
+                    + ", throttled=" + throttled + ", averageLatencyMillis=" + getAverageLatencyMillis()
+                    + ", maxLatencyMillis=" + maxLatencyMillis + '}';
+        }
+
+    }
+
+}
@@ -86,7 +86,7 @@ public class AwsPermissionChecker {
     }
 
     private List<String> getMissingPermissionsForASG() {
-        final AmazonAutoScalingClient asgClient = new AutoScalingGroupFleet().createClient(awsCrendentialsId, regionName, endpoint);
+        final AmazonAutoScalingClient asgClient = new AutoScalingGroupFleet().getClient(awsCrendentialsId, regionName, endpoint);
         List<String> missingAsgPermissions = new ArrayList<>();
         if(!hasDescribeAutoScalingGroupsPermission(asgClient)) {
             missingAsgPermissions.add(FleetAPI.DescribeAutoScalingGroups.name());
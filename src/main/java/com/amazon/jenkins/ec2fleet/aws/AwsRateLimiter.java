@@ -0,0 +1,183 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import jenkins.util.SystemProperties;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Client side token bucket rate limit of AWS calls shared by all clouds and periodic tasks using the same
+ * credentials, region, endpoint and AWS service, so many clouds of one account don't exceed AWS API rate
+ * and get throttled, with retries making it worse.
+ * <p>
+ * Each attempt, including SDK retries, takes a permit. Observational calls (<code>Describe*</code>,
+ * <code>List*</code>, <code>Get*</code>) take permit only when more than {@link #MUTATING_RESERVE_PROPERTY}
+ * permits are available, so scale up and terminate calls always have priority over polling. Caller thread
+ * waits for permit, wait time is recorded in {@link AwsMetrics}.
+ */
+@ThreadSafe
+public final class AwsRateLimiter {
+
+    /**
+     * Permits added to each bucket per second, <code>0</code> to disable limit, default 10
+     */
+    static final String PERMITS_PER_SECOND_PROPERTY = AwsRateLimiter.class.getName() + ".permitsPerSecond";
+    /**
+     * Max permits accumulated by idle bucket, default 20
+     */
+    static final String BURST_PROPERTY = AwsRateLimiter.class.getName() + ".burst";
+    /**
+     * Permits kept for mutating calls, default 5
+     */
+    static final String MUTATING_RESERVE_PROPERTY = AwsRateLimiter.class.getName() + ".mutatingReserve";
+
+    /**
+     * Max single sleep, so waiting thread rechecks bucket which could be refilled for higher priority call
+     */
+    private static final long MAX_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final ConcurrentMap<Key, TokenBucket> BUCKETS = new ConcurrentHashMap<>();
+
+    private AwsRateLimiter() {
+        throw new UnsupportedOperationException("util class");
+    }
+
+    /**
+     * Create handler to add to client with {@link com.amazonaws.AmazonWebServiceClient#addRequestHandler(RequestHandler2)}
+     * after {@link AwsMetrics#REQUEST_HANDLER}.
+     *
+     * @param awsCredentialsId credentials of client
+     * @param regionName       region of client
+     * @param endpoint         custom endpoint of client
+     * @return handler
+     */
+    public static RequestHandler2 handler(
+            @Nullable final String awsCredentialsId, @Nullable final String regionName, @Nullable final String endpoint) {
+        return new RequestHandler2() {
+            @Override
+            public void beforeAttempt(final HandlerBeforeAttemptContext context) {
+                final Request<?> request = context.getRequest();
+                final int permitsPerSecond = SystemProperties.getInteger(PERMITS_PER_SECOND_PROPERTY, 10);
+                if (permitsPerSecond <= 0) return;
+
+                final TokenBucket bucket = BUCKETS.computeIfAbsent(
+                        new Key(awsCredentialsId, regionName, endpoint, request.getServiceName()),
+                        k -> new TokenBucket(permitsPerSecond, SystemProperties.getInteger(BURST_PROPERTY, 20),
+                                SystemProperties.getInteger(MUTATING_RESERVE_PROPERTY, 5), System::nanoTime));
+                final long waitedNanos = acquire(bucket, isMutating(AwsMetrics.getOperation(request.getOriginalRequest())));
+                if (waitedNanos > 0) AwsMetrics.recordPermitWait(request, waitedNanos);
+            }
+        };
+    }
+
+    /**
+     * @return nanos spent waiting for permit
+     */
+    private static long acquire(final TokenBucket bucket, final boolean mutating) {
+        long waitNanos = bucket.tryAcquire(mutating);
+        if (waitNanos == 0) return 0;
+
+        final long start = System.nanoTime();
+        do {
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, MAX_SLEEP_NANOS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AbortedException("Interrupted while waiting for AWS call permit", e);
+            }
+        } while ((waitNanos = bucket.tryAcquire(mutating)) > 0);
+        return System.nanoTime() - start;
+    }
+
+    static boolean isMutating(final String operation) {
+        return !(operation.startsWith("Describe") || operation.startsWith("List") || operation.startsWith("Get"));
+    }
+
+    // Visible for testing
+    static void reset() {
+        BUCKETS.clear();
+    }
+
+    /**
+     * Token bucket which lets mutating calls use reserved permits.
+     */
+    @ThreadSafe
+    static final class TokenBucket {
+
+        private final double nanosPerPermit;
+        private final int burst;
+        private final int mutatingReserve;
+        private final LongSupplier nanoTime;
+        private double permits;
+        private long lastRefillNanos;
+
+        TokenBucket(final int permitsPerSecond, final int burst, final int mutatingReserve, final LongSupplier nanoTime) {
+            this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / (double) permitsPerSecond;
+            this.burst = Math.max(1, burst);
+            this.mutatingReserve = Math.max(0, Math.min(mutatingReserve, this.burst - 1));
+            this.nanoTime = nanoTime;
+            this.permits = this.burst;
+            this.lastRefillNanos = nanoTime.getAsLong();
+        }
+
+        /**
+         * @param mutating if call could use reserved permits
+         * @return <code>0</code> if permit is taken, otherwise estimated nanos till permit is available
+         */
+        synchronized long tryAcquire(final boolean mutating) {
+            final long now = nanoTime.getAsLong();
+            permits = Math.min(burst, permits + (now - lastRefillNanos) / nanosPerPermit);
+            lastRefillNanos = now;
+
+            final double required = mutating ? 1 : 1 + mutatingReserve;
+            if (permits >= required) {
+                permits -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((required - permits) * nanosPerPermit));
+        }
+
+    }
+
+    private static final class Key {
+
+        private final String awsCredentialsId;
+        private final String regionName;
+        private final String endpoint;
+        private final String serviceName;
+
+        private Key(final String awsCredentialsId, final String regionName, final String endpoint, final String serviceName) {
+            this.awsCredentialsId = awsCredentialsId;
+            this.regionName = regionName;
+            this.endpoint = endpoint;
+            this.serviceName = serviceName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(awsCredentialsId, key.awsCredentialsId) &&
+                    Objects.equals(regionName, key.regionName) &&
+                    Objects.equals(endpoint, key.endpoint) &&
+                    Objects.equals(serviceName, key.serviceName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(awsCredentialsId, regionName, endpoint, serviceName);
+        }
+
+    }
+
+}
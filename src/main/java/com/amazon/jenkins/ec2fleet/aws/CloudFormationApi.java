@@ -27,7 +27,15 @@ import java.util.Map;
 
 public class CloudFormationApi {
 
+    /**
+     * Get cached CloudFormation client, see {@link AwsClientCache}.
+     */
     public AmazonCloudFormation connect(final String awsCredentialsId, final String regionName, final String endpoint) {
+        return AwsClientCache.get(AmazonCloudFormation.class, awsCredentialsId, regionName, endpoint,
+                () -> createClient(awsCredentialsId, regionName, endpoint));
+    }
+
+    private AmazonCloudFormation createClient(final String awsCredentialsId, final String regionName, final String endpoint) {
         final ClientConfiguration clientConfiguration = AWSUtils.getClientConfiguration(endpoint);
         final AmazonWebServicesCredentials credentials = AWSCredentialsHelper.getCredentials(awsCredentialsId, Jenkins.get());
         final AmazonCloudFormation client =
@@ -37,6 +45,8 @@ public class CloudFormationApi {
 
         final String effectiveEndpoint = getEndpoint(regionName, endpoint);
         if (effectiveEndpoint != null) client.setEndpoint(effectiveEndpoint);
+        client.addRequestHandler(AwsMetrics.REQUEST_HANDLER);
+        client.addRequestHandler(AwsRateLimiter.handler(awsCredentialsId, regionName, endpoint));
         return client;
     }
 
@@ -64,15 +74,15 @@ public class CloudFormationApi {
 
     public void create(
             final AmazonCloudFormation client, final String fleetName, final String keyName, final String parametersString) {
-        final EC2FleetLabelParameters parameters = new EC2FleetLabelParameters(parametersString);
+        final EC2FleetLabelParameters parameters = EC2FleetLabelParameters.parse(parametersString);
 
         try {
-            final String type = parameters.getOrDefault("type", "ec2-spot-fleet");
-            final String imageId = parameters.get("imageId"); //"ami-0080e4c5bc078760e";
-            final int maxSize = parameters.getIntOrDefault("maxSize", 10);
-            final int minSize = parameters.getIntOrDefault("minSize", 0);
-            final String instanceType = parameters.getOrDefault("instanceType", "m4.large");
-            final String spotPrice = parameters.getOrDefault("spotPrice", ""); // "0.04"
+            final String type = parameters.getTypeOrDefault("ec2-spot-fleet");
+            final String imageId = parameters.getImageId(); //"ami-0080e4c5bc078760e";
+            final int maxSize = parameters.getMaxSizeOrDefault(10);
+            final int minSize = parameters.getMinSizeOrDefault(0);
+            final String instanceType = parameters.getInstanceTypeOrDefault("m4.large");
+            final String spotPrice = parameters.getSpotPriceOrDefault(""); // "0.04"
 
             final String template = "/com/amazon/jenkins/ec2fleet/" + (type.equals("asg") ? "auto-scaling-group.yml" : "ec2-spot-fleet.yml");
             client.createStack(
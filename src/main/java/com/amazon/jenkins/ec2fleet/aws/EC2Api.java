@@ -16,7 +16,12 @@ import com.amazonaws.services.ec2.model.Tag;
 import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
 import com.cloudbees.jenkins.plugins.awscredentials.AWSCredentialsHelper;
 import com.cloudbees.jenkins.plugins.awscredentials.AmazonWebServicesCredentials;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.apache.commons.lang.StringUtils;
 
 import javax.annotation.Nullable;
@@ -26,9 +31,19 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,6 +62,24 @@ public class EC2Api {
 
     private static final int BATCH_SIZE = 900;
 
+    /**
+     * Max number of describe instances batches executed in parallel, default 4
+     */
+    public static final String DESCRIBE_CONCURRENCY_PROPERTY = EC2Api.class.getName() + ".describeConcurrency";
+
+    private static final ExecutorService DESCRIBE_EXECUTOR = createDescribeExecutor(
+            SystemProperties.getInteger(DESCRIBE_CONCURRENCY_PROPERTY, 4));
+
+    private static ExecutorService createDescribeExecutor(final int concurrency) {
+        final int size = Math.max(1, concurrency);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                // use daemon thread, so no problem when stop jenkins
+                new NamingThreadFactory(new DaemonThreadFactory(), EC2Api.class.getSimpleName() + ".describeInstances"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private static final String NOT_FOUND_ERROR_CODE = "InvalidInstanceID.NotFound";
     private static final Pattern INSTANCE_ID_PATTERN = Pattern.compile("(i-[0-9a-zA-Z]+)");
 
@@ -61,39 +94,131 @@ public class EC2Api {
         return instanceIds;
     }
 
+    /**
+     * Minimal time between describe calls for the same instance already known as running, default 120 sec.
+     * Running instance with assigned address doesn't change address or type, so plugin doesn't need to describe
+     * it each update cycle.
+     */
+    public static final String RUNNING_INSTANCE_REFRESH_SEC_PROPERTY = EC2Api.class.getName() + ".runningInstanceRefreshSec";
+
+    private static final int MAX_CACHED_INSTANCES = 50_000;
+
+    // keep only instances in running state with address, any other should be checked on each call
+    private final Cache<String, Instance> runningInstances = CacheBuilder.newBuilder()
+            .expireAfterWrite(SystemProperties.getLong(RUNNING_INSTANCE_REFRESH_SEC_PROPERTY, 120L), TimeUnit.SECONDS)
+            .maximumSize(MAX_CACHED_INSTANCES)
+            .build();
+
     public Map<String, Instance> describeInstances(final AmazonEC2 ec2, final Set<String> instanceIds) {
         return describeInstances(ec2, instanceIds, BATCH_SIZE);
     }
 
+    /**
+     * Describe instances, terminated, stopped or not found instances are excluded from result.
+     * <p>
+     * Instances described as running with private IP are cached and not described again until
+     * {@link #RUNNING_INSTANCE_REFRESH_SEC_PROPERTY} passed, unknown, not yet running or without address
+     * instances are described on each call. Public IP could be assigned after private one, so caller which
+     * can't use described instance yet should {@link #invalidateInstances(Collection)}.
+     *
+     * @param ec2         ec2 client
+     * @param instanceIds instance ids
+     * @param batchSize   max instances per describe request
+     * @return described instances by id
+     */
     public Map<String, Instance> describeInstances(final AmazonEC2 ec2, final Set<String> instanceIds, final int batchSize) {
         final Map<String, Instance> described = new HashMap<>();
         // don't do actual call if no data
         if (instanceIds.isEmpty()) return described;
 
-        final List<String> instanceIdsList = new ArrayList<>(instanceIds);
+        // keep caller order, so batches are stable
+        final Set<String> toDescribe = new LinkedHashSet<>();
+        for (final String instanceId : instanceIds) {
+            final Instance cached = runningInstances.getIfPresent(instanceId);
+            if (cached != null) {
+                described.put(instanceId, cached);
+            } else {
+                toDescribe.add(instanceId);
+            }
+        }
+        if (toDescribe.isEmpty()) return described;
+
+        // batches are merged concurrently
+        final Map<String, Instance> fresh = new ConcurrentHashMap<>();
+        final List<String> instanceIdsList = new ArrayList<>(toDescribe);
         final List<List<String>> batches = new ArrayList<>();
         for (int i = 0; i < instanceIdsList.size(); i += batchSize) {
             batches.add(instanceIdsList.subList(i, Math.min(i + batchSize, instanceIdsList.size())));
         }
-        for (final List<String> batch : batches) {
-            describeInstancesBatch(ec2, described, batch);
+        describeInstancesBatches(ec2, fresh, batches);
+
+        for (final Instance instance : fresh.values()) {
+            if (InstanceStateName.Running.toString().equals(instance.getState().getName())
+                    && instance.getPrivateIpAddress() != null) {
+                runningInstances.put(instance.getInstanceId(), instance);
+            }
         }
+        described.putAll(fresh);
         return described;
     }
 
+    /**
+     * Describe instances again on next {@link #describeInstances(AmazonEC2, Set)}, for example when described
+     * instance can't be used as agent yet as its address is not assigned.
+     *
+     * @param instanceIds instance ids
+     */
+    public void invalidateInstances(final Collection<String> instanceIds) {
+        runningInstances.invalidateAll(instanceIds);
+    }
+
+    /**
+     * Run batches in parallel on {@link #DESCRIBE_EXECUTOR}, first batch is executed in caller thread
+     * so single batch call doesn't need thread switch. Wait for all batches, if any failed rethrow
+     * first failure.
+     */
+    private static void describeInstancesBatches(
+            final AmazonEC2 ec2, final Map<String, Instance> described, final List<List<String>> batches) {
+        final List<Future<?>> futures = new ArrayList<>(batches.size());
+        for (final List<String> batch : batches.subList(1, batches.size())) {
+            futures.add(DESCRIBE_EXECUTOR.submit(AwsMetrics.propagate(() -> describeInstancesBatch(ec2, described, batch))));
+        }
+
+        RuntimeException failure = null;
+        try {
+            describeInstancesBatch(ec2, described, batches.get(0));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (final Future<?> f : futures) f.cancel(true);
+                throw new IllegalStateException("Interrupted while describing instances", e);
+            } catch (ExecutionException e) {
+                if (failure != null) continue;
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                failure = cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
     private static void describeInstancesBatch(
             final AmazonEC2 ec2, final Map<String, Instance> described, final List<String> batch) {
-        // we are going to modify list, so copy
-        final List<String> copy = new ArrayList<>(batch);
-
-        // just to simplify debug by having consist order
-        Collections.sort(copy);
+        // sorted just to simplify debug by having consist order, also gives cheap removal of not found
+        final SortedSet<String> remaining = new TreeSet<>(batch);
 
         // because instances could be terminated at any time we do multiple
         // retry to get status and all time remove from request all non found instances if any
-        while (copy.size() > 0) {
+        while (!remaining.isEmpty()) {
             try {
-                final DescribeInstancesRequest request = new DescribeInstancesRequest().withInstanceIds(copy);
+                final DescribeInstancesRequest request = new DescribeInstancesRequest()
+                        .withInstanceIds(new ArrayList<>(remaining));
 
                 DescribeInstancesResult result;
                 do {
@@ -111,17 +236,16 @@ public class EC2Api {
                 } while (result.getNextToken() != null);
 
                 // all good, clear request batch to stop
-                copy.clear();
+                remaining.clear();
             } catch (final AmazonEC2Exception exception) {
                 // if we cannot find instance, that's fine assume them as terminated
-                // remove from request and try again
+                // remove from request and try again, EC2 reports all not found ids of request in one message
                 if (exception.getErrorCode().equals(NOT_FOUND_ERROR_CODE)) {
                     final List<String> notFoundInstanceIds = parseInstanceIdsFromNotFoundException(exception.getMessage());
-                    if (notFoundInstanceIds.isEmpty()) {
+                    if (!remaining.removeAll(notFoundInstanceIds)) {
                         // looks like we cannot parse correctly, rethrow
                         throw exception;
                     }
-                    copy.removeAll(notFoundInstanceIds);
                 } else {
                     throw exception;
                 }
@@ -136,6 +260,8 @@ public class EC2Api {
      * @param instanceIds set of instance ids
      */
     public void terminateInstances(final AmazonEC2 ec2, final Collection<String> instanceIds) {
+        // instances are not running anymore, so describe them again if asked
+        runningInstances.invalidateAll(instanceIds);
         final List<String> temp = new ArrayList<>(instanceIds);
         // Retry if termination failed due to NOT_FOUND_ERROR_CODE
         while (temp.size() > 0) {
@@ -162,17 +288,52 @@ public class EC2Api {
         }
     }
 
+    /**
+     * Tag instances, EC2 fails whole request if any instance is not found, so not found instances,
+     * terminated or not yet visible, are removed from request and rest is tagged again.
+     *
+     * @param ec2         ec2 client
+     * @param instanceIds instance ids
+     * @param key         tag key
+     * @param value       tag value, could be <code>null</code>
+     */
     public void tagInstances(final AmazonEC2 ec2, final Set<String> instanceIds, final String key, final String value) {
-        if (instanceIds.isEmpty()) return;
-
-        final CreateTagsRequest request = new CreateTagsRequest()
-                .withResources(instanceIds)
-                // if you don't need value EC2 API requires empty string
-                .withTags(Collections.singletonList(new Tag().withKey(key).withValue(value == null ? "" : value)));
-        ec2.createTags(request);
+        final Set<String> remaining = new LinkedHashSet<>(instanceIds);
+        while (!remaining.isEmpty()) {
+            try {
+                final CreateTagsRequest request = new CreateTagsRequest()
+                        .withResources(remaining)
+                        // if you don't need value EC2 API requires empty string
+                        .withTags(Collections.singletonList(new Tag().withKey(key).withValue(value == null ? "" : value)));
+                ec2.createTags(request);
+                remaining.clear();
+            } catch (final AmazonEC2Exception exception) {
+                if (!exception.getErrorCode().equals(NOT_FOUND_ERROR_CODE)) throw exception;
+                final List<String> notFoundInstanceIds = parseInstanceIdsFromNotFoundException(exception.getMessage());
+                if (!remaining.removeAll(notFoundInstanceIds)) {
+                    // looks like we cannot parse correctly, rethrow
+                    throw exception;
+                }
+                LOGGER.fine(String.format("Instances %s not found, skip tagging", notFoundInstanceIds));
+            }
+        }
     }
 
+    /**
+     * Get EC2 client for credentials, region and endpoint. Clients are cached and shared
+     * between callers, see {@link AwsClientCache}.
+     *
+     * @param awsCredentialsId credentials id, if <code>null</code> default credentials chain is used
+     * @param regionName       region
+     * @param endpoint         custom endpoint, could be <code>null</code>
+     * @return client
+     */
     public AmazonEC2 connect(final String awsCredentialsId, final String regionName, final String endpoint) {
+        return AwsClientCache.get(AmazonEC2.class, awsCredentialsId, regionName, endpoint,
+                () -> createClient(awsCredentialsId, regionName, endpoint));
+    }
+
+    private AmazonEC2 createClient(final String awsCredentialsId, final String regionName, final String endpoint) {
         final ClientConfiguration clientConfiguration = AWSUtils.getClientConfiguration(endpoint);
         final AmazonWebServicesCredentials credentials = AWSCredentialsHelper.getCredentials(awsCredentialsId, Jenkins.get());
         final AmazonEC2Client client =
@@ -182,6 +343,8 @@ public class EC2Api {
 
         final String effectiveEndpoint = getEndpoint(regionName, endpoint);
         if (effectiveEndpoint != null) client.setEndpoint(effectiveEndpoint);
+        client.addRequestHandler(AwsMetrics.REQUEST_HANDLER);
+        client.addRequestHandler(AwsRateLimiter.handler(awsCredentialsId, regionName, endpoint));
         return client;
     }
 
@@ -0,0 +1,128 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstanceTypesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstanceTypesResult;
+import com.amazonaws.services.ec2.model.InstanceTypeInfo;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import jenkins.util.SystemProperties;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catalog of instance type hardware (vCPU, memory, architecture) shared by all clouds. Instance type
+ * information is static for region, so instead of <code>DescribeInstanceTypes</code> call for each new node
+ * catalog is filled with one paged call for all types of update cycle by {@link #prefetch(AmazonEC2, Collection)}
+ * and kept for {@link #TTL_MINUTES_PROPERTY} minutes.
+ * <p>
+ * Catalog is kept per client, as clients are cached by {@link AwsClientCache} per credentials, region and endpoint
+ * that makes it region scoped. Catalog of client is dropped together with client.
+ */
+@ThreadSafe
+public final class InstanceTypeCatalog {
+
+    /**
+     * Minutes to keep instance type information, default 1440
+     */
+    public static final String TTL_MINUTES_PROPERTY = InstanceTypeCatalog.class.getName() + ".ttlMinutes";
+
+    /**
+     * Max number of instance types in one <code>DescribeInstanceTypes</code> request, API limit
+     */
+    private static final int MAX_TYPES_PER_REQUEST = 100;
+
+    // weak keys, so client is compared by identity and not kept when evicted from client cache
+    private static final Cache<AmazonEC2, Cache<String, InstanceTypeInfo>> CATALOGS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private InstanceTypeCatalog() {
+        throw new UnsupportedOperationException("util class");
+    }
+
+    /**
+     * Describe instance types which are not in catalog yet, with one paged call per
+     * {@link #MAX_TYPES_PER_REQUEST} types.
+     *
+     * @param ec2           client
+     * @param instanceTypes instance types, <code>null</code> ignored
+     */
+    public static void prefetch(final AmazonEC2 ec2, final Collection<String> instanceTypes) {
+        final Cache<String, InstanceTypeInfo> catalog = getCatalog(ec2);
+
+        // sorted just to have consist request for the same types
+        final TreeSet<String> missing = new TreeSet<>();
+        for (final String instanceType : instanceTypes) {
+            if (instanceType != null && catalog.getIfPresent(instanceType) == null) missing.add(instanceType);
+        }
+        if (missing.isEmpty()) return;
+
+        for (final List<String> batch : Lists.partition(new ArrayList<>(missing), MAX_TYPES_PER_REQUEST)) {
+            final DescribeInstanceTypesRequest request = new DescribeInstanceTypesRequest().withInstanceTypes(batch);
+            DescribeInstanceTypesResult result;
+            do {
+                result = ec2.describeInstanceTypes(request);
+                request.setNextToken(result.getNextToken());
+
+                for (final InstanceTypeInfo info : result.getInstanceTypes()) {
+                    if (info.getInstanceType() != null) catalog.put(info.getInstanceType(), info);
+                }
+            } while (result.getNextToken() != null);
+        }
+    }
+
+    /**
+     * Get instance type information from catalog, describe it if not there.
+     *
+     * @param ec2          client
+     * @param instanceType instance type
+     * @return instance type information
+     * @throws IllegalArgumentException if instance type is unknown for region
+     */
+    @Nonnull
+    public static InstanceTypeInfo get(final AmazonEC2 ec2, final String instanceType) {
+        if (instanceType == null) throw new IllegalArgumentException("Unknown instance type " + instanceType);
+
+        InstanceTypeInfo info = getCatalog(ec2).getIfPresent(instanceType);
+        if (info == null) {
+            prefetch(ec2, Collections.singleton(instanceType));
+            info = getCatalog(ec2).getIfPresent(instanceType);
+            if (info == null) throw new IllegalArgumentException("Unknown instance type " + instanceType);
+        }
+        return info;
+    }
+
+    /**
+     * @return number of cached instance types for client
+     */
+    public static long size(final AmazonEC2 ec2) {
+        final Cache<String, InstanceTypeInfo> catalog = CATALOGS.getIfPresent(ec2);
+        return catalog == null ? 0 : catalog.size();
+    }
+
+    public static void invalidateAll() {
+        CATALOGS.invalidateAll();
+    }
+
+    private static Cache<String, InstanceTypeInfo> getCatalog(final AmazonEC2 ec2) {
+        try {
+            return CATALOGS.get(ec2, () -> CacheBuilder.newBuilder()
+                    .expireAfterWrite(SystemProperties.getLong(TTL_MINUTES_PROPERTY, 1440L), TimeUnit.MINUTES)
+                    .build());
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+}
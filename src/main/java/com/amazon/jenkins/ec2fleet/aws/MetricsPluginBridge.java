@@ -0,0 +1,130 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import jenkins.metrics.api.Metrics;
+import jenkins.model.Jenkins;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publish plugin metrics as gauges of Jenkins Metrics plugin, like {@link AwsMetrics} named
+ * <code>ec2-fleet.aws.&lt;cloud&gt;.&lt;operation&gt;.&lt;metric&gt;</code>.
+ * <p>
+ * Metrics plugin is optional dependency, so its classes are touched only by {@link Registrar}
+ * which is loaded when plugin is active.
+ */
+public final class MetricsPluginBridge {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsPluginBridge.class.getName());
+
+    private MetricsPluginBridge() {
+        throw new UnsupportedOperationException("util class");
+    }
+
+    static void register(final String cloudName, final String operation, final AwsMetrics.OperationStats stats) {
+        final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+        gauges.put("count", stats::getCount);
+        gauges.put("errors", stats::getErrors);
+        gauges.put("retries", stats::getRetries);
+        gauges.put("throttled", stats::getThrottled);
+        gauges.put("latency.average", stats::getAverageLatencyMillis);
+        gauges.put("latency.p99", () -> stats.getLatencyPercentileMillis(0.99));
+        gauges.put("latency.max", stats::getMaxLatencyMillis);
+        register(awsName(cloudName, operation), gauges);
+    }
+
+    static void unregister(final String cloudName, final String operation) {
+        unregister(awsName(cloudName, operation));
+    }
+
+    private static String awsName(final String cloudName, final String operation) {
+        return "aws." + (cloudName.isEmpty() ? "_" : cloudName) + "." + operation;
+    }
+
+    /**
+     * Register gauges named <code>ec2-fleet.&lt;name&gt;.&lt;gauge&gt;</code>, gauges registered before
+     * with the same name, for example by removed and re-added cloud, are replaced.
+     *
+     * @param name   name of gauge group
+     * @param gauges gauge suppliers by gauge name
+     */
+    public static void register(final String name, final Map<String, LongSupplier> gauges) {
+        final Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null || jenkins.getPlugin("metrics") == null) return;
+
+        try {
+            Registrar.register("ec2-fleet." + name, gauges);
+        } catch (LinkageError | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Can't register metrics in Metrics plugin", e);
+        }
+    }
+
+    /**
+     * Remove gauges registered by {@link #register(String, Map)}, for example of removed cloud.
+     *
+     * @param name name of gauge group
+     */
+    public static void unregister(final String name) {
+        final Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null || jenkins.getPlugin("metrics") == null) return;
+
+        try {
+            Registrar.unregister("ec2-fleet." + name);
+        } catch (LinkageError | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Can't unregister metrics in Metrics plugin", e);
+        }
+    }
+
+    /**
+     * Gauges are removed by names registered for group, not by prefix, as cloud name could contain dots,
+     * so group of cloud <code>a</code> is prefix of group of cloud <code>a.b</code>.
+     */
+    static final class Registrar {
+
+        // group name -> registered metric names
+        private static final Map<String, Set<String>> REGISTERED = new HashMap<>();
+
+        private static void register(final String group, final Map<String, LongSupplier> gauges) {
+            final MetricRegistry registry = Metrics.metricRegistry();
+            if (registry != null) register(registry, group, gauges);
+        }
+
+        private static void unregister(final String group) {
+            final MetricRegistry registry = Metrics.metricRegistry();
+            if (registry != null) unregister(registry, group);
+        }
+
+        // Visible for testing
+        static synchronized void register(final MetricRegistry registry, final String group,
+                                          final Map<String, LongSupplier> gauges) {
+            unregister(registry, group);
+            final Set<String> names = new HashSet<>();
+            for (final Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+                final String name = group + "." + gauge.getKey();
+                final LongSupplier supplier = gauge.getValue();
+                // replace gauge left by previous registration, for example before plugin reload
+                registry.remove(name);
+                registry.register(name, (Gauge<Long>) supplier::getAsLong);
+                names.add(name);
+            }
+            REGISTERED.put(group, names);
+        }
+
+        // Visible for testing
+        static synchronized void unregister(final MetricRegistry registry, final String group) {
+            final Set<String> names = REGISTERED.remove(group);
+            if (names == null) return;
+            for (final String name : names) registry.remove(name);
+        }
+
+    }
+
+}
@@ -2,9 +2,14 @@ package com.amazon.jenkins.ec2fleet.fleet;
 
 import com.amazon.jenkins.ec2fleet.FleetStateStats;
 import com.amazon.jenkins.ec2fleet.aws.AWSUtils;
+import com.amazon.jenkins.ec2fleet.aws.AwsClientCache;
+import com.amazon.jenkins.ec2fleet.aws.AwsMetrics;
+import com.amazon.jenkins.ec2fleet.aws.AwsRateLimiter;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.RegionUtils;
+import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.autoscaling.AmazonAutoScalingClient;
 import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
 import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
@@ -33,11 +38,16 @@ public class AutoScalingGroupFleet implements EC2Fleet {
 
     private static final Logger LOGGER = Logger.getLogger(AutoScalingGroupFleet.class.getName());
 
+    private static final String VALIDATION_ERROR_CODE = "ValidationError";
+    // retries on top of SDK retries, as termination call is made for each instance
+    private static final int THROTTLING_RETRIES = 3;
+    private static final long THROTTLING_BACKOFF_MILLIS = 250;
+
     @Override
     public void describe(
             final String awsCredentialsId, final String regionName, final String endpoint,
             final ListBoxModel model, final String selectedId, final boolean showAll) {
-        final AmazonAutoScalingClient client = createClient(awsCredentialsId, regionName, endpoint);
+        final AmazonAutoScalingClient client = getClient(awsCredentialsId, regionName, endpoint);
         String token = null;
         do {
             final DescribeAutoScalingGroupsRequest request = new DescribeAutoScalingGroupsRequest();
@@ -57,7 +67,7 @@ public class AutoScalingGroupFleet implements EC2Fleet {
     public void modify(
             final String awsCredentialsId, final String regionName, final String endpoint,
             final String id, final int targetCapacity, final int min, final int max) {
-        final AmazonAutoScalingClient client = createClient(awsCredentialsId, regionName, endpoint);
+        final AmazonAutoScalingClient client = getClient(awsCredentialsId, regionName, endpoint);
         client.updateAutoScalingGroup(
                 new UpdateAutoScalingGroupRequest()
                         .withMinSize(min)
@@ -73,7 +83,7 @@ public class AutoScalingGroupFleet implements EC2Fleet {
     @Override
     public FleetStateStats getState(
             final String awsCredentialsId, final String regionName, final String endpoint, final String id) {
-        final AmazonAutoScalingClient client = createClient(awsCredentialsId, regionName, endpoint);
+        final AmazonAutoScalingClient client = getClient(awsCredentialsId, regionName, endpoint);
         final DescribeAutoScalingGroupsResult result = client.describeAutoScalingGroups(
                 new DescribeAutoScalingGroupsRequest()
                         .withAutoScalingGroupNames(id));
@@ -116,6 +126,21 @@ public class AutoScalingGroupFleet implements EC2Fleet {
         return true;
     }
 
+    /**
+     * Get cached client, see {@link AwsClientCache}. Use it instead of {@link #createClient(String, String, String)}
+     * to reuse connections between calls.
+     *
+     * @param awsCredentialsId credentials id
+     * @param regionName       region
+     * @param endpoint         custom endpoint, could be <code>null</code>
+     * @return client
+     */
+    public AmazonAutoScalingClient getClient(
+            final String awsCredentialsId, final String regionName, final String endpoint) {
+        return AwsClientCache.get(AmazonAutoScalingClient.class, awsCredentialsId, regionName, endpoint,
+                () -> createClient(awsCredentialsId, regionName, endpoint));
+    }
+
     // TODO: move to Registry
     public AmazonAutoScalingClient createClient(
             final String awsCredentialsId, final String regionName, final String endpoint) {
@@ -127,23 +152,76 @@ public class AutoScalingGroupFleet implements EC2Fleet {
                         new AmazonAutoScalingClient(clientConfiguration);
         final String effectiveEndpoint = getEndpoint(regionName, endpoint);
         if (effectiveEndpoint != null) client.setEndpoint(effectiveEndpoint);
+        client.addRequestHandler(AwsMetrics.REQUEST_HANDLER);
+        client.addRequestHandler(AwsRateLimiter.handler(awsCredentialsId, regionName, endpoint));
         return client;
     }
 
-    public void terminateInstances(final String awsCredentialsId, final String regionName, final String endpoint, final Collection<String> instanceIds) {
-        final AmazonAutoScalingClient client = createClient(awsCredentialsId, regionName, endpoint);
-
-        for(String instanceId : instanceIds) {
+    /**
+     * Terminate instances in Auto Scaling Group, API accepts one instance per call, so calls are made in parallel,
+     * see {@link FleetBatchExecutor#TERMINATE}. Throttled call is retried with backoff, instance which is not in group
+     * anymore is assumed as terminated. Failure of one instance doesn't stop termination of others.
+     *
+     * @param awsCredentialsId credentials id
+     * @param regionName       region
+     * @param endpoint         custom endpoint, could be <code>null</code>
+     * @param instanceIds      instance ids
+     * @return terminated and failed instances
+     */
+    public TerminationResult terminateInstances(final String awsCredentialsId, final String regionName, final String endpoint, final Collection<String> instanceIds) {
+        for (String instanceId : instanceIds) {
             if (StringUtils.isBlank(instanceId)) {
                 throw new IllegalArgumentException("Instance ID cannot be null or empty");
             }
-            try{
+        }
+
+        final AmazonAutoScalingClient client = getClient(awsCredentialsId, regionName, endpoint);
+        final Map<String, String> errors = FleetBatchExecutor.TERMINATE.map(instanceIds, instanceId -> terminateInstance(client, instanceId));
+
+        final Set<String> terminated = new LinkedHashSet<>();
+        final Map<String, String> failed = new HashMap<>();
+        for (final Map.Entry<String, String> entry : errors.entrySet()) {
+            if (entry.getValue() == null) {
+                terminated.add(entry.getKey());
+            } else {
+                failed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new TerminationResult(terminated, failed);
+    }
+
+    /**
+     * @return <code>null</code> if terminated, otherwise error message
+     */
+    @Nullable
+    private static String terminateInstance(final AmazonAutoScalingClient client, final String instanceId) {
+        for (int attempt = 0; ; attempt++) {
+            try {
                 // Attempt to terminate the instance in the Auto Scaling group first
                 client.terminateInstanceInAutoScalingGroup(new TerminateInstanceInAutoScalingGroupRequest()
                         .withInstanceId(instanceId)
                         .withShouldDecrementDesiredCapacity(false));
+                return null;
+            } catch (AmazonServiceException e) {
+                // instance is already terminated or detached, nothing to do
+                if (VALIDATION_ERROR_CODE.equals(e.getErrorCode())
+                        && StringUtils.containsIgnoreCase(e.getErrorMessage(), "not found")) {
+                    return null;
+                }
+                if (RetryUtils.isThrottlingException(e) && attempt < THROTTLING_RETRIES) {
+                    try {
+                        Thread.sleep(THROTTLING_BACKOFF_MILLIS << attempt);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return "Interrupted while waiting to retry throttled call: " + e.getMessage();
+                    }
+                    continue;
+                }
+                LOGGER.warning(String.format("Failed to terminate instance %s in Auto Scaling group: %s", instanceId, e.getMessage()));
+                return e.getMessage();
             } catch (Exception e) {
                 LOGGER.warning(String.format("Failed to terminate instance %s in Auto Scaling group: %s", instanceId, e.getMessage()));
+                return String.valueOf(e.getMessage());
             }
         }
     }
@@ -68,33 +68,7 @@ public class EC2EC2Fleet implements EC2Fleet {
         if (result.getFleets().isEmpty())
             throw new IllegalStateException("Fleet " + id + " doesn't exist");
 
-        final FleetData fleetData = result.getFleets().get(0);
-        final List<FleetLaunchTemplateConfig> templateConfigs = fleetData.getLaunchTemplateConfigs();
-
-        // Index configured instance types by weight:
-        final Map<String, Double> instanceTypeWeights = new HashMap<>();
-        for (FleetLaunchTemplateConfig templateConfig : templateConfigs) {
-            for (FleetLaunchTemplateOverrides launchOverrides : templateConfig.getOverrides()) {
-                final String instanceType = launchOverrides.getInstanceType();
-                if (instanceType == null) continue;
-
-                final Double instanceWeight = launchOverrides.getWeightedCapacity();
-                final Double existingWeight = instanceTypeWeights.get(instanceType);
-                if (instanceWeight == null || (existingWeight != null && existingWeight >= instanceWeight)) {
-                    continue;
-                }
-                instanceTypeWeights.put(instanceType, instanceWeight);
-            }
-        }
-
-        return new FleetStateStats(id,
-                fleetData.getTargetCapacitySpecification().getTotalTargetCapacity(),
-                new FleetStateStats.State(
-                        isActive(fleetData),
-                        isModifying(fleetData),
-                        fleetData.getFleetState()),
-                getActiveFleetInstances(ec2, id),
-                instanceTypeWeights);
+        return toStats(id, result.getFleets().get(0), getActiveFleetInstances(ec2, id));
     }
 
     private Set<String> getActiveFleetInstances(AmazonEC2 ec2, String fleetId) {
@@ -114,49 +88,71 @@ public class EC2EC2Fleet implements EC2Fleet {
         return instances;
     }
 
-    private static class State {
-        String id;
-        Set<String> instances;
-        FleetData fleetData;
+    private static FleetStateStats toStats(String id, FleetData fleetData, Set<String> instances) {
+        return new FleetStateStats(id,
+                fleetData.getTargetCapacitySpecification().getTotalTargetCapacity(),
+                new FleetStateStats.State(
+                        isActive(fleetData),
+                        isModifying(fleetData),
+                        fleetData.getFleetState()),
+                instances,
+                getInstanceTypeWeights(fleetData));
     }
 
-    @Override
-    public Map<String, FleetStateStats> getStateBatch(String awsCredentialsId, String regionName, String endpoint, Collection<String> ids) {
-        final AmazonEC2 ec2 = Registry.getEc2Api().connect(awsCredentialsId, regionName, endpoint);
+    /**
+     * Index configured instance types by weight, if type configured multiple times max weight is used.
+     */
+    private static Map<String, Double> getInstanceTypeWeights(FleetData fleetData) {
+        final Map<String, Double> instanceTypeWeights = new HashMap<>();
+        if (fleetData.getLaunchTemplateConfigs() == null) return instanceTypeWeights;
 
-        List<State> states = new ArrayList<>();
-        for (String id : ids) {
-            final State s = new State();
-            s.id = id;
-            states.add(s);
-        }
+        for (FleetLaunchTemplateConfig templateConfig : fleetData.getLaunchTemplateConfigs()) {
+            if (templateConfig.getOverrides() == null) continue;
+
+            for (FleetLaunchTemplateOverrides launchOverrides : templateConfig.getOverrides()) {
+                final String instanceType = launchOverrides.getInstanceType();
+                if (instanceType == null) continue;
 
-        for (State state : states) {
-            state.instances = getActiveFleetInstances(ec2, state.id);
+                final Double instanceWeight = launchOverrides.getWeightedCapacity();
+                final Double existingWeight = instanceTypeWeights.get(instanceType);
+                if (instanceWeight == null || (existingWeight != null && existingWeight >= instanceWeight)) {
+                    continue;
+                }
+                instanceTypeWeights.put(instanceType, instanceWeight);
+            }
         }
+        return instanceTypeWeights;
+    }
 
-        final DescribeFleetsRequest request = new DescribeFleetsRequest();
-        request.setFleetIds(ids);
-        final DescribeFleetsResult result = ec2.describeFleets(request);
+    /**
+     * Describe all fleets with one call, then page instances of each existing fleet in parallel, see
+     * {@link FleetBatchExecutor}. Fleets which don't exist are not included into result.
+     */
+    @Override
+    public Map<String, FleetStateStats> getStateBatch(String awsCredentialsId, String regionName, String endpoint, Collection<String> ids) {
+        if (ids.isEmpty()) return new HashMap<>();
 
-        for (FleetData fleetData: result.getFleets()) {
-            for (State state : states) {
-                if (state.id.equals(fleetData.getFleetId())) state.fleetData = fleetData;
+        final AmazonEC2 ec2 = Registry.getEc2Api().connect(awsCredentialsId, regionName, endpoint);
+
+        final Map<String, FleetData> fleets = new HashMap<>();
+        String token = null;
+        do {
+            final DescribeFleetsRequest request = new DescribeFleetsRequest();
+            request.setFleetIds(ids);
+            request.setNextToken(token);
+            final DescribeFleetsResult result = ec2.describeFleets(request);
+            for (FleetData fleetData : result.getFleets()) {
+                if (ids.contains(fleetData.getFleetId())) fleets.put(fleetData.getFleetId(), fleetData);
             }
-        }
+            token = result.getNextToken();
+        } while (token != null);
+
+        final Map<String, Set<String>> instances = FleetBatchExecutor.DESCRIBE.map(fleets.keySet(),
+                id -> getActiveFleetInstances(ec2, id));
 
         Map<String, FleetStateStats> r = new HashMap<>();
-        for (State state : states) {
-            if(state.fleetData != null) {
-                r.put(state.id, new FleetStateStats(state.id,
-                        state.fleetData.getTargetCapacitySpecification().getTotalTargetCapacity(),
-                        new FleetStateStats.State(
-                                isActive(state.fleetData),
-                                isModifying(state.fleetData),
-                                state.fleetData.getFleetState()),
-                        state.instances,
-                        Collections.<String, Double>emptyMap()));
-            }
+        for (Map.Entry<String, Set<String>> entry : instances.entrySet()) {
+            r.put(entry.getKey(), toStats(entry.getKey(), fleets.get(entry.getKey()), entry.getValue()));
         }
         return r;
     }
@@ -4,6 +4,7 @@ import com.amazon.jenkins.ec2fleet.FleetStateStats;
 import com.amazon.jenkins.ec2fleet.Registry;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.ActiveInstance;
+import com.amazonaws.services.ec2.model.AmazonEC2Exception;
 import com.amazonaws.services.ec2.model.BatchState;
 import com.amazonaws.services.ec2.model.DescribeSpotFleetInstancesRequest;
 import com.amazonaws.services.ec2.model.DescribeSpotFleetInstancesResult;
@@ -18,12 +19,10 @@ import hudson.util.ListBoxModel;
 import org.springframework.util.ObjectUtils;
 
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,6 +32,8 @@ import java.util.Set;
 @ThreadSafe
 public class EC2SpotFleet implements EC2Fleet {
 
+    private static final String NOT_FOUND_ERROR_CODE = "InvalidSpotFleetRequestId.NotFound";
+
     @Override
     public void describe(
             final String awsCredentialsId, final String regionName, final String endpoint,
@@ -96,6 +97,90 @@ public class EC2SpotFleet implements EC2Fleet {
             final String id) {
         final AmazonEC2 ec2 = Registry.getEc2Api().connect(awsCredentialsId, regionName, endpoint);
 
+        final Set<String> instances = getActiveFleetInstances(ec2, id);
+
+        final DescribeSpotFleetRequestsRequest request = new DescribeSpotFleetRequestsRequest();
+        request.setSpotFleetRequestIds(Collections.singleton(id));
+        final DescribeSpotFleetRequestsResult fleet = ec2.describeSpotFleetRequests(request);
+        if (fleet.getSpotFleetRequestConfigs().isEmpty())
+            throw new IllegalStateException("Fleet " + id + " can't be described");
+
+        return toStats(id, fleet.getSpotFleetRequestConfigs().get(0), instances);
+    }
+
+    /**
+     * Describe all fleets with one call, then page instances of each fleet in parallel, see
+     * {@link FleetBatchExecutor}. Fleets which don't exist are not included into result.
+     */
+    @Override
+    public Map<String, FleetStateStats> getStateBatch(
+            final String awsCredentialsId, final String regionName, final String endpoint,
+            final Collection<String> ids) {
+        if (ids.isEmpty()) return new HashMap<>();
+
+        final AmazonEC2 ec2 = Registry.getEc2Api().connect(awsCredentialsId, regionName, endpoint);
+
+        final Map<String, SpotFleetRequestConfig> configs = describeFleets(ec2, ids);
+
+        final Map<String, Set<String>> instances = FleetBatchExecutor.DESCRIBE.map(configs.keySet(), id -> {
+            try {
+                return getActiveFleetInstances(ec2, id);
+            } catch (AmazonEC2Exception e) {
+                // fleet could be deleted after describe
+                if (NOT_FOUND_ERROR_CODE.equals(e.getErrorCode())) return null;
+                throw e;
+            }
+        });
+
+        final Map<String, FleetStateStats> r = new HashMap<>();
+        for (final Map.Entry<String, Set<String>> entry : instances.entrySet()) {
+            if (entry.getValue() == null) continue;
+            r.put(entry.getKey(), toStats(entry.getKey(), configs.get(entry.getKey()), entry.getValue()));
+        }
+        return r;
+    }
+
+    /**
+     * Describe fleets in one call. If any of fleets doesn't exist EC2 fails whole call,
+     * in that case describe fleets one by one and skip not found.
+     */
+    private static Map<String, SpotFleetRequestConfig> describeFleets(
+            final AmazonEC2 ec2, final Collection<String> ids) {
+        final Map<String, SpotFleetRequestConfig> configs = new HashMap<>();
+        try {
+            describeFleets(ec2, ids, configs);
+        } catch (AmazonEC2Exception e) {
+            if (!NOT_FOUND_ERROR_CODE.equals(e.getErrorCode())) throw e;
+            if (ids.size() == 1) return configs;
+
+            for (final String id : ids) {
+                try {
+                    describeFleets(ec2, Collections.singleton(id), configs);
+                } catch (AmazonEC2Exception e1) {
+                    if (!NOT_FOUND_ERROR_CODE.equals(e1.getErrorCode())) throw e1;
+                }
+            }
+        }
+        configs.keySet().retainAll(ids);
+        return configs;
+    }
+
+    private static void describeFleets(
+            final AmazonEC2 ec2, final Collection<String> ids, final Map<String, SpotFleetRequestConfig> configs) {
+        String token = null;
+        do {
+            final DescribeSpotFleetRequestsRequest request = new DescribeSpotFleetRequestsRequest();
+            request.setSpotFleetRequestIds(ids);
+            request.setNextToken(token);
+            final DescribeSpotFleetRequestsResult result = ec2.describeSpotFleetRequests(request);
+            for (final SpotFleetRequestConfig config : result.getSpotFleetRequestConfigs()) {
+                configs.put(config.getSpotFleetRequestId(), config);
+            }
+            token = result.getNextToken();
+        } while (token != null);
+    }
+
+    private static Set<String> getActiveFleetInstances(final AmazonEC2 ec2, final String id) {
         String token = null;
         final Set<String> instances = new HashSet<>();
         do {
@@ -109,30 +194,12 @@ public class EC2SpotFleet implements EC2Fleet {
 
             token = res.getNextToken();
         } while (token != null);
+        return instances;
+    }
 
-        final DescribeSpotFleetRequestsRequest request = new DescribeSpotFleetRequestsRequest();
-        request.setSpotFleetRequestIds(Collections.singleton(id));
-        final DescribeSpotFleetRequestsResult fleet = ec2.describeSpotFleetRequests(request);
-        if (fleet.getSpotFleetRequestConfigs().isEmpty())
-            throw new IllegalStateException("Fleet " + id + " can't be described");
-
-        final SpotFleetRequestConfig fleetConfig = fleet.getSpotFleetRequestConfigs().get(0);
+    private static FleetStateStats toStats(
+            final String id, final SpotFleetRequestConfig fleetConfig, final Set<String> instances) {
         final SpotFleetRequestConfigData fleetRequestConfig = fleetConfig.getSpotFleetRequestConfig();
-
-        // Index configured instance types by weight:
-        final Map<String, Double> instanceTypeWeights = new HashMap<>();
-        for (SpotFleetLaunchSpecification launchSpecification : fleetRequestConfig.getLaunchSpecifications()) {
-            final String instanceType = launchSpecification.getInstanceType();
-            if (instanceType == null) continue;
-
-            final Double instanceWeight = launchSpecification.getWeightedCapacity();
-            final Double existingWeight = instanceTypeWeights.get(instanceType);
-            if (instanceWeight == null || (existingWeight != null && existingWeight > instanceWeight)) {
-                continue;
-            }
-            instanceTypeWeights.put(instanceType, instanceWeight);
-        }
-
         return new FleetStateStats(id,
                 fleetRequestConfig.getTargetCapacity(),
                 new FleetStateStats.State(
@@ -140,68 +207,28 @@ public class EC2SpotFleet implements EC2Fleet {
                         isModifying(fleetConfig),
                         fleetConfig.getSpotFleetRequestState()),
                 instances,
-                instanceTypeWeights);
+                getInstanceTypeWeights(fleetRequestConfig));
     }
 
-    private static class State {
-        String id;
-        Set<String> instances;
-        SpotFleetRequestConfig config;
-    }
-
-    @Override
-    public Map<String, FleetStateStats> getStateBatch(
-            final String awsCredentialsId, final String regionName, final String endpoint,
-            final Collection<String> ids) {
-        final AmazonEC2 ec2 = Registry.getEc2Api().connect(awsCredentialsId, regionName, endpoint);
-
-        List<State> states = new ArrayList<>();
-        for (String id : ids) {
-            final State s = new State();
-            s.id = id;
-            states.add(s);
-        }
-
-        for (State state : states) {
-            String token = null;
-            state.instances = new HashSet<>();
-            do {
-                final DescribeSpotFleetInstancesRequest request = new DescribeSpotFleetInstancesRequest();
-                request.setSpotFleetRequestId(state.id);
-                request.setNextToken(token);
-                final DescribeSpotFleetInstancesResult res = ec2.describeSpotFleetInstances(request);
-                for (final ActiveInstance instance : res.getActiveInstances()) {
-                    state.instances.add(instance.getInstanceId());
-                }
+    /**
+     * Index configured instance types by weight, if type configured multiple times max weight is used.
+     */
+    private static Map<String, Double> getInstanceTypeWeights(final SpotFleetRequestConfigData fleetRequestConfig) {
+        final Map<String, Double> instanceTypeWeights = new HashMap<>();
+        if (fleetRequestConfig.getLaunchSpecifications() == null) return instanceTypeWeights;
 
-                token = res.getNextToken();
-            } while (token != null);
-        }
+        for (SpotFleetLaunchSpecification launchSpecification : fleetRequestConfig.getLaunchSpecifications()) {
+            final String instanceType = launchSpecification.getInstanceType();
+            if (instanceType == null) continue;
 
-        final DescribeSpotFleetRequestsRequest request = new DescribeSpotFleetRequestsRequest();
-        request.setSpotFleetRequestIds(ids);
-        final DescribeSpotFleetRequestsResult fleet = ec2.describeSpotFleetRequests(request);
-        for (SpotFleetRequestConfig c : fleet.getSpotFleetRequestConfigs()) {
-            for (State state : states) {
-                if (state.id.equals(c.getSpotFleetRequestId())) state.config = c;
+            final Double instanceWeight = launchSpecification.getWeightedCapacity();
+            final Double existingWeight = instanceTypeWeights.get(instanceType);
+            if (instanceWeight == null || (existingWeight != null && existingWeight > instanceWeight)) {
+                continue;
             }
+            instanceTypeWeights.put(instanceType, instanceWeight);
         }
-
-        Map<String, FleetStateStats> r = new HashMap<>();
-        for (State state : states) {
-            r.put(state.id, new FleetStateStats(state.id,
-                    state.config.getSpotFleetRequestConfig().getTargetCapacity(),
-                    new FleetStateStats.State(
-                            isActive(state.config),
-                            isModifying(state.config),
-                            state.config.getSpotFleetRequestState()),
-                    state.instances,
-                    Collections.<String, Double>emptyMap()));
-        }
-
-        // todo add weight
-        // todo replace single with multiple but just one id less code
-        return r;
+        return instanceTypeWeights;
     }
 
     @Override
@@ -0,0 +1,122 @@
+package com.amazon.jenkins.ec2fleet.fleet;
+
+import com.amazon.jenkins.ec2fleet.aws.AwsMetrics;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs per fleet calls of {@link EC2Fleet#getStateBatch(String, String, String, Collection)}, like instance
+ * paging, in parallel on shared bounded pool {@link #DESCRIBE}. Paging of one big fleet doesn't delay other fleets in batch.
+ * <p>
+ * Per instance calls of {@link AutoScalingGroupFleet#terminateInstances(String, String, String, Collection)} run
+ * on own pool {@link #TERMINATE}, as they wait for rate limit and back off when throttled, so big scale down
+ * doesn't delay describe of all clouds. Its queue is bounded, when it's full caller runs the call itself.
+ */
+@ThreadSafe
+final class FleetBatchExecutor {
+
+    /**
+     * Max number of fleets described in parallel by batch call, default 4
+     */
+    static final String CONCURRENCY_PROPERTY = FleetBatchExecutor.class.getName() + ".concurrency";
+    /**
+     * Max number of Auto Scaling Group instances terminated in parallel, default 4
+     */
+    static final String TERMINATION_CONCURRENCY_PROPERTY = FleetBatchExecutor.class.getName() + ".terminationConcurrency";
+
+    static final FleetBatchExecutor DESCRIBE = new FleetBatchExecutor(createExecutor("describe",
+            SystemProperties.getInteger(CONCURRENCY_PROPERTY, 4), new LinkedBlockingQueue<>(),
+            new ThreadPoolExecutor.AbortPolicy()));
+
+    static final FleetBatchExecutor TERMINATE = createTerminate(SystemProperties.getInteger(TERMINATION_CONCURRENCY_PROPERTY, 4));
+
+    private final ExecutorService executor;
+
+    private FleetBatchExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    // Visible for testing
+    static FleetBatchExecutor createTerminate(final int concurrency) {
+        return new FleetBatchExecutor(createExecutor("terminate", concurrency,
+                new ArrayBlockingQueue<>(Math.max(1, concurrency)), new ThreadPoolExecutor.CallerRunsPolicy()));
+    }
+
+    private static ExecutorService createExecutor(final String name, final int concurrency,
+                                                  final BlockingQueue<Runnable> queue,
+                                                  final RejectedExecutionHandler rejectedHandler) {
+        final int size = Math.max(1, concurrency);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, queue,
+                // use daemon thread, so no problem when stop jenkins
+                new NamingThreadFactory(new DaemonThreadFactory(), FleetBatchExecutor.class.getSimpleName() + "-" + name),
+                rejectedHandler);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Apply <code>call</code> to each id in parallel, first id is executed in caller thread so batch of
+     * one doesn't need thread switch. Wait for all calls, if any failed rethrow first failure.
+     *
+     * @param ids  fleet or instance ids
+     * @param call per id call
+     * @param <T>  result type
+     * @return results by id in order of ids
+     */
+    <T> Map<String, T> map(final Collection<String> ids, final Function<String, T> call) {
+        final List<String> idList = new ArrayList<>(ids);
+        if (idList.isEmpty()) return new HashMap<>();
+
+        final Map<String, Future<T>> futures = new LinkedHashMap<>();
+        for (final String id : idList.subList(1, idList.size())) {
+            final Supplier<T> task = AwsMetrics.propagate(() -> call.apply(id));
+            futures.put(id, executor.submit(task::get));
+        }
+
+        final Map<String, T> results = new LinkedHashMap<>();
+        RuntimeException failure = null;
+        try {
+            results.put(idList.get(0), call.apply(idList.get(0)));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        for (final Map.Entry<String, Future<T>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (final Future<T> f : futures.values()) f.cancel(true);
+                throw new IllegalStateException("Interrupted while waiting for batch calls", e);
+            } catch (ExecutionException e) {
+                if (failure != null) continue;
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                failure = cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            }
+        }
+        if (failure != null) throw failure;
+        return results;
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.amazon.jenkins.ec2fleet.fleet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Objects;
+
+/**
+ * Change of fleet instance delivered by {@link FleetEventSource}, for example EC2 instance
+ * state-change notification or Spot interruption warning forwarded by EventBridge.
+ * <p>
+ * <code>fleetId</code> is optional as original EC2 events don't have it, producer could enrich
+ * event from instance tags. Without it new instance can't be assigned to fleet and
+ * {@link FleetStateCache} falls back to full poll.
+ * <p>
+ * <code>time</code> is time of change, like <code>time</code> of EventBridge event, queue could deliver events
+ * out of order, so older event of instance than already applied one is ignored.
+ *
+ * @see FleetStateCache
+ */
+@ThreadSafe
+public final class FleetEvent {
+
+    public enum Type {
+        /**
+         * EC2 instance state-change notification, see {@link #getInstanceState()}
+         */
+        STATE_CHANGE,
+        /**
+         * EC2 Spot instance interruption warning, instance will be gone soon
+         */
+        SPOT_INTERRUPTION
+    }
+
+    private final String receiptHandle;
+    private final Type type;
+    private final String instanceId;
+    private final String instanceState;
+    private final String fleetId;
+    private final long time;
+
+    /**
+     * Event of change happened now.
+     */
+    public FleetEvent(
+            @Nonnull final String receiptHandle, @Nonnull final Type type, @Nonnull final String instanceId,
+            @Nullable final String instanceState, @Nullable final String fleetId) {
+        this(receiptHandle, type, instanceId, instanceState, fleetId, System.currentTimeMillis());
+    }
+
+    public FleetEvent(
+            @Nonnull final String receiptHandle, @Nonnull final Type type, @Nonnull final String instanceId,
+            @Nullable final String instanceState, @Nullable final String fleetId, final long time) {
+        this.receiptHandle = receiptHandle;
+        this.type = type;
+        this.instanceId = instanceId;
+        this.instanceState = instanceState;
+        this.fleetId = fleetId;
+        this.time = time;
+    }
+
+    /**
+     * @return id to acknowledge event with {@link FleetEventSource#delete(java.util.Collection)}
+     */
+    @Nonnull
+    public String getReceiptHandle() {
+        return receiptHandle;
+    }
+
+    @Nonnull
+    public Type getType() {
+        return type;
+    }
+
+    @Nonnull
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * @return EC2 instance state name like <code>running</code> or <code>terminated</code>,
+     * <code>null</code> for {@link Type#SPOT_INTERRUPTION}
+     */
+    @Nullable
+    public String getInstanceState() {
+        return instanceState;
+    }
+
+    @Nullable
+    public String getFleetId() {
+        return fleetId;
+    }
+
+    /**
+     * @return time of change in millis since epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FleetEvent that = (FleetEvent) o;
+        return receiptHandle.equals(that.receiptHandle);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(receiptHandle);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + instanceId + (instanceState == null ? "" : " " + instanceState)
+                + (fleetId == null ? "" : " in " + fleetId);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.amazon.jenkins.ec2fleet.fleet;
+
+import hudson.ExtensionPoint;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Queue of {@link FleetEvent}s, shaped after Amazon SQS so implementation over real queue
+ * is straightforward: received events stay invisible for other receivers until deleted,
+ * events not deleted in time are delivered again.
+ * <p>
+ * When incremental mode is enabled by {@link FleetStateCache#ENABLED_PROPERTY}, events are consumed from
+ * registered extension with highest ordinal, {@link InMemoryFleetEventSource} if there is no other.
+ *
+ * @see InMemoryFleetEventSource
+ * @see FleetStateCache
+ */
+public interface FleetEventSource extends ExtensionPoint {
+
+    /**
+     * @param maxEvents max number of events to return
+     * @return available events, empty if none, never blocks for long
+     */
+    @Nonnull
+    List<FleetEvent> receive(int maxEvents);
+
+    /**
+     * Acknowledge processed events.
+     *
+     * @param events events returned by {@link #receive(int)}
+     */
+    void delete(@Nonnull Collection<FleetEvent> events);
+
+}
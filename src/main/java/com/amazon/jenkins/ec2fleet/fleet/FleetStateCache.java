@@ -0,0 +1,319 @@
+package com.amazon.jenkins.ec2fleet.fleet;
+
+import com.amazon.jenkins.ec2fleet.FleetStateStats;
+import com.amazonaws.services.ec2.model.InstanceStateName;
+import hudson.ExtensionList;
+import jenkins.util.SystemProperties;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Incremental mode for fleet state. Instead of full {@link EC2Fleet#getState(String, String, String, String)}
+ * poll on each update cycle keeps last known {@link FleetStateStats} per fleet {@link Key} and applies instance
+ * changes received from {@link FleetEventSource}. Full poll (reconciliation) happens only when:
+ * <ul>
+ *     <li>fleet is not known yet</li>
+ *     <li>reconcile interval passed since last poll</li>
+ *     <li>plugin modified fleet, see {@link #invalidate(Key)}, as new target capacity and fleet status
+ *     should be observed from AWS</li>
+ *     <li>event for new instance can't be assigned to fleet as it doesn't have fleet id</li>
+ * </ul>
+ * Events are shared by all clouds, so each call drains source and applies events to all known fleets.
+ * Fleet id is unique only in account and region, like Auto Scaling Group name, so fleet is kept by {@link Key}
+ * with credentials, region and endpoint. Event doesn't say region, so new instance of fleet id known in
+ * several regions makes all of them reconcile. Fleet not requested for two reconcile intervals, like of removed
+ * or reconfigured cloud, is dropped.
+ * <p>
+ * Mapping of events:
+ * <ul>
+ *     <li>instance state <code>pending</code> or <code>running</code> adds instance to fleet</li>
+ *     <li>any other instance state removes instance from fleet</li>
+ *     <li>Spot interruption warning removes instance from fleet, so plugin stops using it before it's gone</li>
+ * </ul>
+ * Queue could deliver events out of order, so event older than last applied event of the same instance is ignored.
+ * Event older than start of last full poll is already reflected in it, so is ignored as well.
+ * <p>
+ * Disabled by default, enabled by {@link #ENABLED_PROPERTY}, events are consumed from {@link FleetEventSource}
+ * extension, see {@link #create()}.
+ */
+@ThreadSafe
+public class FleetStateCache {
+
+    private static final Logger LOGGER = Logger.getLogger(FleetStateCache.class.getName());
+
+    /**
+     * Enable incremental fleet state, default false
+     */
+    public static final String ENABLED_PROPERTY = FleetStateCache.class.getName() + ".enabled";
+    /**
+     * Minutes between full polls of fleet, default 5
+     */
+    public static final String RECONCILE_INTERVAL_MINUTES_PROPERTY = FleetStateCache.class.getName() + ".reconcileIntervalMinutes";
+
+    public static final long DEFAULT_RECONCILE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int RECEIVE_BATCH_SIZE = 10;
+    private static final int MAX_RECEIVE_BATCHES = 100;
+
+    private static final Set<String> ACTIVE_STATES = new HashSet<>(Arrays.asList(
+            InstanceStateName.Pending.toString(), InstanceStateName.Running.toString()));
+
+    private final FleetEventSource source;
+    private final long reconcileIntervalMillis;
+    private final Map<Key, Entry> entries = new HashMap<>();
+
+    public FleetStateCache(@Nonnull final FleetEventSource source) {
+        this(source, DEFAULT_RECONCILE_INTERVAL_MILLIS);
+    }
+
+    public FleetStateCache(@Nonnull final FleetEventSource source, final long reconcileIntervalMillis) {
+        this.source = source;
+        this.reconcileIntervalMillis = reconcileIntervalMillis;
+    }
+
+    /**
+     * @return cache configured by system properties with events from {@link FleetEventSource} extension
+     * with highest ordinal
+     */
+    public static FleetStateCache create() {
+        final FleetEventSource source = ExtensionList.lookup(FleetEventSource.class).get(0);
+        LOGGER.info("Incremental fleet state enabled, events from " + source.getClass().getName());
+        return new FleetStateCache(source, TimeUnit.MINUTES.toMillis(
+                SystemProperties.getLong(RECONCILE_INTERVAL_MINUTES_PROPERTY, TimeUnit.MILLISECONDS.toMinutes(DEFAULT_RECONCILE_INTERVAL_MILLIS))));
+    }
+
+    /**
+     * Get fleet state from cache with applied events, or from <code>poll</code> if reconciliation required.
+     * Poll is done without lock, so slow fleet doesn't block others.
+     *
+     * @param key  fleet key
+     * @param poll full state poll
+     * @return state
+     */
+    @Nonnull
+    public FleetStateStats getState(@Nonnull final Key key, @Nonnull final Supplier<FleetStateStats> poll) {
+        drainEvents();
+
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            evictNotRead(now);
+            final Entry entry = entries.get(key);
+            if (entry != null && !entry.reconcile && now - entry.polledAt < reconcileIntervalMillis) {
+                entry.readAt = now;
+                return entry.toStats();
+            }
+        }
+
+        final long pollStartedAt = System.currentTimeMillis();
+        final FleetStateStats polled = poll.get();
+        synchronized (this) {
+            final Entry entry = new Entry(polled, pollStartedAt);
+            // state in transition should be observed again
+            entry.reconcile = polled.getState().isModifying() || !polled.getState().isActive();
+            entries.put(key, entry);
+        }
+        LOGGER.log(Level.FINE, "Fleet {0} reconciled, instances {1}", new Object[]{key, polled.getInstances().size()});
+        // apply events arrived during poll on top of it
+        drainEvents();
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            // could be removed in between
+            return entry == null ? polled : entry.toStats();
+        }
+    }
+
+    /**
+     * Force full poll for fleet on next {@link #getState(Key, Supplier)}.
+     *
+     * @param key fleet key
+     */
+    public synchronized void invalidate(@Nonnull final Key key) {
+        final Entry entry = entries.get(key);
+        if (entry != null) entry.reconcile = true;
+    }
+
+    /**
+     * Forget fleet, for example when cloud removed. Not requested fleets are dropped anyway.
+     *
+     * @param key fleet key
+     */
+    public synchronized void remove(@Nonnull final Key key) {
+        entries.remove(key);
+    }
+
+    // Visible for testing
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictNotRead(final long now) {
+        final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Key, Entry> entry = iterator.next();
+            if (now - entry.getValue().readAt > 2 * reconcileIntervalMillis) {
+                LOGGER.log(Level.FINE, "Fleet {0} is not requested, drop", entry.getKey());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void drainEvents() {
+        for (int i = 0; i < MAX_RECEIVE_BATCHES; i++) {
+            final List<FleetEvent> events = source.receive(RECEIVE_BATCH_SIZE);
+            if (events.isEmpty()) return;
+
+            synchronized (this) {
+                for (final FleetEvent event : events) {
+                    apply(event);
+                }
+            }
+            source.delete(events);
+        }
+    }
+
+    private void apply(final FleetEvent event) {
+        LOGGER.log(Level.FINER, "Apply fleet event {0}", event);
+        final boolean active = event.getType() == FleetEvent.Type.STATE_CHANGE
+                && ACTIVE_STATES.contains(event.getInstanceState());
+
+        if (!active) {
+            for (final Entry entry : entries.values()) {
+                entry.remove(event);
+            }
+            return;
+        }
+
+        if (event.getFleetId() != null) {
+            final List<Entry> fleetEntries = new ArrayList<>();
+            for (final Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                if (event.getFleetId().equals(entry.getKey().fleetId)) fleetEntries.add(entry.getValue());
+            }
+            // fleet not known yet, will be polled on first request
+            if (fleetEntries.size() == 1) {
+                fleetEntries.get(0).add(event);
+            } else {
+                // same fleet id in several accounts or regions, can't say which one
+                for (final Entry entry : fleetEntries) entry.reconcile = true;
+            }
+            return;
+        }
+
+        for (final Entry entry : entries.values()) {
+            if (entry.instances.contains(event.getInstanceId())) {
+                entry.add(event);
+                return;
+            }
+        }
+        // unknown instance without fleet, can't say where it belongs
+        LOGGER.log(Level.FINE, "Can't assign event {0} to fleet, reconcile all", event);
+        for (final Entry entry : entries.values()) {
+            entry.reconcile = true;
+        }
+    }
+
+    private static final class Entry {
+
+        private final FleetStateStats polled;
+        private final long polledAt;
+        private final Set<String> instances;
+        // instance id -> time of last applied event
+        private final Map<String, Long> eventTimes = new HashMap<>();
+        private boolean reconcile;
+        private long readAt;
+
+        /**
+         * @param polledAt time when poll started
+         */
+        private Entry(final FleetStateStats polled, final long polledAt) {
+            this.polled = polled;
+            this.polledAt = polledAt;
+            this.readAt = polledAt;
+            this.instances = new HashSet<>(polled.getInstances());
+        }
+
+        private void add(final FleetEvent event) {
+            if (event.getTime() < polledAt) return;
+            final Long last = eventTimes.get(event.getInstanceId());
+            // on the same time removal wins, instance doesn't come back after termination
+            if (last != null && event.getTime() <= last) return;
+            instances.add(event.getInstanceId());
+            eventTimes.put(event.getInstanceId(), event.getTime());
+        }
+
+        private void remove(final FleetEvent event) {
+            if (event.getTime() < polledAt) return;
+            final Long last = eventTimes.get(event.getInstanceId());
+            if (last != null && event.getTime() < last) return;
+            // track only instances of this fleet, removal is applied to all fleets
+            if (instances.remove(event.getInstanceId()) || last != null) {
+                eventTimes.put(event.getInstanceId(), event.getTime());
+            }
+        }
+
+        private FleetStateStats toStats() {
+            return new FleetStateStats(polled.getFleetId(), polled.getNumDesired(), polled.getState(),
+                    Collections.unmodifiableSet(new HashSet<>(instances)), polled.getInstanceTypeWeights());
+        }
+
+    }
+
+    /**
+     * Fleet in account and region, same as clouds are batched by {@link com.amazon.jenkins.ec2fleet.CloudNanny}.
+     */
+    @Immutable
+    public static final class Key {
+
+        private final String awsCredentialsId;
+        private final String region;
+        private final String endpoint;
+        private final String fleetId;
+
+        public Key(@Nullable final String awsCredentialsId, @Nullable final String region,
+                   @Nullable final String endpoint, @Nonnull final String fleetId) {
+            this.awsCredentialsId = awsCredentialsId;
+            this.region = region;
+            this.endpoint = endpoint;
+            this.fleetId = fleetId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(awsCredentialsId, key.awsCredentialsId) &&
+                    Objects.equals(region, key.region) &&
+                    Objects.equals(endpoint, key.endpoint) &&
+                    Objects.equals(fleetId, key.fleetId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(awsCredentialsId, region, endpoint, fleetId);
+        }
+
+        @Override
+        public String toString() {
+            return fleetId + " {credentials: " + awsCredentialsId + ", region: " + region + ", endpoint: " + endpoint + "}";
+        }
+
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.amazon.jenkins.ec2fleet.fleet;
+
+import hudson.Extension;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local {@link FleetEventSource} with same delivery semantic as SQS queue, could be used
+ * for tests or as target for custom event producer running in Jenkins, which could get registered
+ * instance by <code>ExtensionList.lookupSingleton(InMemoryFleetEventSource.class)</code>.
+ */
+@ThreadSafe
+@Extension(ordinal = -100)
+public class InMemoryFleetEventSource implements FleetEventSource {
+
+    private final long visibilityTimeoutMillis;
+    private final Deque<FleetEvent> available = new ArrayDeque<>();
+    // received but not yet deleted events with time when they become visible again
+    private final Map<FleetEvent, Long> inFlight = new LinkedHashMap<>();
+
+    public InMemoryFleetEventSource() {
+        this(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    public InMemoryFleetEventSource(final long visibilityTimeoutMillis) {
+        this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+    }
+
+    public void send(@Nonnull final FleetEvent.Type type, @Nonnull final String instanceId,
+                     final String instanceState, final String fleetId) {
+        send(new FleetEvent(UUID.randomUUID().toString(), type, instanceId, instanceState, fleetId));
+    }
+
+    public synchronized void send(@Nonnull final FleetEvent event) {
+        available.addLast(event);
+    }
+
+    @Nonnull
+    @Override
+    public synchronized List<FleetEvent> receive(final int maxEvents) {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<FleetEvent, Long>> iterator = inFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<FleetEvent, Long> entry = iterator.next();
+            if (entry.getValue() <= now) {
+                available.addLast(entry.getKey());
+                iterator.remove();
+            }
+        }
+
+        final List<FleetEvent> result = new ArrayList<>();
+        while (result.size() < maxEvents && !available.isEmpty()) {
+            final FleetEvent event = available.pollFirst();
+            inFlight.put(event, now + visibilityTimeoutMillis);
+            result.add(event);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void delete(@Nonnull final Collection<FleetEvent> events) {
+        for (final FleetEvent event : events) {
+            inFlight.remove(event);
+        }
+    }
+
+    /**
+     * @return number of events not yet deleted, including in flight
+     */
+    public synchronized int size() {
+        return available.size() + inFlight.size();
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.amazon.jenkins.ec2fleet.fleet;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Result of {@link AutoScalingGroupFleet#terminateInstances(String, String, String, java.util.Collection)}:
+ * instances which are terminated or already gone and instances which failed with error message.
+ */
+@Immutable
+public final class TerminationResult {
+
+    private final Set<String> terminated;
+    private final Map<String, String> failed;
+
+    public TerminationResult(final Set<String> terminated, final Map<String, String> failed) {
+        this.terminated = Collections.unmodifiableSet(new LinkedHashSet<>(terminated));
+        this.failed = Collections.unmodifiableMap(new TreeMap<>(failed));
+    }
+
+    public Set<String> getTerminated() {
+        return terminated;
+    }
+
+    /**
+     * @return error message by instance id
+     */
+    public Map<String, String> getFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return "TerminationResult{terminated=" + terminated + ", failed=" + failed + '}';
+    }
+
+}
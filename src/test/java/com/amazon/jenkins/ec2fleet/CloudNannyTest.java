@@ -2,6 +2,8 @@ package com.amazon.jenkins.ec2fleet;
 
 import com.amazon.jenkins.ec2fleet.fleet.EC2Fleet;
 import com.amazon.jenkins.ec2fleet.fleet.EC2Fleets;
+import com.amazonaws.AmazonServiceException;
+import com.google.common.util.concurrent.MoreExecutors;
 import hudson.slaves.Cloud;
 import jenkins.model.Jenkins;
 import org.junit.After;
@@ -14,9 +16,13 @@ import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
@@ -59,12 +65,13 @@ public class CloudNannyTest {
 
     @Before
     public void before() throws Exception {
-        mockedCloudNanny = Mockito.mockStatic(CloudNanny.class);
-        mockedCloudNanny.when(CloudNanny::getClouds).thenReturn(clouds);
-
         mockedJenkins = Mockito.mockStatic(Jenkins.class);
         mockedJenkins.when(Jenkins::get).thenReturn(jenkins);
 
+        // only clouds are stubbed, other statics like throttling check are real
+        mockedCloudNanny = Mockito.mockStatic(CloudNanny.class, Mockito.CALLS_REAL_METHODS);
+        mockedCloudNanny.when(CloudNanny::getClouds).thenReturn(clouds);
+
         mockedEc2Fleets = Mockito.mockStatic(EC2Fleets.class);
         mockedEc2Fleets.when(() -> EC2Fleets.get(anyString())).thenReturn(ec2Fleet);
         Mockito.when(ec2Fleet.getState(anyString(), anyString(), anyString(), anyString()))
@@ -101,6 +108,8 @@ public class CloudNannyTest {
         recurrenceCounter2.set(1);
 
         setInternalState(cloudNanny, "recurrenceCounters", recurrenceCounters);
+        // run updates in caller thread so static mocks are visible and verification is deterministic
+        setInternalState(cloudNanny, "syncExecutor", new CloudSyncExecutor(MoreExecutors.newDirectExecutorService()));
 
         return cloudNanny;
     }
@@ -238,4 +247,137 @@ public class CloudNannyTest {
         assertEquals(EC2FleetCloud.WeightedScaler.class, cloud1.getExecutorScaler().getClass());
         assertEquals(EC2FleetCloud.NoScaler.class, cloud2.getExecutorScaler().getClass());
     }
+
+    @Test
+    public void shouldUpdateSpotFleetCloudsOfSameRegionWithOneBatchDescribe() {
+        clouds.add(cloud1);
+        clouds.add(cloud2);
+        mockedEc2Fleets.when(() -> EC2Fleets.isEC2SpotFleet(anyString())).thenReturn(true);
+        when(cloud1.getRegion()).thenReturn("us-east-1");
+        when(cloud2.getRegion()).thenReturn("us-east-1");
+        final Map<String, FleetStateStats> states = new HashMap<>();
+        states.put("f1", stats1);
+        states.put("f2", stats2);
+        when(ec2Fleet.getStateBatch(any(), anyString(), any(), anyCollection())).thenReturn(states);
+
+        getMockCloudNannyInstance().doRun();
+
+        verify(ec2Fleet).getStateBatch(null, "us-east-1", null, new HashSet<>(Arrays.asList("f1", "f2")));
+        verify(cloud1).update(stats1);
+        verify(cloud2).update(stats2);
+        verify(cloud1, never()).update();
+        verify(cloud2, never()).update();
+    }
+
+    @Test
+    public void shouldUpdateCloudOnItsOwnIfFleetNotInBatch() {
+        clouds.add(cloud1);
+        clouds.add(cloud2);
+        mockedEc2Fleets.when(() -> EC2Fleets.isEC2SpotFleet(anyString())).thenReturn(true);
+        when(ec2Fleet.getStateBatch(any(), any(), any(), anyCollection()))
+                .thenReturn(Collections.singletonMap("f1", stats1));
+
+        getMockCloudNannyInstance().doRun();
+
+        verify(cloud1).update(stats1);
+        verify(cloud2).update();
+    }
+
+    @Test
+    public void shouldRecordSyncStatsPerCloud() {
+        clouds.add(cloud1);
+        CloudNanny cloudNanny = getMockCloudNannyInstance();
+
+        cloudNanny.doRun();
+
+        verify(cloud1).update();
+        assertEquals(1, cloudNanny.getSyncStats().size());
+        assertEquals(1, cloudNanny.getSyncStats().values().iterator().next().getCount());
+    }
+
+    @Test
+    public void shouldNotUpdateCloudWhilePreviousUpdateInFlight() {
+        clouds.add(cloud1);
+        CloudNanny cloudNanny = getMockCloudNannyInstance();
+        // executor which never runs tasks, so update stays in flight
+        ExecutorService executor = mock(ExecutorService.class);
+        setInternalState(cloudNanny, "syncExecutor", new CloudSyncExecutor(executor));
+
+        cloudNanny.doRun();
+        recurrenceCounter1.set(1);
+        cloudNanny.doRun();
+
+        verify(executor, times(1)).execute(any(Runnable.class));
+        assertEquals(1, cloudNanny.getSyncStats().values().iterator().next().getSkipped());
+    }
+
+    @Test
+    public void shouldBackOffWhenFleetIsIdleAndUnchanged() {
+        // cloud with scaler is not replaced, so the same cloud is synced on each run
+        when(cloud1.getExecutorScaler()).thenReturn(new EC2FleetCloud.NoScaler());
+        clouds.add(cloud1);
+        CloudNanny cloudNanny = getMockCloudNannyInstance();
+
+        cloudNanny.doRun();
+        assertEquals(1, cloudNanny.getIntervalMultiplier(cloud1));
+
+        recurrenceCounter1.set(1);
+        cloudNanny.doRun();
+        assertEquals(2, cloudNanny.getIntervalMultiplier(cloud1));
+
+        recurrenceCounter1.set(1);
+        cloudNanny.doRun();
+        assertEquals(recurrencePeriod * 2, recurrenceCounter1.get());
+        assertEquals(4, cloudNanny.getIntervalMultiplier(cloud1));
+    }
+
+    @Test
+    public void shouldNotBackOffWhenFleetChanges() {
+        when(cloud1.getExecutorScaler()).thenReturn(new EC2FleetCloud.NoScaler());
+        clouds.add(cloud1);
+        CloudNanny cloudNanny = getMockCloudNannyInstance();
+        FleetStateStats changedStats = new FleetStateStats(
+                "f1", 2, new FleetStateStats.State(true, false, "a"), Collections.emptySet(), Collections.<String, Double>emptyMap());
+        when(cloud1.update()).thenReturn(stats1, changedStats);
+
+        cloudNanny.doRun();
+        recurrenceCounter1.set(1);
+        cloudNanny.doRun();
+
+        assertEquals(1, cloudNanny.getIntervalMultiplier(cloud1));
+    }
+
+    @Test
+    public void shouldSyncBackedOffCloudRightAwayWhenItHasPendingChanges() {
+        when(cloud1.getExecutorScaler()).thenReturn(new EC2FleetCloud.NoScaler());
+        clouds.add(cloud1);
+        CloudNanny cloudNanny = getMockCloudNannyInstance();
+        cloudNanny.doRun();
+        recurrenceCounter1.set(1);
+        cloudNanny.doRun();
+        assertEquals(2, cloudNanny.getIntervalMultiplier(cloud1));
+
+        when(cloud1.hasPendingChanges()).thenReturn(true);
+        recurrenceCounter1.set(50);
+        cloudNanny.doRun();
+
+        verify(cloud1, times(3)).update();
+        assertEquals(1, cloudNanny.getIntervalMultiplier(cloud1));
+    }
+
+    @Test
+    public void shouldBackOffWhenThrottled() {
+        when(cloud1.getExecutorScaler()).thenReturn(new EC2FleetCloud.NoScaler());
+        clouds.add(cloud1);
+        CloudNanny cloudNanny = getMockCloudNannyInstance();
+        AmazonServiceException exception = new AmazonServiceException("test");
+        exception.setErrorCode("RequestLimitExceeded");
+        when(cloud1.update()).thenThrow(exception);
+
+        cloudNanny.doRun();
+        recurrenceCounter1.set(1);
+        cloudNanny.doRun();
+
+        assertEquals(4, cloudNanny.getIntervalMultiplier(cloud1));
+    }
 }
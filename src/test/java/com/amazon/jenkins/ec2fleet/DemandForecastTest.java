@@ -0,0 +1,65 @@
+package com.amazon.jenkins.ec2fleet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DemandForecastTest {
+
+    @Test
+    public void forecast_returnsNegativeIfNotEnoughHistory() {
+        final DemandForecast forecast = new DemandForecast(10);
+        forecast.record(0, 5);
+        forecast.record(10_000, 5);
+
+        assertEquals(-1, forecast.forecast(60_000), 0);
+    }
+
+    @Test
+    public void forecast_keepsLevelOfConstantDemand() {
+        final DemandForecast forecast = new DemandForecast(10);
+        for (int i = 0; i < 10; i++) forecast.record(i * 10_000L, 5);
+
+        assertEquals(5, forecast.forecast(300_000), 0.001);
+    }
+
+    @Test
+    public void forecast_followsGrowingDemand() {
+        final DemandForecast forecast = new DemandForecast(30);
+        // one more build each 10 sec
+        for (int i = 0; i < 30; i++) forecast.record(i * 10_000L, i);
+
+        final double r = forecast.forecast(300_000);
+        // last demand 29, 30 more expected in 5 minutes
+        assertTrue("forecast " + r, r > 50 && r < 65);
+    }
+
+    @Test
+    public void forecast_neverNegativeForFallingDemand() {
+        final DemandForecast forecast = new DemandForecast(10);
+        for (int i = 0; i < 10; i++) forecast.record(i * 10_000L, 10 - i);
+
+        assertEquals(0, forecast.forecast(300_000), 0);
+    }
+
+    @Test
+    public void record_keepsOnlyLastSamples() {
+        final DemandForecast forecast = new DemandForecast(5);
+        for (int i = 0; i < 20; i++) forecast.record(i * 10_000L, i < 15 ? 100 : 5);
+
+        assertEquals(5, forecast.size());
+        assertEquals(5, forecast.forecast(0), 0.001);
+    }
+
+    @Test
+    public void record_mergesCloseSamples() {
+        final DemandForecast forecast = new DemandForecast(5);
+        forecast.record(0, 1);
+        forecast.record(100, 2);
+        forecast.record(200, 3);
+
+        assertEquals(1, forecast.size());
+    }
+
+}
@@ -5,8 +5,10 @@ import com.amazon.jenkins.ec2fleet.fleet.AutoScalingGroupFleet;
 import com.amazon.jenkins.ec2fleet.fleet.EC2Fleet;
 import com.amazon.jenkins.ec2fleet.fleet.EC2Fleets;
 import com.amazon.jenkins.ec2fleet.fleet.EC2SpotFleet;
+import com.amazon.jenkins.ec2fleet.fleet.TerminationResult;
 import com.amazon.jenkins.ec2fleet.aws.RegionInfo;
 import com.amazon.jenkins.ec2fleet.aws.AwsPermissionChecker;
+import com.amazon.jenkins.ec2fleet.aws.InstanceTypeCatalog;
 import com.amazonaws.regions.RegionUtils;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.AmazonEC2Client;
@@ -42,7 +44,6 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -51,12 +52,17 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -69,6 +75,7 @@ import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.nullable;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -165,6 +172,7 @@ public class EC2FleetCloudTest {
     @After
     public void after() {
         Registry.setEc2Api(new EC2Api());
+        InstanceTypeCatalog.invalidateAll();
         mockedJenkins.close();
         mockedLabelFinder.close();
         mockedFleetStateStats.close();
@@ -227,6 +235,23 @@ public class EC2FleetCloudTest {
         Assert.assertTrue(result);
     }
 
+    @Test
+    public void canProvision_shouldParseLabelStringOnce() {
+        EC2FleetCloud fleetCloud = new EC2FleetCloud("TestCloud", "credId", null, "region",
+                "", "", "label1 momo", null, null, false,
+                false, 0, 0, 10, 0, 1, true,
+                false, "-1", false, 0, 0,
+                10, false, false, noScaling);
+
+        when(jenkins.getLabelAtom("momo")).thenReturn(new LabelAtom("momo"));
+        when(jenkins.getLabelAtom("label1")).thenReturn(new LabelAtom("label1"));
+
+        Assert.assertTrue(fleetCloud.canProvision(new Cloud.CloudState(new LabelAtom("momo"), 0)));
+        Assert.assertFalse(fleetCloud.canProvision(new Cloud.CloudState(new LabelAtom("other"), 0)));
+
+        verify(jenkins, Mockito.times(1)).getLabelAtom("label1");
+    }
+
     @Test
     public void provision_shouldProvisionNoneWhenMaxReached() {
         // given
@@ -279,6 +304,33 @@ public class EC2FleetCloudTest {
         assertEquals(7, fleetCloud.getToAdd());
     }
 
+    @Test
+    public void getHeadroom_shouldCountRequestedCapacityAndNumExecutors() {
+        // given
+        when(ec2Api.connect(any(String.class), any(String.class), anyString())).thenReturn(amazonEC2);
+
+        Mockito.when(ec2Fleet.getState(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(new FleetStateStats("", 0, FleetStateStats.State.active(),
+                        Collections.<String>emptySet(), Collections.<String, Double>emptyMap()));
+
+        EC2FleetCloud fleetCloud = new EC2FleetCloud("TestCloud", "credId", null, "region",
+                "", "", "", null, null, false,
+                false, 0, 1, 8, 0, 3, true,
+                false, "-1", false, 0, 0,
+                10, false, false, noScaling);
+
+        fleetCloud.setStats(new FleetStateStats("", 1, FleetStateStats.State.active(),
+                Collections.<String>emptySet(), Collections.<String, Double>emptyMap()));
+        assertEquals(21, fleetCloud.getHeadroom());
+
+        // when
+        fleetCloud.provision(new Cloud.CloudState(null, 0), 2);
+
+        // then
+        assertEquals(18, fleetCloud.getHeadroom());
+        assertEquals(-1, fleetCloud.getFulfillmentLatencyMillis());
+    }
+
     @Test
     public void provision_shouldProvisionNoneWhenMaxReachedAndNumExecutorsMoreOne1() {
         // given
@@ -591,6 +643,46 @@ public class EC2FleetCloudTest {
         }}, fleetCloud.getInstanceIdsToTerminate());
     }
 
+    @Test
+    public void scheduleToTerminate_removeNoMoreMinIfCalledConcurrently() throws Exception {
+        // given
+        Mockito.when(ec2Fleet.getState(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(new FleetStateStats("", 0, FleetStateStats.State.active(),
+                        Collections.<String>emptySet(), Collections.<String, Double>emptyMap()));
+
+        final EC2FleetCloud fleetCloud = new EC2FleetCloud("TestCloud", "credId", null, "region",
+                "", "", "", null, null, false,
+                false, 0, 2, 20, 0, 1, true,
+                false, "-1", false, 0, 0,
+                10, false, false, noScaling);
+
+        final Set<String> instanceIds = new HashSet<>();
+        for (int i = 0; i < 10; i++) instanceIds.add("i-" + i);
+        fleetCloud.setStats(new FleetStateStats("", 10, FleetStateStats.State.active(),
+                instanceIds, Collections.<String, Double>emptyMap()));
+
+        // when
+        final ExecutorService executor = Executors.newFixedThreadPool(10);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for (final String instanceId : instanceIds) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return fleetCloud.scheduleToTerminate(instanceId, false, EC2AgentTerminationReason.IDLE_FOR_TOO_LONG);
+            }));
+        }
+        start.countDown();
+        int scheduled = 0;
+        for (final Future<Boolean> result : results) {
+            if (result.get()) scheduled++;
+        }
+        executor.shutdown();
+
+        // then
+        assertTrue(scheduled <= 8);
+        assertEquals(scheduled, fleetCloud.getInstanceIdsToTerminate().size());
+    }
+
     @Test
     public void scheduleToTerminate_removeNoMoreMinIfCalledMultipleBeforeUpdate() {
         // given
@@ -792,7 +884,38 @@ public class EC2FleetCloudTest {
 
         // then
         verify(ec2Fleet).modify(anyString(), anyString(), anyString(), eq("fleetId"), eq(2), eq(0), eq(10));
-        verify(ec2Api).terminateInstances(amazonEC2, new HashSet<>(Arrays.asList("i-1", "i-2")));
+        verify(ec2Api, timeout(5000)).terminateInstances(amazonEC2, new HashSet<>(Arrays.asList("i-1", "i-2")));
+    }
+
+    @Test
+    public void update_shouldRecordSyncTraceWithPhasesAndCounts() {
+        // given
+        when(ec2Api.connect(any(String.class), any(String.class), anyString())).thenReturn(amazonEC2);
+
+        Mockito.when(ec2Fleet.getState(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(new FleetStateStats("fleetId", 4, FleetStateStats.State.active(),
+                        Collections.<String>emptySet(), Collections.<String, Double>emptyMap()));
+
+        EC2FleetCloud fleetCloud = new EC2FleetCloud("TestCloud", "credId", null, "region",
+                "", "fleetId", "", null, null, false,
+                false, 0, 0, 10, 0, 1, true,
+                false, "-1", false, 0,
+                0, 10, false, false, noScaling);
+
+        fleetCloud.scheduleToTerminate("i-1", false, EC2AgentTerminationReason.IDLE_FOR_TOO_LONG);
+        fleetCloud.scheduleToTerminate("i-2", false, EC2AgentTerminationReason.IDLE_FOR_TOO_LONG);
+
+        // when
+        fleetCloud.update();
+
+        // then
+        assertEquals(1, fleetCloud.getSyncTraces().size());
+        final SyncTrace trace = fleetCloud.getSyncTraces().get(0);
+        assertEquals(Arrays.asList("fetchState", "computeSpare", "filterOutBusyNodes", "modify", "removeNodes",
+                "terminate", "describe", "updateLabels", "publishState"), new ArrayList<>(trace.getPhaseMillis().keySet()));
+        assertEquals(Integer.valueOf(2), trace.getCounts().get("terminated"));
+        assertNull(trace.getError());
+        assertTrue(trace.getTotalMillis() >= 0);
     }
 
     @Test
@@ -871,13 +994,16 @@ public class EC2FleetCloudTest {
         fleetCloud.update();
 
         // then
-        verify(ec2Api).tagInstances(amazonEC2, new HashSet<>(Arrays.asList("i-0", "i-1")), "ec2-fleet-plugin:cloud-name", "TestCloud");
-        Node actualFleetNode = nodeCaptor.getValue();
+        verify(ec2Api, timeout(5000)).tagInstances(amazonEC2, new HashSet<>(Arrays.asList("i-0", "i-1")), "ec2-fleet-plugin:cloud-name", "TestCloud");
+        // nodes are added one by one, so Jenkins doesn't save all nodes
+        verify(jenkins, never()).setNodes(any());
+        assertEquals(2, nodeCaptor.getAllValues().size());
+        Node actualFleetNode = nodeCaptor.getAllValues().get(0);
         assertEquals(Node.Mode.NORMAL, actualFleetNode.getMode());
     }
 
     @Test
-    public void update_shouldTagNewNodesBeforeAddingWithFleetName() throws IOException {
+    public void update_shouldTagNewNodesWithFleetName() throws IOException {
         // given
         when(ec2Api.connect(any(String.class), any(String.class), anyString())).thenReturn(amazonEC2);
 
@@ -907,7 +1033,7 @@ public class EC2FleetCloudTest {
         fleetCloud.update();
 
         // then
-        verify(ec2Api).tagInstances(amazonEC2, Collections.singleton("i-0"), "ec2-fleet-plugin:cloud-name", "my-fleet");
+        verify(ec2Api, timeout(5000)).tagInstances(amazonEC2, Collections.singleton("i-0"), "ec2-fleet-plugin:cloud-name", "my-fleet");
         Node actualFleetNode = nodeCaptor.getValue();
         assertEquals(Node.Mode.NORMAL, actualFleetNode.getMode());
     }
@@ -948,7 +1074,7 @@ public class EC2FleetCloudTest {
         fleetCloud.update();
 
         // then
-        verify(ec2Api).tagInstances(amazonEC2, Collections.singleton("i-0"), "ec2-fleet-plugin:cloud-name", "TestCloud");
+        verify(ec2Api, timeout(5000)).tagInstances(amazonEC2, Collections.singleton("i-0"), "ec2-fleet-plugin:cloud-name", "TestCloud");
         Node actualFleetNode = nodeCaptor.getValue();
         assertEquals(Node.Mode.NORMAL, actualFleetNode.getMode());
     }
@@ -1291,7 +1417,7 @@ public class EC2FleetCloudTest {
         fleetCloud.update();
 
         // then - i-2 remains scheduled for termination, for next update cycle as it is busy
-        verify(ec2Api).terminateInstances(amazonEC2, new HashSet<>(Arrays.asList("i-1", "i-3")));
+        verify(ec2Api, timeout(5000)).terminateInstances(amazonEC2, new HashSet<>(Arrays.asList("i-1", "i-3")));
         assertEquals(new HashSet<>(Arrays.asList("i-2")), fleetCloud.getInstanceIdsToTerminate().keySet());
     }
 
@@ -1657,13 +1783,16 @@ public class EC2FleetCloudTest {
 
         // when
         Collection<NodeProvisioner.PlannedNode> r = fleetCloud.provision(new Cloud.CloudState(null, 0), 1);
-        ScheduledFuture<?> scheduledFuture = fleetCloud.getPlannedNodeScheduledFutures().get(0);
+        NodeProvisioner.PlannedNode plannedNode = r.iterator().next();
+        HashedWheelTimer.Timeout scalingTimeout = fleetCloud.getPlannedNodeTimeouts().get(plannedNode);
 
-        // sleep for a little more than the timeout to let the scheduled future execute
-        Thread.sleep(TimeUnit.SECONDS.toMillis(fleetCloud.getScheduledFutureTimeoutSec()) + 200);
+        // sleep for a little more than the timeout and timer tick to let the timeout expire
+        Thread.sleep(TimeUnit.SECONDS.toMillis(fleetCloud.getScheduledFutureTimeoutSec()) + 500);
 
         // then
-        Assert.assertTrue(scheduledFuture.isDone());
+        Assert.assertTrue(scalingTimeout.isExpired());
+        Assert.assertTrue(plannedNode.future.isDone());
+        Assert.assertFalse(fleetCloud.getPlannedNodeTimeouts().containsKey(plannedNode));
     }
 
     @Test
@@ -1688,13 +1817,14 @@ public class EC2FleetCloudTest {
 
         // when
         Collection<NodeProvisioner.PlannedNode> r = fleetCloud.provision(new Cloud.CloudState(null, 0), 1);
-        ScheduledFuture<?> scheduledFuture = fleetCloud.getPlannedNodeScheduledFutures().get(0);
+        HashedWheelTimer.Timeout scalingTimeout = fleetCloud.getPlannedNodeTimeouts().get(r.iterator().next());
 
         // call update before the timeout expires
         fleetCloud.update();
 
         // then
-        Assert.assertTrue(scheduledFuture.isCancelled());
+        Assert.assertTrue(scalingTimeout.isCancelled());
+        Assert.assertTrue(fleetCloud.getPlannedNodeTimeouts().isEmpty());
     }
 
     @Test
@@ -1723,6 +1853,7 @@ public class EC2FleetCloudTest {
                 .thenReturn(new DescribeInstanceTypesResult()
                         .withInstanceTypes(
                                 new InstanceTypeInfo()
+                                        .withInstanceType("t3.small")
                                         .withMemoryInfo(
                                                 new MemoryInfo()
                                                         .withSizeInMiB((long)4*MiB_TO_GiB_MULTIPLIER))
@@ -1735,6 +1866,7 @@ public class EC2FleetCloudTest {
         final Instance instance = new Instance()
                 .withPublicIpAddress("p-ip")
                 .withInstanceId("i-0")
+                .withInstanceType("t3.small")
                 .withState(new InstanceState()
                             .withName(InstanceStateName.Running));
 
@@ -1775,6 +1907,7 @@ public class EC2FleetCloudTest {
                 .thenReturn(new DescribeInstanceTypesResult()
                         .withInstanceTypes(
                                 new InstanceTypeInfo()
+                                        .withInstanceType("t3.small")
                                         .withMemoryInfo(
                                                 new MemoryInfo()
                                                         .withSizeInMiB((long)6*MiB_TO_GiB_MULTIPLIER))
@@ -1787,6 +1920,7 @@ public class EC2FleetCloudTest {
         final Instance instance = new Instance()
                 .withPublicIpAddress("p-ip")
                 .withInstanceId("i-0")
+                .withInstanceType("t3.small")
                 .withState(new InstanceState()
                         .withName(InstanceStateName.Running));
 
@@ -1827,6 +1961,7 @@ public class EC2FleetCloudTest {
                 .thenReturn(new DescribeInstanceTypesResult()
                         .withInstanceTypes(
                                 new InstanceTypeInfo()
+                                        .withInstanceType("t3.small")
                                         .withMemoryInfo(
                                                 new MemoryInfo()
                                                         .withSizeInMiB((long)4*MiB_TO_GiB_MULTIPLIER))
@@ -1839,6 +1974,7 @@ public class EC2FleetCloudTest {
         final Instance instance = new Instance()
                 .withPublicIpAddress("p-ip")
                 .withInstanceId("i-0")
+                .withInstanceType("t3.small")
                 .withState(new InstanceState()
                         .withName(InstanceStateName.Running));
 
@@ -1879,6 +2015,7 @@ public class EC2FleetCloudTest {
                 .thenReturn(new DescribeInstanceTypesResult()
                         .withInstanceTypes(
                                 new InstanceTypeInfo()
+                                        .withInstanceType("t3.small")
                                         .withMemoryInfo(
                                                 new MemoryInfo()
                                                         .withSizeInMiB((long)3*MiB_TO_GiB_MULTIPLIER))
@@ -1891,6 +2028,7 @@ public class EC2FleetCloudTest {
         final Instance instance = new Instance()
                 .withPublicIpAddress("p-ip")
                 .withInstanceId("i-0")
+                .withInstanceType("t3.small")
                 .withState(new InstanceState()
                         .withName(InstanceStateName.Running));
 
@@ -1931,6 +2069,7 @@ public class EC2FleetCloudTest {
                 .thenReturn(new DescribeInstanceTypesResult()
                         .withInstanceTypes(
                                 new InstanceTypeInfo()
+                                        .withInstanceType("t3.small")
                                         .withMemoryInfo(
                                                 new MemoryInfo()
                                                         .withSizeInMiB((long)2*MiB_TO_GiB_MULTIPLIER))
@@ -1943,6 +2082,7 @@ public class EC2FleetCloudTest {
         final Instance instance = new Instance()
                 .withPublicIpAddress("p-ip")
                 .withInstanceId("i-0")
+                .withInstanceType("t3.small")
                 .withState(new InstanceState()
                         .withName(InstanceStateName.Running));
 
@@ -1983,6 +2123,7 @@ public class EC2FleetCloudTest {
                 .thenReturn(new DescribeInstanceTypesResult()
                         .withInstanceTypes(
                                 new InstanceTypeInfo()
+                                        .withInstanceType("t3.small")
                                         .withMemoryInfo(
                                                 new MemoryInfo()
                                                         .withSizeInMiB((long)4*MiB_TO_GiB_MULTIPLIER))
@@ -1995,6 +2136,7 @@ public class EC2FleetCloudTest {
         final Instance instance = new Instance()
                 .withPublicIpAddress("p-ip")
                 .withInstanceId("i-0")
+                .withInstanceType("t3.small")
                 .withState(new InstanceState()
                         .withName(InstanceStateName.Running));
 
@@ -2035,6 +2177,7 @@ public class EC2FleetCloudTest {
                 .thenReturn(new DescribeInstanceTypesResult()
                         .withInstanceTypes(
                                 new InstanceTypeInfo()
+                                        .withInstanceType("t3.small")
                                         .withMemoryInfo(
                                                 new MemoryInfo()
                                                         .withSizeInMiB((long)4*MiB_TO_GiB_MULTIPLIER))
@@ -2047,6 +2190,7 @@ public class EC2FleetCloudTest {
         final Instance instance = new Instance()
                 .withPublicIpAddress("p-ip")
                 .withInstanceId("i-0")
+                .withInstanceType("t3.small")
                 .withState(new InstanceState()
                         .withName(InstanceStateName.Running));
 
@@ -2082,11 +2226,13 @@ public class EC2FleetCloudTest {
     }
 
     @Test
-    public void update_shouldTerminateInstancesInAutoScalingGroup() throws IOException, IllegalAccessException, NoSuchFieldException {
+    public void update_shouldTerminateInstancesInAutoScalingGroup() throws IOException {
         // Arrange
         final AutoScalingGroupFleet autoScalingGroupFleet = mock(AutoScalingGroupFleet.class);
         when(EC2Fleets.get(anyString())).thenReturn(autoScalingGroupFleet);
         when(autoScalingGroupFleet.isAutoScalingGroup()).thenReturn(true);
+        when(autoScalingGroupFleet.terminateInstances(anyString(), any(), any(), any()))
+                .thenReturn(new TerminationResult(Collections.singleton("i-0"), Collections.emptyMap()));
 
         final FleetStateStats stats = new FleetStateStats("fleetId", 1, FleetStateStats.State.active(),
                 Collections.singleton("i-0"), Collections.<String, Double>emptyMap());
@@ -2100,19 +2246,17 @@ public class EC2FleetCloudTest {
         HashMap<String, EC2AgentTerminationReason> toTerminate = new HashMap<>();
         toTerminate.put("i-0", EC2AgentTerminationReason.MAX_TOTAL_USES_EXHAUSTED);
         fleetCloud.setStats(stats);
-        Field field = EC2FleetCloud.class.getDeclaredField("instanceIdsToTerminate");
-        field.setAccessible(true);
-        field.set(fleetCloud, toTerminate);
+        fleetCloud.getInstanceIdsToTerminate().putAll(toTerminate);
 
         // Act
         fleetCloud.update();
 
         // Assert
-        verify(autoScalingGroupFleet).terminateInstances(anyString(), any(), any(), eq(Collections.singleton("i-0")));
+        verify(autoScalingGroupFleet, timeout(5000)).terminateInstances(anyString(), any(), any(), eq(Collections.singleton("i-0")));
     }
 
     @Test
-    public void update_shouldTerminateInstancesInEC2Api() throws IOException, NoSuchFieldException, IllegalAccessException {
+    public void update_shouldTerminateInstancesInEC2Api() throws IOException {
         // Arrange
         final EC2Fleet ec2Fleet = mock(EC2Fleet.class);
         when(EC2Fleets.get(anyString())).thenReturn(ec2Fleet);
@@ -2133,59 +2277,139 @@ public class EC2FleetCloudTest {
         HashMap<String, EC2AgentTerminationReason> toTerminate = new HashMap<>();
         toTerminate.put("i-0", EC2AgentTerminationReason.MAX_TOTAL_USES_EXHAUSTED);
         fleetCloud.setStats(stats);
-        Field field = EC2FleetCloud.class.getDeclaredField("instanceIdsToTerminate");
-        field.setAccessible(true);
-        field.set(fleetCloud, toTerminate);
+        fleetCloud.getInstanceIdsToTerminate().putAll(toTerminate);
 
         // Act
         fleetCloud.update();
 
         // Assert
-        verify(Registry.getEc2Api()).terminateInstances(eq(amazonEC2), eq(Collections.singleton("i-0")));
+        verify(Registry.getEc2Api(), timeout(5000)).terminateInstances(eq(amazonEC2), eq(Collections.singleton("i-0")));
     }
 
     @Test
-    public void removeScheduledFutures_success() {
-        // given
+    public void update_shouldNotCountInstancesAsActiveTillTerminationCompleted() throws Exception {
+        // Arrange
+        final EC2Fleet ec2Fleet = mock(EC2Fleet.class);
+        when(EC2Fleets.get(anyString())).thenReturn(ec2Fleet);
+        when(ec2Fleet.isAutoScalingGroup()).thenReturn(false);
+
+        final AmazonEC2 amazonEC2 = mock(AmazonEC2.class);
+        when(ec2Api.connect(anyString(), any(), any())).thenReturn(amazonEC2);
+        when(ec2Api.describeInstances(any(AmazonEC2.class), any(Set.class)))
+                .thenReturn(new HashMap<>(Collections.singletonMap("i-0", new Instance().withInstanceId("i-0"))));
+        final CountDownLatch terminationStarted = new CountDownLatch(1);
+        final CountDownLatch terminationAllowed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            terminationStarted.countDown();
+            terminationAllowed.await();
+            return null;
+        }).when(ec2Api).terminateInstances(eq(amazonEC2), eq(Collections.singleton("i-0")));
+
+        final FleetStateStats stats = new FleetStateStats("fleetId", 1, FleetStateStats.State.active(),
+                Collections.singleton("i-0"), Collections.<String, Double>emptyMap());
+        when(ec2Fleet.getState(anyString(), any(), any(), anyString())).thenReturn(stats);
+
         EC2FleetCloud fleetCloud = new EC2FleetCloud("TestCloud", "credId", null, "region",
-                "", "fleetId", "", null, Mockito.mock(ComputerConnector.class), false,
-                false, 0, 0, 1, 0, 1, false,
-                true, "-1", false,
-                0, 0, 10, false, false, weightedScaling);
+                null, "fleetId", null, null, mock(ComputerConnector.class), false, false,
+                0, 0, 10, 0, 1, false, false, null, false, null, null, null, false, false, null);
+        fleetCloud.setStats(stats);
+        fleetCloud.getInstanceIdsToTerminate().put("i-0", EC2AgentTerminationReason.MAX_TOTAL_USES_EXHAUSTED);
 
-        ArrayList<ScheduledFuture<?>> scheduledFutures = new ArrayList<>();
-        scheduledFutures.add(mock(ScheduledFuture.class));
-        fleetCloud.setPlannedNodeScheduledFutures(scheduledFutures);
+        // Act
+        fleetCloud.update();
+        assertTrue(terminationStarted.await(5, TimeUnit.SECONDS));
 
-        // when
-        boolean result = fleetCloud.removePlannedNodeScheduledFutures(1);
+        // Assert - instance is still described while terminating, but it is not active
+        assertEquals(Collections.singleton("i-0"), fleetCloud.getInstanceIdsTerminating());
+        assertEquals(0, fleetCloud.getStats().getNumActive());
+        assertTrue(fleetCloud.hasPendingChanges());
 
-        // then
-        Assert.assertEquals(0, fleetCloud.getPlannedNodeScheduledFutures().size());
-        Assert.assertTrue(result);
+        terminationAllowed.countDown();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!fleetCloud.getInstanceIdsTerminating().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Collections.emptySet(), fleetCloud.getInstanceIdsTerminating());
+    }
+
+    @Test
+    public void update_givenTerminationFailed_shouldRetryTerminationInsteadOfAddingNode() throws Exception {
+        // Arrange
+        System.setProperty(TerminationPipeline.MAX_ATTEMPTS_PROPERTY, "1");
+        final EC2Fleet ec2Fleet = mock(EC2Fleet.class);
+        when(EC2Fleets.get(anyString())).thenReturn(ec2Fleet);
+        when(ec2Fleet.isAutoScalingGroup()).thenReturn(false);
+
+        final AmazonEC2 amazonEC2 = mock(AmazonEC2.class);
+        when(ec2Api.connect(anyString(), any(), any())).thenReturn(amazonEC2);
+        when(ec2Api.describeInstances(any(AmazonEC2.class), any(Set.class)))
+                .thenAnswer(invocation -> new HashMap<>(Collections.singletonMap("i-0", new Instance().withInstanceId("i-0"))));
+        doThrow(new IllegalStateException("test")).when(ec2Api)
+                .terminateInstances(eq(amazonEC2), eq(Collections.singleton("i-0")));
+
+        final FleetStateStats stats = new FleetStateStats("fleetId", 1, FleetStateStats.State.active(),
+                Collections.singleton("i-0"), Collections.<String, Double>emptyMap());
+        when(ec2Fleet.getState(anyString(), any(), any(), anyString())).thenReturn(stats);
+
+        EC2FleetCloud fleetCloud = new EC2FleetCloud("TestCloud", "credId", null, "region",
+                null, "fleetId", null, null, mock(ComputerConnector.class), false, false,
+                0, 0, 10, 0, 1, false, false, null, false, null, null, null, false, false, null);
+        fleetCloud.setStats(stats);
+        fleetCloud.getInstanceIdsToTerminate().put("i-0", EC2AgentTerminationReason.MAX_TOTAL_USES_EXHAUSTED);
+
+        try {
+            // Act
+            fleetCloud.update();
+            verify(ec2Api, timeout(5000)).terminateInstances(amazonEC2, Collections.singleton("i-0"));
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (!fleetCloud.getInstanceIdsTerminating().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // Assert - failed instance is queued again with its reason
+            assertEquals(Collections.emptySet(), fleetCloud.getInstanceIdsTerminating());
+            assertEquals(Collections.singletonMap("i-0", EC2AgentTerminationReason.MAX_TOTAL_USES_EXHAUSTED),
+                    fleetCloud.getInstanceIdsToTerminate());
+
+            // next update terminates it again and doesn't see it as new instance
+            fleetCloud.update();
+            verify(ec2Api, timeout(5000).times(2)).terminateInstances(amazonEC2, Collections.singleton("i-0"));
+            assertEquals(0, fleetCloud.getStats().getNumActive());
+            verify(jenkins, never()).addNode(any(Node.class));
+            verify(jenkins, never()).setNodes(any());
+        } finally {
+            System.clearProperty(TerminationPipeline.MAX_ATTEMPTS_PROPERTY);
+        }
     }
 
     @Test
-    public void removeScheduledFutures_scheduledFutureIsEmpty() {
+    public void cancelPlannedNodeTimeouts_cancelOnlyGivenPlannedNodes() {
         // given
         EC2FleetCloud fleetCloud = new EC2FleetCloud("TestCloud", "credId", null, "region",
                 "", "fleetId", "", null, Mockito.mock(ComputerConnector.class), false,
-                false, 0, 0, 1, 0, 1, false,
+                false, 0, 0, 10, 0, 1, false,
                 true, "-1", false,
                 0, 0, 10, false, false, weightedScaling);
+        fleetCloud.setStats(new FleetStateStats("", 0, FleetStateStats.State.active(),
+                Collections.<String>emptySet(), Collections.<String, Double>emptyMap()));
 
-        ArrayList<ScheduledFuture<?>> scheduledFutures = new ArrayList<>();
-        fleetCloud.setPlannedNodeScheduledFutures(scheduledFutures);
+        List<NodeProvisioner.PlannedNode> plannedNodes = new ArrayList<>(
+                fleetCloud.provision(new Cloud.CloudState(null, 0), 2));
+        HashedWheelTimer.Timeout first = fleetCloud.getPlannedNodeTimeouts().get(plannedNodes.get(0));
+        HashedWheelTimer.Timeout second = fleetCloud.getPlannedNodeTimeouts().get(plannedNodes.get(1));
 
         // when
-        boolean result = fleetCloud.removePlannedNodeScheduledFutures(1);
+        int result = fleetCloud.cancelPlannedNodeTimeouts(Collections.singleton(plannedNodes.get(1)));
 
         // then
-        Assert.assertFalse(result);
+        Assert.assertEquals(1, result);
+        Assert.assertFalse(first.isCancelled());
+        Assert.assertTrue(second.isCancelled());
+        Assert.assertEquals(Collections.singleton(plannedNodes.get(0)), fleetCloud.getPlannedNodeTimeouts().keySet());
     }
 
     @Test
-    public void removeScheduledFutures_numToRemoveIsZero() {
+    public void cancelPlannedNodeTimeouts_nothingToCancel() {
         // given
         EC2FleetCloud fleetCloud = new EC2FleetCloud("TestCloud", "credId", null, "region",
                 "", "fleetId", "", null, Mockito.mock(ComputerConnector.class), false,
@@ -2193,16 +2417,12 @@ public class EC2FleetCloudTest {
                 true, "-1", false,
                 0, 0, 10, false, false, weightedScaling);
 
-        ArrayList<ScheduledFuture<?>> scheduledFutures = new ArrayList<>();
-        scheduledFutures.add(mock(ScheduledFuture.class));
-        fleetCloud.setPlannedNodeScheduledFutures(scheduledFutures);
-
         // when
-        boolean result = fleetCloud.removePlannedNodeScheduledFutures(0);
+        int result = fleetCloud.cancelPlannedNodeTimeouts(Collections.singleton(
+                new NodeProvisioner.PlannedNode("n", new CompletableFuture<>(), 1)));
 
         // then
-        Assert.assertEquals(1, fleetCloud.getPlannedNodeScheduledFutures().size());
-        Assert.assertFalse(result);
+        Assert.assertEquals(0, result);
     }
 
     @Test
@@ -72,4 +72,74 @@ public class EC2FleetLabelParametersTest {
         Assert.assertNull(parameters.get("withoutValue"));
     }
 
+    @Test
+    public void parse_shouldConvertKnownParameters() {
+        final EC2FleetLabelParameters parameters = new EC2FleetLabelParameters(
+                "AA_minSize=1,MAXSIZE=5,numExecutors=2,instanceType=m5.large,spotPrice=0.04,type=asg,imageId=ami-1");
+        Assert.assertEquals(1, parameters.getMinSizeOrDefault(-1));
+        Assert.assertEquals(5, parameters.getMaxSizeOrDefault(-1));
+        Assert.assertEquals(2, parameters.getNumExecutorsOrDefault(-1));
+        Assert.assertEquals("m5.large", parameters.getInstanceTypeOrDefault("?"));
+        Assert.assertEquals("0.04", parameters.getSpotPriceOrDefault("?"));
+        Assert.assertEquals("asg", parameters.getTypeOrDefault("?"));
+        Assert.assertEquals("ami-1", parameters.getImageId());
+    }
+
+    @Test
+    public void parse_shouldReturnDefaultsForMissingParameters() {
+        final EC2FleetLabelParameters parameters = new EC2FleetLabelParameters("AA_");
+        Assert.assertEquals(-1, parameters.getMinSizeOrDefault(-1));
+        Assert.assertEquals(-1, parameters.getMaxSizeOrDefault(-1));
+        Assert.assertEquals("?", parameters.getTypeOrDefault("?"));
+        Assert.assertNull(parameters.getImageId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_failForNotNumberSize() {
+        EC2FleetLabelParameters.parse("AA_maxSize=five").getMaxSizeOrDefault(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_failForNegativeSize() {
+        EC2FleetLabelParameters.parse("AA_minSize=-1").getMinSizeOrDefault(0);
+    }
+
+    @Test
+    public void parse_invalidParameterShouldNotFailOtherParameters() {
+        final EC2FleetLabelParameters parameters = EC2FleetLabelParameters.parse("AA_minSize=1,numExecutors=x");
+        Assert.assertEquals(1, parameters.getMinSizeOrDefault(0));
+        Assert.assertEquals(-1, parameters.getMaxSizeOrDefault(-1));
+        try {
+            parameters.getNumExecutorsOrDefault(1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Label parameter numExecutors should be number, but x", e.getMessage());
+        }
+    }
+
+    @Test
+    public void parse_returnsSameInstanceForInvalidLabel() {
+        Assert.assertSame(EC2FleetLabelParameters.parse("AA_maxSize=five"), EC2FleetLabelParameters.parse("AA_maxSize=five"));
+    }
+
+    @Test
+    public void constructor_shouldNotValidateAndFailOnRead() {
+        final EC2FleetLabelParameters parameters = new EC2FleetLabelParameters("AA_maxSize=five,minSize=-1");
+        Assert.assertEquals("five", parameters.get("maxSize"));
+        Assert.assertEquals(-1, parameters.getMinSizeOrDefault(0));
+        try {
+            parameters.getMaxSizeOrDefault(0);
+            Assert.fail();
+        } catch (NumberFormatException e) {
+            // expected, as getIntOrDefault
+        }
+    }
+
+    @Test
+    public void parse_returnsSameInstanceForSameLabel() {
+        Assert.assertSame(EC2FleetLabelParameters.parse("AA_a=1"), EC2FleetLabelParameters.parse("AA_a=1"));
+        Assert.assertSame(EC2FleetLabelParameters.parse(null), EC2FleetLabelParameters.parse(null));
+        Assert.assertNull(EC2FleetLabelParameters.parse(null).get("a"));
+    }
+
 }
@@ -0,0 +1,160 @@
+package com.amazon.jenkins.ec2fleet;
+
+import hudson.model.Node;
+import jenkins.model.Jenkins;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EC2FleetNodeIndexTest {
+
+    private MockedStatic<Jenkins> mockedJenkins;
+
+    @Mock(strictness = Mock.Strictness.LENIENT)
+    private Jenkins jenkins;
+
+    private final EC2FleetNodeIndex.NodeListenerImpl listener = new EC2FleetNodeIndex.NodeListenerImpl();
+
+    @Before
+    public void before() {
+        mockedJenkins = Mockito.mockStatic(Jenkins.class);
+        mockedJenkins.when(Jenkins::get).thenReturn(jenkins);
+    }
+
+    @After
+    public void after() {
+        EC2FleetNodeIndex.rebuild(Collections.<Node>emptyList());
+        mockedJenkins.close();
+    }
+
+    // node is registered in Jenkins, replacing node with the same name
+    private EC2FleetNode node(final String name, final String cloudName) {
+        final EC2FleetNode node = mock(EC2FleetNode.class);
+        when(node.getNodeName()).thenReturn(name);
+        when(node.getCloudName()).thenReturn(cloudName);
+        when(jenkins.getNode(name)).thenReturn(node);
+        return node;
+    }
+
+    @Test
+    public void getNodes_returnsOnlyNodesOfCloud() {
+        final EC2FleetNode node1 = node("i-1", "cloud1");
+        final EC2FleetNode node2 = node("i-2", "cloud2");
+        listener.onCreated(node1);
+        listener.onCreated(node2);
+        listener.onCreated(mock(Node.class));
+
+        assertEquals(Collections.singletonList(node1), EC2FleetNodeIndex.getNodes("cloud1"));
+        assertEquals(Collections.singletonList(node2), EC2FleetNodeIndex.getNodes("cloud2"));
+        assertEquals(Collections.emptyList(), EC2FleetNodeIndex.getNodes("cloud3"));
+        assertEquals(Collections.emptyList(), EC2FleetNodeIndex.getNodes(null));
+    }
+
+    @Test
+    public void onDeleted_removesNode() {
+        final EC2FleetNode node = node("i-1", "cloud1");
+        listener.onCreated(node);
+
+        listener.onDeleted(node);
+
+        assertEquals(Collections.emptyList(), EC2FleetNodeIndex.getNodes("cloud1"));
+    }
+
+    @Test
+    public void onDeleted_keepsNodeWhichReplacedDeletedOne() {
+        final EC2FleetNode oldNode = node("i-1", "cloud1");
+        final EC2FleetNode newNode = node("i-1", "cloud1");
+        listener.onCreated(oldNode);
+        listener.onCreated(newNode);
+
+        listener.onDeleted(oldNode);
+
+        assertEquals(Collections.singletonList(newNode), EC2FleetNodeIndex.getNodes("cloud1"));
+    }
+
+    @Test
+    public void onUpdated_movesNodeToNewCloud() {
+        final EC2FleetNode oldNode = node("i-1", "cloud1");
+        final EC2FleetNode newNode = node("i-1", "cloud2");
+        listener.onCreated(oldNode);
+
+        listener.onUpdated(oldNode, newNode);
+
+        assertEquals(Collections.emptyList(), EC2FleetNodeIndex.getNodes("cloud1"));
+        assertEquals(Collections.singletonList(newNode), EC2FleetNodeIndex.getNodes("cloud2"));
+    }
+
+    @Test
+    public void getFleetNodes_returnsNodesOfCloudsWithFleet() {
+        final EC2FleetCloud cloud1 = mock(EC2FleetCloud.class);
+        when(cloud1.getFleet()).thenReturn("fleet1");
+        final EC2FleetCloud cloud2 = mock(EC2FleetCloud.class);
+        when(cloud2.getFleet()).thenReturn("fleet2");
+        when(jenkins.getCloud("cloud1")).thenReturn(cloud1);
+        when(jenkins.getCloud("cloud2")).thenReturn(cloud2);
+
+        final EC2FleetNode node1 = node("i-1", "cloud1");
+        final EC2FleetNode node2 = node("i-2", "cloud2");
+        final EC2FleetNode node3 = node("i-3", "removedCloud");
+        EC2FleetNodeIndex.rebuild(Arrays.asList(node1, node2, node3));
+
+        assertEquals(Collections.singletonList(node1), EC2FleetNodeIndex.getFleetNodes("fleet1"));
+        assertEquals(Collections.emptyList(), EC2FleetNodeIndex.getFleetNodes("fleet3"));
+    }
+
+    @Test
+    public void getNodes_dropsNodeRemovedWithoutNotification() {
+        final EC2FleetNode node = node("i-1", "cloud1");
+        listener.onCreated(node);
+        when(jenkins.getNode("i-1")).thenReturn(null);
+
+        assertEquals(Collections.emptyList(), EC2FleetNodeIndex.getNodes("cloud1"));
+    }
+
+    @Test
+    public void getNodes_returnsNodeReplacedWithoutNotification() {
+        final EC2FleetNode oldNode = node("i-1", "cloud1");
+        listener.onCreated(oldNode);
+        final EC2FleetNode newNode = node("i-1", "cloud1");
+
+        assertEquals(Collections.singletonList(newNode), EC2FleetNodeIndex.getNodes("cloud1"));
+        assertEquals(Collections.singletonList(newNode), EC2FleetNodeIndex.getNodes("cloud1"));
+    }
+
+    @Test
+    public void getFleetNodes_dropsNodeRemovedWithoutNotification() {
+        final EC2FleetCloud cloud1 = mock(EC2FleetCloud.class);
+        when(cloud1.getFleet()).thenReturn("fleet1");
+        when(jenkins.getCloud("cloud1")).thenReturn(cloud1);
+        final EC2FleetNode node1 = node("i-1", "cloud1");
+        final EC2FleetNode node2 = node("i-2", "cloud1");
+        EC2FleetNodeIndex.rebuild(Arrays.asList(node1, node2));
+        when(jenkins.getNode("i-2")).thenReturn(null);
+
+        assertEquals(Collections.singletonList(node1), EC2FleetNodeIndex.getFleetNodes("fleet1"));
+    }
+
+    @Test
+    public void rebuildOnStartup_indexesJenkinsNodes() {
+        final EC2FleetNode node = node("i-1", "cloud1");
+        when(jenkins.getNodes()).thenReturn(Arrays.<Node>asList(node, mock(Node.class)));
+
+        EC2FleetNodeIndex.rebuildOnStartup();
+
+        assertEquals(Collections.singletonList(node), EC2FleetNodeIndex.getNodes("cloud1"));
+    }
+
+}
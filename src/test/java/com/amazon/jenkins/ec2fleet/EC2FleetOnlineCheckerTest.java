@@ -17,8 +17,11 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -137,4 +140,38 @@ public class EC2FleetOnlineCheckerTest {
         verify(computer, times(1)).isOnline();
     }
 
+    @Test
+    public void shouldBackoffBetweenChecksOfOfflineNode() throws InterruptedException {
+        // checks at 0, 50, 150, 350 and fail after timeout, without backoff it would be 10 checks
+        EC2FleetOnlineChecker.start(node, future, 500, 50);
+        try {
+            future.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals(IllegalStateException.class, e.getCause().getClass());
+            verify(computer, atMost(6)).isOnline();
+            verify(computer, atLeast(4)).connect(false);
+        }
+    }
+
+    @Test
+    public void shouldResolveImmediatelyWhenComputerComesOnline() throws InterruptedException, ExecutionException, TimeoutException {
+        when(node.getNodeName()).thenReturn("i-1");
+        when(computer.getName()).thenReturn("i-1");
+
+        EC2FleetOnlineChecker.start(node, future, TimeUnit.MINUTES.toMillis(10), TimeUnit.MINUTES.toMillis(5));
+        new EC2FleetOnlineChecker.ComputerListenerImpl().onOnline(computer, null);
+
+        Assert.assertSame(node, future.get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(EC2FleetOnlineChecker.online(computer));
+    }
+
+    @Test
+    public void shouldIgnoreOnlineOfNotCheckedComputer() {
+        when(computer.getName()).thenReturn("i-2");
+
+        Assert.assertFalse(EC2FleetOnlineChecker.online(computer));
+        verify(computer, never()).isOnline();
+    }
+
 }
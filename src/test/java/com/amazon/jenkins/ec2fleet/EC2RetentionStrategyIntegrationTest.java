@@ -88,7 +88,7 @@ public class EC2RetentionStrategyIntegrationTest extends IntegrationTest {
         cloud.update();
 
         final ArgumentCaptor<TerminateInstancesRequest> argument = ArgumentCaptor.forClass(TerminateInstancesRequest.class);
-        verify(amazonEC2, times(1)).terminateInstances(argument.capture());
+        verify(amazonEC2, timeout(5000).times(1)).terminateInstances(argument.capture());
         assertTrue(argument.getAllValues().get(0).getInstanceIds().containsAll(Arrays.asList("i-1")));
     }
 
@@ -118,7 +118,7 @@ public class EC2RetentionStrategyIntegrationTest extends IntegrationTest {
         // Make sure the scheduled for termination instances are terminated
         cloud.update();
 
-        verify((amazonEC2), times(1)).terminateInstances(argument.capture());
+        verify((amazonEC2), timeout(5000).times(1)).terminateInstances(argument.capture());
 
         final List<String> instanceIds = new ArrayList<String>();
         instanceIds.add("i-2");
@@ -159,7 +159,9 @@ public class EC2RetentionStrategyIntegrationTest extends IntegrationTest {
         }
         cloud.update();
 
-        verify((amazonEC2), times(0)).terminateInstances(any());
+        // termination is submitted by update, so nothing is terminating if nothing was submitted
+        assertTrue(cloud.getInstanceIdsTerminating().isEmpty());
+        verify((amazonEC2), never()).terminateInstances(any());
         cancelTasks(rs);
     }
 
@@ -186,7 +188,7 @@ public class EC2RetentionStrategyIntegrationTest extends IntegrationTest {
         }
         cloud.update();
 
-        verify((amazonEC2), times(1)).terminateInstances(argument.capture());
+        verify((amazonEC2), timeout(5000).times(1)).terminateInstances(argument.capture());
 
         final List<String> instanceIds = new ArrayList<String>();
         instanceIds.add("i-2");
@@ -215,7 +217,9 @@ public class EC2RetentionStrategyIntegrationTest extends IntegrationTest {
         }
         cloud.update();
 
-        verify((amazonEC2), times(0)).terminateInstances(any());
+        // termination is submitted by update, so nothing is terminating if nothing was submitted
+        assertTrue(cloud.getInstanceIdsTerminating().isEmpty());
+        verify((amazonEC2), never()).terminateInstances(any());
     }
 
     @Test
@@ -239,7 +243,9 @@ public class EC2RetentionStrategyIntegrationTest extends IntegrationTest {
         }
         cloud.update();
 
-        verify((amazonEC2), times(0)).terminateInstances(any());
+        // termination is submitted by update, so nothing is terminating if nothing was submitted
+        assertTrue(cloud.getInstanceIdsTerminating().isEmpty());
+        verify((amazonEC2), never()).terminateInstances(any());
     }
 
     @Test
@@ -265,7 +271,7 @@ public class EC2RetentionStrategyIntegrationTest extends IntegrationTest {
         cloud.update();
 
         final ArgumentCaptor<TerminateInstancesRequest> argument = ArgumentCaptor.forClass(TerminateInstancesRequest.class);
-        verify((amazonEC2), atLeastOnce()).terminateInstances(argument.capture());
+        verify((amazonEC2), timeout(5000).atLeastOnce()).terminateInstances(argument.capture());
         assertTrue(argument.getAllValues().get(0).getInstanceIds().containsAll(Arrays.asList("i-1", "i-2")));
     }
 }
@@ -0,0 +1,70 @@
+package com.amazon.jenkins.ec2fleet;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest {
+
+    private final HashedWheelTimer timer = new HashedWheelTimer("test", 10, TimeUnit.MILLISECONDS, 8);
+
+    @Test
+    public void newTimeout_expiresAfterDelay() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+        final long start = System.nanoTime();
+
+        final HashedWheelTimer.Timeout timeout = timer.newTimeout(expired::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        assertTrue(timeout.isExpired());
+        assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    public void newTimeout_expiresAfterMultipleWheelRounds() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+        final long start = System.nanoTime();
+
+        // wheel round is 8 ticks, 80 ms
+        timer.newTimeout(expired::countDown, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    public void cancel_preventsExecution() throws InterruptedException {
+        final AtomicInteger executed = new AtomicInteger();
+        final HashedWheelTimer.Timeout timeout = timer.newTimeout(executed::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        assertEquals(1, timer.pendingTimeouts());
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timer.pendingTimeouts());
+
+        Thread.sleep(100);
+        assertEquals(0, executed.get());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void newTimeout_keepsExpiringAfterFailedTask() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+
+        timer.newTimeout(() -> {
+            throw new IllegalStateException("test");
+        }, 10, TimeUnit.MILLISECONDS);
+        timer.newTimeout(expired::countDown, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.amazon.jenkins.ec2fleet;
+
+import com.amazon.jenkins.ec2fleet.aws.EC2Api;
+import com.amazonaws.services.ec2.AmazonEC2;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InstanceTaggerTest {
+
+    @Mock
+    private EC2Api ec2Api;
+
+    @Mock
+    private AmazonEC2 ec2;
+
+    @Mock
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong time = new AtomicLong(1_000_000);
+
+    private InstanceTagger tagger;
+
+    @Before
+    public void before() {
+        Registry.setEc2Api(ec2Api);
+        tagger = spy(new InstanceTagger(executor));
+        doAnswer(invocation -> time.get()).when(tagger).currentTimeMillis();
+    }
+
+    @After
+    public void after() {
+        Registry.setEc2Api(new EC2Api());
+        System.clearProperty(InstanceTagger.BATCH_SIZE_PROPERTY);
+        System.clearProperty(InstanceTagger.MAX_ATTEMPTS_PROPERTY);
+    }
+
+    private static Set<String> ids(final String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void tag_shouldNotCallAwsInCallerThread() {
+        tagger.tag(ec2, ids("i-0"), "key", "cloud1");
+
+        verifyNoInteractions(ec2Api);
+        assertEquals(1, tagger.getPendingCount());
+    }
+
+    @Test
+    public void flush_shouldCoalesceInstancesWithSameTag() {
+        tagger.tag(ec2, ids("i-0"), "key", "cloud1");
+        tagger.tag(ec2, ids("i-1", "i-2"), "key", "cloud1");
+        tagger.tag(ec2, ids("i-3"), "key", "cloud2");
+
+        tagger.flush();
+
+        verify(ec2Api).tagInstances(ec2, ids("i-0", "i-1", "i-2"), "key", "cloud1");
+        verify(ec2Api).tagInstances(ec2, ids("i-3"), "key", "cloud2");
+        assertEquals(0, tagger.getPendingCount());
+    }
+
+    @Test
+    public void flush_shouldSplitByBatchSize() {
+        System.setProperty(InstanceTagger.BATCH_SIZE_PROPERTY, "2");
+        tagger.tag(ec2, ids("i-0", "i-1", "i-2"), "key", "cloud1");
+
+        tagger.flush();
+        assertEquals(1, tagger.getPendingCount());
+        tagger.flush();
+
+        verify(ec2Api, times(2)).tagInstances(eq(ec2), anySet(), eq("key"), eq("cloud1"));
+        assertEquals(0, tagger.getPendingCount());
+    }
+
+    @Test
+    public void flush_givenFailure_shouldRetryAfterBackoff() {
+        doThrow(new IllegalStateException("throttled")).doNothing()
+                .when(ec2Api).tagInstances(ec2, ids("i-0"), "key", "cloud1");
+        tagger.tag(ec2, ids("i-0"), "key", "cloud1");
+
+        tagger.flush();
+        tagger.flush();
+        verify(ec2Api, times(1)).tagInstances(ec2, ids("i-0"), "key", "cloud1");
+        assertEquals(1, tagger.getPendingCount());
+
+        time.addAndGet(1000);
+        tagger.flush();
+
+        verify(ec2Api, times(2)).tagInstances(ec2, ids("i-0"), "key", "cloud1");
+        assertEquals(0, tagger.getPendingCount());
+    }
+
+    @Test
+    public void flush_givenMaxAttemptsFailed_shouldDropInstances() {
+        System.setProperty(InstanceTagger.MAX_ATTEMPTS_PROPERTY, "2");
+        doThrow(new IllegalStateException("throttled"))
+                .when(ec2Api).tagInstances(ec2, ids("i-0"), "key", "cloud1");
+        tagger.tag(ec2, ids("i-0"), "key", "cloud1");
+
+        tagger.flush();
+        time.addAndGet(1000);
+        tagger.flush();
+        time.addAndGet(60_000);
+        tagger.flush();
+
+        verify(ec2Api, times(2)).tagInstances(ec2, ids("i-0"), "key", "cloud1");
+        assertEquals(0, tagger.getPendingCount());
+    }
+
+    @Test
+    public void tag_givenNoInstances_shouldDoNothing() {
+        tagger.tag(ec2, Collections.emptySet(), "key", "cloud1");
+
+        verifyNoInteractions(executor);
+        tagger.flush();
+        verify(ec2Api, never()).tagInstances(ec2, Collections.emptySet(), "key", "cloud1");
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.amazon.jenkins.ec2fleet;
+
+import hudson.model.Node;
+import jenkins.model.Jenkins;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JenkinsUtilsTest {
+
+    private MockedStatic<Jenkins> mockedJenkins;
+
+    @Mock(strictness = Mock.Strictness.LENIENT)
+    private Jenkins jenkins;
+
+    @Before
+    public void before() {
+        // Queue.withLock runs without queue as Jenkins.getInstanceOrNull() is null
+        mockedJenkins = Mockito.mockStatic(Jenkins.class);
+        mockedJenkins.when(Jenkins::get).thenReturn(jenkins);
+    }
+
+    @After
+    public void after() {
+        mockedJenkins.close();
+    }
+
+    @Test
+    public void updateNodes_shouldAddAndRemoveEachNodeWithoutSavingOtherNodes() throws IOException {
+        final Node staticAgent = mock(Node.class);
+        final Node dying = mock(Node.class);
+        final EC2FleetNode node1 = mock(EC2FleetNode.class);
+        final EC2FleetNode node2 = mock(EC2FleetNode.class);
+        when(jenkins.getNodes()).thenReturn(Arrays.asList(staticAgent, dying));
+        when(jenkins.getNode("i-0")).thenReturn(dying);
+
+        JenkinsUtils.updateNodes(Arrays.asList(node1, node2), Arrays.asList("i-0", "i-unknown"));
+
+        verify(jenkins).removeNode(dying);
+        verify(jenkins).addNode(node1);
+        verify(jenkins).addNode(node2);
+        // setNodes saves all nodes, so config of each static agent would be written on each update
+        verify(jenkins, never()).setNodes(any());
+        verify(staticAgent, never()).save();
+    }
+
+    @Test
+    public void updateNodes_givenNothingToChange_shouldNotTouchJenkins() throws IOException {
+        assertEquals(0, JenkinsUtils.updateNodes(Collections.<Node>emptyList(), Collections.<String>emptyList()));
+
+        verifyNoInteractions(jenkins);
+    }
+
+    @Test
+    public void updateNodes_givenAddFailed_shouldThrowAndSkipFollowingNodes() throws IOException {
+        final EC2FleetNode node1 = mock(EC2FleetNode.class);
+        final EC2FleetNode node2 = mock(EC2FleetNode.class);
+        final IOException exception = new IOException("test");
+        doThrow(exception).when(jenkins).addNode(node1);
+
+        try {
+            JenkinsUtils.updateNodes(Arrays.asList(node1, node2), Collections.<String>emptyList());
+            fail();
+        } catch (IOException e) {
+            assertEquals(exception, e);
+        }
+        verify(jenkins, never()).addNode(node2);
+    }
+
+}
@@ -249,4 +249,172 @@ public class NoDelayProvisionStrategyTest {
         verify(ec2FleetCloud2, times(1)).provision(any(Cloud.CloudState.class), eq(1));
     }
 
+    @Test
+    public void givenBalancedPlacement_shouldSplitExcessWorkloadByHeadroom() {
+        doReturn(true).when(strategy).isBalancedPlacement();
+        when(snapshot.getQueueLength()).thenReturn(9);
+        when(state.getLabel()).thenReturn(label);
+
+        final EC2FleetCloud ec2FleetCloud1 = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud1);
+        when(ec2FleetCloud1.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud1.isNoDelayProvision()).thenReturn(true);
+        when(ec2FleetCloud1.getHeadroom()).thenReturn(20);
+        when(ec2FleetCloud1.getFulfillmentLatencyMillis()).thenReturn(-1L);
+
+        final EC2FleetCloud ec2FleetCloud2 = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud2);
+        when(ec2FleetCloud2.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud2.isNoDelayProvision()).thenReturn(true);
+        when(ec2FleetCloud2.getHeadroom()).thenReturn(10);
+        when(ec2FleetCloud2.getFulfillmentLatencyMillis()).thenReturn(-1L);
+
+        Assert.assertEquals(
+                NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES,
+                strategy.apply(state));
+        verify(ec2FleetCloud1, times(1)).provision(any(Cloud.CloudState.class), eq(6));
+        verify(ec2FleetCloud2, times(1)).provision(any(Cloud.CloudState.class), eq(3));
+    }
+
+    @Test
+    public void givenBalancedPlacement_shouldPreferCloudWithLowerLatency() {
+        doReturn(true).when(strategy).isBalancedPlacement();
+        when(snapshot.getQueueLength()).thenReturn(10);
+        when(state.getLabel()).thenReturn(label);
+
+        final EC2FleetCloud ec2FleetCloud1 = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud1);
+        when(ec2FleetCloud1.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud1.isNoDelayProvision()).thenReturn(true);
+        when(ec2FleetCloud1.getHeadroom()).thenReturn(100);
+        when(ec2FleetCloud1.getFulfillmentLatencyMillis()).thenReturn(240_000L);
+        final NodeProvisioner.PlannedNode plannedNode1 = new NodeProvisioner.PlannedNode("fc1-0", new CompletableFuture<>(), 2);
+        when(ec2FleetCloud1.provision(any(Cloud.CloudState.class), anyInt())).thenReturn(Arrays.asList(plannedNode1));
+
+        final EC2FleetCloud ec2FleetCloud2 = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud2);
+        when(ec2FleetCloud2.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud2.isNoDelayProvision()).thenReturn(true);
+        when(ec2FleetCloud2.getHeadroom()).thenReturn(100);
+        when(ec2FleetCloud2.getFulfillmentLatencyMillis()).thenReturn(60_000L);
+        final NodeProvisioner.PlannedNode plannedNode2 = new NodeProvisioner.PlannedNode("fc2-0", new CompletableFuture<>(), 8);
+        when(ec2FleetCloud2.provision(any(Cloud.CloudState.class), anyInt())).thenReturn(Arrays.asList(plannedNode2));
+
+        Assert.assertEquals(
+                NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED,
+                strategy.apply(state));
+        verify(ec2FleetCloud1, times(1)).provision(any(Cloud.CloudState.class), eq(2));
+        verify(ec2FleetCloud2, times(1)).provision(any(Cloud.CloudState.class), eq(8));
+    }
+
+    @Test
+    public void givenBalancedPlacementAndMultipleExecutors_shouldTakeRoundedUpExecutorsFromNextShare() {
+        doReturn(true).when(strategy).isBalancedPlacement();
+        when(snapshot.getQueueLength()).thenReturn(3);
+        when(state.getLabel()).thenReturn(label);
+
+        final EC2FleetCloud ec2FleetCloud1 = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud1);
+        when(ec2FleetCloud1.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud1.isNoDelayProvision()).thenReturn(true);
+        when(ec2FleetCloud1.getHeadroom()).thenReturn(40);
+        when(ec2FleetCloud1.getFulfillmentLatencyMillis()).thenReturn(-1L);
+        // share of 2 executors is rounded up to one instance with 4 executors
+        final NodeProvisioner.PlannedNode plannedNode1 = new NodeProvisioner.PlannedNode("fc1-0", new CompletableFuture<>(), 4);
+        when(ec2FleetCloud1.provision(any(Cloud.CloudState.class), anyInt())).thenReturn(Arrays.asList(plannedNode1));
+
+        final EC2FleetCloud ec2FleetCloud2 = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud2);
+        when(ec2FleetCloud2.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud2.isNoDelayProvision()).thenReturn(true);
+        when(ec2FleetCloud2.getHeadroom()).thenReturn(40);
+        when(ec2FleetCloud2.getFulfillmentLatencyMillis()).thenReturn(-1L);
+
+        Assert.assertEquals(
+                NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED,
+                strategy.apply(state));
+        verify(ec2FleetCloud1, times(1)).provision(any(Cloud.CloudState.class), eq(2));
+        verify(ec2FleetCloud2, never()).provision(any(Cloud.CloudState.class), anyInt());
+    }
+
+    @Test
+    public void givenBalancedPlacement_shouldSkipCloudWithoutHeadroom() {
+        doReturn(true).when(strategy).isBalancedPlacement();
+        when(snapshot.getQueueLength()).thenReturn(4);
+        when(state.getLabel()).thenReturn(label);
+
+        final EC2FleetCloud ec2FleetCloud1 = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud1);
+        when(ec2FleetCloud1.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud1.isNoDelayProvision()).thenReturn(true);
+        when(ec2FleetCloud1.getHeadroom()).thenReturn(0);
+
+        final EC2FleetCloud ec2FleetCloud2 = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud2);
+        when(ec2FleetCloud2.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud2.isNoDelayProvision()).thenReturn(true);
+        when(ec2FleetCloud2.getHeadroom()).thenReturn(10);
+
+        strategy.apply(state);
+
+        verify(ec2FleetCloud1, never()).provision(any(Cloud.CloudState.class), anyInt());
+        verify(ec2FleetCloud2, times(1)).provision(any(Cloud.CloudState.class), eq(4));
+    }
+
+    @Test
+    public void givenSameClouds_shouldCheckCloudsOnceForLabel() {
+        when(snapshot.getQueueLength()).thenReturn(10);
+        when(state.getLabel()).thenReturn(label);
+
+        final EC2FleetCloud ec2FleetCloud = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud);
+        when(ec2FleetCloud.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud.isNoDelayProvision()).thenReturn(true);
+
+        strategy.apply(state);
+        strategy.apply(state);
+
+        verify(ec2FleetCloud, times(1)).canProvision(any(Cloud.CloudState.class));
+        verify(ec2FleetCloud, times(2)).provision(any(Cloud.CloudState.class), eq(10));
+    }
+
+    @Test
+    public void givenCloudsChanged_shouldCheckCloudsAgain() {
+        when(snapshot.getQueueLength()).thenReturn(10);
+        when(state.getLabel()).thenReturn(label);
+
+        final EC2FleetCloud ec2FleetCloud1 = mock(EC2FleetCloud.class);
+        clouds.add(ec2FleetCloud1);
+        when(ec2FleetCloud1.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        when(ec2FleetCloud1.isNoDelayProvision()).thenReturn(true);
+        strategy.apply(state);
+
+        // configuration change replaces cloud object
+        final EC2FleetCloud ec2FleetCloud2 = mock(EC2FleetCloud.class);
+        clouds.set(0, ec2FleetCloud2);
+        when(ec2FleetCloud2.canProvision(any(Cloud.CloudState.class))).thenReturn(false);
+        strategy.apply(state);
+
+        verify(ec2FleetCloud1, times(1)).provision(any(Cloud.CloudState.class), eq(10));
+        verify(ec2FleetCloud2, never()).provision(any(Cloud.CloudState.class), anyInt());
+    }
+
+    @Test
+    public void split_shouldRedistributeWorkloadAboveHeadroom() {
+        Assert.assertArrayEquals(new int[]{2, 8},
+                NoDelayProvisionStrategy.split(10, new int[]{2, 50}, new double[]{10, 10}));
+    }
+
+    @Test
+    public void split_shouldNotPlaceWorkloadAboveTotalHeadroom() {
+        Assert.assertArrayEquals(new int[]{2, 3},
+                NoDelayProvisionStrategy.split(10, new int[]{2, 3}, new double[]{1, 1}));
+    }
+
+    @Test
+    public void split_shouldGiveRemainderToBestScored() {
+        Assert.assertArrayEquals(new int[]{0, 1, 0},
+                NoDelayProvisionStrategy.split(1, new int[]{5, 5, 5}, new double[]{1, 2, 1}));
+    }
+
 }
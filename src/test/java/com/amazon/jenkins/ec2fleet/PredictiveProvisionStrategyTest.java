@@ -0,0 +1,140 @@
+package com.amazon.jenkins.ec2fleet;
+
+import hudson.model.Label;
+import hudson.model.LoadStatistics;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PredictiveProvisionStrategyTest {
+
+    @Mock(strictness = Mock.Strictness.LENIENT)
+    private NodeProvisioner.StrategyState state;
+
+    @Mock
+    private LoadStatistics.LoadStatisticsSnapshot snapshot;
+
+    @Mock(strictness = Mock.Strictness.LENIENT)
+    private Label label;
+
+    private final AtomicLong time = new AtomicLong();
+
+    private PredictiveProvisionStrategy strategy;
+
+    private final List<Cloud> clouds = new ArrayList<>();
+
+    @Before
+    public void before() {
+        strategy = spy(new PredictiveProvisionStrategy());
+        doReturn(true).when(strategy).isEnabled();
+        lenient().doAnswer(invocation -> time.get()).when(strategy).currentTimeMillis();
+        lenient().doReturn(clouds).when(strategy).getClouds();
+        when(state.getSnapshot()).thenReturn(snapshot);
+        when(state.getLabel()).thenReturn(label);
+        when(label.getExpression()).thenReturn("momo");
+    }
+
+    /**
+     * Apply strategy each 10 sec while demand grows by one build each time and capacity follows it.
+     */
+    private NodeProvisioner.StrategyDecision applyGrowingDemand(final int samples) {
+        NodeProvisioner.StrategyDecision decision = null;
+        for (int i = 0; i < samples; i++) {
+            time.set(i * 10_000L);
+            when(snapshot.getBusyExecutors()).thenReturn(i);
+            when(snapshot.getOnlineExecutors()).thenReturn(i);
+            decision = strategy.apply(state);
+        }
+        return decision;
+    }
+
+    @Test
+    public void givenDisabled_shouldDoNothing() {
+        doReturn(false).when(strategy).isEnabled();
+
+        Assert.assertEquals(NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES, strategy.apply(state));
+        verifyNoInteractions(state);
+    }
+
+    @Test
+    public void givenNotEnoughHistory_shouldNotProvision() {
+        applyGrowingDemand(2);
+
+        verify(strategy, never()).getClouds();
+    }
+
+    @Test
+    public void givenStableDemand_shouldNotProvision() {
+        when(snapshot.getBusyExecutors()).thenReturn(5);
+        when(snapshot.getOnlineExecutors()).thenReturn(5);
+
+        for (int i = 0; i < 10; i++) {
+            time.set(i * 10_000L);
+            strategy.apply(state);
+        }
+
+        verify(strategy, never()).getClouds();
+    }
+
+    @Test
+    public void givenGrowingDemand_shouldPreWarmForecastedCapacity() {
+        clouds.add(mock(Cloud.class));
+        final EC2FleetCloud cloud = mock(EC2FleetCloud.class);
+        clouds.add(cloud);
+        when(cloud.canProvision(any(Cloud.CloudState.class))).thenReturn(true);
+        final NodeProvisioner.PlannedNode plannedNode = new NodeProvisioner.PlannedNode("", new CompletableFuture<>(), 1);
+        when(cloud.provision(any(Cloud.CloudState.class), anyInt())).thenReturn(Collections.singletonList(plannedNode));
+
+        Assert.assertEquals(NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES, applyGrowingDemand(30));
+
+        // demand 29 grows by 6 per minute, so about 30 more in 5 min boot window
+        final ArgumentCaptor<Integer> preWarm = ArgumentCaptor.forClass(Integer.class);
+        verify(cloud, atLeastOnce()).provision(any(Cloud.CloudState.class), preWarm.capture());
+        final int lastPreWarm = preWarm.getValue();
+        Assert.assertTrue("pre-warm " + lastPreWarm, lastPreWarm > 20 && lastPreWarm < 36);
+        verify(state, atLeastOnce()).recordPendingLaunches(Collections.singletonList(plannedNode));
+    }
+
+    @Test
+    public void shouldDropForecastOfLabelWithoutDemand() {
+        when(snapshot.getBusyExecutors()).thenReturn(1);
+        strategy.apply(state);
+
+        when(label.getExpression()).thenReturn("other");
+        time.set(500_000L);
+        strategy.apply(state);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("momo", "other")), strategy.getForecastLabels());
+
+        time.set(1_000_000L);
+        strategy.apply(state);
+        Assert.assertEquals(Collections.singleton("other"), strategy.getForecastLabels());
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.amazon.jenkins.ec2fleet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SyncTraceTest {
+
+    @Test
+    public void shouldAccumulatePhaseStartedTwiceAndKeepOrder() {
+        final SyncTrace trace = new SyncTrace();
+        trace.phase("a");
+        trace.phase("b");
+        trace.phase("a");
+        trace.count("added", 1);
+        trace.count("added", 2);
+        trace.finish(null);
+
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(trace.getPhaseMillis().keySet().toArray()));
+        assertEquals(Collections.singletonMap("added", 3), trace.getCounts());
+        assertTrue(trace.getTotalMillis() >= 0);
+        assertNull(trace.getError());
+    }
+
+    @Test
+    public void shouldRecordError() {
+        final SyncTrace trace = new SyncTrace();
+        trace.finish(new IllegalStateException("test"));
+
+        assertEquals("java.lang.IllegalStateException: test", trace.getError());
+    }
+
+    @Test
+    public void buffer_shouldKeepNewestTracesFirst() {
+        final SyncTrace.Buffer buffer = new SyncTrace.Buffer(null, 2);
+        final SyncTrace trace1 = new SyncTrace();
+        final SyncTrace trace2 = new SyncTrace();
+        final SyncTrace trace3 = new SyncTrace();
+
+        buffer.add(trace1);
+        buffer.add(trace2);
+        buffer.add(trace3);
+
+        assertEquals(Arrays.asList(trace3, trace2), buffer.getTraces());
+    }
+
+    @Test
+    public void buffer_shouldReportLastAndMaxQueueLock() {
+        final SyncTrace.Buffer buffer = new SyncTrace.Buffer(null, 2);
+        assertEquals(0, buffer.getLastQueueLockMillis());
+
+        final SyncTrace trace1 = new SyncTrace();
+        trace1.queueLock(TimeUnit.MILLISECONDS.toNanos(30));
+        final SyncTrace trace2 = new SyncTrace();
+        trace2.queueLock(TimeUnit.MILLISECONDS.toNanos(5));
+        trace2.queueLock(TimeUnit.MILLISECONDS.toNanos(5));
+        buffer.add(trace1);
+        buffer.add(trace2);
+
+        assertEquals(10, buffer.getLastQueueLockMillis());
+        assertEquals(30, buffer.getMaxQueueLockMillis());
+    }
+
+    @Test
+    public void notFinishedTrace_shouldHaveNoTotal() {
+        assertEquals(-1, new SyncTrace().getTotalMillis());
+    }
+
+}
@@ -0,0 +1,213 @@
+package com.amazon.jenkins.ec2fleet;
+
+import com.amazon.jenkins.ec2fleet.aws.EC2Api;
+import com.amazon.jenkins.ec2fleet.fleet.AutoScalingGroupFleet;
+import com.amazon.jenkins.ec2fleet.fleet.TerminationResult;
+import com.amazonaws.services.ec2.AmazonEC2;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TerminationPipelineTest {
+
+    @Mock
+    private EC2Api ec2Api;
+
+    @Mock
+    private AmazonEC2 ec2;
+
+    @Mock
+    private AmazonEC2 otherRegionEc2;
+
+    @Mock(strictness = Mock.Strictness.LENIENT)
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong time = new AtomicLong(1_000_000);
+
+    private TerminationPipeline pipeline;
+
+    @Before
+    public void before() {
+        Registry.setEc2Api(ec2Api);
+        // run batches in caller thread
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        pipeline = spy(new TerminationPipeline(executor));
+        doAnswer(invocation -> time.get()).when(pipeline).currentTimeMillis();
+    }
+
+    @After
+    public void after() {
+        Registry.setEc2Api(new EC2Api());
+        System.clearProperty(TerminationPipeline.BATCH_SIZE_PROPERTY);
+        System.clearProperty(TerminationPipeline.MAX_ATTEMPTS_PROPERTY);
+    }
+
+    private static Set<String> ids(final String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void terminate_shouldNotCallAwsInCallerThread() {
+        final CompletableFuture<Void> future = pipeline.terminate(ec2, ids("i-0"));
+
+        verifyNoInteractions(ec2Api);
+        assertFalse(future.isDone());
+        assertEquals(1, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void flush_shouldBatchInstancesOfSameClientFromDifferentClouds() {
+        final CompletableFuture<Void> cloud1 = pipeline.terminate(ec2, ids("i-0", "i-1"));
+        final CompletableFuture<Void> cloud2 = pipeline.terminate(ec2, ids("i-2"));
+        final CompletableFuture<Void> otherRegion = pipeline.terminate(otherRegionEc2, ids("i-3"));
+
+        pipeline.flush();
+
+        verify(ec2Api).terminateInstances(ec2, ids("i-0", "i-1", "i-2"));
+        verify(ec2Api).terminateInstances(otherRegionEc2, ids("i-3"));
+        assertTrue(cloud1.isDone() && cloud2.isDone() && otherRegion.isDone());
+        assertFalse(cloud1.isCompletedExceptionally());
+    }
+
+    @Test
+    public void flush_shouldCompleteSubmissionWhenAllItsBatchesAreTerminated() {
+        System.setProperty(TerminationPipeline.BATCH_SIZE_PROPERTY, "2");
+        final CompletableFuture<Void> future = pipeline.terminate(ec2, ids("i-0", "i-1", "i-2"));
+
+        pipeline.flush();
+        assertFalse(future.isDone());
+        pipeline.flush();
+
+        verify(ec2Api, times(2)).terminateInstances(eq(ec2), anySet());
+        assertTrue(future.isDone());
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void flush_givenFailure_shouldRetryAfterBackoff() {
+        doThrow(new IllegalStateException("throttled")).doNothing()
+                .when(ec2Api).terminateInstances(ec2, ids("i-0"));
+        final CompletableFuture<Void> future = pipeline.terminate(ec2, ids("i-0"));
+
+        pipeline.flush();
+        pipeline.flush();
+        verify(ec2Api, times(1)).terminateInstances(ec2, ids("i-0"));
+        assertFalse(future.isDone());
+
+        time.addAndGet(1000);
+        pipeline.flush();
+
+        verify(ec2Api, times(2)).terminateInstances(ec2, ids("i-0"));
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void flush_givenMaxAttemptsFailed_shouldCompleteExceptionally() {
+        System.setProperty(TerminationPipeline.MAX_ATTEMPTS_PROPERTY, "2");
+        doThrow(new IllegalStateException("throttled")).when(ec2Api).terminateInstances(ec2, ids("i-0"));
+        final CompletableFuture<Void> future = pipeline.terminate(ec2, ids("i-0"));
+
+        pipeline.flush();
+        time.addAndGet(1000);
+        pipeline.flush();
+
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void flush_givenSomeBatchesFailed_shouldCompleteExceptionallyWithFailedInstancesAfterAllBatches() {
+        System.setProperty(TerminationPipeline.BATCH_SIZE_PROPERTY, "1");
+        System.setProperty(TerminationPipeline.MAX_ATTEMPTS_PROPERTY, "1");
+        doAnswer(invocation -> {
+            if (invocation.<Collection<String>>getArgument(1).contains("i-0")) throw new IllegalStateException("throttled");
+            return null;
+        }).when(ec2Api).terminateInstances(eq(ec2), anySet());
+        final CompletableFuture<Void> future = pipeline.terminate(ec2, ids("i-0", "i-1"));
+
+        pipeline.flush();
+        assertFalse(future.isDone());
+        pipeline.flush();
+
+        verify(ec2Api).terminateInstances(ec2, ids("i-1"));
+        try {
+            future.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof TerminationPipeline.TerminationFailedException);
+            assertEquals(ids("i-0"), ((TerminationPipeline.TerminationFailedException) e.getCause()).getInstanceIds());
+        }
+    }
+
+    @Test
+    public void terminateInAutoScalingGroup_shouldBatchByCredentialsAndRegion() {
+        final AutoScalingGroupFleet fleet = mock(AutoScalingGroupFleet.class);
+        when(fleet.terminateInstances(anyString(), anyString(), any(), any()))
+                .thenReturn(new TerminationResult(Collections.emptySet(), Collections.emptyMap()));
+
+        pipeline.terminateInAutoScalingGroup(fleet, "cred", "us-east-1", null, ids("i-0"));
+        pipeline.terminateInAutoScalingGroup(fleet, "cred", "us-east-1", null, ids("i-1"));
+        pipeline.terminateInAutoScalingGroup(fleet, "cred", "us-west-2", null, ids("i-2"));
+        pipeline.flush();
+
+        verify(fleet).terminateInstances("cred", "us-east-1", null, ids("i-0", "i-1"));
+        verify(fleet).terminateInstances("cred", "us-west-2", null, ids("i-2"));
+    }
+
+    @Test
+    public void terminateInAutoScalingGroup_givenSomeInstancesFailed_shouldRetryOnlyThem() {
+        final AutoScalingGroupFleet fleet = mock(AutoScalingGroupFleet.class);
+        when(fleet.terminateInstances("cred", "us-east-1", null, ids("i-0", "i-1")))
+                .thenReturn(new TerminationResult(ids("i-0"), Collections.singletonMap("i-1", "Rate exceeded")));
+        when(fleet.terminateInstances("cred", "us-east-1", null, ids("i-1")))
+                .thenReturn(new TerminationResult(ids("i-1"), Collections.emptyMap()));
+        final CompletableFuture<Void> first = pipeline.terminateInAutoScalingGroup(fleet, "cred", "us-east-1", null, ids("i-0"));
+        final CompletableFuture<Void> second = pipeline.terminateInAutoScalingGroup(fleet, "cred", "us-east-1", null, ids("i-1"));
+
+        pipeline.flush();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+
+        time.addAndGet(1000);
+        pipeline.flush();
+
+        assertTrue(second.isDone());
+        assertFalse(second.isCompletedExceptionally());
+    }
+
+}
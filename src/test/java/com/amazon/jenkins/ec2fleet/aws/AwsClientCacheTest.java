@@ -0,0 +1,65 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import hudson.ProxyConfiguration;
+import hudson.model.Saveable;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class AwsClientCacheTest {
+
+    @Before
+    public void before() {
+        AwsClientCache.invalidateAll();
+    }
+
+    @Test
+    public void get_returnsSameClientForSameKey() {
+        final AmazonEC2 client = AwsClientCache.get(AmazonEC2.class, "cred", "us-east-1", null, () -> mock(AmazonEC2.class));
+
+        assertSame(client, AwsClientCache.get(AmazonEC2.class, "cred", "us-east-1", null, () -> mock(AmazonEC2.class)));
+        assertEquals(1, AwsClientCache.size());
+    }
+
+    @Test
+    public void get_returnsNewClientForDifferentCredentialsRegionOrEndpoint() {
+        final AmazonEC2 client = AwsClientCache.get(AmazonEC2.class, "cred", "us-east-1", null, () -> mock(AmazonEC2.class));
+
+        assertNotSame(client, AwsClientCache.get(AmazonEC2.class, "cred1", "us-east-1", null, () -> mock(AmazonEC2.class)));
+        assertNotSame(client, AwsClientCache.get(AmazonEC2.class, "cred", "us-west-2", null, () -> mock(AmazonEC2.class)));
+        assertNotSame(client, AwsClientCache.get(AmazonEC2.class, "cred", "us-east-1", "http://a", () -> mock(AmazonEC2.class)));
+        assertEquals(4, AwsClientCache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void get_propagatesFactoryException() {
+        AwsClientCache.get(AmazonEC2.class, "cred", "us-east-1", null, () -> {
+            throw new IllegalArgumentException("test");
+        });
+    }
+
+    @Test
+    public void onChange_invalidatesClientsWhenProxySaved() {
+        final AmazonEC2 client = AwsClientCache.get(AmazonEC2.class, "cred", "us-east-1", null, () -> mock(AmazonEC2.class));
+
+        new AwsClientCache.ConfigurationChangeListener().onChange(mock(ProxyConfiguration.class), null);
+
+        assertEquals(0, AwsClientCache.size());
+        assertNotSame(client, AwsClientCache.get(AmazonEC2.class, "cred", "us-east-1", null, () -> mock(AmazonEC2.class)));
+    }
+
+    @Test
+    public void onChange_keepsClientsWhenOtherConfigurationSaved() {
+        AwsClientCache.get(AmazonEC2.class, "cred", "us-east-1", null, () -> mock(AmazonEC2.class));
+
+        new AwsClientCache.ConfigurationChangeListener().onChange(mock(Saveable.class), null);
+
+        assertEquals(1, AwsClientCache.size());
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.ec2.model.CreateTagsRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import net.sf.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AwsMetricsTest {
+
+    @Before
+    public void before() {
+        AwsMetrics.reset();
+    }
+
+    private static Request<?> execute(final Request<?> request, final AmazonServiceException... attemptFailures) {
+        AwsMetrics.REQUEST_HANDLER.beforeRequest(request);
+        for (final AmazonServiceException failure : attemptFailures) {
+            AwsMetrics.REQUEST_HANDLER.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            AwsMetrics.REQUEST_HANDLER.afterAttempt(HandlerAfterAttemptContext.builder()
+                    .withRequest(request).withException(failure).build());
+        }
+        AwsMetrics.REQUEST_HANDLER.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+        return request;
+    }
+
+    private static AmazonServiceException exception(final String errorCode) {
+        final AmazonServiceException exception = new AmazonServiceException("test");
+        exception.setErrorCode(errorCode);
+        return exception;
+    }
+
+    @Test
+    public void shouldRecordCallsByCloudAndOperation() {
+        AwsMetrics.callAs("cloud1", () -> {
+            AwsMetrics.REQUEST_HANDLER.afterResponse(execute(new DefaultRequest<>(new DescribeInstancesRequest(), "AmazonEC2")), null);
+            AwsMetrics.REQUEST_HANDLER.afterResponse(execute(new DefaultRequest<>(new DescribeInstancesRequest(), "AmazonEC2")), null);
+            AwsMetrics.REQUEST_HANDLER.afterResponse(execute(new DefaultRequest<>(new CreateTagsRequest(), "AmazonEC2")), null);
+            return null;
+        });
+        AwsMetrics.REQUEST_HANDLER.afterResponse(execute(new DefaultRequest<>(new DescribeInstancesRequest(), "AmazonEC2")), null);
+
+        assertEquals(2, AwsMetrics.getStats("cloud1").get("DescribeInstances").getCount());
+        assertEquals(1, AwsMetrics.getStats("cloud1").get("CreateTags").getCount());
+        assertEquals(1, AwsMetrics.getStats("").get("DescribeInstances").getCount());
+        assertEquals(Collections.emptyMap(), AwsMetrics.getStats("cloud2"));
+    }
+
+    @Test
+    public void shouldRecordBatchCallForEachCloud() {
+        AwsMetrics.callAs(Arrays.asList("cloud1", "cloud2"), () -> {
+            AwsMetrics.REQUEST_HANDLER.afterResponse(execute(new DefaultRequest<>(new DescribeInstancesRequest(), "AmazonEC2")), null);
+            return null;
+        });
+
+        assertEquals(1, AwsMetrics.getStats("cloud1").get("DescribeInstances").getCount());
+        assertEquals(1, AwsMetrics.getStats("cloud2").get("DescribeInstances").getCount());
+        assertEquals(Collections.emptyMap(), AwsMetrics.getStats(""));
+    }
+
+    @Test
+    public void retainClouds_shouldDropStatsOfRemovedClouds() {
+        AwsMetrics.getOrCreateStats("cloud1", "DescribeInstances");
+        AwsMetrics.getOrCreateStats("cloud2", "DescribeInstances");
+        AwsMetrics.getOrCreateStats("", "DescribeInstances");
+
+        AwsMetrics.retainClouds(Collections.singleton("cloud1"));
+
+        assertEquals(1, AwsMetrics.getStats("cloud1").size());
+        assertEquals(Collections.emptyMap(), AwsMetrics.getStats("cloud2"));
+        assertEquals(1, AwsMetrics.getStats("").size());
+    }
+
+    @Test
+    public void shouldRecordRetriesThrottlesAndErrorCodes() {
+        AwsMetrics.callAs("cloud1", () -> {
+            final Request<?> request = execute(new DefaultRequest<>(new DescribeInstancesRequest(), "AmazonEC2"),
+                    exception("RequestLimitExceeded"), exception("RequestLimitExceeded"));
+            AwsMetrics.REQUEST_HANDLER.afterError(request, null, exception("InvalidInstanceID.NotFound"));
+            return null;
+        });
+
+        final AwsMetrics.OperationStats stats = AwsMetrics.getStats("cloud1").get("DescribeInstances");
+        assertEquals(1, stats.getCount());
+        assertEquals(1, stats.getErrors());
+        assertEquals(2, stats.getRetries());
+        assertEquals(2, stats.getThrottled());
+        assertEquals(Collections.singletonMap("InvalidInstanceID.NotFound", 1L), stats.getErrorCodes());
+    }
+
+    @Test
+    public void shouldComputeLatencyPercentileByHistogramBucket() {
+        final AwsMetrics.OperationStats stats = AwsMetrics.getOrCreateStats("cloud1", "DescribeInstances");
+        for (int i = 0; i < 98; i++) stats.record(20, 0, null);
+        stats.record(400, 0, null);
+        stats.record(3000, 0, null);
+
+        assertEquals(25, stats.getLatencyPercentileMillis(0.5));
+        assertEquals(500, stats.getLatencyPercentileMillis(0.99));
+        assertEquals(3000, stats.getLatencyPercentileMillis(1));
+        assertEquals(3000, stats.getMaxLatencyMillis());
+    }
+
+    @Test
+    public void propagate_shouldRunTaskAsCloudOfCallerThread() throws InterruptedException {
+        final AtomicReference<List<String>> cloudNames = new AtomicReference<>();
+        final Supplier<Runnable> wrapped = () -> AwsMetrics.propagate(() -> cloudNames.set(AwsMetrics.getCurrentClouds()));
+
+        final Thread thread = new Thread(AwsMetrics.callAs("cloud1", wrapped));
+        thread.start();
+        thread.join();
+
+        assertEquals(Collections.singletonList("cloud1"), cloudNames.get());
+        assertEquals(Collections.singletonList(""), AwsMetrics.getCurrentClouds());
+    }
+
+    @Test
+    public void toJson_shouldIncludeOperations() {
+        AwsMetrics.getOrCreateStats("cloud1", "DescribeInstances").record(20, 1, "Throttling");
+
+        final JSONObject json = AwsMetrics.toJson("cloud1");
+
+        assertEquals("cloud1", json.getString("cloud"));
+        final JSONObject operation = json.getJSONObject("operations").getJSONObject("DescribeInstances");
+        assertEquals(1, operation.getLong("count"));
+        assertEquals(1, operation.getLong("retries"));
+        assertEquals(1, operation.getJSONObject("errorCodes").getLong("Throttling"));
+        assertTrue(operation.getJSONObject("latencyHistogramMillis").has("le25"));
+    }
+
+    @Test
+    public void getOperation_shouldStripRequestSuffix() {
+        assertEquals("DescribeInstances", AwsMetrics.getOperation(new DescribeInstancesRequest()));
+        assertEquals("Unknown", AwsMetrics.getOperation(null));
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AwsRateLimiterTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Before
+    @After
+    public void reset() {
+        AwsRateLimiter.reset();
+        AwsMetrics.reset();
+        System.clearProperty(AwsRateLimiter.PERMITS_PER_SECOND_PROPERTY);
+        System.clearProperty(AwsRateLimiter.BURST_PROPERTY);
+        System.clearProperty(AwsRateLimiter.MUTATING_RESERVE_PROPERTY);
+    }
+
+    @Test
+    public void tryAcquire_shouldAllowBurstThenWaitForRefill() {
+        final AwsRateLimiter.TokenBucket bucket = new AwsRateLimiter.TokenBucket(10, 3, 0, nanoTime::get);
+
+        assertEquals(0, bucket.tryAcquire(false));
+        assertEquals(0, bucket.tryAcquire(false));
+        assertEquals(0, bucket.tryAcquire(false));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(false));
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, bucket.tryAcquire(false));
+    }
+
+    @Test
+    public void tryAcquire_shouldNotRefillOverBurst() {
+        final AwsRateLimiter.TokenBucket bucket = new AwsRateLimiter.TokenBucket(10, 2, 0, nanoTime::get);
+
+        nanoTime.addAndGet(TimeUnit.HOURS.toNanos(1));
+
+        assertEquals(0, bucket.tryAcquire(false));
+        assertEquals(0, bucket.tryAcquire(false));
+        assertTrue(bucket.tryAcquire(false) > 0);
+    }
+
+    @Test
+    public void tryAcquire_shouldKeepReserveForMutatingCalls() {
+        final AwsRateLimiter.TokenBucket bucket = new AwsRateLimiter.TokenBucket(10, 3, 2, nanoTime::get);
+
+        assertEquals(0, bucket.tryAcquire(false));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(false));
+        assertEquals(0, bucket.tryAcquire(true));
+        assertEquals(0, bucket.tryAcquire(true));
+        assertTrue(bucket.tryAcquire(true) > 0);
+    }
+
+    @Test
+    public void isMutating_shouldTreatDescribeListAndGetAsObservational() {
+        assertFalse(AwsRateLimiter.isMutating("DescribeSpotFleetRequests"));
+        assertFalse(AwsRateLimiter.isMutating("ListStacks"));
+        assertFalse(AwsRateLimiter.isMutating("GetConsoleOutput"));
+        assertTrue(AwsRateLimiter.isMutating("ModifySpotFleetRequest"));
+        assertTrue(AwsRateLimiter.isMutating("TerminateInstances"));
+        assertTrue(AwsRateLimiter.isMutating("CreateTags"));
+    }
+
+    @Test
+    public void handler_shouldShareBucketByCredentialsRegionAndService() {
+        System.setProperty(AwsRateLimiter.PERMITS_PER_SECOND_PROPERTY, "1000");
+        System.setProperty(AwsRateLimiter.BURST_PROPERTY, "1");
+        System.setProperty(AwsRateLimiter.MUTATING_RESERVE_PROPERTY, "0");
+        final RequestHandler2 cloud1 = AwsRateLimiter.handler("cred", "us-east-1", null);
+        final RequestHandler2 cloud2 = AwsRateLimiter.handler("cred", "us-east-1", null);
+        final RequestHandler2 otherRegion = AwsRateLimiter.handler("cred", "us-west-2", null);
+
+        attempt(cloud1);
+        attempt(otherRegion);
+        assertTrue(AwsMetrics.getStats("").isEmpty());
+
+        attempt(cloud2);
+        assertEquals(1, AwsMetrics.getStats("").get("DescribeInstances").getPermitWaits());
+    }
+
+    @Test
+    public void handler_givenZeroRate_shouldNotLimit() {
+        System.setProperty(AwsRateLimiter.PERMITS_PER_SECOND_PROPERTY, "0");
+        final RequestHandler2 handler = AwsRateLimiter.handler("cred", "us-east-1", null);
+
+        for (int i = 0; i < 100; i++) attempt(handler);
+
+        assertTrue(AwsMetrics.getStats("").isEmpty());
+    }
+
+    private static void attempt(final RequestHandler2 handler) {
+        final Request<?> request = new DefaultRequest<>(new DescribeInstancesRequest(), "AmazonEC2");
+        handler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+    }
+
+}
@@ -4,6 +4,7 @@ import com.amazon.jenkins.ec2fleet.aws.EC2Api;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.AmazonEC2Exception;
 import com.amazonaws.services.ec2.model.CreateTagsRequest;
+import com.amazonaws.services.ec2.model.CreateTagsResult;
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
 import com.amazonaws.services.ec2.model.DescribeInstancesResult;
 import com.amazonaws.services.ec2.model.Instance;
@@ -23,6 +24,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -220,6 +222,46 @@ public class EC2ApiTest {
         verifyNoMoreInteractions(amazonEC2);
     }
 
+    @Test
+    public void describeInstances_shouldMergeResultsOfAllBatches() {
+        // given
+        final Set<String> instanceIds = new HashSet<>(Arrays.asList("i-1", "i-2", "i-3", "i-4", "i-5"));
+        when(amazonEC2.describeInstances(any(DescribeInstancesRequest.class))).thenAnswer(invocation -> {
+            final DescribeInstancesRequest request = invocation.getArgument(0);
+            final Reservation reservation = new Reservation();
+            for (final String instanceId : request.getInstanceIds()) {
+                reservation.withInstances(new Instance().withInstanceId(instanceId)
+                        .withState(new InstanceState().withName(InstanceStateName.Running)));
+            }
+            return new DescribeInstancesResult().withReservations(reservation);
+        });
+
+        // when
+        final Map<String, Instance> described = new EC2Api().describeInstances(amazonEC2, instanceIds, 2);
+
+        // then
+        Assert.assertEquals(instanceIds, described.keySet());
+        verify(amazonEC2, times(3)).describeInstances(any(DescribeInstancesRequest.class));
+    }
+
+    @Test
+    public void describeInstances_shouldThrowExceptionIfAnyBatchFails() {
+        // given
+        final Set<String> instanceIds = new HashSet<>(Arrays.asList("i-1", "i-2", "i-3"));
+        final UnsupportedOperationException exception = new UnsupportedOperationException("test");
+        when(amazonEC2.describeInstances(any(DescribeInstancesRequest.class)))
+                .thenReturn(new DescribeInstancesResult())
+                .thenThrow(exception);
+
+        // when
+        try {
+            new EC2Api().describeInstances(amazonEC2, instanceIds, 1);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertSame(exception, e);
+        }
+    }
+
     /**
      * NotFound exception example data
      * <p>
@@ -315,6 +357,98 @@ public class EC2ApiTest {
         }
     }
 
+    @Test
+    public void describeInstances_shouldNotDescribeAgainKnownRunningInstances() {
+        // given
+        final Instance running = new Instance().withInstanceId("i-1").withPrivateIpAddress("10.0.0.1")
+                .withState(new InstanceState().withName(InstanceStateName.Running));
+        final Instance pending = new Instance().withInstanceId("i-2")
+                .withState(new InstanceState().withName(InstanceStateName.Pending));
+        when(amazonEC2.describeInstances(any(DescribeInstancesRequest.class)))
+                .thenReturn(new DescribeInstancesResult().withReservations(new Reservation().withInstances(running, pending)))
+                .thenReturn(new DescribeInstancesResult().withReservations(new Reservation().withInstances(pending)));
+
+        final EC2Api ec2Api = new EC2Api();
+        final Set<String> instanceIds = new HashSet<>(Arrays.asList("i-1", "i-2"));
+
+        // when
+        ec2Api.describeInstances(amazonEC2, instanceIds);
+        final Map<String, Instance> described = ec2Api.describeInstances(amazonEC2, instanceIds);
+
+        // then
+        final Map<String, Instance> expected = new HashMap<>();
+        expected.put("i-1", running);
+        expected.put("i-2", pending);
+        Assert.assertEquals(expected, described);
+        verify(amazonEC2).describeInstances(new DescribeInstancesRequest().withInstanceIds(Arrays.asList("i-1", "i-2")));
+        verify(amazonEC2).describeInstances(new DescribeInstancesRequest().withInstanceIds(Arrays.asList("i-2")));
+        verifyNoMoreInteractions(amazonEC2);
+    }
+
+    @Test
+    public void describeInstances_shouldDescribeAgainRunningInstanceWithoutAddress() {
+        // given
+        final Instance withoutAddress = new Instance().withInstanceId("i-1")
+                .withState(new InstanceState().withName(InstanceStateName.Running));
+        final Instance withAddress = new Instance().withInstanceId("i-1").withPrivateIpAddress("10.0.0.1")
+                .withState(new InstanceState().withName(InstanceStateName.Running));
+        when(amazonEC2.describeInstances(any(DescribeInstancesRequest.class)))
+                .thenReturn(new DescribeInstancesResult().withReservations(new Reservation().withInstances(withoutAddress)))
+                .thenReturn(new DescribeInstancesResult().withReservations(new Reservation().withInstances(withAddress)));
+
+        final EC2Api ec2Api = new EC2Api();
+        final Set<String> instanceIds = Collections.singleton("i-1");
+
+        // when
+        ec2Api.describeInstances(amazonEC2, instanceIds);
+        final Map<String, Instance> described = ec2Api.describeInstances(amazonEC2, instanceIds);
+        ec2Api.describeInstances(amazonEC2, instanceIds);
+
+        // then
+        Assert.assertEquals(Collections.singletonMap("i-1", withAddress), described);
+        verify(amazonEC2, times(2)).describeInstances(new DescribeInstancesRequest().withInstanceIds(Arrays.asList("i-1")));
+    }
+
+    @Test
+    public void describeInstances_shouldDescribeAgainInvalidatedInstances() {
+        // given
+        final Instance running = new Instance().withInstanceId("i-1").withPrivateIpAddress("10.0.0.1")
+                .withState(new InstanceState().withName(InstanceStateName.Running));
+        when(amazonEC2.describeInstances(any(DescribeInstancesRequest.class)))
+                .thenReturn(new DescribeInstancesResult().withReservations(new Reservation().withInstances(running)));
+
+        final EC2Api ec2Api = new EC2Api();
+        final Set<String> instanceIds = Collections.singleton("i-1");
+
+        // when
+        ec2Api.describeInstances(amazonEC2, instanceIds);
+        ec2Api.invalidateInstances(instanceIds);
+        ec2Api.describeInstances(amazonEC2, instanceIds);
+
+        // then
+        verify(amazonEC2, times(2)).describeInstances(new DescribeInstancesRequest().withInstanceIds(Arrays.asList("i-1")));
+    }
+
+    @Test
+    public void describeInstances_shouldDescribeAgainTerminatedByPluginInstances() {
+        // given
+        final Instance running = new Instance().withInstanceId("i-1").withPrivateIpAddress("10.0.0.1")
+                .withState(new InstanceState().withName(InstanceStateName.Running));
+        when(amazonEC2.describeInstances(any(DescribeInstancesRequest.class)))
+                .thenReturn(new DescribeInstancesResult().withReservations(new Reservation().withInstances(running)));
+
+        final EC2Api ec2Api = new EC2Api();
+        final Set<String> instanceIds = Collections.singleton("i-1");
+
+        // when
+        ec2Api.describeInstances(amazonEC2, instanceIds);
+        ec2Api.terminateInstances(amazonEC2, instanceIds);
+        ec2Api.describeInstances(amazonEC2, instanceIds);
+
+        // then
+        verify(amazonEC2, times(2)).describeInstances(new DescribeInstancesRequest().withInstanceIds(Arrays.asList("i-1")));
+    }
+
     @Test
     public void tagInstances_shouldDoNothingIfNoInstancesPassed() {
         // when
@@ -336,6 +470,44 @@ public class EC2ApiTest {
         verifyNoMoreInteractions(amazonEC2);
     }
 
+    @Test
+    public void tagInstances_givenSomeInstancesNotFound_shouldTagRest() {
+        // given
+        final AmazonEC2Exception notFoundException = new AmazonEC2Exception("The instance ID 'i-2' does not exist");
+        notFoundException.setErrorCode("InvalidInstanceID.NotFound");
+        when(amazonEC2.createTags(any(CreateTagsRequest.class)))
+                .thenThrow(notFoundException)
+                .thenReturn(new CreateTagsResult());
+
+        // when
+        new EC2Api().tagInstances(amazonEC2, new LinkedHashSet<>(Arrays.asList("i-1", "i-2", "i-3")), "opa", "v");
+
+        // then
+        verify(amazonEC2).createTags(new CreateTagsRequest()
+                .withResources(Arrays.asList("i-1", "i-2", "i-3"))
+                .withTags(new Tag().withKey("opa").withValue("v")));
+        verify(amazonEC2).createTags(new CreateTagsRequest()
+                .withResources(Arrays.asList("i-1", "i-3"))
+                .withTags(new Tag().withKey("opa").withValue("v")));
+        verifyNoMoreInteractions(amazonEC2);
+    }
+
+    @Test
+    public void tagInstances_givenNotFoundWithoutInstanceIds_shouldThrow() {
+        // given
+        final AmazonEC2Exception notFoundException = new AmazonEC2Exception("unknown");
+        notFoundException.setErrorCode("InvalidInstanceID.NotFound");
+        when(amazonEC2.createTags(any(CreateTagsRequest.class))).thenThrow(notFoundException);
+
+        // when
+        try {
+            new EC2Api().tagInstances(amazonEC2, Collections.singleton("i-1"), "opa", "v");
+            Assert.fail();
+        } catch (AmazonEC2Exception e) {
+            Assert.assertSame(notFoundException, e);
+        }
+    }
+
     @Test
     public void tagInstances_givenNullValueShouldTagWithEmptyValue() {
         // when
@@ -0,0 +1,103 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstanceTypesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstanceTypesResult;
+import com.amazonaws.services.ec2.model.InstanceTypeInfo;
+import com.amazonaws.services.ec2.model.VCpuInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class InstanceTypeCatalogTest {
+
+    private final AmazonEC2 ec2 = mock(AmazonEC2.class);
+
+    @Before
+    public void before() {
+        InstanceTypeCatalog.invalidateAll();
+    }
+
+    private static InstanceTypeInfo info(final String instanceType, final int vCpus) {
+        return new InstanceTypeInfo().withInstanceType(instanceType).withVCpuInfo(new VCpuInfo().withDefaultVCpus(vCpus));
+    }
+
+    @Test
+    public void prefetch_shouldDescribeAllTypesWithOnePagedCall() {
+        when(ec2.describeInstanceTypes(any(DescribeInstanceTypesRequest.class)))
+                .thenReturn(new DescribeInstanceTypesResult().withInstanceTypes(info("m5.large", 2)).withNextToken("t"))
+                .thenReturn(new DescribeInstanceTypesResult().withInstanceTypes(info("c5.xlarge", 4)));
+
+        InstanceTypeCatalog.prefetch(ec2, Arrays.asList("m5.large", "c5.xlarge", null));
+
+        final ArgumentCaptor<DescribeInstanceTypesRequest> request = ArgumentCaptor.forClass(DescribeInstanceTypesRequest.class);
+        verify(ec2, times(2)).describeInstanceTypes(request.capture());
+        assertEquals(Arrays.asList("c5.xlarge", "m5.large"), request.getValue().getInstanceTypes());
+        assertEquals(2, InstanceTypeCatalog.size(ec2));
+        assertEquals(4, (int) InstanceTypeCatalog.get(ec2, "c5.xlarge").getVCpuInfo().getDefaultVCpus());
+    }
+
+    @Test
+    public void prefetch_shouldSplitByApiLimit() {
+        when(ec2.describeInstanceTypes(any(DescribeInstanceTypesRequest.class)))
+                .thenReturn(new DescribeInstanceTypesResult());
+        final List<String> types = new ArrayList<>();
+        for (int i = 0; i < 150; i++) types.add("type" + i);
+
+        InstanceTypeCatalog.prefetch(ec2, types);
+
+        verify(ec2, times(2)).describeInstanceTypes(any(DescribeInstanceTypesRequest.class));
+    }
+
+    @Test
+    public void get_givenPrefetchedType_shouldNotCallAws() {
+        when(ec2.describeInstanceTypes(any(DescribeInstanceTypesRequest.class)))
+                .thenReturn(new DescribeInstanceTypesResult().withInstanceTypes(info("m5.large", 2)));
+        InstanceTypeCatalog.prefetch(ec2, Collections.singleton("m5.large"));
+        InstanceTypeCatalog.prefetch(ec2, Collections.singleton("m5.large"));
+
+        assertEquals(2, (int) InstanceTypeCatalog.get(ec2, "m5.large").getVCpuInfo().getDefaultVCpus());
+        verify(ec2, times(1)).describeInstanceTypes(any(DescribeInstanceTypesRequest.class));
+    }
+
+    @Test
+    public void get_givenMissingType_shouldDescribeIt() {
+        when(ec2.describeInstanceTypes(any(DescribeInstanceTypesRequest.class)))
+                .thenReturn(new DescribeInstanceTypesResult().withInstanceTypes(info("m5.large", 2)));
+
+        assertEquals(2, (int) InstanceTypeCatalog.get(ec2, "m5.large").getVCpuInfo().getDefaultVCpus());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void get_givenUnknownType_shouldThrow() {
+        when(ec2.describeInstanceTypes(any(DescribeInstanceTypesRequest.class)))
+                .thenReturn(new DescribeInstanceTypesResult());
+
+        InstanceTypeCatalog.get(ec2, "unknown");
+    }
+
+    @Test
+    public void get_shouldKeepCatalogPerClient() {
+        final AmazonEC2 otherRegionEc2 = mock(AmazonEC2.class);
+        when(ec2.describeInstanceTypes(any(DescribeInstanceTypesRequest.class)))
+                .thenReturn(new DescribeInstanceTypesResult().withInstanceTypes(info("m5.large", 2)));
+        InstanceTypeCatalog.get(ec2, "m5.large");
+
+        assertEquals(0, InstanceTypeCatalog.size(otherRegionEc2));
+        verifyNoInteractions(otherRegionEc2);
+    }
+
+}
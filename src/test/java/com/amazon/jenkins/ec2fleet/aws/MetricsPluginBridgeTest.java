@@ -0,0 +1,48 @@
+package com.amazon.jenkins.ec2fleet.aws;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetricsPluginBridgeTest {
+
+    // cloud "a" operation "DescribeInstances" is prefix of cloud "a.DescribeInstances" operation "CreateTags"
+    private static final String GROUP = "ec2-fleet.aws.a.DescribeInstances";
+    private static final String DOTTED_GROUP = "ec2-fleet.aws.a.DescribeInstances.CreateTags";
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    public void register_shouldReplaceOnlyGaugesOfSameGroup() {
+        MetricsPluginBridge.Registrar.register(registry, DOTTED_GROUP,
+                Collections.<String, LongSupplier>singletonMap("count", () -> 1));
+        MetricsPluginBridge.Registrar.register(registry, GROUP,
+                Collections.<String, LongSupplier>singletonMap("count", () -> 2));
+        MetricsPluginBridge.Registrar.register(registry, GROUP,
+                Collections.<String, LongSupplier>singletonMap("count", () -> 3));
+
+        assertEquals(new HashSet<>(Arrays.asList(DOTTED_GROUP + ".count", GROUP + ".count")), registry.getNames());
+        assertEquals(1L, ((Gauge<?>) registry.getMetrics().get(DOTTED_GROUP + ".count")).getValue());
+        assertEquals(3L, ((Gauge<?>) registry.getMetrics().get(GROUP + ".count")).getValue());
+    }
+
+    @Test
+    public void unregister_shouldRemoveOnlyGaugesOfGroup() {
+        MetricsPluginBridge.Registrar.register(registry, DOTTED_GROUP,
+                Collections.<String, LongSupplier>singletonMap("count", () -> 1));
+        MetricsPluginBridge.Registrar.register(registry, GROUP,
+                Collections.<String, LongSupplier>singletonMap("count", () -> 2));
+
+        MetricsPluginBridge.Registrar.unregister(registry, GROUP);
+
+        assertEquals(Collections.singleton(DOTTED_GROUP + ".count"), registry.getNames());
+    }
+
+}
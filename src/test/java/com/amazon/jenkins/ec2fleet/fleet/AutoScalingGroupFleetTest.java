@@ -13,12 +13,15 @@ import static org.mockito.Mockito.when;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.amazon.jenkins.ec2fleet.FleetStateStats;
 import com.amazon.jenkins.ec2fleet.aws.AWSUtils;
+import com.amazon.jenkins.ec2fleet.aws.AwsClientCache;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.services.autoscaling.AmazonAutoScalingClient;
 import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
@@ -28,6 +31,8 @@ import com.amazonaws.services.autoscaling.model.Instance;
 import com.amazonaws.services.autoscaling.model.LaunchTemplate;
 import com.amazonaws.services.autoscaling.model.LaunchTemplateOverrides;
 import com.amazonaws.services.autoscaling.model.MixedInstancesPolicy;
+import com.amazonaws.services.autoscaling.model.TerminateInstanceInAutoScalingGroupRequest;
+import com.amazonaws.services.autoscaling.model.TerminateInstanceInAutoScalingGroupResult;
 import com.amazonaws.services.autoscaling.model.UpdateAutoScalingGroupRequest;
 import com.cloudbees.jenkins.plugins.awscredentials.AWSCredentialsHelper;
 import com.cloudbees.jenkins.plugins.awscredentials.AmazonWebServicesCredentials;
@@ -73,6 +78,9 @@ public class AutoScalingGroupFleetTest {
         mockedAWSUtils.when(() -> AWSUtils.getClientConfiguration(ENDPOINT)).thenReturn(clientConfiguration);
 
         mockedAWSCredentialsHelper = mockStatic(AWSCredentialsHelper.class);
+
+        // clients are cached across calls, make sure each test gets client from own mocked construction
+        AwsClientCache.invalidateAll();
     }
 
     @After
@@ -279,4 +287,56 @@ public class AutoScalingGroupFleetTest {
             assertEquals(result.getInstanceTypeWeights(), expectedWeights);
         }
     }
+
+    private static AmazonServiceException serviceException(final String errorCode, final String message) {
+        final AmazonServiceException exception = new AmazonServiceException(message);
+        exception.setErrorCode(errorCode);
+        return exception;
+    }
+
+    @Test
+    public void terminateInstancesShouldReturnTerminatedAndFailedInstances() {
+        mockedAWSCredentialsHelper.when(() -> AWSCredentialsHelper.getCredentials(CREDS_ID, jenkins)).thenReturn(amazonWebServicesCredentials);
+
+        try (MockedConstruction<AmazonAutoScalingClient> mockedAmazonAutoScalingClient = Mockito.mockConstruction(AmazonAutoScalingClient.class, (autoScalingClient, context) -> {
+            when(autoScalingClient.terminateInstanceInAutoScalingGroup(any(TerminateInstanceInAutoScalingGroupRequest.class))).thenAnswer(invocation -> {
+                final TerminateInstanceInAutoScalingGroupRequest request = invocation.getArgument(0);
+                switch (request.getInstanceId()) {
+                    case "i-failed":
+                        throw serviceException("AccessDenied", "not authorized");
+                    case "i-gone":
+                        throw serviceException("ValidationError", "Instance Id not found - No managed instance found for instance ID: i-gone");
+                    default:
+                        return new TerminateInstanceInAutoScalingGroupResult();
+                }
+            });
+        })) {
+            final TerminationResult result = new AutoScalingGroupFleet().terminateInstances(
+                    CREDS_ID, REGION, ENDPOINT, Arrays.asList("i-0", "i-1", "i-gone", "i-failed"));
+
+            assertEquals(new HashSet<>(Arrays.asList("i-0", "i-1", "i-gone")), result.getTerminated());
+            assertEquals(Collections.singleton("i-failed"), result.getFailed().keySet());
+            verify(mockedAmazonAutoScalingClient.constructed().get(0), times(4))
+                    .terminateInstanceInAutoScalingGroup(any(TerminateInstanceInAutoScalingGroupRequest.class));
+        }
+    }
+
+    @Test
+    public void terminateInstancesShouldRetryThrottledCall() {
+        mockedAWSCredentialsHelper.when(() -> AWSCredentialsHelper.getCredentials(CREDS_ID, jenkins)).thenReturn(amazonWebServicesCredentials);
+
+        try (MockedConstruction<AmazonAutoScalingClient> mockedAmazonAutoScalingClient = Mockito.mockConstruction(AmazonAutoScalingClient.class, (autoScalingClient, context) -> {
+            when(autoScalingClient.terminateInstanceInAutoScalingGroup(any(TerminateInstanceInAutoScalingGroupRequest.class)))
+                    .thenThrow(serviceException("Throttling", "Rate exceeded"))
+                    .thenReturn(new TerminateInstanceInAutoScalingGroupResult());
+        })) {
+            final TerminationResult result = new AutoScalingGroupFleet().terminateInstances(
+                    CREDS_ID, REGION, ENDPOINT, Collections.singleton("i-0"));
+
+            assertEquals(Collections.singleton("i-0"), result.getTerminated());
+            assertTrue(result.getFailed().isEmpty());
+            verify(mockedAmazonAutoScalingClient.constructed().get(0), times(2))
+                    .terminateInstanceInAutoScalingGroup(any(TerminateInstanceInAutoScalingGroupRequest.class));
+        }
+    }
 }
@@ -198,17 +198,18 @@ public class EC2EC2FleetTest {
 
     @Test
     public void getBatchState_withFleetsAndActiveInstances_returnsDescribedInstancesForFleets() {
-        when(ec2.describeFleetInstances(any(DescribeFleetInstancesRequest.class)))
+        // fleets are paged in parallel, so answer by fleet id instead of call order
+        when(ec2.describeFleetInstances(new DescribeFleetInstancesRequest().withFleetId("f1")))
                 .thenReturn(new DescribeFleetInstancesResult()
                                 .withFleetId("f1")
                                 .withActiveInstances(
                                         new ActiveInstance().withInstanceId("i-1"),
-                                        new ActiveInstance().withInstanceId("i-2")),
-                        new DescribeFleetInstancesResult()
+                                        new ActiveInstance().withInstanceId("i-2")));
+        when(ec2.describeFleetInstances(new DescribeFleetInstancesRequest().withFleetId("f2")))
+                .thenReturn(new DescribeFleetInstancesResult()
                                 .withFleetId("f2")
                                 .withActiveInstances(
-                                        new ActiveInstance().withInstanceId("i-3")
-                                ));
+                                        new ActiveInstance().withInstanceId("i-3")));
 
         when(ec2.describeFleets(any(DescribeFleetsRequest.class)))
                 .thenReturn(new DescribeFleetsResult()
@@ -5,6 +5,7 @@ import com.amazon.jenkins.ec2fleet.FleetStateStats;
 import com.amazon.jenkins.ec2fleet.Registry;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.ActiveInstance;
+import com.amazonaws.services.ec2.model.AmazonEC2Exception;
 import com.amazonaws.services.ec2.model.BatchState;
 import com.amazonaws.services.ec2.model.DescribeSpotFleetInstancesRequest;
 import com.amazonaws.services.ec2.model.DescribeSpotFleetInstancesResult;
@@ -179,6 +180,66 @@ public class EC2SpotFleetTest {
         Assert.assertEquals(Collections.emptyMap(), stats.getInstanceTypeWeights());
     }
 
+    @Test
+    public void getStateBatch_returnStatsWithInstancesAndWeightsForEachFleet() {
+        when(ec2.describeSpotFleetRequests(any(DescribeSpotFleetRequestsRequest.class)))
+                .thenReturn(new DescribeSpotFleetRequestsResult()
+                        .withSpotFleetRequestConfigs(
+                                new SpotFleetRequestConfig()
+                                        .withSpotFleetRequestId("f1")
+                                        .withSpotFleetRequestState(BatchState.Active)
+                                        .withSpotFleetRequestConfig(new SpotFleetRequestConfigData()
+                                                .withTargetCapacity(2)
+                                                .withLaunchSpecifications(
+                                                        new SpotFleetLaunchSpecification().withInstanceType("t1").withWeightedCapacity(2.0))),
+                                new SpotFleetRequestConfig()
+                                        .withSpotFleetRequestId("f2")
+                                        .withSpotFleetRequestState(BatchState.Modifying)
+                                        .withSpotFleetRequestConfig(new SpotFleetRequestConfigData()
+                                                .withTargetCapacity(5))));
+        when(ec2.describeSpotFleetInstances(new DescribeSpotFleetInstancesRequest().withSpotFleetRequestId("f1")))
+                .thenReturn(new DescribeSpotFleetInstancesResult()
+                        .withActiveInstances(new ActiveInstance().withInstanceId("i-1")));
+        when(ec2.describeSpotFleetInstances(new DescribeSpotFleetInstancesRequest().withSpotFleetRequestId("f2")))
+                .thenReturn(new DescribeSpotFleetInstancesResult()
+                        .withActiveInstances(new ActiveInstance().withInstanceId("i-2"), new ActiveInstance().withInstanceId("i-3")));
+
+        Map<String, FleetStateStats> statsMap = new EC2SpotFleet().getStateBatch(
+                "cred", "region", "", Arrays.asList("f1", "f2"));
+
+        Assert.assertEquals(Collections.singleton("i-1"), statsMap.get("f1").getInstances());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("i-2", "i-3")), statsMap.get("f2").getInstances());
+        Assert.assertEquals(2, statsMap.get("f1").getNumDesired());
+        Assert.assertTrue(statsMap.get("f2").getState().isModifying());
+        Assert.assertEquals(Collections.singletonMap("t1", 2.0), statsMap.get("f1").getInstanceTypeWeights());
+        Assert.assertEquals(Collections.emptyMap(), statsMap.get("f2").getInstanceTypeWeights());
+        verify(ec2).describeSpotFleetRequests(new DescribeSpotFleetRequestsRequest()
+                .withSpotFleetRequestIds("f1", "f2"));
+    }
+
+    @Test
+    public void getStateBatch_skipFleetsWhichDontExist() {
+        final AmazonEC2Exception notFound = new AmazonEC2Exception("The spot fleet request ID 'f2' does not exist");
+        notFound.setErrorCode("InvalidSpotFleetRequestId.NotFound");
+        when(ec2.describeSpotFleetRequests(new DescribeSpotFleetRequestsRequest()
+                .withSpotFleetRequestIds("f1", "f2"))).thenThrow(notFound);
+        when(ec2.describeSpotFleetRequests(new DescribeSpotFleetRequestsRequest()
+                .withSpotFleetRequestIds("f2"))).thenThrow(notFound);
+        when(ec2.describeSpotFleetRequests(new DescribeSpotFleetRequestsRequest()
+                .withSpotFleetRequestIds("f1")))
+                .thenReturn(new DescribeSpotFleetRequestsResult()
+                        .withSpotFleetRequestConfigs(new SpotFleetRequestConfig()
+                                .withSpotFleetRequestId("f1")
+                                .withSpotFleetRequestState(BatchState.Active)
+                                .withSpotFleetRequestConfig(new SpotFleetRequestConfigData().withTargetCapacity(1))));
+
+        Map<String, FleetStateStats> statsMap = new EC2SpotFleet().getStateBatch(
+                "cred", "region", "", Arrays.asList("f1", "f2"));
+
+        Assert.assertEquals(Collections.singleton("f1"), statsMap.keySet());
+        Assert.assertEquals(1, statsMap.get("f1").getNumDesired());
+    }
+
     @Test
     public void describe_whenAllFleetsEnabled_shouldIncludeAllFleetsInAllStates() {
         // given
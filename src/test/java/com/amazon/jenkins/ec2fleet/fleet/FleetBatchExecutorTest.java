@@ -0,0 +1,52 @@
+package com.amazon.jenkins.ec2fleet.fleet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FleetBatchExecutorTest {
+
+    @Test
+    public void map_shouldReturnResultsInOrderOfIds() {
+        final Map<String, String> results = FleetBatchExecutor.DESCRIBE.map(Arrays.asList("a", "b", "c"), String::toUpperCase);
+
+        assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(results.keySet().toArray()));
+        assertEquals(Arrays.asList("A", "B", "C"), Arrays.asList(results.values().toArray()));
+    }
+
+    @Test
+    public void terminate_givenQueueIsFull_shouldRunCallInCallerThread() {
+        final FleetBatchExecutor executor = FleetBatchExecutor.createTerminate(1);
+        final Thread caller = Thread.currentThread();
+        final Map<String, Thread> threads = new ConcurrentHashMap<>();
+        final CountDownLatch rejectedDone = new CountDownLatch(1);
+
+        // a runs in caller, b occupies only thread, c waits in queue of one, so d is run by caller on submit
+        executor.map(Arrays.asList("a", "b", "c", "d"), id -> {
+            threads.put(id, Thread.currentThread());
+            if (id.equals("b")) {
+                try {
+                    assertTrue(rejectedDone.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (id.equals("d")) rejectedDone.countDown();
+            return id;
+        });
+
+        assertEquals(caller, threads.get("a"));
+        assertEquals(caller, threads.get("d"));
+        assertNotEquals(caller, threads.get("b"));
+        assertNotEquals(caller, threads.get("c"));
+    }
+
+}
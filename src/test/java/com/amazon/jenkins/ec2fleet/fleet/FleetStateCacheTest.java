@@ -0,0 +1,224 @@
+package com.amazon.jenkins.ec2fleet.fleet;
+
+import com.amazon.jenkins.ec2fleet.FleetStateStats;
+import hudson.ExtensionList;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FleetStateCacheTest {
+
+    private static final FleetStateCache.Key F1 = new FleetStateCache.Key("cred", "us-east-1", null, "f1");
+
+    private InMemoryFleetEventSource source;
+    private FleetStateCache cache;
+    private AtomicInteger polls;
+    private FleetStateStats polledState;
+
+    @Before
+    public void before() {
+        source = new InMemoryFleetEventSource();
+        cache = new FleetStateCache(source);
+        polls = new AtomicInteger();
+        polledState = new FleetStateStats("f1", 2, FleetStateStats.State.active(),
+                new HashSet<>(Arrays.asList("i-1", "i-2")), Collections.<String, Double>emptyMap());
+    }
+
+    private Supplier<FleetStateStats> poll() {
+        return () -> {
+            polls.incrementAndGet();
+            return polledState;
+        };
+    }
+
+    @Test
+    public void getState_pollsOnFirstCallThenUsesCache() {
+        assertEquals(polledState.getInstances(), cache.getState(F1, poll()).getInstances());
+        assertEquals(polledState.getInstances(), cache.getState(F1, poll()).getInstances());
+
+        assertEquals(1, polls.get());
+    }
+
+    @Test
+    public void getState_appliesStateChangeEventsWithoutPoll() {
+        cache.getState(F1, poll());
+        source.send(FleetEvent.Type.STATE_CHANGE, "i-3", "pending", "f1");
+        source.send(FleetEvent.Type.STATE_CHANGE, "i-1", "terminated", null);
+
+        final FleetStateStats state = cache.getState(F1, poll());
+
+        assertEquals(new HashSet<>(Arrays.asList("i-2", "i-3")), state.getInstances());
+        assertEquals(2, state.getNumActive());
+        assertEquals(2, state.getNumDesired());
+        assertEquals(1, polls.get());
+        assertEquals(0, source.size());
+    }
+
+    @Test
+    public void getState_removesInstanceOnSpotInterruption() {
+        cache.getState(F1, poll());
+        source.send(FleetEvent.Type.SPOT_INTERRUPTION, "i-2", null, null);
+
+        assertEquals(Collections.singleton("i-1"), cache.getState(F1, poll()).getInstances());
+    }
+
+    @Test
+    public void getState_ignoresEventsForOtherFleets() {
+        cache.getState(F1, poll());
+        source.send(FleetEvent.Type.STATE_CHANGE, "i-3", "running", "f2");
+
+        assertEquals(polledState.getInstances(), cache.getState(F1, poll()).getInstances());
+        assertEquals(1, polls.get());
+    }
+
+    @Test
+    public void getState_reconcilesWhenNewInstanceWithoutFleet() {
+        cache.getState(F1, poll());
+        source.send(FleetEvent.Type.STATE_CHANGE, "i-3", "running", null);
+
+        cache.getState(F1, poll());
+
+        assertEquals(2, polls.get());
+    }
+
+    @Test
+    public void getState_reconcilesAfterInvalidate() {
+        cache.getState(F1, poll());
+
+        cache.invalidate(F1);
+        cache.getState(F1, poll());
+        cache.getState(F1, poll());
+
+        assertEquals(2, polls.get());
+    }
+
+    @Test
+    public void getState_reconcilesAfterInterval() {
+        cache = new FleetStateCache(source, 0);
+
+        cache.getState(F1, poll());
+        cache.getState(F1, poll());
+
+        assertEquals(2, polls.get());
+    }
+
+    @Test
+    public void getState_reconcilesWhileFleetModifying() {
+        polledState = new FleetStateStats("f1", 2, FleetStateStats.State.modifying("modifying"),
+                Collections.<String>emptySet(), Collections.<String, Double>emptyMap());
+
+        cache.getState(F1, poll());
+        cache.getState(F1, poll());
+
+        assertEquals(2, polls.get());
+    }
+
+    @Test
+    public void getState_appliesEventsArrivedDuringPoll() {
+        final FleetStateStats state = cache.getState(F1, () -> {
+            polls.incrementAndGet();
+            source.send(FleetEvent.Type.STATE_CHANGE, "i-3", "pending", "f1");
+            source.send(FleetEvent.Type.STATE_CHANGE, "i-1", "terminated", null);
+            return polledState;
+        });
+
+        assertEquals(new HashSet<>(Arrays.asList("i-2", "i-3")), state.getInstances());
+        assertEquals(1, polls.get());
+    }
+
+    @Test
+    public void getState_ignoresEventOlderThanAppliedForSameInstance() {
+        cache.getState(F1, poll());
+        final long now = System.currentTimeMillis();
+        source.send(new FleetEvent("r1", FleetEvent.Type.STATE_CHANGE, "i-1", "terminated", null, now + 10));
+        source.send(new FleetEvent("r2", FleetEvent.Type.STATE_CHANGE, "i-1", "running", "f1", now + 5));
+
+        assertEquals(Collections.singleton("i-2"), cache.getState(F1, poll()).getInstances());
+        assertEquals(0, source.size());
+    }
+
+    @Test
+    public void getState_ignoresEventOlderThanPoll() {
+        cache.getState(F1, poll());
+        source.send(new FleetEvent("r1", FleetEvent.Type.STATE_CHANGE, "i-1", "terminated", null, 0));
+
+        assertEquals(polledState.getInstances(), cache.getState(F1, poll()).getInstances());
+    }
+
+    @Test
+    public void create_shouldUseFleetEventSourceExtension() {
+        final ExtensionList<FleetEventSource> sources = mock(ExtensionList.class);
+        when(sources.get(0)).thenReturn(source);
+        try (MockedStatic<ExtensionList> mockedExtensionList = Mockito.mockStatic(ExtensionList.class)) {
+            mockedExtensionList.when(() -> ExtensionList.lookup(FleetEventSource.class)).thenReturn(sources);
+            cache = FleetStateCache.create();
+        }
+
+        cache.getState(F1, poll());
+        source.send(FleetEvent.Type.STATE_CHANGE, "i-1", "terminated", null);
+
+        assertEquals(Collections.singleton("i-2"), cache.getState(F1, poll()).getInstances());
+    }
+
+    @Test
+    public void getState_keepsSameFleetIdOfOtherRegionSeparately() {
+        final FleetStateCache.Key otherRegion = new FleetStateCache.Key("cred", "us-west-2", null, "f1");
+        final FleetStateStats otherState = new FleetStateStats("f1", 1, FleetStateStats.State.active(),
+                Collections.singleton("i-9"), Collections.<String, Double>emptyMap());
+
+        cache.getState(F1, poll());
+        assertEquals(Collections.singleton("i-9"), cache.getState(otherRegion, () -> otherState).getInstances());
+
+        assertEquals(polledState.getInstances(), cache.getState(F1, poll()).getInstances());
+        assertEquals(1, polls.get());
+    }
+
+    @Test
+    public void getState_reconcilesAllFleetsWithSameIdOnNewInstanceEvent() {
+        final FleetStateCache.Key otherRegion = new FleetStateCache.Key("cred", "us-west-2", null, "f1");
+        cache.getState(F1, poll());
+        cache.getState(otherRegion, poll());
+        source.send(FleetEvent.Type.STATE_CHANGE, "i-3", "running", "f1");
+
+        cache.getState(F1, poll());
+        cache.getState(otherRegion, poll());
+
+        assertEquals(4, polls.get());
+    }
+
+    @Test
+    public void getState_dropsFleetsNotRequestedForTwoReconcileIntervals() throws InterruptedException {
+        cache = new FleetStateCache(source, 50);
+        cache.getState(new FleetStateCache.Key("cred", "us-west-2", null, "f2"), poll());
+        cache.getState(F1, poll());
+
+        Thread.sleep(150);
+        cache.getState(F1, poll());
+
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void receive_redeliversEventsNotDeletedAfterVisibilityTimeout() {
+        source = new InMemoryFleetEventSource(0);
+        source.send(FleetEvent.Type.STATE_CHANGE, "i-1", "running", "f1");
+
+        assertEquals(1, source.receive(10).size());
+        assertEquals(1, source.receive(10).size());
+
+        source.delete(source.receive(10));
+        assertEquals(0, source.size());
+    }
+
+}